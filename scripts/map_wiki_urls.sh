@@ -1,5 +1,7 @@
 #!/bin/bash
 
 export MAVEN_OPTS="-Xmx64G"
+# dump part patterns are resolved by the mapper, not by the shell
+set -f
 args=(${@// /\\ })
 mvn exec:java -Dexec.mainClass='de.mpii.wiki.WikiMapper' -Dexec.args="${args[*]}"
\ No newline at end of file
@@ -0,0 +1,12 @@
+#!/bin/bash
+# Builds and runs the JMH microbenchmarks with the gc profiler (allocation rate).
+# Results are written as JSON to the given file (default: target/jmh-result.json). To evaluate a change,
+# compare against a result of the base revision on the same machine. Extra arguments are passed on to JMH,
+# e.g. a benchmark name regex: ./scripts/run_benchmarks.sh target/result.json Utils
+
+result=${1:-target/jmh-result.json}
+[ $# -gt 0 ] && shift
+
+mvn -q -P jmh -DskipTests package || exit 1
+java -Dlog4j.configuration=log4j-bench.properties -jar target/benchmarks.jar \
+  -prof gc -rf json -rff "$result" "$@"
@@ -0,0 +1,9 @@
+#!/bin/bash
+# Generates synthetic dump pairs and maps them in separate JVMs for each heap size and processor count,
+# appending wall time, peak RSS and GC time per run to a TSV file (default: scaling-results.tsv).
+# All arguments are passed on, e.g.:
+#   ./scripts/run_scaling_benchmark.sh --sizes 1000000,10000000 --processors 1,8 --heaps 8g,32g --keep-dumps
+
+mvn -q compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt || exit 1
+classpath=target/classes:$(cat target/classpath.txt)
+java -cp "$classpath" de.mpii.wiki.synthetic.ScalingBenchmark --classpath "$classpath" "$@"
@@ -0,0 +1,85 @@
+package de.mpii.wiki.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.mpii.wiki.dump.DumpData;
+import de.mpii.wiki.dump.DumpSettings.DumpType;
+
+/**
+ * Storing of scanned pages and redirect resolution on the target dump.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DumpDataBenchmark {
+
+  @State(Scope.Thread)
+  public static class PageState {
+    String article;
+    String disambiguation;
+    String redirect;
+    DumpData data;
+    int nextId;
+
+    @Setup(Level.Trial)
+    public void load() {
+      article = Fixtures.load(Fixtures.ARTICLE);
+      disambiguation = Fixtures.load(Fixtures.DISAMBIGUATION);
+      redirect = Fixtures.load(Fixtures.REDIRECT);
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      data = new DumpData(DumpType.TARGET);
+      nextId = 1;
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class ChainState {
+    @Param({ "10", "1000" })
+    public int chainLength;
+
+    DumpData data;
+
+    @Setup
+    public void setup() {
+      // 1 -> 2 -> ... -> chainLength, the last page is a normal page
+      data = new DumpData(DumpType.TARGET);
+      for (int id = 1; id < chainLength; id++) {
+        data.addPageEntry(id, "Page " + id, "#REDIRECT [[Page " + (id + 1) + "]]");
+      }
+      data.addPageEntry(chainLength, "Page " + chainLength, "Final page of the chain, see [[Page 1]].");
+    }
+  }
+
+  @Benchmark
+  public int addPageEntry(PageState state) {
+    // mix of page types roughly as in enwiki : mostly articles, a third redirects, few disambiguations
+    int id = state.nextId++;
+    int kind = id % 10;
+    String text = (kind < 6) ? state.article : (kind < 9) ? state.redirect : state.disambiguation;
+    state.data.addPageEntry(id, "Page " + id, text);
+    return id;
+  }
+
+  @Benchmark
+  public int getRedirectedId(ChainState state) {
+    return state.data.getRedirectedId(1);
+  }
+}
@@ -0,0 +1,38 @@
+package de.mpii.wiki.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Loads the wikitext fixtures used by the benchmarks.
+ */
+final class Fixtures {
+
+  static final String ARTICLE = "/fixtures/article.wiki";
+
+  static final String DISAMBIGUATION = "/fixtures/disambiguation.wiki";
+
+  static final String REDIRECT = "/fixtures/redirect.wiki";
+
+  private Fixtures() {
+  }
+
+  static String load(String name) {
+    try (InputStream in = Fixtures.class.getResourceAsStream(name)) {
+      if (in == null) {
+        throw new IllegalStateException("Missing fixture : " + name);
+      }
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[1 << 14];
+      int n;
+      while ((n = in.read(buf)) > 0) {
+        out.write(buf, 0, n);
+      }
+      return new String(out.toByteArray(), Charset.forName("UTF-8"));
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to load fixture : " + name, e);
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package de.mpii.wiki.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.mpii.wiki.common.Utils;
+import de.mpii.wiki.compute.Jaccard;
+
+/**
+ * Similarity of a source page with a disambiguation candidate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JaccardBenchmark {
+
+  private List<String> articleLinks;
+
+  private List<String> candidateLinks;
+
+  @Setup
+  public void setup() {
+    articleLinks = Utils.extractLinks(Fixtures.load(Fixtures.ARTICLE));
+    // a candidate sharing the first half of the links
+    candidateLinks = articleLinks.subList(0, articleLinks.size() / 2);
+  }
+
+  @Benchmark
+  public double compute() {
+    return Jaccard.compute(articleLinks, candidateLinks);
+  }
+}
@@ -0,0 +1,73 @@
+package de.mpii.wiki.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.mpii.wiki.dump.DumpData;
+import de.mpii.wiki.dump.DumpSettings.DumpType;
+import de.mpii.wiki.result.MappedResults;
+import de.mpii.wiki.result.ResultGenerator;
+
+/**
+ * Result generation over a pair of scanned dumps with unchanged, renamed, redirected, disambiguated and
+ * deleted pages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ResultGeneratorBenchmark {
+
+  @Param({ "10000" })
+  public int pages;
+
+  private DumpData source;
+
+  private DumpData target;
+
+  @Setup
+  public void setup() {
+    String article = Fixtures.load(Fixtures.ARTICLE);
+    source = new DumpData(DumpType.SOURCE);
+    target = new DumpData(DumpType.TARGET);
+    for (int id = 1; id <= pages; id++) {
+      source.addPageEntry(id, "Page " + id, article);
+      switch (id % 10) {
+        case 0:
+          // deleted in target
+          break;
+        case 1:
+          target.addPageEntry(id, "Renamed page " + id, article);
+          break;
+        case 2:
+          target.addPageEntry(id, "Page " + id, "#REDIRECT [[Page " + (id + 1) + "]]");
+          break;
+        case 3:
+          target.addPageEntry(id, "Page " + id, "'''Page''' may refer to: * [[Page " + (id + 1) + "]] * [[Page " + (id + 2)
+              + "]] * [[Page " + (id + 3) + "]] {{disambiguation}}");
+          break;
+        default:
+          target.addPageEntry(id, "Page " + id, article);
+          break;
+      }
+    }
+  }
+
+  @Benchmark
+  public MappedResults generate() {
+    return ResultGenerator.generate(source, target);
+  }
+}
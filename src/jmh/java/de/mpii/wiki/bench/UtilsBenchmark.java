@@ -0,0 +1,58 @@
+package de.mpii.wiki.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.mpii.wiki.common.Utils;
+import de.mpii.wiki.page.PageIdentifier;
+import de.mpii.wiki.page.handlers.Handler;
+
+/**
+ * Per page text processing : link extraction, page classification and text compression.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UtilsBenchmark {
+
+  @Param({ Fixtures.ARTICLE, Fixtures.DISAMBIGUATION, Fixtures.REDIRECT })
+  public String fixture;
+
+  private String text;
+
+  @Setup
+  public void setup() {
+    text = Fixtures.load(fixture);
+  }
+
+  @Benchmark
+  public List<String> extractLinks() {
+    return Utils.extractLinks(text);
+  }
+
+  @Benchmark
+  public Handler getHandler() {
+    // classification is dominated by Utils.containsAny over the marker strings
+    return PageIdentifier.getHandler("Oberweiler an der Lauter", text);
+  }
+
+  @Benchmark
+  public String cleanAndCompressText() {
+    return Utils.cleanAndCompressText(text);
+  }
+}
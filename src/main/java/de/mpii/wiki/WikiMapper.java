@@ -1,13 +1,19 @@
 package de.mpii.wiki;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import javax.xml.stream.XMLEventReader;
-import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 
 import org.apache.commons.cli.CommandLine;
@@ -21,18 +27,39 @@ import org.apache.commons.cli.PosixParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.mpii.wiki.api.MapperOptions;
+import de.mpii.wiki.batch.BatchJob;
+import de.mpii.wiki.batch.BatchRunner;
+import de.mpii.wiki.cache.ParseCache;
 import de.mpii.wiki.common.FileUtils;
+import de.mpii.wiki.common.ResultWriter;
 import de.mpii.wiki.dump.DumpData;
-import de.mpii.wiki.dump.DumpReader;
+import de.mpii.wiki.dump.DumpParts;
 import de.mpii.wiki.dump.DumpSettings.DumpType;
 import de.mpii.wiki.dump.DumpSettings.MappedType;
-import de.mpii.wiki.result.MappedResult;
-import de.mpii.wiki.result.MappedResults;
+import de.mpii.wiki.dump.LinkStore;
+import de.mpii.wiki.dump.RevisionSelector;
+import de.mpii.wiki.graph.LinkGraphWriter;
+import de.mpii.wiki.incremental.MappingState;
+import de.mpii.wiki.lookup.LookupFile;
+import de.mpii.wiki.lookup.LookupFileWriter;
+import de.mpii.wiki.lookup.LookupServer;
+import de.mpii.wiki.metrics.MappingMetrics;
+import de.mpii.wiki.metrics.MappingMetrics.Phase;
+import de.mpii.wiki.partition.PartitionedMapper;
+import de.mpii.wiki.profile.DumpProfiler;
+import de.mpii.wiki.result.MappedIdResults;
 import de.mpii.wiki.result.ResultGenerator;
+import de.mpii.wiki.rewrite.CorpusRewriter;
+import de.mpii.wiki.rewrite.MappingTable;
+import de.mpii.wiki.stream.StreamingMapper;
+import de.mpii.wiki.targeted.TargetedScan;
+import de.mpii.wiki.trace.DecisionTrace;
 
 /**
  * This class consists of static methods that operate on either individual Wikipedia dump file or
- * on multiple versions of dumps.
+ * on multiple versions of dumps. For use within a long running application (streams as input, concurrent
+ * and cancellable mappings), see {@link de.mpii.wiki.api.Mapper}.
  *
  * @author vvenkatr
  *
@@ -41,7 +68,7 @@ public class WikiMapper {
 
   private static Options commandLineOptions;
 
-  private static boolean evaluate;
+  private static final int DEFAULT_CACHE_SIZE = 100000;
 
   private static Logger logger_ = LoggerFactory.getLogger(WikiMapper.class);
 
@@ -78,24 +105,12 @@ public class WikiMapper {
    */
 
   public static Map<String, String> map(File oldDump, File newDump, boolean includeUnchangedEntries) throws IOException, XMLStreamException {
-    MappedResults results = mapImpl(oldDump, newDump);
-    Map<String, String> finalMap = new HashMap<>();
-    for(MappedResult result : results.getResults()) {
-      String source = result.getSourceTitle();
-      String target = result.getTargetTitle();
-      MappedType mapType = result.getMappingType();
-      boolean include = true;
-      logger_.debug(source +"->"+target+"("+mapType+")");
-      if(mapType.equals(MappedType.UNCHANGED) && !includeUnchangedEntries) {
-        include = false;        
-      }
-      
-      if(include) {
-        finalMap.put(source, target);
-      }      
-    }
+    MappingMetrics metrics = startMetrics();
+    MappedIdResults results = mapIdsImpl(parts(oldDump), parts(newDump), null, null, new MapperOptions(), metrics);
     results.printResultStats();
-    return finalMap;
+    finishMetrics(metrics, null);
+    // callers may modify the map, see mapIds for the results without a copy of all titles
+    return new HashMap<>(results.asMap(includeUnchangedEntries));
   }
 
   /**
@@ -112,12 +127,23 @@ public class WikiMapper {
    * @throws XMLStreamException if dump xml is invalid.
    */
   public static void mapToFile(File oldDump, File newDump, File output) throws IOException, XMLStreamException {
-    if(output.exists()) {
-      logger_.warn("Output file already exists : " + output.getName() + ". Re-run after deleting/moving the file");
-      System.exit(0);      
-    }
+    mapToFile(parts(oldDump), parts(newDump), output);
+  }
+
+  /**
+   * Same as {@link #mapToFile(File, File, File)}, for dumps split into part files. The parts of each dump
+   * are read concurrently.
+   *
+   * @param oldParts The parts of the old dump to verify.
+   * @param newParts The parts of the new dump to compare with.
+   * @param output  The path to write the final results.
+   * @throws IOException  if loading of dumps fail.
+   * @throws XMLStreamException if dump xml is invalid.
+   */
+  public static void mapToFile(List<File> oldParts, List<File> newParts, File output) throws IOException, XMLStreamException {
+    checkOutput(output);
     // by default, include the unchanged entries as well.
-    mapToFile(oldDump, newDump, output, true);
+    mapToFile(oldParts, newParts, output, true);
   }
 
   /**
@@ -134,10 +160,23 @@ public class WikiMapper {
    * @throws XMLStreamException if dump xml is invalid.
    */
   public static void mapToFile(File oldDump, File newDump, File output, boolean includeUnchangedEntries) throws IOException, XMLStreamException {
-    MappedResults result = mapImpl(oldDump, newDump);
+    mapToFile(parts(oldDump), parts(newDump), output, includeUnchangedEntries);
+  }
+
+  private static void mapToFile(List<File> oldParts, List<File> newParts, File output, boolean includeUnchangedEntries) throws IOException, XMLStreamException {
+    MappingMetrics metrics = startMetrics();
+    mapToFile(oldParts, newParts, output, null, null, new MapperOptions(), metrics);
+    finishMetrics(metrics, null);
+  }
+
+  // titles and stateFile are null if all pages are mapped and no state is saved
+  private static void mapToFile(List<File> oldParts, List<File> newParts, File output, Set<String> titles, File stateFile,
+      MapperOptions options, MappingMetrics metrics) throws IOException, XMLStreamException {
+    MappedIdResults result = mapIdsImpl(oldParts, newParts, titles, stateFile, options, metrics);
     logger_.debug("Writing results to file : " + output.getName());
     try{
-      FileUtils.writeFileContent(output, result.getResults());
+      // unchanged entries are always written to file
+      writeResults(output, result, metrics);
       logger_.debug(result.size() + " entries written to " + output.getName());
       result.printResultStats();
     }catch(IOException ioe) {
@@ -145,54 +184,455 @@ public class WikiMapper {
     }
   }
 
-  private static MappedResults mapImpl(File oldDump, File newDump) throws IOException, XMLStreamException  {    
+  /**
+   * Writes the result of map method to a memory mappable lookup file, which can be queried with
+   * {@link LookupFile} without loading the results into memory. The file includes all page entries.
+   * If output is not null, the results are written to it as text as well.
+   *
+   * @param oldDump The old dump to verify.
+   * @param newDump The new dump to compare with.
+   * @param lookupFile The path to write the lookup file.
+   * @param output  The path to write the text results, can be null.
+   * @throws IOException  if loading of dumps or writing of results fail.
+   * @throws XMLStreamException if dump xml is invalid.
+   */
+  public static void mapToLookupFile(File oldDump, File newDump, File lookupFile, File output) throws IOException, XMLStreamException {
+    mapToLookupFile(parts(oldDump), parts(newDump), lookupFile, output);
+  }
 
-    XMLInputFactory factory = XMLInputFactory.newInstance();
+  private static void mapToLookupFile(List<File> oldParts, List<File> newParts, File lookupFile, File output) throws IOException, XMLStreamException {
+    MappingMetrics metrics = startMetrics();
+    mapToLookupFile(oldParts, newParts, lookupFile, output, null, null, new MapperOptions(), metrics);
+    finishMetrics(metrics, null);
+  }
 
-    XMLEventReader newDumpReader = factory.createXMLEventReader(new FileReader(newDump));
-    XMLEventReader oldDumpReader = factory.createXMLEventReader(new FileReader(oldDump));
+  private static void mapToLookupFile(List<File> oldParts, List<File> newParts, File lookupFile, File output, Set<String> titles,
+      File stateFile, MapperOptions options, MappingMetrics metrics) throws IOException, XMLStreamException {
+    MappedIdResults results = mapIdsImpl(oldParts, newParts, titles, stateFile, options, metrics);
+    metrics.setPhase("output");
+    long start = System.nanoTime();
+    LookupFileWriter.write(lookupFile, results);
+    metrics.time(Phase.OUTPUT, System.nanoTime() - start);
+    if(output != null) {
+      writeResults(output, results, metrics);
+      logger_.debug(results.size() + " entries written to " + output.getName());
+    }
+    results.printResultStats();
+  }
 
-    DumpType targetDumpType = (evaluate)? DumpType.TARGET_EVAL : DumpType.TARGET;
-    DumpType sourceDumpType = (evaluate)? DumpType.SOURCE_EVAL : DumpType.SOURCE;
+  /**
+   * Returns the mapping results in compact, id based form. The scanned dumps are not referenced by the
+   * results, see {@link MappedIdResults#asMap(boolean)} for a Map view that avoids per entry objects.
+   *
+   * @param oldDump The old dump to verify.
+   * @param newDump The new dump to compare with.
+   * @return Id based mapping results.
+   * @throws IOException  if loading of dumps fail.
+   * @throws XMLStreamException if dump xml is invalid.
+   */
+  public static MappedIdResults mapIds(File oldDump, File newDump) throws IOException, XMLStreamException {
+    return mapIds(parts(oldDump), parts(newDump));
+  }
 
-    DumpData newDumpData = new DumpData(targetDumpType);
-    DumpData oldDumpData = new DumpData(sourceDumpType);
-    
+  /**
+   * Same as {@link #mapIds(File, File)}, for dumps split into part files (see {@link DumpParts#resolve(String)}).
+   * The parts of each dump are read concurrently, each with its own parser.
+   *
+   * @param oldParts The parts of the old dump to verify.
+   * @param newParts The parts of the new dump to compare with.
+   * @return Id based mapping results.
+   * @throws IOException  if loading of dumps fail.
+   * @throws XMLStreamException if dump xml is invalid.
+   */
+  public static MappedIdResults mapIds(List<File> oldParts, List<File> newParts) throws IOException, XMLStreamException {
+    return mapIds(oldParts, newParts, new MapperOptions());
+  }
+
+  /**
+   * Same as {@link #mapIds(List, List)}, with the given options (evaluation mode, history dumps, parse
+   * cache, link store, link graph, decision trace and read threads). Options specific to {@link de.mpii.wiki.api.Mapper}
+   * are ignored, the parse cache and decision trace stay open.
+   *
+   * @param oldParts The parts of the old dump to verify.
+   * @param newParts The parts of the new dump to compare with.
+   * @param options The options of the mapping.
+   * @return Id based mapping results.
+   * @throws IOException  if loading of dumps fail.
+   * @throws XMLStreamException if dump xml is invalid.
+   */
+  public static MappedIdResults mapIds(List<File> oldParts, List<File> newParts, MapperOptions options) throws IOException, XMLStreamException {
+    MappingMetrics metrics = startMetrics();
+    MappedIdResults results = mapIdsImpl(oldParts, newParts, null, null, options, metrics);
+    results.printResultStats();
+    finishMetrics(metrics, null);
+    return results;
+  }
+
+  /**
+   * Applies adds-changes dumps (pages modified since the target dump) to a mapping state saved with
+   * --save-state, instead of scanning a full target dump again. Only the results affected by the modified
+   * pages are recomputed. The state file is updated and all results are written to output (standard output
+   * if null).
+   *
+   * @param state The mapping state to update.
+   * @param changes The adds-changes dumps, in the order they were published.
+   * @param output  The path to write the results, can be null.
+   * @throws IOException  if loading of the state or dumps fail.
+   * @throws XMLStreamException if dump xml is invalid.
+   */
+  public static void applyChanges(File state, List<File> changes, File output) throws IOException, XMLStreamException {
+    MappingMetrics metrics = startMetrics();
+    applyChanges(state, changes, output, metrics);
+    finishMetrics(metrics, null);
+  }
+
+  private static void applyChanges(File state, List<File> changes, File output, MappingMetrics metrics) throws IOException, XMLStreamException {
+    metrics.setPhase("load state");
+    MappingState mappingState = MappingState.load(state, metrics);
+    mappingState.apply(changes);
+    MappedIdResults results = mappingState.getResults();
+    writeResults(output, results, metrics);
+    results.printResultStats();
+    mappingState.save(state);
+  }
+
+  /**
+   * Returns the mapping results for the given source titles only. Pages outside of the subset are skipped
+   * before their text is read, the target dump is scanned only for pages the results of the subset depend
+   * on (this may take more than one pass over the target dump).
+   *
+   * @param oldDump The old dump to verify.
+   * @param newDump The new dump to compare with.
+   * @param titles The source titles to map.
+   * @return Id based mapping results of the titles found in the old dump.
+   * @throws IOException  if loading of dumps fail.
+   * @throws XMLStreamException if dump xml is invalid.
+   */
+  public static MappedIdResults mapIds(File oldDump, File newDump, Set<String> titles) throws IOException, XMLStreamException {
+    MappingMetrics metrics = startMetrics();
+    MappedIdResults results = mapIdsImpl(parts(oldDump), parts(newDump), titles, null, new MapperOptions(), metrics);
+    results.printResultStats();
+    finishMetrics(metrics, null);
+    return results;
+  }
+
+  /**
+   * Writes the mapping results to output (standard output if null) in streaming mode: the dumps are joined
+   * on page id while they are read and only an index of the target dump is held in memory, so the memory
+   * needed does not grow with the source dump. Dumps that are not in page id order are sorted externally in
+   * tmpDir first. Evaluation mode is not supported.
+   *
+   * @param oldDump The old dump to verify.
+   * @param newDump The new dump to compare with.
+   * @param output  The path to write the results, can be null.
+   * @param tmpDir  The directory for temporary files.
+   * @throws IOException  if loading of dumps or writing of results fail.
+   * @throws XMLStreamException if dump xml is invalid.
+   */
+  public static void mapStreaming(File oldDump, File newDump, File output, File tmpDir) throws IOException, XMLStreamException {
+    MappingMetrics metrics = startMetrics();
+    mapStreaming(oldDump, newDump, output, new StreamingMapper(metrics, tmpDir, StreamingMapper.DEFAULT_RUN_CHARS));
+    finishMetrics(metrics, null);
+  }
+
+  private static void mapStreaming(File oldDump, File newDump, File output, StreamingMapper mapper) throws IOException, XMLStreamException {
+    try (ResultWriter writer = FileUtils.getResultWriter(output)) {
+      mapper.map(oldDump, newDump, writer);
+    }
+    mapper.printResultStats();
+  }
+
+  /**
+   * Writes the mapping results to output (standard output if null) using the given number of worker
+   * processes, each holding only its partition of the page ids. Lookups crossing partitions (redirect
+   * chains, disambiguation candidates) are exchanged through files in a work directory created in tmpDir,
+   * which has to be shared if workers run on other machines. Evaluation mode is not supported.
+   *
+   * @param oldDump The old dump to verify.
+   * @param newDump The new dump to compare with.
+   * @param output  The path to write the results, can be null.
+   * @param partitions The number of worker processes.
+   * @param tmpDir  The directory for the work directory.
+   * @throws IOException  if a worker fails or writing of results fail.
+   */
+  public static void mapPartitioned(File oldDump, File newDump, File output, int partitions, File tmpDir) throws IOException {
+    MappingMetrics metrics = startMetrics();
+    mapPartitioned(oldDump, newDump, output, new PartitionedMapper(partitions, tmpDir, metrics));
+    finishMetrics(metrics, null);
+  }
+
+  private static void mapPartitioned(File oldDump, File newDump, File output, PartitionedMapper mapper) throws IOException {
+    try (ResultWriter writer = FileUtils.getResultWriter(output)) {
+      mapper.map(oldDump, newDump, writer);
+    }
+    mapper.printResultStats();
+  }
+
+  /**
+   * Maps several old dumps to the same new dump, writing the results of each old dump to the output at the
+   * same position. The new dump is scanned once, then the old dumps are scanned concurrently and mapped one
+   * after the other against the shared new dump. Each old dump is compacted once it is scanned, so all of them
+   * are held in memory as columns until their results are written; only the dumps being scanned (at most one
+   * per read thread) are held in hash maps.
+   *
+   * @param oldDumps The old dumps to verify.
+   * @param newDump The new dump to compare with.
+   * @param outputs The paths to write the results of each old dump.
+   * @throws IOException  if an output file exists, or loading of dumps or writing of results fail.
+   * @throws XMLStreamException if dump xml is invalid.
+   */
+  public static void mapToFiles(List<File> oldDumps, File newDump, List<File> outputs) throws IOException, XMLStreamException {
+    List<List<File>> oldParts = new ArrayList<>();
+    for(File oldDump : oldDumps) {
+      oldParts.add(parts(oldDump));
+    }
+    MappingMetrics metrics = startMetrics();
+    mapToFiles(oldParts, parts(newDump), outputs, new MapperOptions(), metrics);
+    finishMetrics(metrics, null);
+  }
+
+  private static void mapToFiles(List<List<File>> oldParts, List<File> newParts, List<File> outputs, MapperOptions options,
+      MappingMetrics metrics) throws IOException, XMLStreamException {
+    if(oldParts.size() != outputs.size()) {
+      throw new IllegalArgumentException(oldParts.size() + " old dumps but " + outputs.size() + " outputs");
+    }
+    for(File output : outputs) {
+      if(output.exists()) {
+        throw new IOException("Output file already exists : " + output);
+      }
+    }
+    DumpData newDumpData = new DumpData((options.isEvaluate())? DumpType.TARGET_EVAL : DumpType.TARGET, metrics);
+    newDumpData.setParseCache(options.getParseCache());
+    List<DumpData> oldDumpData = new ArrayList<>();
+    for(int i = 0; i < oldParts.size(); i++) {
+      DumpData data = new DumpData((options.isEvaluate())? DumpType.SOURCE_EVAL : DumpType.SOURCE, metrics);
+      data.setParseCache(options.getParseCache());
+      oldDumpData.add(data);
+    }
+    List<LinkStore> linkStores = new ArrayList<>();
+    try {
+      if(options.getLinkStoreDir() != null) {
+        linkStores.add(LinkStore.create(options.getLinkStoreDir(), "target", options.getLinkStoreCacheBytes(), metrics));
+        newDumpData.setLinkStore(linkStores.get(0));
+        for(DumpData data : oldDumpData) {
+          linkStores.add(LinkStore.create(options.getLinkStoreDir(), "source", options.getLinkStoreCacheBytes(), metrics));
+          data.setLinkStore(linkStores.get(linkStores.size() - 1));
+        }
+      }
+
+      long start = System.currentTimeMillis();
+      metrics.setPhase("scan target");
+      DumpParts.read(newParts, newDumpData, options.getReadThreads(), options.getTargetRevisions());
+      logger_.info("Time to scan target dump : " + (System.currentTimeMillis() - start)/1000 + " s.");
+      if(options.getLinkGraph() != null) {
+        metrics.setPhase("export link graph");
+        LinkGraphWriter.write(options.getLinkGraph(), newDumpData);
+      }
+
+      // the target is only read from now on, so the sources can share it while they are scanned
+      start = System.currentTimeMillis();
+      metrics.setPhase("scan sources");
+      scanSources(oldParts, oldDumpData, newDumpData, options);
+      logger_.info("Time to scan " + oldParts.size() + " source dumps : " + (System.currentTimeMillis() - start)/1000 + " s.");
+
+      newDumpData.compact();
+      for(int i = 0; i < oldDumpData.size(); i++) {
+        metrics.setPhase("generate results " + (i + 1) + "/" + oldDumpData.size());
+        DumpData data = oldDumpData.get(i);
+        MappedIdResults results = ResultGenerator.generateIds(data, newDumpData, options.getDecisionTrace());
+        writeResults(outputs.get(i), results, metrics);
+        logger_.info(results.size() + " entries written to " + outputs.get(i).getName());
+        results.printResultStats();
+        // the results of a source are written, its pages are not needed anymore
+        oldDumpData.set(i, null);
+      }
+    } finally {
+      // the source stores share lists of the target store, they are closed first
+      for(int i = linkStores.size() - 1; i >= 0; i--) {
+        linkStores.get(i).close();
+      }
+    }
+  }
+
+  // scans the source dumps concurrently (at most one per read thread), reusing the unchanged pages of the target, and
+  // compacts each of them once it is scanned
+  private static void scanSources(List<List<File>> oldParts, List<DumpData> oldDumpData, final DumpData newDumpData, MapperOptions options)
+      throws IOException, XMLStreamException {
+    final int threads = Math.max(1, options.getReadThreads() / oldParts.size());
+    final RevisionSelector sourceRevisions = options.getSourceRevisions();
+    ExecutorService pool = Executors.newFixedThreadPool(Math.min(options.getReadThreads(), oldParts.size()));
+    try {
+      List<Future<Void>> scans = new ArrayList<>();
+      for(int i = 0; i < oldParts.size(); i++) {
+        final List<File> parts = oldParts.get(i);
+        final DumpData data = oldDumpData.get(i);
+        scans.add(pool.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            data.reuseUnchangedPages(newDumpData);
+            DumpParts.read(parts, data, threads, sourceRevisions);
+            // the maps of the scan are released while the other sources are still scanned
+            data.compact();
+            logger_.info("Scanned source dump " + parts.get(0).getName() + " : " + data.size() + " pages");
+            return null;
+          }
+        }));
+      }
+      for(Future<Void> scan : scans) {
+        scan.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while scanning source dumps", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if(cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if(cause instanceof XMLStreamException) {
+        throw (XMLStreamException) cause;
+      }
+      throw new RuntimeException(cause);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private static List<File> parts(File dump) {
+    return Collections.singletonList(dump);
+  }
+
+  private static MappedIdResults mapIdsImpl(List<File> oldParts, List<File> newParts, Set<String> titles, File stateFile, MapperOptions options,
+      MappingMetrics metrics) throws IOException, XMLStreamException  {
+
+    DumpType targetDumpType = (options.isEvaluate())? DumpType.TARGET_EVAL : DumpType.TARGET;
+    DumpType sourceDumpType = (options.isEvaluate())? DumpType.SOURCE_EVAL : DumpType.SOURCE;
+
+    DumpData newDumpData = new DumpData(targetDumpType, metrics);
+    DumpData oldDumpData = new DumpData(sourceDumpType, metrics);
+    LinkStore newLinks = null;
+    LinkStore oldLinks = null;
+    try {
+      if(options.getLinkStoreDir() != null) {
+        newLinks = LinkStore.create(options.getLinkStoreDir(), "target", options.getLinkStoreCacheBytes(), metrics);
+        newDumpData.setLinkStore(newLinks);
+        oldLinks = LinkStore.create(options.getLinkStoreDir(), "source", options.getLinkStoreCacheBytes(), metrics);
+        oldDumpData.setLinkStore(oldLinks);
+      }
+      return mapIdsImpl(oldParts, newParts, titles, stateFile, options, oldDumpData, newDumpData, metrics);
+    } finally {
+      // the source store shares lists of the target store, it is closed first
+      if(oldLinks != null) {
+        oldLinks.close();
+      }
+      if(newLinks != null) {
+        newLinks.close();
+      }
+    }
+  }
+
+  private static MappedIdResults mapIdsImpl(List<File> oldParts, List<File> newParts, Set<String> titles, File stateFile, MapperOptions options,
+      DumpData oldDumpData, DumpData newDumpData, MappingMetrics metrics) throws IOException, XMLStreamException {
+    newDumpData.setParseCache(options.getParseCache());
+    oldDumpData.setParseCache(options.getParseCache());
+    scan(oldParts, newParts, titles, options, oldDumpData, newDumpData, metrics);
+
+    if(options.getLinkGraph() != null) {
+      metrics.setPhase("export link graph");
+      LinkGraphWriter.write(options.getLinkGraph(), newDumpData);
+    }
+
+    metrics.setPhase("generate results");
+    oldDumpData.compact();
+    newDumpData.compact();
+    MappedIdResults results = ResultGenerator.generateIds(oldDumpData, newDumpData, options.getDecisionTrace());
+    if(stateFile != null) {
+      metrics.setPhase("save state");
+      new MappingState(results, oldDumpData, newDumpData).save(stateFile);
+    }
+    return results;
+  }
+
+  private static void scan(List<File> oldParts, List<File> newParts, Set<String> titles, MapperOptions options, DumpData oldDumpData,
+      DumpData newDumpData, MappingMetrics metrics) throws IOException, XMLStreamException {
     long start = System.currentTimeMillis();
     
-    logger_.debug("Processing Target Dump...");
-    DumpReader.read(newDumpReader, newDumpData);
-    logger_.info("Time to scan target dump : " + (System.currentTimeMillis() - start)/1000 + " s.");
-
-    // iterate over the source dump
-    start = System.currentTimeMillis();
-    logger_.debug("Processing Source Dump...");
-    DumpReader.read(oldDumpReader, oldDumpData);
-    logger_.info("Time to scan source dump : " + (System.currentTimeMillis() - start)/1000 + " s.");
-    
-    MappedResults results = ResultGenerator.generate(oldDumpData, newDumpData);    
-    return results;
+    if(titles != null) {
+      // the target pages required depend on the source pages found, so the source is scanned first
+      metrics.setPhase("scan source");
+      TargetedScan.scanSource(oldParts, oldDumpData, titles);
+      logger_.info("Time to scan source dump : " + (System.currentTimeMillis() - start)/1000 + " s.");
+      start = System.currentTimeMillis();
+      metrics.setPhase("scan target");
+      TargetedScan.scanTarget(newParts, newDumpData, oldDumpData);
+      logger_.info("Time to scan target dump : " + (System.currentTimeMillis() - start)/1000 + " s.");
+    } else {
+      logger_.debug("Processing Target Dump...");
+      metrics.setPhase("scan target");
+      DumpParts.read(newParts, newDumpData, options.getReadThreads(), options.getTargetRevisions());
+      logger_.info("Time to scan target dump : " + (System.currentTimeMillis() - start)/1000 + " s.");
+
+      // iterate over the source dump, pages unchanged since the target revision are not extracted again
+      oldDumpData.reuseUnchangedPages(newDumpData);
+      start = System.currentTimeMillis();
+      logger_.debug("Processing Source Dump...");
+      metrics.setPhase("scan source");
+      DumpParts.read(oldParts, oldDumpData, options.getReadThreads(), options.getSourceRevisions());
+      logger_.info("Time to scan source dump : " + (System.currentTimeMillis() - start)/1000 + " s.");
+    }
+  }
+
+  private static void writeResults(File output, MappedIdResults results, MappingMetrics metrics) throws IOException {
+    metrics.setPhase("output");
+    long start = System.nanoTime();
+    FileUtils.writeFileContent(output, results, true);
+    metrics.time(Phase.OUTPUT, System.nanoTime() - start);
+  }
+
+  private static MappingMetrics startMetrics() {
+    MappingMetrics metrics = new MappingMetrics();
+    metrics.registerMBean();
+    return metrics;
+  }
+
+  private static void checkOutput(File output) {
+    if(output.exists()) {
+      logger_.warn("Output file already exists : " + output.getName() + ". Re-run after deleting/moving the file");
+      System.exit(0);
+    }
+  }
+
+  // metricsReport is null if no report is written
+  private static void finishMetrics(MappingMetrics metrics, File metricsReport) throws IOException {
+    metrics.finish();
+    metrics.unregisterMBean();
+    logger_.info("Processed " + metrics.getPagesProcessed() + " pages in " + metrics.getElapsedMillis() / 1000 + " s ("
+        + metrics.getPagesPerSecond() + " pages/s, " + metrics.getBytesPerSecond() / (1 << 20) + " MB/s, "
+        + metrics.getPagesReused() + " unchanged pages reused, " + metrics.getPagesCached() + " pages from parse cache)");
+    if(metricsReport != null) {
+      metrics.writeReport(metricsReport);
+    }
   }
 
   @SuppressWarnings("static-access")
-  private static Options buildCommandLineOptions() throws ParseException {
+  private static Options buildCommandLineOptions(boolean dumpsRequired) throws ParseException {
     Options options = new Options();
     options
     .addOption(OptionBuilder
         .withLongOpt("source")
         .withDescription(
-            "Old dump to be mapped")
+            "Old dump to be mapped (comma separated parts or a glob pattern for dumps split into parts). Can be repeated to map several old dumps to the same new dump, with one --output each")
             .hasArg()
-            .isRequired()
+            .isRequired(dumpsRequired)
             .withArgName("SOURCE_DUMP")
             .create("s"));
     options
     .addOption(OptionBuilder
         .withLongOpt("target")
         .withDescription(
-            "New dump to check against")
+            "New dump to check against (comma separated parts or a glob pattern for dumps split into parts)")
             .hasArg()
-            .isRequired()
+            .isRequired(dumpsRequired)
             .withArgName("TARGET_DUMP")
             .create("t"));
     options
@@ -209,6 +649,250 @@ public class WikiMapper {
         .withDescription(
             "Runs Mapper in evaluation mode - Stores snippet of page texts for manual verification of disambiguations")
             .create("e"));
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("lookup")
+        .withDescription(
+            "Write a memory mappable lookup file of the results")
+            .hasArg()
+            .withArgName("FILENAME")
+            .create("l"));
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("serve")
+        .withDescription(
+            "Serve lookups from the lookup file on the given localhost port (maps source and target first, if given)")
+            .hasArg()
+            .withArgName("PORT")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("cache-size")
+        .withDescription(
+            "Number of recently requested titles cached by the lookup server (default " + DEFAULT_CACHE_SIZE + ")")
+            .hasArg()
+            .withArgName("SIZE")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("rewrite")
+        .withDescription(
+            "Rewrite title columns of the given TSV files through a mapping file written by this tool (output is written to the --output directory)")
+            .hasArg()
+            .withArgName("MAPPING_FILE")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("columns")
+        .withDescription(
+            "Comma separated, 1 based title columns to rewrite (default 1)")
+            .hasArg()
+            .withArgName("COLUMNS")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("resolved-only")
+        .withDescription(
+            "Rewrite only titles that are redirected or disambiguated in the mapping")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("threads")
+        .withDescription(
+            "Number of worker threads for rewriting, for reading dump parts and for batch jobs (default: available processors)")
+            .hasArg()
+            .withArgName("THREADS")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("metrics")
+        .withDescription(
+            "Write a JSON report of phase timings, throughput, page statistics and memory usage (job timings and throughput with --batch)")
+            .hasArg()
+            .withArgName("FILENAME")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("streaming")
+        .withDescription(
+            "Join the dumps on page id while reading them, keeping only an index of the target dump in memory")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("tmp-dir")
+        .withDescription(
+            "Directory for temporary files, e.g. sorted runs of dumps not in page id order (default: system temp)")
+            .hasArg()
+            .withArgName("DIR")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("partitions")
+        .withDescription(
+            "Map with the given number of worker processes, each keeping one partition of the page ids")
+            .hasArg()
+            .withArgName("K")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("partitioning")
+        .withDescription(
+            "Partitioning of page ids: hash (default) or range")
+            .hasArg()
+            .withArgName("SCHEME")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("worker-heap")
+        .withDescription(
+            "Maximum heap of each worker process, e.g. 32g")
+            .hasArg()
+            .withArgName("SIZE")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("worker-command")
+        .withDescription(
+            "Command prepended to each worker's java command, %d is replaced by the worker index (e.g. \"ssh node%d\")")
+            .hasArg()
+            .withArgName("COMMAND")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("worker-classpath")
+        .withDescription(
+            "Class path of the worker JVMs (default: the class path the mapper was loaded from)")
+            .hasArg()
+            .withArgName("CLASSPATH")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("source-history")
+        .withDescription(
+            "Read the old dump as full history dump, mapping the latest revisions or those current at the given time (e.g. 2014-05-02 or 2014-05-02T18:06:15Z)")
+            .hasArg()
+            .withArgName("latest|TIME")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("target-history")
+        .withDescription(
+            "Read the new dump as full history dump, see --source-history")
+            .hasArg()
+            .withArgName("latest|TIME")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("titles")
+        .withDescription(
+            "Map only the source titles listed in the given file (one title per line)")
+            .hasArg()
+            .withArgName("TITLES_FILE")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("save-state")
+        .withDescription(
+            "Save the scanned dumps and results, so that adds-changes dumps can be applied later")
+            .hasArg()
+            .withArgName("STATE_FILE")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("apply-changes")
+        .withDescription(
+            "Apply the given adds-changes dumps to a saved mapping state and write the updated results")
+            .hasArg()
+            .withArgName("STATE_FILE")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("parse-cache")
+        .withDescription(
+            "Directory of a cache of parsed pages (type and links by revision), reused across runs")
+            .hasArg()
+            .withArgName("DIR")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("parse-cache-size")
+        .withDescription(
+            "Size bound of the parse cache, the oldest entries are evicted first (default 8g)")
+            .hasArg()
+            .withArgName("SIZE")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("link-graph")
+        .withDescription(
+            "Write the link graph of the new dump (redirects resolved) to the given file, in CSR binary format")
+            .hasArg()
+            .withArgName("GRAPH_FILE")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("link-store")
+        .withDescription(
+            "Keep the page links in log files in the given directory instead of memory, only disambiguations read them back")
+            .hasArg()
+            .withArgName("DIR")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("link-store-cache")
+        .withDescription(
+            "Size bound of the in-memory cache of links read back from the link store (default 256m)")
+            .hasArg()
+            .withArgName("SIZE")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("trace")
+        .withDescription(
+            "Write the redirect and disambiguation decisions (ids, redirect chains, candidate scores) to the given TSV file")
+            .hasArg()
+            .withArgName("TRACE_FILE")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("trace-sample")
+        .withDescription(
+            "Fraction of source pages whose decisions are traced (default 1)")
+            .hasArg()
+            .withArgName("RATE")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("profile")
+        .withDescription(
+            "Profile the given dump without mapping it (pages per namespace and type, text and link statistics, redirect chains, projected memory) as JSON, written to --output or standard output")
+            .hasArg()
+            .withArgName("DUMP_FILE")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("profile-sample")
+        .withDescription(
+            "Profile only the given percentage of the dump, from its start, for a quick estimate (default 100)")
+            .hasArg()
+            .withArgName("PERCENT")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("batch")
+        .withDescription(
+            "Run the jobs of a manifest (one line per job: source dump, target dump, output file) under a memory and core budget")
+            .hasArg()
+            .withArgName("MANIFEST")
+            .create());
+    options
+    .addOption(OptionBuilder
+        .withLongOpt("memory")
+        .withDescription(
+            "Memory budget of the batch jobs, e.g. 60g (default: 90% of the maximum heap)")
+            .hasArg()
+            .withArgName("SIZE")
+            .create());
     options.addOption(OptionBuilder.withLongOpt("help").create('h'));
     return options;
   }
@@ -221,8 +905,105 @@ public class WikiMapper {
     System.exit(0);
   }
 
+  private static void rewrite(CommandLine cmd) throws IOException {
+    if(!cmd.hasOption('w') || cmd.getArgs().length == 0) {
+      System.out.println("\n\nRewrite requires input files and an --output directory\n\n");
+      printHelp(commandLineOptions);
+    }
+    File outputDir = new File(cmd.getOptionValue('w'));
+    if(!outputDir.isDirectory() && !outputDir.mkdirs()) {
+      throw new IOException("Cannot create output directory : " + outputDir);
+    }
+
+    String[] strColumns = cmd.getOptionValue("columns", "1").split(",");
+    int[] columns = new int[strColumns.length];
+    for(int i = 0; i < columns.length; i++) {
+      columns[i] = Integer.parseInt(strColumns[i].trim()) - 1;
+    }
+    int threads = Integer.parseInt(cmd.getOptionValue("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+    Set<MappedType> followTypes = cmd.hasOption("resolved-only") ? MappingTable.resolvedTypes() : MappingTable.allTypes();
+    MappingTable table = MappingTable.load(new File(cmd.getOptionValue("rewrite")), followTypes);
+
+    CorpusRewriter rewriter = new CorpusRewriter(table, columns, threads);
+    for(String input : cmd.getArgs()) {
+      File inputFile = new File(input);
+      File outputFile = new File(outputDir, inputFile.getName());
+      if(outputFile.exists()) {
+        logger_.warn("Output file already exists : " + outputFile + ". Skipping " + input);
+        continue;
+      }
+      rewriter.rewrite(inputFile, outputFile);
+    }
+    rewriter.printStats();
+  }
+
+  private static void batch(CommandLine cmd, MapperOptions options, File metricsReport) throws IOException, InterruptedException {
+    List<BatchJob> jobs = BatchJob.readManifest(new File(cmd.getOptionValue("batch")));
+    long memory = cmd.hasOption("memory") ? BatchRunner.parseSize(cmd.getOptionValue("memory")) : Runtime.getRuntime().maxMemory() / 10 * 9;
+    BatchRunner runner = new BatchRunner(memory, options.getReadThreads());
+    runner.setEvaluate(options.isEvaluate());
+    int failed = runner.run(jobs);
+    if(metricsReport != null) {
+      runner.writeReport(metricsReport);
+    }
+    if(failed > 0) {
+      throw new IOException(failed + " of " + jobs.size() + " jobs failed");
+    }
+  }
+
+  private static void profile(CommandLine cmd) throws IOException, XMLStreamException {
+    double percent = Double.parseDouble(cmd.getOptionValue("profile-sample", "100"));
+    DumpProfiler profiler = DumpProfiler.profile(new File(cmd.getOptionValue("profile")), percent);
+    if(cmd.hasOption('w')) {
+      profiler.writeReport(new File(cmd.getOptionValue('w')));
+    } else {
+      System.out.print(profiler.toJson());
+    }
+    logger_.info("Profiled " + profiler.getPages() + " pages, projected heap as target : " + (profiler.getProjectedBytes(true) >> 20)
+        + " MB, as source : " + (profiler.getProjectedBytes(false) >> 20) + " MB");
+  }
+
+  // modes working on existing files, which need no source and target dump
+  private static final String[] STANDALONE_MODES = {"serve", "rewrite", "apply-changes", "profile", "batch"};
+
+  private static boolean isStandaloneMode(String[] args) {
+    for(String arg : args) {
+      for(String mode : STANDALONE_MODES) {
+        if(arg.equals("--" + mode) || arg.startsWith("--" + mode + "=")) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  // opens the parse cache and decision trace given on the command line, see closeResources
+  private static void openResources(CommandLine cmd, MapperOptions options) throws IOException {
+    if(cmd.hasOption("parse-cache")) {
+      long size = cmd.hasOption("parse-cache-size") ? BatchRunner.parseSize(cmd.getOptionValue("parse-cache-size")) : ParseCache.DEFAULT_MAX_BYTES;
+      options.setParseCache(ParseCache.open(new File(cmd.getOptionValue("parse-cache")), size));
+    }
+    if(cmd.hasOption("trace")) {
+      double sampleRate = Double.parseDouble(cmd.getOptionValue("trace-sample", "1.0"));
+      options.setDecisionTrace(DecisionTrace.open(new File(cmd.getOptionValue("trace")), sampleRate));
+    }
+  }
+
+  private static void closeResources(MapperOptions options) throws IOException {
+    try {
+      if(options.getParseCache() != null) {
+        options.getParseCache().close();
+      }
+    } finally {
+      if(options.getDecisionTrace() != null) {
+        options.getDecisionTrace().close();
+      }
+    }
+  }
+
   public static void main(String args[]) throws Exception {
-    commandLineOptions = buildCommandLineOptions();
+    commandLineOptions = buildCommandLineOptions(!isStandaloneMode(args));
     CommandLineParser parser = new PosixParser();
     CommandLine cmd = null;
 
@@ -239,15 +1020,195 @@ public class WikiMapper {
     String srcDump = cmd.getOptionValue('s');
     String tgtDump = cmd.getOptionValue('t');
 
-    evaluate = cmd.hasOption('e');
+    // the settings of this run are kept out of the static state used by the library methods
+    MapperOptions options = new MapperOptions();
+    options.setEvaluate(cmd.hasOption('e'));
+    if(cmd.hasOption("threads")) {
+      options.setReadThreads(Integer.parseInt(cmd.getOptionValue("threads")));
+    }
+    File metricsReport = cmd.hasOption("metrics") ? new File(cmd.getOptionValue("metrics")) : null;
 
-    if(cmd.hasOption('w')) {
-      String outputFile = cmd.getOptionValue('w');
-      mapToFile(new File(srcDump), new File(tgtDump), new File(outputFile));
+    if(cmd.hasOption("link-graph")) {
+      if(cmd.hasOption("partitions") || cmd.hasOption("streaming") || cmd.hasOption("apply-changes")) {
+        System.out.println("\n\nThe link graph is not supported with --partitions, --streaming or --apply-changes\n\n");
+        printHelp(commandLineOptions);
+      }
+      options.setLinkGraph(new File(cmd.getOptionValue("link-graph")));
+    }
+
+    if(cmd.hasOption("link-store")) {
+      if(cmd.hasOption("partitions") || cmd.hasOption("streaming") || cmd.hasOption("apply-changes")) {
+        System.out.println("\n\nThe link store is not supported with --partitions, --streaming or --apply-changes\n\n");
+        printHelp(commandLineOptions);
+      }
+      long cacheSize = cmd.hasOption("link-store-cache") ? BatchRunner.parseSize(cmd.getOptionValue("link-store-cache")) : LinkStore.DEFAULT_CACHE_BYTES;
+      options.setLinkStore(new File(cmd.getOptionValue("link-store")), cacheSize);
+    }
+
+    if(cmd.hasOption("trace")) {
+      if(cmd.hasOption("partitions") || cmd.hasOption("streaming") || cmd.hasOption("apply-changes")) {
+        System.out.println("\n\nThe decision trace is not supported with --partitions, --streaming or --apply-changes\n\n");
+        printHelp(commandLineOptions);
+      }
+    }
+
+    if(cmd.hasOption("source-history") || cmd.hasOption("target-history")) {
+      if(cmd.hasOption("titles") || cmd.hasOption("partitions") || cmd.hasOption("streaming") || cmd.hasOption("apply-changes")) {
+        System.out.println("\n\nHistory dumps are not supported with --titles, --partitions, --streaming or --apply-changes\n\n");
+        printHelp(commandLineOptions);
+      }
+      if(cmd.hasOption("source-history")) {
+        options.setSourceRevisions(RevisionSelector.parse(cmd.getOptionValue("source-history")));
+      }
+      if(cmd.hasOption("target-history")) {
+        options.setTargetRevisions(RevisionSelector.parse(cmd.getOptionValue("target-history")));
+      }
+    }
+
+    File stateFile = cmd.hasOption("save-state") ? new File(cmd.getOptionValue("save-state")) : null;
+
+    if(cmd.hasOption("serve")) {
+      if(!cmd.hasOption('l')) {
+        System.out.println("\n\nMissing lookup file to serve\n\n");
+        printHelp(commandLineOptions);
+      }
+      File lookupFile = new File(cmd.getOptionValue('l'));
+      if(srcDump != null && tgtDump != null) {
+        MappingMetrics metrics = startMetrics();
+        openResources(cmd, options);
+        try {
+          mapToLookupFile(DumpParts.resolve(srcDump), DumpParts.resolve(tgtDump), lookupFile, null, null, stateFile, options, metrics);
+        } finally {
+          closeResources(options);
+        }
+        finishMetrics(metrics, metricsReport);
+      }
+      int cacheSize = Integer.parseInt(cmd.getOptionValue("cache-size", String.valueOf(DEFAULT_CACHE_SIZE)));
+      try (LookupFile lookup = LookupFile.open(lookupFile);
+          LookupServer server = new LookupServer(lookup, Integer.parseInt(cmd.getOptionValue("serve")), cacheSize)) {
+        server.serve();
+      }
+      return;
+    }
+
+    Set<String> titles = cmd.hasOption("titles") ? FileUtils.readLines(new File(cmd.getOptionValue("titles"))) : null;
+
+    if(cmd.hasOption("apply-changes")) {
+      if(cmd.getArgs().length == 0) {
+        System.out.println("\n\nMissing adds-changes dumps to apply\n\n");
+        printHelp(commandLineOptions);
+      }
+      List<File> changes = new ArrayList<>();
+      for(String change : cmd.getArgs()) {
+        changes.add(new File(change));
+      }
+      File output = cmd.hasOption('w') ? new File(cmd.getOptionValue('w')) : null;
+      MappingMetrics metrics = startMetrics();
+      applyChanges(new File(cmd.getOptionValue("apply-changes")), changes, output, metrics);
+      finishMetrics(metrics, metricsReport);
+      return;
+    }
+
+    if(cmd.hasOption("rewrite")) {
+      rewrite(cmd);
+      return;
+    }
+
+    if(cmd.hasOption("profile")) {
+      profile(cmd);
+      return;
+    }
+
+    if(cmd.hasOption("batch")) {
+      batch(cmd, options, metricsReport);
+      return;
+    }
+
+    if(srcDump == null || tgtDump == null) {
+      System.out.println("\n\nMissing required options: s, t\n\n");
+      printHelp(commandLineOptions);
+    }
+    MappingMetrics metrics = startMetrics();
+    openResources(cmd, options);
+    try {
+      map(cmd, options, titles, stateFile, metrics);
+    } finally {
+      closeResources(options);
+    }
+    finishMetrics(metrics, metricsReport);
+  }
+
+  // the mapping modes reading a source and a target dump
+  private static void map(CommandLine cmd, MapperOptions options, Set<String> titles, File stateFile, MappingMetrics metrics)
+      throws IOException, XMLStreamException {
+    String srcDump = cmd.getOptionValue('s');
+    String tgtDump = cmd.getOptionValue('t');
+    String[] srcDumps = cmd.getOptionValues('s');
+    if(srcDumps.length > 1) {
+      String[] outputs = cmd.getOptionValues('w');
+      if(outputs == null || outputs.length != srcDumps.length) {
+        System.out.println("\n\nSeveral source dumps require one --output per source, in the same order\n\n");
+        printHelp(commandLineOptions);
+      }
+      if(cmd.hasOption('l') || cmd.hasOption("titles") || cmd.hasOption("save-state") || cmd.hasOption("trace")
+          || cmd.hasOption("partitions") || cmd.hasOption("streaming")) {
+        System.out.println("\n\nSeveral source dumps are not supported with --lookup, --titles, --save-state, --trace, --partitions or --streaming\n\n");
+        printHelp(commandLineOptions);
+      }
+      List<List<File>> srcParts = new ArrayList<>();
+      List<File> outputFiles = new ArrayList<>();
+      for(int i = 0; i < srcDumps.length; i++) {
+        srcParts.add(DumpParts.resolve(srcDumps[i]));
+        outputFiles.add(new File(outputs[i]));
+        checkOutput(outputFiles.get(i));
+      }
+      mapToFiles(srcParts, DumpParts.resolve(tgtDump), outputFiles, options, metrics);
+      return;
+    }
+    List<File> srcParts = DumpParts.resolve(srcDump);
+    List<File> tgtParts = DumpParts.resolve(tgtDump);
+
+    if((cmd.hasOption("partitions") || cmd.hasOption("streaming")) && (srcParts.size() > 1 || tgtParts.size() > 1)) {
+      System.out.println("\n\nDumps split into parts are not supported with --partitions or --streaming\n\n");
+      printHelp(commandLineOptions);
+    }
+
+    if(cmd.hasOption("partitions")) {
+      if(options.isEvaluate()) {
+        logger_.warn("Evaluation mode is not supported in partitioned mode, page texts are not written");
+      }
+      File output = cmd.hasOption('w') ? new File(cmd.getOptionValue('w')) : null;
+      File tmpDir = new File(cmd.getOptionValue("tmp-dir", System.getProperty("java.io.tmpdir")));
+      PartitionedMapper mapper = new PartitionedMapper(Integer.parseInt(cmd.getOptionValue("partitions")), tmpDir, metrics);
+      mapper.setRangePartitioning(cmd.getOptionValue("partitioning", "hash").equals("range"));
+      mapper.setWorkerHeap(cmd.getOptionValue("worker-heap"));
+      mapper.setWorkerCommand(cmd.getOptionValue("worker-command"));
+      mapper.setWorkerClasspath(cmd.getOptionValue("worker-classpath"));
+      mapPartitioned(new File(srcDump), new File(tgtDump), output, mapper);
+      return;
+    }
+
+    if(cmd.hasOption("streaming")) {
+      if(options.isEvaluate()) {
+        logger_.warn("Evaluation mode is not supported in streaming mode, page texts are not written");
+      }
+      File output = cmd.hasOption('w') ? new File(cmd.getOptionValue('w')) : null;
+      File tmpDir = new File(cmd.getOptionValue("tmp-dir", System.getProperty("java.io.tmpdir")));
+      mapStreaming(new File(srcDump), new File(tgtDump), output, new StreamingMapper(metrics, tmpDir, StreamingMapper.DEFAULT_RUN_CHARS));
+      return;
+    }
+
+    if(cmd.hasOption('l')) {
+      File output = cmd.hasOption('w') ? new File(cmd.getOptionValue('w')) : null;
+      mapToLookupFile(srcParts, tgtParts, new File(cmd.getOptionValue('l')), output, titles, stateFile, options, metrics);
+    } else if(cmd.hasOption('w')) {
+      File output = new File(cmd.getOptionValue('w'));
+      checkOutput(output);
+      mapToFile(srcParts, tgtParts, output, titles, stateFile, options, metrics);
     } else {
-      MappedResults results = mapImpl(new File(srcDump), new File(tgtDump));
-      FileUtils.writeFileContent(null, results.getResults());
+      MappedIdResults results = mapIdsImpl(srcParts, tgtParts, titles, stateFile, options, metrics);
+      writeResults(null, results, metrics);
       results.printResultStats();
     }
   }
-}
\ No newline at end of file
+}
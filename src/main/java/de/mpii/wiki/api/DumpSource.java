@@ -0,0 +1,78 @@
+package de.mpii.wiki.api;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A dump to be read by a {@link Mapper}: a file, or an already open stream or channel (standard input, a
+ * pipe from a decompressor, a file on an object store mount). Streams and channels can be read only once
+ * and are closed by the mapper when it is done reading them.
+ */
+public abstract class DumpSource {
+
+  /**
+   * Opens the dump for reading.
+   *
+   * @throws IllegalStateException if the source can be read only once and was already opened.
+   */
+  public abstract InputStream open() throws IOException;
+
+  public abstract String getName();
+
+  /**
+   * @return The size of the dump in bytes, -1 if unknown.
+   */
+  public long getSize() {
+    return -1;
+  }
+
+  public static DumpSource of(final File file) {
+    return new DumpSource() {
+      @Override
+      public InputStream open() throws IOException {
+        return new FileInputStream(file);
+      }
+
+      @Override
+      public String getName() {
+        return file.getName();
+      }
+
+      @Override
+      public long getSize() {
+        return file.length();
+      }
+    };
+  }
+
+  public static DumpSource of(final InputStream in, final String name) {
+    final AtomicBoolean opened = new AtomicBoolean();
+    return new DumpSource() {
+      @Override
+      public InputStream open() {
+        if (opened.getAndSet(true)) {
+          throw new IllegalStateException(name + " can be read only once");
+        }
+        return in;
+      }
+
+      @Override
+      public String getName() {
+        return name;
+      }
+    };
+  }
+
+  /**
+   * Reading an interruptible channel (e.g. a FileChannel or a pipe) is aborted when the mapping is cancelled,
+   * even while the read is blocked.
+   */
+  public static DumpSource of(ReadableByteChannel channel, String name) {
+    return of(Channels.newInputStream(channel), name);
+  }
+}
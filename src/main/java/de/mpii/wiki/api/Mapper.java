@@ -0,0 +1,228 @@
+package de.mpii.wiki.api;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mpii.wiki.cache.ParseCache;
+import de.mpii.wiki.dump.DumpData;
+import de.mpii.wiki.dump.DumpReader;
+import de.mpii.wiki.dump.DumpSettings.DumpType;
+import de.mpii.wiki.dump.HistoryReader;
+import de.mpii.wiki.dump.LinkStore;
+import de.mpii.wiki.dump.PageFilter;
+import de.mpii.wiki.dump.RevisionSelector;
+import de.mpii.wiki.graph.LinkGraphWriter;
+import de.mpii.wiki.metrics.MappingMetrics;
+import de.mpii.wiki.result.MappedIdResults;
+import de.mpii.wiki.result.ResultGenerator;
+import de.mpii.wiki.trace.DecisionTrace;
+
+/**
+ * Maps dumps for use within another application. Unlike the static methods of {@link de.mpii.wiki.WikiMapper},
+ * a mapper holds no global state: each mapper has its own options, and each mapping its own dump data and
+ * metrics. Several mappings can run at the same time, e.g. on an executor shared by the mappers of a
+ * service.
+ *
+ * <pre>
+ * Mapper mapper = new Mapper(options, executor);
+ * MappingTask task = mapper.submit(DumpSource.of(oldDump), DumpSource.of(System.in, "stdin"), listener);
+ * MappedIdResults results = task.get();
+ * </pre>
+ */
+public class Mapper {
+
+  private static Logger logger_ = LoggerFactory.getLogger(Mapper.class);
+
+  private final MapperOptions options;
+
+  private final Executor executor;
+
+  /**
+   * @param executor Runs the submitted mappings, one task per mapping.
+   */
+  public Mapper(MapperOptions options, Executor executor) {
+    this.options = options;
+    this.executor = executor;
+  }
+
+  /**
+   * Starts mapping the dumps on the executor.
+   *
+   * @param listener Receives the progress of the mapping, can be null.
+   * @return The task, to wait for the results or cancel the mapping.
+   */
+  public MappingTask submit(DumpSource oldDump, DumpSource newDump, ProgressListener listener) {
+    AtomicBoolean cancelled = new AtomicBoolean();
+    final Run run = new Run(oldDump, newDump, listener, cancelled);
+    MappingTask task = new MappingTask(new Callable<MappedIdResults>() {
+      @Override
+      public MappedIdResults call() throws IOException, XMLStreamException {
+        return run.call();
+      }
+    }, run.metrics, cancelled);
+    executor.execute(task);
+    return task;
+  }
+
+  /**
+   * Maps the dumps in the calling thread. Interrupting the thread cancels the mapping.
+   *
+   * @param listener Receives the progress of the mapping, can be null.
+   * @throws CancellationException if the thread was interrupted.
+   */
+  public MappedIdResults map(DumpSource oldDump, DumpSource newDump, ProgressListener listener) throws IOException, XMLStreamException {
+    return new Run(oldDump, newDump, listener, new AtomicBoolean()).call();
+  }
+
+  // a single mapping with a snapshot of the options
+  private class Run {
+    final DumpSource oldDump;
+    final DumpSource newDump;
+    final ProgressListener listener;
+    final AtomicBoolean cancelled;
+    final MappingMetrics metrics = new MappingMetrics();
+    final boolean evaluate = options.isEvaluate();
+    final int progressInterval = options.getProgressInterval();
+    final int bufferSize = options.getBufferSize();
+    final boolean registerMBean = options.isRegisterMBean();
+    final RevisionSelector sourceRevisions = options.getSourceRevisions();
+    final RevisionSelector targetRevisions = options.getTargetRevisions();
+    final ParseCache parseCache = options.getParseCache();
+    final File linkGraph = options.getLinkGraph();
+    final File linkStoreDir = options.getLinkStoreDir();
+    final long linkStoreCacheBytes = options.getLinkStoreCacheBytes();
+    final DecisionTrace decisionTrace = options.getDecisionTrace();
+
+    Run(DumpSource oldDump, DumpSource newDump, ProgressListener listener, AtomicBoolean cancelled) {
+      this.oldDump = oldDump;
+      this.newDump = newDump;
+      this.listener = listener;
+      this.cancelled = cancelled;
+    }
+
+    MappedIdResults call() throws IOException, XMLStreamException {
+      if (registerMBean) {
+        metrics.registerMBean();
+      }
+      LinkStore targetLinks = null;
+      LinkStore sourceLinks = null;
+      try {
+        DumpData targetData = new DumpData(evaluate ? DumpType.TARGET_EVAL : DumpType.TARGET, metrics);
+        DumpData sourceData = new DumpData(evaluate ? DumpType.SOURCE_EVAL : DumpType.SOURCE, metrics);
+        targetData.setParseCache(parseCache);
+        sourceData.setParseCache(parseCache);
+        if (linkStoreDir != null) {
+          targetLinks = LinkStore.create(linkStoreDir, "target", linkStoreCacheBytes, metrics);
+          targetData.setLinkStore(targetLinks);
+          sourceLinks = LinkStore.create(linkStoreDir, "source", linkStoreCacheBytes, metrics);
+          sourceData.setLinkStore(sourceLinks);
+        }
+        read(newDump, targetData, targetRevisions, "scan target");
+        if (linkGraph != null) {
+          metrics.setPhase("export link graph");
+          LinkGraphWriter.write(linkGraph, targetData);
+        }
+        sourceData.reuseUnchangedPages(targetData);
+        read(oldDump, sourceData, sourceRevisions, "scan source");
+
+        metrics.setPhase("generate results");
+        sourceData.compact();
+        targetData.compact();
+        MappedIdResults results = ResultGenerator.generateIds(sourceData, targetData, decisionTrace);
+        progress("generate results", results.size(), 0, -1);
+        metrics.finish();
+        logger_.info("Mapped " + oldDump.getName() + " to " + newDump.getName() + " : " + results.size() + " results in "
+            + metrics.getElapsedMillis() / 1000 + " s");
+        return results;
+      } finally {
+        // the source store shares lists of the target store, it is closed first
+        if (sourceLinks != null) {
+          sourceLinks.close();
+        }
+        if (targetLinks != null) {
+          targetLinks.close();
+        }
+        if (registerMBean) {
+          metrics.unregisterMBean();
+        }
+      }
+    }
+
+    private void read(DumpSource dump, DumpData data, RevisionSelector revisions, final String phase) throws IOException, XMLStreamException {
+      metrics.setPhase(phase);
+      final long total = dump.getSize();
+      try (InputStream raw = dump.open(); final CountingInputStream in = new CountingInputStream(metrics.track(new BufferedInputStream(raw, bufferSize)))) {
+        PageFilter filter = new PageFilter() {
+          private long pages = 0;
+
+          @Override
+          public boolean accept(int id, String title) {
+            checkCancelled();
+            return true;
+          }
+
+          @Override
+          public void added(int id) {
+            if (++pages % progressInterval == 0) {
+              progress(phase, pages, in.count, total);
+            }
+          }
+        };
+        int pages = (revisions == null) ? DumpReader.read(XMLInputFactory.newInstance().createXMLStreamReader(in), data, filter)
+            : HistoryReader.read(XMLInputFactory.newInstance().createXMLStreamReader(in), data, filter, revisions);
+        progress(phase, pages, in.count, total);
+      }
+    }
+
+    private void checkCancelled() {
+      if (cancelled.get() || Thread.currentThread().isInterrupted()) {
+        throw new CancellationException("Mapping of " + oldDump.getName() + " to " + newDump.getName() + " cancelled");
+      }
+    }
+
+    private void progress(String phase, long pages, long bytes, long totalBytes) {
+      if (listener != null) {
+        listener.progress(phase, pages, bytes, totalBytes);
+      }
+    }
+  }
+
+  private static class CountingInputStream extends FilterInputStream {
+    long count = 0;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) {
+        count += n;
+      }
+      return n;
+    }
+  }
+}
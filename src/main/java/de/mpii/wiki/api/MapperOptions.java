@@ -0,0 +1,178 @@
+package de.mpii.wiki.api;
+
+import java.io.File;
+
+import de.mpii.wiki.cache.ParseCache;
+import de.mpii.wiki.dump.LinkStore;
+import de.mpii.wiki.dump.RevisionSelector;
+import de.mpii.wiki.trace.DecisionTrace;
+
+/**
+ * Options of a {@link Mapper}. They are read when a mapping starts, so changing them does not affect
+ * mappings already running.
+ */
+public class MapperOptions {
+
+  private boolean evaluate = false;
+
+  private int progressInterval = 100000;
+
+  private int bufferSize = 1 << 16;
+
+  private boolean registerMBean = false;
+
+  private RevisionSelector sourceRevisions = null;
+
+  private RevisionSelector targetRevisions = null;
+
+  private ParseCache parseCache = null;
+
+  private File linkGraph = null;
+
+  private File linkStoreDir = null;
+
+  private long linkStoreCacheBytes = LinkStore.DEFAULT_CACHE_BYTES;
+
+  private DecisionTrace decisionTrace = null;
+
+  private int readThreads = Runtime.getRuntime().availableProcessors();
+
+  public boolean isEvaluate() {
+    return evaluate;
+  }
+
+  /**
+   * @param evaluate Keep page texts, so that they can be compared for disambiguated entries (see
+   *  {@link de.mpii.wiki.result.MappedIdResults#getSourceText(int)}). Needs considerably more memory.
+   */
+  public void setEvaluate(boolean evaluate) {
+    this.evaluate = evaluate;
+  }
+
+  public int getProgressInterval() {
+    return progressInterval;
+  }
+
+  /**
+   * @param pages Number of pages read between progress callbacks (and cancellation checks).
+   */
+  public void setProgressInterval(int pages) {
+    if (pages < 1) {
+      throw new IllegalArgumentException("Invalid progress interval : " + pages);
+    }
+    this.progressInterval = pages;
+  }
+
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  public void setBufferSize(int bufferSize) {
+    this.bufferSize = bufferSize;
+  }
+
+  public boolean isRegisterMBean() {
+    return registerMBean;
+  }
+
+  /**
+   * @param registerMBean Expose the metrics of each running mapping over JMX.
+   */
+  public void setRegisterMBean(boolean registerMBean) {
+    this.registerMBean = registerMBean;
+  }
+
+  public RevisionSelector getSourceRevisions() {
+    return sourceRevisions;
+  }
+
+  /**
+   * @param revisions Read the old dump as full history dump, selecting one revision of each page (see
+   *  {@link de.mpii.wiki.dump.HistoryReader}), or null for a dump with one revision per page.
+   */
+  public void setSourceRevisions(RevisionSelector revisions) {
+    this.sourceRevisions = revisions;
+  }
+
+  public RevisionSelector getTargetRevisions() {
+    return targetRevisions;
+  }
+
+  /**
+   * @param revisions Read the new dump as full history dump, see {@link #setSourceRevisions(RevisionSelector)}.
+   */
+  public void setTargetRevisions(RevisionSelector revisions) {
+    this.targetRevisions = revisions;
+  }
+
+  public ParseCache getParseCache() {
+    return parseCache;
+  }
+
+  /**
+   * @param parseCache Cache of parsed pages shared by the mappings, or null. It stays open when a mapping
+   *  is done and has to be closed by the caller to persist its index.
+   */
+  public void setParseCache(ParseCache parseCache) {
+    this.parseCache = parseCache;
+  }
+
+  public File getLinkGraph() {
+    return linkGraph;
+  }
+
+  /**
+   * @param linkGraph File the link graph of the new dump is written to (see
+   *  {@link de.mpii.wiki.graph.LinkGraphWriter}) once it was scanned, null to skip it.
+   */
+  public void setLinkGraph(File linkGraph) {
+    this.linkGraph = linkGraph;
+  }
+
+  public File getLinkStoreDir() {
+    return linkStoreDir;
+  }
+
+  public long getLinkStoreCacheBytes() {
+    return linkStoreCacheBytes;
+  }
+
+  /**
+   * @param dir Directory each mapping keeps the page links of its dumps in (see
+   *  {@link de.mpii.wiki.dump.LinkStore}) instead of the heap, null to keep them in memory. The files are
+   *  deleted when the mapping is done.
+   * @param cacheBytes Size bound of the links cached in memory per dump.
+   */
+  public void setLinkStore(File dir, long cacheBytes) {
+    this.linkStoreDir = dir;
+    this.linkStoreCacheBytes = cacheBytes;
+  }
+
+  public DecisionTrace getDecisionTrace() {
+    return decisionTrace;
+  }
+
+  /**
+   * @param trace Trace the redirect and disambiguation decisions are recorded in, or null. It is shared by
+   *  the mappings (records do not identify the mapping) and has to be closed by the caller.
+   */
+  public void setDecisionTrace(DecisionTrace trace) {
+    this.decisionTrace = trace;
+  }
+
+  public int getReadThreads() {
+    return readThreads;
+  }
+
+  /**
+   * @param threads Number of threads reading the part files of a dump split into parts (see
+   *  {@link de.mpii.wiki.dump.DumpParts}). Only used by {@link de.mpii.wiki.WikiMapper}, a {@link Mapper}
+   *  reads each dump as one stream.
+   */
+  public void setReadThreads(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Invalid number of read threads : " + threads);
+    }
+    this.readThreads = threads;
+  }
+}
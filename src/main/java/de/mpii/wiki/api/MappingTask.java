@@ -0,0 +1,39 @@
+package de.mpii.wiki.api;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import de.mpii.wiki.metrics.MappingMetrics;
+import de.mpii.wiki.result.MappedIdResults;
+
+/**
+ * A mapping submitted to a {@link Mapper}. Cancelling it stops the mapping at the next page read (and
+ * aborts blocked reads of interruptible channels if mayInterruptIfRunning is set). {@link #get()} throws an
+ * ExecutionException wrapping the IOException or XMLStreamException if the mapping failed.
+ */
+public class MappingTask extends FutureTask<MappedIdResults> {
+
+  private final MappingMetrics metrics;
+
+  private final AtomicBoolean cancelled;
+
+  MappingTask(Callable<MappedIdResults> mapping, MappingMetrics metrics, AtomicBoolean cancelled) {
+    super(mapping);
+    this.metrics = metrics;
+    this.cancelled = cancelled;
+  }
+
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    cancelled.set(true);
+    return super.cancel(mayInterruptIfRunning);
+  }
+
+  /**
+   * Returns the metrics of this mapping, they are updated while it runs.
+   */
+  public MappingMetrics getMetrics() {
+    return metrics;
+  }
+}
@@ -0,0 +1,18 @@
+package de.mpii.wiki.api;
+
+/**
+ * Receives the progress of a mapping. Callbacks are made from the thread running the mapping, so they
+ * should return quickly.
+ */
+public interface ProgressListener {
+
+  /**
+   * Called periodically while a dump is read, and once at the end of each phase.
+   *
+   * @param phase The current phase ("scan target", "scan source" or "generate results").
+   * @param pages Pages read of the dump of the current phase (results generated in the last phase).
+   * @param bytes Bytes read of the dump of the current phase.
+   * @param totalBytes Size of that dump, -1 if unknown (e.g. for streams).
+   */
+  void progress(String phase, long pages, long bytes, long totalBytes);
+}
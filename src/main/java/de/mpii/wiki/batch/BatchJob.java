@@ -0,0 +1,127 @@
+package de.mpii.wiki.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A mapping job of a batch, see {@link BatchRunner}. Its timings and counts are set when it is run.
+ */
+public class BatchJob {
+
+  private final File source;
+
+  private final File target;
+
+  private final File output;
+
+  long memoryEstimate;
+
+  long waitMillis;
+
+  long mapMillis;
+
+  long writeMillis;
+
+  long pages;
+
+  long bytesRead;
+
+  int results;
+
+  String error;
+
+  public BatchJob(File source, File target, File output) {
+    this.source = source;
+    this.target = target;
+    this.output = output;
+  }
+
+  /**
+   * Reads a manifest of jobs, one job per line: the old dump, the new dump and the output file, separated by
+   * tabs or spaces. Empty lines and lines starting with # are ignored.
+   *
+   * @throws IOException if a line is invalid or a dump does not exist.
+   */
+  public static List<BatchJob> readManifest(File manifest) throws IOException {
+    List<BatchJob> jobs = new ArrayList<>();
+    int lineNumber = 0;
+    for (String line : Files.readAllLines(manifest.toPath(), Charset.forName("UTF-8"))) {
+      lineNumber++;
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] fields = line.split("\\s+");
+      if (fields.length != 3) {
+        throw new IOException(manifest.getName() + ":" + lineNumber + " : expected source, target and output, found " + line);
+      }
+      BatchJob job = new BatchJob(new File(fields[0]), new File(fields[1]), new File(fields[2]));
+      for (File dump : new File[] { job.source, job.target }) {
+        if (!dump.isFile()) {
+          throw new IOException(manifest.getName() + ":" + lineNumber + " : dump not found : " + dump);
+        }
+      }
+      jobs.add(job);
+    }
+    return jobs;
+  }
+
+  public File getSource() {
+    return source;
+  }
+
+  public File getTarget() {
+    return target;
+  }
+
+  public File getOutput() {
+    return output;
+  }
+
+  public long getMemoryEstimate() {
+    return memoryEstimate;
+  }
+
+  /**
+   * Returns the time from the start of the batch until the job was admitted.
+   */
+  public long getWaitMillis() {
+    return waitMillis;
+  }
+
+  public long getMapMillis() {
+    return mapMillis;
+  }
+
+  public long getWriteMillis() {
+    return writeMillis;
+  }
+
+  public long getPages() {
+    return pages;
+  }
+
+  public long getBytesRead() {
+    return bytesRead;
+  }
+
+  public int getResults() {
+    return results;
+  }
+
+  /**
+   * Returns the reason the job failed, null if it succeeded.
+   */
+  public String getError() {
+    return error;
+  }
+
+  @Override
+  public String toString() {
+    return output.getName();
+  }
+}
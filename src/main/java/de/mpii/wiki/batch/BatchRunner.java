@@ -0,0 +1,354 @@
+package de.mpii.wiki.batch;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mpii.wiki.api.DumpSource;
+import de.mpii.wiki.api.Mapper;
+import de.mpii.wiki.api.MapperOptions;
+import de.mpii.wiki.api.MappingTask;
+import de.mpii.wiki.common.FileUtils;
+import de.mpii.wiki.common.Utils;
+import de.mpii.wiki.metrics.MappingMetrics;
+import de.mpii.wiki.result.MappedIdResults;
+
+/**
+ * Runs a batch of mappings (e.g. all language editions of a month) in one JVM. The memory each job needs
+ * is estimated from the size of its dumps, and jobs are admitted under a global memory budget and a
+ * budget of cores (one core per job). Jobs are considered largest first: whenever a job finishes, the
+ * largest pending job that fits is admitted, so small wikis are packed alongside the large ones. A job
+ * estimated above the budget runs alone.
+ *
+ * Each job runs with its own {@link Mapper}, so jobs share no state. Failed jobs are reported and do not
+ * stop the batch.
+ */
+public class BatchRunner {
+
+  /** Heap needed per byte of the two dumps of a job, see README (55 GB for two dumps of about 45 GB each). */
+  public static final double DEFAULT_MEMORY_FACTOR = 0.6;
+
+  // fixed overhead of a job (parser buffers, result arrays of small wikis)
+  private static final long BASE_MEMORY = 64L << 20;
+
+  private static Logger logger_ = LoggerFactory.getLogger(BatchRunner.class);
+
+  private static final Comparator<BatchJob> LARGEST_FIRST = new Comparator<BatchJob>() {
+    @Override
+    public int compare(BatchJob j1, BatchJob j2) {
+      return Long.compare(j2.memoryEstimate, j1.memoryEstimate);
+    }
+  };
+
+  // runs the mapping in the thread of the job
+  private static final Executor CALLER = new Executor() {
+    @Override
+    public void execute(Runnable command) {
+      command.run();
+    }
+  };
+
+  private final long memoryBudget;
+
+  private final int cores;
+
+  private double memoryFactor = DEFAULT_MEMORY_FACTOR;
+
+  private boolean evaluate = false;
+
+  private List<BatchJob> jobs = Collections.emptyList();
+
+  // guarded by this
+  private int running = 0;
+  private long memoryInUse = 0;
+  private long peakMemory = 0;
+
+  private long wallMillis = 0;
+
+  /**
+   * @param memoryBudget Heap available to the jobs in bytes.
+   * @param cores Maximum number of jobs running at the same time.
+   */
+  public BatchRunner(long memoryBudget, int cores) {
+    if (memoryBudget <= 0 || cores < 1) {
+      throw new IllegalArgumentException("Invalid budget : " + memoryBudget + " bytes, " + cores + " cores");
+    }
+    this.memoryBudget = memoryBudget;
+    this.cores = cores;
+  }
+
+  public void setMemoryFactor(double memoryFactor) {
+    this.memoryFactor = memoryFactor;
+  }
+
+  public void setEvaluate(boolean evaluate) {
+    this.evaluate = evaluate;
+  }
+
+  /**
+   * Parses a memory size such as 512m, 64g or a number of bytes.
+   */
+  public static long parseSize(String size) {
+    String value = size.trim().toLowerCase();
+    int shift = 0;
+    switch (value.charAt(value.length() - 1)) {
+      case 'k':
+        shift = 10;
+        break;
+      case 'm':
+        shift = 20;
+        break;
+      case 'g':
+        shift = 30;
+        break;
+      case 't':
+        shift = 40;
+        break;
+      default:
+        break;
+    }
+    if (shift > 0) {
+      value = value.substring(0, value.length() - 1);
+    }
+    return Long.parseLong(value) << shift;
+  }
+
+  public long estimateMemory(BatchJob job) {
+    return BASE_MEMORY + (long) (memoryFactor * (job.getSource().length() + job.getTarget().length()));
+  }
+
+  /**
+   * Runs the jobs and returns when all of them are done.
+   *
+   * @return Number of failed jobs.
+   */
+  public int run(List<BatchJob> batch) throws InterruptedException {
+    jobs = new ArrayList<>(batch);
+    List<BatchJob> pending = new ArrayList<>(batch);
+    for (BatchJob job : pending) {
+      job.memoryEstimate = estimateMemory(job);
+    }
+    Collections.sort(pending, LARGEST_FIRST);
+    logger_.info("Running " + pending.size() + " jobs with " + (memoryBudget >> 20) + " MB and " + cores + " cores");
+
+    long start = System.currentTimeMillis();
+    ExecutorService pool = Executors.newFixedThreadPool(cores, new ThreadFactory() {
+      private int count = 0;
+
+      @Override
+      public synchronized Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "batch-job-" + (count++));
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    try {
+      synchronized (this) {
+        while (!pending.isEmpty()) {
+          BatchJob job = admit(pending);
+          if (job == null) {
+            wait();
+            continue;
+          }
+          pending.remove(job);
+          running++;
+          memoryInUse += job.memoryEstimate;
+          peakMemory = Math.max(peakMemory, memoryInUse);
+          job.waitMillis = System.currentTimeMillis() - start;
+          pool.execute(new JobRunner(job));
+        }
+        while (running > 0) {
+          wait();
+        }
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    wallMillis = System.currentTimeMillis() - start;
+
+    int failed = 0;
+    for (BatchJob job : jobs) {
+      if (job.error != null) {
+        failed++;
+      }
+    }
+    logger_.info("Batch of " + jobs.size() + " jobs (" + failed + " failed) done in " + wallMillis / 1000 + " s : "
+        + getPages() + " pages, " + getPagesPerSecond() + " pages/s, " + getBytesPerSecond() / (1 << 20) + " MB/s, "
+        + String.format("%.2f", getConcurrency()) + " jobs running on average, peak memory estimate "
+        + (peakMemory >> 20) + " MB");
+    return failed;
+  }
+
+  // the largest pending job fitting into the free budget
+  private BatchJob admit(List<BatchJob> pending) {
+    if (running >= cores) {
+      return null;
+    }
+    for (BatchJob job : pending) {
+      if (memoryInUse + job.memoryEstimate <= memoryBudget) {
+        return job;
+      }
+    }
+    if (running == 0) {
+      BatchJob job = pending.get(0);
+      logger_.warn(job + " : memory estimate of " + (job.memoryEstimate >> 20) + " MB exceeds the budget, running it alone");
+      return job;
+    }
+    return null;
+  }
+
+  private synchronized void finished(BatchJob job) {
+    running--;
+    memoryInUse -= job.memoryEstimate;
+    notifyAll();
+  }
+
+  private class JobRunner implements Runnable {
+    private final BatchJob job;
+
+    JobRunner(BatchJob job) {
+      this.job = job;
+    }
+
+    @Override
+    public void run() {
+      try {
+        if (job.getOutput().exists()) {
+          job.error = "Output file already exists : " + job.getOutput();
+          logger_.warn(job + " : " + job.error);
+          return;
+        }
+        logger_.info(job + " : mapping " + job.getSource().getName() + " to " + job.getTarget().getName()
+            + " (memory estimate " + (job.memoryEstimate >> 20) + " MB, waited " + job.waitMillis / 1000 + " s)");
+        long start = System.currentTimeMillis();
+        MapperOptions options = new MapperOptions();
+        options.setEvaluate(evaluate);
+        MappingTask task = new Mapper(options, CALLER).submit(DumpSource.of(job.getSource()), DumpSource.of(job.getTarget()), null);
+        MappedIdResults results = task.get();
+        MappingMetrics metrics = task.getMetrics();
+        job.mapMillis = System.currentTimeMillis() - start;
+        job.pages = metrics.getPagesProcessed();
+        job.bytesRead = metrics.getBytesRead();
+        job.results = results.size();
+
+        start = System.currentTimeMillis();
+        FileUtils.writeFileContent(job.getOutput(), results, true);
+        job.writeMillis = System.currentTimeMillis() - start;
+        logger_.info(job + " : " + job.results + " results, " + job.pages + " pages mapped in " + job.mapMillis / 1000
+            + " s, written in " + job.writeMillis / 1000 + " s");
+      } catch (ExecutionException e) {
+        job.error = String.valueOf(e.getCause());
+        logger_.error(job + " : mapping failed", e.getCause());
+      } catch (InterruptedException e) {
+        job.error = "Interrupted";
+        Thread.currentThread().interrupt();
+      } catch (IOException | RuntimeException e) {
+        job.error = String.valueOf(e);
+        logger_.error(job + " : failed", e);
+      } finally {
+        finished(job);
+      }
+    }
+  }
+
+  public List<BatchJob> getJobs() {
+    return jobs;
+  }
+
+  public long getWallMillis() {
+    return wallMillis;
+  }
+
+  /**
+   * Returns the highest sum of the memory estimates of jobs running at the same time.
+   */
+  public synchronized long getPeakMemory() {
+    return peakMemory;
+  }
+
+  public long getPages() {
+    long pages = 0;
+    for (BatchJob job : jobs) {
+      pages += job.pages;
+    }
+    return pages;
+  }
+
+  public long getBytesRead() {
+    long bytes = 0;
+    for (BatchJob job : jobs) {
+      bytes += job.bytesRead;
+    }
+    return bytes;
+  }
+
+  public long getPagesPerSecond() {
+    return getPages() * 1000 / Math.max(1, wallMillis);
+  }
+
+  public long getBytesPerSecond() {
+    return getBytesRead() * 1000 / Math.max(1, wallMillis);
+  }
+
+  /**
+   * Returns the average number of jobs running during the batch.
+   */
+  public double getConcurrency() {
+    long busy = 0;
+    for (BatchJob job : jobs) {
+      busy += job.mapMillis + job.writeMillis;
+    }
+    return (double) busy / Math.max(1, wallMillis);
+  }
+
+  /**
+   * Writes the timings of each job and the throughput of the batch as JSON.
+   */
+  public void writeReport(File report) throws IOException {
+    StringBuilder sb = new StringBuilder("{\n");
+    sb.append("  \"wallMillis\": ").append(wallMillis).append(",\n");
+    sb.append("  \"memoryBudget\": ").append(memoryBudget).append(",\n");
+    sb.append("  \"peakMemoryEstimate\": ").append(getPeakMemory()).append(",\n");
+    sb.append("  \"cores\": ").append(cores).append(",\n");
+    sb.append("  \"concurrency\": ").append(String.format("%.2f", getConcurrency())).append(",\n");
+    sb.append("  \"pagesProcessed\": ").append(getPages()).append(",\n");
+    sb.append("  \"pagesPerSecond\": ").append(getPagesPerSecond()).append(",\n");
+    sb.append("  \"bytesRead\": ").append(getBytesRead()).append(",\n");
+    sb.append("  \"bytesPerSecond\": ").append(getBytesPerSecond()).append(",\n");
+    sb.append("  \"jobs\": [");
+    for (int i = 0; i < jobs.size(); i++) {
+      BatchJob job = jobs.get(i);
+      sb.append((i > 0) ? "," : "").append("\n    {\"source\": ").append(Utils.jsonString(job.getSource().getPath()))
+        .append(", \"target\": ").append(Utils.jsonString(job.getTarget().getPath()))
+        .append(", \"output\": ").append(Utils.jsonString(job.getOutput().getPath()))
+        .append(", \"memoryEstimate\": ").append(job.memoryEstimate)
+        .append(", \"waitMillis\": ").append(job.waitMillis)
+        .append(", \"mapMillis\": ").append(job.mapMillis)
+        .append(", \"writeMillis\": ").append(job.writeMillis)
+        .append(", \"pages\": ").append(job.pages)
+        .append(", \"bytesRead\": ").append(job.bytesRead)
+        .append(", \"results\": ").append(job.results)
+        .append(", \"error\": ").append((job.error == null) ? "null" : Utils.jsonString(job.error)).append('}');
+    }
+    sb.append("\n  ]\n}\n");
+    try (Writer writer = new OutputStreamWriter(new FileOutputStream(report), Charset.forName("UTF-8"))) {
+      writer.write(sb.toString());
+    }
+    logger_.info("Batch report written to " + report.getName());
+  }
+}
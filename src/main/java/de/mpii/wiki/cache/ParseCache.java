@@ -0,0 +1,472 @@
+package de.mpii.wiki.cache;
+
+import gnu.trove.iterator.TLongLongIterator;
+import gnu.trove.map.TLongLongMap;
+import gnu.trove.map.hash.TLongLongHashMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mpii.wiki.common.Utils;
+import de.mpii.wiki.page.handlers.Handler.HandlerType;
+
+/**
+ * On-disk cache of parsed pages (handler type and links) across mapping runs, keyed by page title and
+ * revision sha1 (or revision id). Consecutive dumps share most revisions, so on a rerun most pages are
+ * looked up instead of being classified and having their links extracted.
+ *
+ * The cache is a directory of append-only segment files. Entries added during a run are appended to a new
+ * segment; closed segments are memory mapped for lookups. The index maps a 64 bit hash of the key to the
+ * entry, which stores the full key, so that a hash collision is a miss. An index of all entries is written on
+ * {@link #close()} and rebuilt by scanning the segments if it is missing or does not match them (e.g. after
+ * a crash). When the segments exceed the size bound, the oldest segment is deleted; its entries looked up
+ * since they were written are appended to the current segment first (second chance), the others are dropped.
+ *
+ * Instances are safe for concurrent use by multiple threads.
+ */
+public class ParseCache implements Closeable {
+
+  public static final long DEFAULT_MAX_BYTES = 8L << 30;
+
+  private static final int INDEX_MAGIC = 0x50434958;
+
+  private static final int INDEX_VERSION = 2;
+
+  private static final int SEGMENT_MAGIC = 0x50435347;
+
+  private static final int SEGMENT_VERSION = 1;
+
+  private static final int SEGMENT_HEADER_BYTES = 8;
+
+  // flag of an index location, set when the entry is looked up (segments are smaller than 2 GB)
+  private static final long USED = 1L << 31;
+
+  private static final String INDEX_FILE = "index";
+
+  private static final String SEGMENT_PREFIX = "segment-";
+
+  private static final String SEGMENT_SUFFIX = ".log";
+
+  private static final long MIN_SEGMENT_BYTES = 1 << 20;
+
+  private static final long MAX_SEGMENT_BYTES = 1 << 30;
+
+  private static final HandlerType[] TYPES = HandlerType.values();
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static Logger logger_ = LoggerFactory.getLogger(ParseCache.class);
+
+  /**
+   * A cached page.
+   */
+  public static class Entry {
+    private final HandlerType type;
+    private final List<String> links;
+
+    Entry(HandlerType type, List<String> links) {
+      this.type = type;
+      this.links = links;
+    }
+
+    public HandlerType getType() {
+      return type;
+    }
+
+    public List<String> getLinks() {
+      return links;
+    }
+  }
+
+  private final File dir;
+
+  private final long maxBytes;
+
+  private final long segmentBytes;
+
+  // hash of the key -> segment number << 32 | used flag | offset in segment
+  private final TLongLongMap index = new TLongLongHashMap();
+
+  // closed segments by number, oldest first
+  private final TreeMap<Integer, ByteBuffer> segments = new TreeMap<>();
+
+  private final TreeMap<Integer, Long> segmentSizes = new TreeMap<>();
+
+  // segment entries are appended to, null until the first entry is added
+  private DataOutputStream active;
+  private int activeSegment;
+  private long activeSize;
+
+  private long hits = 0;
+  private long misses = 0;
+  private long evicted = 0;
+
+  private ParseCache(File dir, long maxBytes) {
+    this.dir = dir;
+    this.maxBytes = maxBytes;
+    this.segmentBytes = Math.max(MIN_SEGMENT_BYTES, Math.min(MAX_SEGMENT_BYTES, maxBytes / 16));
+  }
+
+  /**
+   * Opens the cache in the given directory, creating it if needed.
+   *
+   * @param maxBytes Size bound of the segments, the oldest are deleted when it is exceeded.
+   */
+  public static ParseCache open(File dir, long maxBytes) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Cannot create parse cache directory : " + dir);
+    }
+    ParseCache cache = new ParseCache(dir, maxBytes);
+    cache.load();
+    return cache;
+  }
+
+  /**
+   * Returns the key of a page revision, null if neither sha1 nor revision id are known. The title is part of
+   * the key, as pages are classified by their title as well.
+   */
+  public static String key(String title, long revisionId, String sha1) {
+    String revision;
+    if (sha1 != null && !sha1.isEmpty()) {
+      revision = sha1;
+    } else if (revisionId >= 0) {
+      revision = "#" + revisionId;
+    } else {
+      return null;
+    }
+    return revision + '\n' + title;
+  }
+
+  private static long hash(String key) {
+    long hash = Utils.hash64(key);
+    return (hash != 0) ? hash : 1;
+  }
+
+  private static int offset(long location) {
+    return (int) (location & (USED - 1));
+  }
+
+  /**
+   * Returns the cached page, null if it is not cached (or was added during this run).
+   */
+  public Entry get(String key) {
+    long hash = hash(key);
+    long location;
+    ByteBuffer segment;
+    synchronized (this) {
+      location = index.get(hash);
+      segment = (location != 0) ? segments.get((int) (location >>> 32)) : null;
+      if (segment == null) {
+        misses++;
+        return null;
+      }
+    }
+    ByteBuffer buffer = segment.duplicate();
+    buffer.position(offset(location));
+    boolean found = key.equals(readString(buffer));
+    synchronized (this) {
+      if (!found) {
+        // another key with the same hash
+        misses++;
+        return null;
+      }
+      hits++;
+      // unless the entry was moved meanwhile
+      if (index.get(hash) == location) {
+        index.put(hash, location | USED);
+      }
+    }
+    HandlerType type = TYPES[buffer.get()];
+    int size = buffer.getInt();
+    List<String> links = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      links.add(readString(buffer));
+    }
+    return new Entry(type, links);
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, UTF8);
+  }
+
+  /**
+   * Adds a page to the cache, if it is not cached yet. A page whose key has the same hash as a cached one is
+   * not added.
+   */
+  public synchronized void put(String key, HandlerType type, List<String> links) throws IOException {
+    long hash = hash(key);
+    if (index.containsKey(hash)) {
+      return;
+    }
+    long offset = openActive();
+    write(key);
+    active.writeByte(type.ordinal());
+    active.writeInt(links.size());
+    activeSize += 1 + 4;
+    for (String link : links) {
+      write(link);
+    }
+    index.put(hash, ((long) activeSegment << 32) | offset);
+    if (activeSize >= segmentBytes) {
+      closeActive();
+    }
+  }
+
+  // opens the segment entries are appended to if needed, returns the offset of the next entry
+  private long openActive() throws IOException {
+    if (active == null) {
+      activeSegment = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+      active = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(segmentFile(activeSegment)), 1 << 16));
+      active.writeInt(SEGMENT_MAGIC);
+      active.writeInt(SEGMENT_VERSION);
+      activeSize = SEGMENT_HEADER_BYTES;
+    }
+    return activeSize;
+  }
+
+  private void write(String str) throws IOException {
+    byte[] bytes = str.getBytes(UTF8);
+    active.writeInt(bytes.length);
+    active.write(bytes);
+    activeSize += 4 + bytes.length;
+  }
+
+  // closes the active segment and makes its entries available for lookups
+  private void closeActive() throws IOException {
+    rollActive();
+    evict();
+  }
+
+  private void rollActive() throws IOException {
+    active.close();
+    active = null;
+    segments.put(activeSegment, map(segmentFile(activeSegment)));
+    segmentSizes.put(activeSegment, activeSize);
+  }
+
+  // the entries moved to the active segment lose their used flag, so that they are dropped on the next
+  // eviction unless they are looked up again. The active segment is rolled like in put, so that offsets
+  // stay below the used flag.
+  private void evict() throws IOException {
+    long total = 0;
+    for (long size : segmentSizes.values()) {
+      total += size;
+    }
+    while (total > maxBytes && segments.size() > 1) {
+      int oldest = segments.firstKey();
+      ByteBuffer segment = segments.remove(oldest);
+      total -= segmentSizes.remove(oldest);
+      for (TLongLongIterator it = index.iterator(); it.hasNext();) {
+        it.advance();
+        long location = it.value();
+        if ((int) (location >>> 32) != oldest) {
+          continue;
+        }
+        if ((location & USED) == 0) {
+          it.remove();
+          evicted++;
+          continue;
+        }
+        int offset = offset(location);
+        byte[] entry = new byte[entryLength(segment, offset)];
+        ByteBuffer buffer = segment.duplicate();
+        buffer.position(offset);
+        buffer.get(entry);
+        long moved = openActive();
+        active.write(entry);
+        activeSize += entry.length;
+        it.setValue(((long) activeSegment << 32) | moved);
+        if (activeSize >= segmentBytes) {
+          total += activeSize;
+          rollActive();
+        }
+      }
+      if (!segmentFile(oldest).delete()) {
+        logger_.warn("Failed to delete parse cache segment : " + segmentFile(oldest));
+      }
+    }
+  }
+
+  // length of the entry at the given offset
+  private static int entryLength(ByteBuffer segment, int offset) {
+    ByteBuffer buffer = segment.duplicate();
+    buffer.position(offset);
+    skipString(buffer);
+    buffer.get();
+    int size = buffer.getInt();
+    for (int i = 0; i < size; i++) {
+      skipString(buffer);
+    }
+    return buffer.position() - offset;
+  }
+
+  private static void skipString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    buffer.position(buffer.position() + length);
+  }
+
+  private File segmentFile(int segment) {
+    return new File(dir, SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+  }
+
+  private static ByteBuffer map(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      return raf.getChannel().map(MapMode.READ_ONLY, 0, raf.length());
+    }
+  }
+
+  private void load() throws IOException {
+    List<Integer> numbers = new ArrayList<>();
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        String name = file.getName();
+        if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+          numbers.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+        }
+      }
+    }
+    Collections.sort(numbers);
+    for (int number : numbers) {
+      File file = segmentFile(number);
+      ByteBuffer segment = map(file);
+      if (segment.remaining() < SEGMENT_HEADER_BYTES || segment.getInt(0) != SEGMENT_MAGIC || segment.getInt(4) != SEGMENT_VERSION) {
+        logger_.warn("Deleting parse cache segment of another format : " + file);
+        if (!file.delete()) {
+          throw new IOException("Failed to delete parse cache segment : " + file);
+        }
+        continue;
+      }
+      segments.put(number, segment);
+      segmentSizes.put(number, file.length());
+    }
+    if (!loadIndex()) {
+      rebuildIndex();
+    }
+    logger_.info("Parse cache " + dir + " : " + index.size() + " entries in " + segments.size() + " segments");
+  }
+
+  // loads the index written on close, false if it does not match the segments
+  private boolean loadIndex() throws IOException {
+    File indexFile = new File(dir, INDEX_FILE);
+    if (!indexFile.isFile()) {
+      return segments.isEmpty();
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 1 << 16))) {
+      if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+        return false;
+      }
+      int segmentCount = in.readInt();
+      if (segmentCount != segments.size()) {
+        return false;
+      }
+      for (int i = 0; i < segmentCount; i++) {
+        Long size = segmentSizes.get(in.readInt());
+        if (size == null || size != in.readLong()) {
+          return false;
+        }
+      }
+      int entries = in.readInt();
+      for (int i = 0; i < entries; i++) {
+        index.put(in.readLong(), in.readLong());
+      }
+      return true;
+    } catch (EOFException e) {
+      index.clear();
+      return false;
+    }
+  }
+
+  // scans the segments, a partly written entry at the end of a segment is ignored
+  private void rebuildIndex() {
+    index.clear();
+    for (java.util.Map.Entry<Integer, ByteBuffer> segment : segments.entrySet()) {
+      ByteBuffer buffer = segment.getValue().duplicate();
+      buffer.position(SEGMENT_HEADER_BYTES);
+      int entries = 0;
+      try {
+        while (buffer.remaining() > 0) {
+          int offset = buffer.position();
+          long hash = hash(readString(buffer));
+          buffer.get();
+          int size = buffer.getInt();
+          for (int i = 0; i < size; i++) {
+            skipString(buffer);
+          }
+          index.put(hash, ((long) segment.getKey() << 32) | offset);
+          entries++;
+        }
+      } catch (RuntimeException e) {
+        // BufferUnderflowException or IllegalArgumentException of a truncated entry
+        logger_.warn("Truncated parse cache segment : " + segmentFile(segment.getKey()));
+      }
+      logger_.debug("Indexed " + entries + " entries of parse cache segment " + segment.getKey());
+    }
+  }
+
+  /**
+   * Closes the segment written during this run and writes the index.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    // closing a segment may move used entries of an evicted one to a new segment
+    while (active != null) {
+      closeActive();
+    }
+    File tmp = new File(dir, INDEX_FILE + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+      out.writeInt(INDEX_MAGIC);
+      out.writeInt(INDEX_VERSION);
+      out.writeInt(segments.size());
+      for (java.util.Map.Entry<Integer, Long> segment : segmentSizes.entrySet()) {
+        out.writeInt(segment.getKey());
+        out.writeLong(segment.getValue());
+      }
+      out.writeInt(index.size());
+      for (TLongLongIterator it = index.iterator(); it.hasNext();) {
+        it.advance();
+        out.writeLong(it.key());
+        out.writeLong(it.value());
+      }
+    }
+    File indexFile = new File(dir, INDEX_FILE);
+    if (indexFile.exists() && !indexFile.delete() || !tmp.renameTo(indexFile)) {
+      throw new IOException("Failed to write parse cache index : " + indexFile);
+    }
+    logger_.info("Parse cache " + dir + " : " + hits + " hits, " + misses + " misses, " + evicted + " entries evicted, "
+        + index.size() + " entries");
+  }
+
+  public synchronized int size() {
+    return index.size();
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+}
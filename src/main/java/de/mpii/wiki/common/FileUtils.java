@@ -1,41 +1,55 @@
 package de.mpii.wiki.common;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import de.mpii.wiki.dump.DumpSettings.MappedType;
+import de.mpii.wiki.result.MappedIdResults;
 import de.mpii.wiki.result.MappedResult;
 
 public class FileUtils {
+
+  private static final String GZIP_SUFFIX = ".gz";
+
   public static void writeFileContent(File file, List<MappedResult> results) throws IOException {
-    BufferedWriter writer = getBufferedWriter(file);
-
-    for(MappedResult result : results) {
-      String srcTitle = result.getSourceTitle();
-      String tgtTitle = result.getTargetTitle();
-      MappedType mapType = result.getMappingType();
-      writer.append(srcTitle + "\t" + tgtTitle + "\t" + mapType.toString());
-      
-      if(mapType.equals(MappedType.DISAMBIGUATED)) {
-        writer.append("\t").append(result.getSourceText()).append("\t").append(result.getTargetText());
+    try (ResultWriter writer = getResultWriter(file)) {
+      for(MappedResult result : results) {
+        writer.write(result);
       }
-      writer.append("\n");
     }
+  }
 
-    writer.flush();
-    writer.close();
+  public static void writeFileContent(File file, MappedIdResults results, boolean includeUnchangedEntries) throws IOException {
+    try (ResultWriter writer = getResultWriter(file)) {
+      for(int i = 0; i < results.size(); i++) {
+        if(!includeUnchangedEntries && results.getMappingType(i).equals(MappedType.UNCHANGED)) {
+          continue;
+        }
+        writer.write(results, i);
+      }
+    }
   }
 
-  private static BufferedWriter getBufferedWriter(File file) throws IOException {
-    if(file == null) {
-      // write to standard output
-      return new BufferedWriter(new OutputStreamWriter(System.out));
+  // reads the non empty lines of a UTF-8 file, e.g. a list of titles
+  public static Set<String> readLines(File file) throws IOException {
+    Set<String> lines = new HashSet<>();
+    for(String line : Files.readAllLines(file.toPath(), Charset.forName("UTF-8"))) {
+      line = line.trim();
+      if(!line.isEmpty()) {
+        lines.add(line);
+      }
     }
-    // need to append entries to the file
-    return new BufferedWriter(new FileWriter(file, true));
+    return lines;
+  }
+
+  public static ResultWriter getResultWriter(File file) throws IOException {
+    // file == null writes to standard output, files ending with .gz are compressed on all cores
+    boolean gzip = file != null && file.getName().endsWith(GZIP_SUFFIX);
+    return new ResultWriter(file, gzip, Runtime.getRuntime().availableProcessors());
   }
 }
@@ -0,0 +1,102 @@
+package de.mpii.wiki.common;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe histogram with power of two buckets. Bucket i counts values in [2^(i-1), 2^i), bucket 0
+ * counts zero (and negative) values.
+ */
+public class Histogram {
+
+  private static final int BUCKETS = 64;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+  private final AtomicLong total = new AtomicLong();
+
+  private final AtomicLong sum = new AtomicLong();
+
+  private final AtomicLong max = new AtomicLong();
+
+  public void record(long value) {
+    int bucket = (value <= 0) ? 0 : BUCKETS - Long.numberOfLeadingZeros(value);
+    counts.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+    total.incrementAndGet();
+    sum.addAndGet(Math.max(value, 0));
+    long current;
+    while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+      // retry
+    }
+  }
+
+  public long getCount() {
+    return total.get();
+  }
+
+  public long getSum() {
+    return sum.get();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public double getMean() {
+    long n = total.get();
+    return (n == 0) ? 0.0 : (double) sum.get() / n;
+  }
+
+  /**
+   * Returns the upper bound (exclusive) of the bucket containing the given percentile.
+   */
+  public long getPercentile(double percentile) {
+    long n = total.get();
+    if (n == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(percentile / 100.0 * n);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return upperBound(i);
+      }
+    }
+    return max.get();
+  }
+
+  /**
+   * Returns the number of buckets in use, i.e. the index of the highest non-empty bucket + 1.
+   */
+  public int getBucketCount() {
+    for (int i = BUCKETS - 1; i >= 0; i--) {
+      if (counts.get(i) != 0) {
+        return i + 1;
+      }
+    }
+    return 0;
+  }
+
+  public long getBucket(int bucket) {
+    return counts.get(bucket);
+  }
+
+  public static long upperBound(int bucket) {
+    return (bucket >= BUCKETS - 1) ? Long.MAX_VALUE : 1L << bucket;
+  }
+
+  /**
+   * Returns count, mean, max, median, 99th percentile and the non-empty buckets as JSON object.
+   */
+  public String toJson() {
+    StringBuilder sb = new StringBuilder("{\"count\": ").append(getCount()).append(", \"mean\": ")
+        .append(String.format(Locale.ROOT, "%.2f", getMean())).append(", \"max\": ").append(getMax()).append(", \"p50\": ")
+        .append(getPercentile(50)).append(", \"p99\": ").append(getPercentile(99)).append(", \"buckets\": {");
+    for (int i = 0; i < getBucketCount(); i++) {
+      sb.append((i > 0) ? ", " : "").append("\"<").append(upperBound(i)).append("\": ").append(getBucket(i));
+    }
+    return sb.append("}}").toString();
+  }
+}
@@ -0,0 +1,270 @@
+package de.mpii.wiki.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mpii.wiki.dump.DumpSettings.MappedType;
+import de.mpii.wiki.result.MappedIdResults;
+import de.mpii.wiki.result.MappedResult;
+
+/**
+ * Writes mapping results as tab separated UTF-8 rows. Rows are encoded directly into large reusable byte
+ * blocks which are written through a channel. If compression is enabled, blocks are gzipped in parallel as
+ * independent gzip members (the concatenation is a valid gzip file) and written in order.
+ */
+public class ResultWriter implements Closeable {
+
+  private static final int BLOCK_SIZE = 4 << 20;
+
+  private static final String NULL_STR = "null";
+
+  private static Logger logger_ = LoggerFactory.getLogger(ResultWriter.class);
+
+  private final WritableByteChannel channel;
+
+  private final String name;
+
+  private final boolean closeChannel;
+
+  private final ExecutorService compressors;
+
+  private final int maxPending;
+
+  private final Deque<Future<Block>> pending = new ArrayDeque<>();
+
+  private final BlockingQueue<byte[]> freeBlocks;
+
+  private byte[] block;
+
+  private int position = 0;
+
+  private long rows = 0;
+
+  private long bytesIn = 0;
+
+  private long bytesOut = 0;
+
+  private final long start = System.currentTimeMillis();
+
+  /**
+   * @param file The file to write to (truncated if it exists), null writes to standard output.
+   * @param gzip Flag to enable gzip compression.
+   * @param threads Number of compression threads.
+   */
+  public ResultWriter(File file, boolean gzip, int threads) throws IOException {
+    if (file == null) {
+      channel = Channels.newChannel(System.out);
+      name = "standard output";
+      closeChannel = false;
+    } else {
+      channel = new FileOutputStream(file).getChannel();
+      name = file.getName();
+      closeChannel = true;
+    }
+    if (gzip) {
+      compressors = Executors.newFixedThreadPool(threads);
+      maxPending = threads * 2;
+      freeBlocks = new ArrayBlockingQueue<>(maxPending + 1);
+    } else {
+      compressors = null;
+      maxPending = 0;
+      freeBlocks = new ArrayBlockingQueue<>(1);
+    }
+    block = new byte[BLOCK_SIZE];
+  }
+
+  public void write(MappedResult result) throws IOException {
+    MappedType type = result.getMappingType();
+    if (type.equals(MappedType.DISAMBIGUATED)) {
+      writeRow(result.getSourceTitle(), result.getTargetTitle(), type, result.getSourceText(), result.getTargetText());
+    } else {
+      writeRow(result.getSourceTitle(), result.getTargetTitle(), type, null, null);
+    }
+  }
+
+  public void write(MappedIdResults results, int idx) throws IOException {
+    MappedType type = results.getMappingType(idx);
+    if (type.equals(MappedType.DISAMBIGUATED)) {
+      writeRow(results.getSourceTitle(idx), results.getTargetTitle(idx), type, orNA(results.getSourceText(idx)), orNA(results.getTargetText(idx)));
+    } else {
+      writeRow(results.getSourceTitle(idx), results.getTargetTitle(idx), type, null, null);
+    }
+  }
+
+  private static String orNA(String text) {
+    return (text != null) ? text : MappedResult.NO_STR;
+  }
+
+  private void writeRow(String source, String target, MappedType type, String srcText, String tgtText) throws IOException {
+    put(source);
+    put('\t');
+    put((target != null) ? target : NULL_STR);
+    put('\t');
+    put(type.toString());
+    if (srcText != null) {
+      put('\t');
+      put(srcText);
+      put('\t');
+      put(tgtText);
+    }
+    put('\n');
+    rows++;
+  }
+
+  private void put(char c) throws IOException {
+    if (position == block.length) {
+      flushBlock();
+    }
+    block[position++] = (byte) c;
+  }
+
+  // encodes the string as UTF-8 straight into the current block
+  private void put(String str) throws IOException {
+    int len = str.length();
+    if ((long) len * 3 > block.length - position) {
+      flushBlock();
+      if (len * 3 > block.length) {
+        // larger than a block, encode in pieces (never splitting surrogate pairs)
+        int piece = block.length / 3 - 1;
+        int i = 0;
+        while (i < len) {
+          int end = Math.min(len, i + piece);
+          if (end < len && Character.isHighSurrogate(str.charAt(end - 1))) {
+            end--;
+          }
+          put(str.substring(i, end));
+          i = end;
+        }
+        return;
+      }
+    }
+    byte[] b = block;
+    int pos = position;
+    for (int i = 0; i < len; i++) {
+      char c = str.charAt(i);
+      if (c < 0x80) {
+        b[pos++] = (byte) c;
+      } else if (c < 0x800) {
+        b[pos++] = (byte) (0xc0 | (c >> 6));
+        b[pos++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isSurrogate(c)) {
+        if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(str.charAt(i + 1))) {
+          int cp = Character.toCodePoint(c, str.charAt(++i));
+          b[pos++] = (byte) (0xf0 | (cp >> 18));
+          b[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+          b[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+          b[pos++] = (byte) (0x80 | (cp & 0x3f));
+        } else {
+          // malformed surrogate
+          b[pos++] = '?';
+        }
+      } else {
+        b[pos++] = (byte) (0xe0 | (c >> 12));
+        b[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        b[pos++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+    position = pos;
+  }
+
+  private void flushBlock() throws IOException {
+    if (position == 0) {
+      return;
+    }
+    bytesIn += position;
+    if (compressors == null) {
+      writeFully(ByteBuffer.wrap(block, 0, position));
+    } else {
+      pending.add(compressors.submit(new Block(block, position)));
+      while (pending.size() > maxPending) {
+        writePending();
+      }
+      byte[] free = freeBlocks.poll();
+      block = (free != null) ? free : new byte[BLOCK_SIZE];
+    }
+    position = 0;
+  }
+
+  private void writePending() throws IOException {
+    try {
+      Block compressed = pending.poll().get();
+      writeFully(ByteBuffer.wrap(compressed.output.toByteArray()));
+      freeBlocks.offer(compressed.input);
+    } catch (InterruptedException | ExecutionException e) {
+      throw new IOException("Failed to compress output block", e);
+    }
+  }
+
+  private void writeFully(ByteBuffer buffer) throws IOException {
+    bytesOut += buffer.remaining();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  public long getRows() {
+    return rows;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      flushBlock();
+      while (!pending.isEmpty()) {
+        writePending();
+      }
+    } finally {
+      if (compressors != null) {
+        compressors.shutdownNow();
+      }
+      // keep standard output open for further writes
+      if (closeChannel) {
+        channel.close();
+      } else {
+        System.out.flush();
+      }
+    }
+    long elapsed = Math.max(1, System.currentTimeMillis() - start);
+    logger_.info(rows + " rows (" + bytesIn + " bytes, " + bytesOut + " bytes written) written to " + name + " in "
+        + elapsed / 1000 + " s, " + (bytesIn * 1000 / elapsed) / (1 << 20) + " MB/s");
+  }
+
+  private static class Block implements Callable<Block> {
+    private final byte[] input;
+    private final int length;
+    private ByteArrayOutputStream output;
+
+    Block(byte[] input, int length) {
+      this.input = input;
+      this.length = length;
+    }
+
+    @Override
+    public Block call() throws IOException {
+      output = new ByteArrayOutputStream(length / 3);
+      try (GZIPOutputStream gzip = new GZIPOutputStream(output, 1 << 16)) {
+        gzip.write(input, 0, length);
+      }
+      return this;
+    }
+  }
+}
@@ -1,7 +1,18 @@
 package de.mpii.wiki.common;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -13,6 +24,8 @@ public class Utils {
 
   // Maximum length of wiki page text to use in output
   private static final int MAX_TEXT_LENGTH = 1000;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
  
   public static boolean containsAny(String text, String[] words) {
     for(String ele : words) {
@@ -54,4 +67,91 @@ public class Utils {
     return (list != null) ? list : new ArrayList<String>();
   }
 
+  // 32 bit FNV-1a hash over the given byte range, used for title indexes over UTF-8 bytes
+  public static int hash(byte[] bytes, int off, int len) {
+    int h = 0x811c9dc5;
+    for (int i = off; i < off + len; i++) {
+      h ^= (bytes[i] & 0xff);
+      h *= 0x01000193;
+    }
+    return h;
+  }
+
+  // 64 bit FNV-1a hash over the chars of the given string, e.g. to identify revision texts by their sha1
+  public static long hash64(String str) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < str.length(); i++) {
+      h ^= str.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    return h;
+  }
+
+  // length prefixed UTF-8 (null is written as -1), unlike writeUTF not limited to 64k
+  public static void writeString(DataOutputStream out, String str) throws IOException {
+    if (str == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = str.getBytes(UTF8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Returns the class path this application was loaded from, for starting child JVMs. Under mvn exec:java
+   * the java.class.path property only holds the Maven launcher, the application classes are loaded by a
+   * URLClassLoader, whose entries come first.
+   */
+  public static String classpath() {
+    Set<String> entries = new LinkedHashSet<>();
+    for (ClassLoader loader = Utils.class.getClassLoader(); loader != null; loader = loader.getParent()) {
+      if (loader instanceof URLClassLoader) {
+        for (URL url : ((URLClassLoader) loader).getURLs()) {
+          if (url.getProtocol().equals("file")) {
+            try {
+              entries.add(new File(url.toURI()).getPath());
+            } catch (URISyntaxException e) {
+              entries.add(url.getPath());
+            }
+          }
+        }
+      }
+    }
+    for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+      if (!entry.isEmpty()) {
+        entries.add(entry);
+      }
+    }
+    StringBuilder sb = new StringBuilder();
+    for (String entry : entries) {
+      sb.append((sb.length() > 0) ? File.pathSeparator : "").append(entry);
+    }
+    return sb.toString();
+  }
+
+  // the given string as a quoted JSON string, for the hand written JSON reports
+  public static String jsonString(String value) {
+    StringBuilder sb = new StringBuilder("\"");
+    for (char c : value.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < ' ') {
+        sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+  public static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, UTF8);
+  }
 }
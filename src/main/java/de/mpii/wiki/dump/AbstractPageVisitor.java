@@ -0,0 +1,42 @@
+package de.mpii.wiki.dump;
+
+/**
+ * Page visitor ignoring all callbacks, which needs neither the text nor the links of the pages. Visitors
+ * override the callbacks they are interested in.
+ */
+public abstract class AbstractPageVisitor implements PageVisitor {
+
+  @Override
+  public boolean needsText() {
+    return false;
+  }
+
+  @Override
+  public boolean needsLinks() {
+    return false;
+  }
+
+  @Override
+  public void startPage(int id, String title) {
+  }
+
+  @Override
+  public void text(String chunk) {
+  }
+
+  @Override
+  public void revision(long revisionId, String sha1) {
+  }
+
+  @Override
+  public void parsed(DumpData.Page page) {
+  }
+
+  @Override
+  public void endPage() {
+  }
+
+  @Override
+  public void endDump() {
+  }
+}
@@ -0,0 +1,93 @@
+package de.mpii.wiki.dump;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pages of a scanned dump in columns sorted by page id, see {@link DumpData#compact()}. Titles and link lists
+ * are the instances stored by the dump data, the columns only replace the hash maps keyed by id. Walking the
+ * columns of two dumps side by side (see {@link de.mpii.wiki.result.ResultGenerator}) joins them in id order
+ * without probing hash tables.
+ */
+public final class DumpColumns {
+
+  /** Kinds of pages: redirects and disambiguations are only kept for target dumps, other pages have no links. */
+  public static final byte OTHER = 0, PAGE = 1, REDIRECT = 2, DISAMBIGUATION = 3;
+
+  private final int[] ids;
+
+  private final byte[] kinds;
+
+  private final String[] titles;
+
+  private final List<String>[] links;
+
+  // holds the links of the pages if they are not kept in memory, null otherwise
+  private final LinkStore linkStore;
+
+  DumpColumns(int[] ids, byte[] kinds, String[] titles, List<String>[] links, LinkStore linkStore) {
+    this.ids = ids;
+    this.kinds = kinds;
+    this.titles = titles;
+    this.links = links;
+    this.linkStore = linkStore;
+  }
+
+  public int size() {
+    return ids.length;
+  }
+
+  /**
+   * Returns the position of the given page id, or a negative value if the page is unknown.
+   */
+  public int indexOf(int id) {
+    return Arrays.binarySearch(ids, id);
+  }
+
+  public int getId(int idx) {
+    return ids[idx];
+  }
+
+  public byte getKind(int idx) {
+    return kinds[idx];
+  }
+
+  public String getTitle(int idx) {
+    return titles[idx];
+  }
+
+  /**
+   * Returns the links of the page at the given position (the redirect target of a redirect, the candidates of
+   * a disambiguation), null for other pages.
+   */
+  public List<String> getLinks(int idx) {
+    if (kinds[idx] == PAGE && linkStore != null) {
+      return linkStore.links(ids[idx]);
+    }
+    return links[idx];
+  }
+
+  /**
+   * Returns the ids of the pages of the given kind, in ascending order.
+   */
+  int[] getIds(byte kind) {
+    int count = 0;
+    for (byte k : kinds) {
+      if (k == kind) {
+        count++;
+      }
+    }
+    int[] result = new int[count];
+    int n = 0;
+    for (int i = 0; i < ids.length; i++) {
+      if (kinds[i] == kind) {
+        result[n++] = ids[i];
+      }
+    }
+    return result;
+  }
+
+  int[] getIds() {
+    return ids.clone();
+  }
+}
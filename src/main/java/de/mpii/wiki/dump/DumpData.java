@@ -1,23 +1,38 @@
 package de.mpii.wiki.dump;
 
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntLongMap;
 import gnu.trove.map.TIntObjectMap;
 import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TIntLongHashMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
 import gnu.trove.set.TIntSet;
 import gnu.trove.set.hash.TIntHashSet;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.mpii.wiki.cache.ParseCache;
 import de.mpii.wiki.common.Utils;
 import de.mpii.wiki.compute.Jaccard;
 import de.mpii.wiki.dump.DumpSettings.DumpType;
+import de.mpii.wiki.metrics.MappingMetrics;
+import de.mpii.wiki.metrics.MappingMetrics.Phase;
 import de.mpii.wiki.page.PageIdentifier;
 import de.mpii.wiki.page.handlers.Handler;
 import de.mpii.wiki.page.handlers.Handler.HandlerType;
+import de.mpii.wiki.trace.DecisionTrace;
 
 public class DumpData {
 
@@ -43,18 +58,44 @@ public class DumpData {
   // Stores Page Id and list of links present in the page
   private TIntObjectMap<List<String>> pageLinks;
 
+  // holds the page links instead of pageLinks if set, see setLinkStore
+  private LinkStore linkStore;
+
   // Stores Page Id and list of titles to which the page disambiguates to
   private TIntObjectMap<List<String>> disambiguations;
 
   // Stores Redirections (id -> id map)
   private TIntObjectMap<List<String>> redirections;
 
+  // Stores Page Id and a hash of its revision sha1 (target dump only), see reuseUnchangedPages
+  private TIntLongMap contentKeys;
+
+  // dump whose pages are reused for unchanged pages of this dump, null if pages are always extracted
+  private DumpData unchangedReference;
+
+  // pages parsed in earlier runs, null if not used
+  private ParseCache parseCache;
+
   // number of page entries processed
   private int processedPages = 0;
 
   // just to keep track of count of processed page types
   private TObjectIntMap<HandlerType> stats;
 
+  // timings and counters of the mapping run
+  private final MappingMetrics metrics;
+
+  // ids and titles (old and new) of pages added or replaced while updates are tracked, null otherwise
+  private TIntSet updatedIds;
+  private Set<String> updatedTitles;
+
+  // pages sorted by id once the dump data was compacted, replacing the maps keyed by id
+  private DumpColumns columns;
+
+  // kinds of link lists stored for a page in the persisted state
+  private static final byte NO_LINKS = DumpColumns.OTHER, PAGE_LINKS = DumpColumns.PAGE, REDIRECT_LINKS = DumpColumns.REDIRECT,
+      DISAMBIGUATION_LINKS = DumpColumns.DISAMBIGUATION;
+
   private static Logger logger_ = LoggerFactory.getLogger(DumpData.class);
 
   private void updateCounter() {
@@ -72,6 +113,7 @@ public class DumpData {
     pageLinks = new TIntObjectHashMap<List<String>>();
     disambiguations = new TIntObjectHashMap<List<String>>();
     redirections = new TIntObjectHashMap<List<String>>();
+    contentKeys = new TIntLongHashMap();
 
     stats = new TObjectIntHashMap<HandlerType>();
     stats.put(HandlerType.NORMAL, 0);
@@ -80,134 +122,694 @@ public class DumpData {
   }
 
   public DumpData(DumpType dType) {
+    this(dType, new MappingMetrics());
+  }
+
+  public DumpData(DumpType dType, MappingMetrics metrics) {
     init();
     dumpType = dType;
+    this.metrics = metrics;
+  }
+
+  private DumpData(MappingMetrics metrics) {
+    dumpType = DumpType.SOURCE;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Returns dump data which only extracts pages with {@link #extractPage(int, String, String, long, String)}
+   * and holds none, so it allocates no maps.
+   */
+  static DumpData extractor(MappingMetrics metrics) {
+    return new DumpData(metrics);
   }
 
   public void addPageEntry(int id, String title, String content) {
+    addPage(extractPage(id, title, content));
+  }
+
+  public void addPageEntry(int id, String title, String content, long revisionId, String sha1) {
+    addPage(extractPage(id, title, content, revisionId, sha1));
+  }
+
+  /**
+   * Returns a visitor adding the pages of a dump scan to this dump data, see {@link PageVisitor}. The pages
+   * visited by a scan are extracted by the first dump data visitor registered, so the unchanged pages and
+   * parse cache of that dump data are used.
+   */
+  public PageVisitor visitor() {
+    return new DataVisitor();
+  }
+
+  class DataVisitor extends AbstractPageVisitor {
+    private Page page;
+
+    DumpData getData() {
+      return DumpData.this;
+    }
+
+    @Override
+    public boolean needsLinks() {
+      return true;
+    }
+
+    @Override
+    public void parsed(Page page) {
+      this.page = page;
+    }
+
+    @Override
+    public void endPage() {
+      addPage(page);
+      page = null;
+    }
+  }
+
+  /**
+   * Reuses the classification and links of pages of the given (target) dump for pages of this dump with
+   * the same id, title and revision sha1, instead of extracting them again. The link lists are shared, not
+   * copied. The target dump must have been read completely.
+   */
+  public void reuseUnchangedPages(DumpData target) {
+    unchangedReference = target;
+  }
+
+  /**
+   * Looks up pages in the given cache before extracting them, and adds the pages extracted to it.
+   */
+  public void setParseCache(ParseCache parseCache) {
+    this.parseCache = parseCache;
+  }
+
+  /**
+   * Keeps the links of the pages (not those of redirects and disambiguations) in the given store instead of
+   * the heap. They are only read back for disambiguations and the link graph, so most are never read. Has
+   * to be set before pages are added; the store is not closed by the dump data.
+   */
+  public void setLinkStore(LinkStore linkStore) {
+    if (!idTitleMap.isEmpty() || !pageLinks.isEmpty()) {
+      throw new IllegalStateException("The link store has to be set before pages are added");
+    }
+    this.linkStore = linkStore;
+  }
+
+  /**
+   * Classifies the page and extracts its links, without changing this dump data. Pages can be extracted
+   * concurrently (e.g. while reading the parts of a multi-part dump) and added with {@link #addPage(Page)}.
+   */
+  public Page extractPage(int id, String title, String content) {
+    return extractPage(id, title, content, -1, null);
+  }
+
+  /**
+   * Same as {@link #extractPage(int, String, String)}, for a page with known revision.
+   *
+   * @param revisionId The revision id, -1 if unknown.
+   * @param sha1 The sha1 of the revision text, null if unknown.
+   */
+  public Page extractPage(int id, String title, String content, long revisionId, String sha1) {
+    // load page content only for evaluation purpose.
+    String text = dumpType.loadPageText() ? Utils.cleanAndCompressText(content) : null;
+    long contentKey = contentKey(sha1);
+
+    if (unchangedReference != null && contentKey != 0) {
+      Page unchanged = unchangedReference.unchangedPage(id, title, contentKey);
+      if (unchanged != null) {
+        metrics.addReusedPage();
+        return new Page(id, title, text, unchanged.type, unchanged.links, unchanged.linkOwner, revisionId, contentKey);
+      }
+    }
+
+    String cacheKey = (parseCache != null) ? ParseCache.key(title, revisionId, sha1) : null;
+    if (cacheKey != null) {
+      ParseCache.Entry cached = parseCache.get(cacheKey);
+      if (cached != null) {
+        metrics.addCachedPage();
+        return new Page(id, title, text, cached.getType(), cached.getLinks(), revisionId, contentKey);
+      }
+    }
+
+    long start = System.nanoTime();
+    Handler handlerToExecute = PageIdentifier.getHandler(title, content);
+    long classified = System.nanoTime();
+    metrics.time(Phase.CLASSIFY, classified - start);
+    List<String> lstLinks = handlerToExecute.process(content);
+    metrics.time(Phase.LINK_EXTRACTION, System.nanoTime() - classified);
+    if (cacheKey != null) {
+      try {
+        parseCache.put(cacheKey, handlerToExecute.getType(), lstLinks);
+      } catch (IOException e) {
+        // the mapping does not depend on the cache
+        logger_.warn("Failed to add page to parse cache, disabling it : " + e.getMessage());
+        parseCache = null;
+      }
+    }
+    return new Page(id, title, text, handlerToExecute.getType(), lstLinks, revisionId, contentKey);
+  }
+
+  // identifies the text of a revision by its sha1, 0 if unknown
+  private static long contentKey(String sha1) {
+    if (sha1 == null || sha1.isEmpty()) {
+      return 0;
+    }
+    long key = Utils.hash64(sha1);
+    return (key != 0) ? key : 1;
+  }
+
+  // the type and links stored for the page if its title and text are the same, null otherwise
+  private Page unchangedPage(int id, String title, long contentKey) {
+    // the content keys are dropped when the dump data is compacted
+    if (columns != null || contentKeys.get(id) != contentKey || !title.equals(idTitleMap.get(id))) {
+      return null;
+    }
+    if (redirections.containsKey(id)) {
+      return new Page(id, title, null, HandlerType.REDIRECTS, redirections.get(id), -1, contentKey);
+    }
+    if (disambiguations.containsKey(id)) {
+      return new Page(id, title, null, HandlerType.DISAMBIGUATIONS, disambiguations.get(id), -1, contentKey);
+    }
+    if (linkStore != null && linkStore.contains(id)) {
+      // the links are not read back, the store of the page is referenced instead
+      return new Page(id, title, null, HandlerType.NORMAL, null, linkStore, -1, contentKey);
+    }
+    if (pageLinks.containsKey(id)) {
+      return new Page(id, title, null, HandlerType.NORMAL, pageLinks.get(id), -1, contentKey);
+    }
+    return null;
+  }
+
+  /**
+   * Stores a page extracted with {@link #extractPage(int, String, String)}. Safe to be called concurrently.
+   */
+  public synchronized void addPage(Page page) {
+    checkNotCompacted();
+    int id = page.id;
+    String title = page.title;
+    if (idTitleMap.containsKey(id)) {
+      // a newer revision of a known page (e.g. from an adds-changes dump) replaces the old one
+      removePageEntry(id);
+    }
+    if (updatedIds != null) {
+      updatedIds.add(id);
+      updatedTitles.add(title);
+    }
+
     // Store the basic info retrieved from the page
     if (dumpType.requiresBasicInfo()) {
       idTitleMap.put(id, title);
       titleIdMap.put(title, id);
     }
 
-    // load page content only for evaluation purpose.
-    if (dumpType.loadPageText()) {
-      idTextMap.put(id, Utils.cleanAndCompressText(content));
+    if (page.text != null) {
+      idTextMap.put(id, page.text);
     }
 
-    boolean isSpecialPage = false;
-    Handler handlerToExecute = null;
-    List<String> lstLinks = null;
+    // only pages of the target are looked up by their content
+    if (dumpType.processSpecialPage() && page.contentKey != 0) {
+      contentKeys.put(id, page.contentKey);
+    }
 
-    handlerToExecute = PageIdentifier.getHandler(title, content);
-    isSpecialPage = handlerToExecute.getType().isSpecialInfoPage();
-    lstLinks = handlerToExecute.process(content);
+    boolean isSpecialPage = page.type.isSpecialInfoPage();
+    List<String> lstLinks = page.links;
 
     // store redirections and disambiguation only for target dump
     if (dumpType.processSpecialPage() && isSpecialPage) {
-      if (handlerToExecute.getType().equals(HandlerType.REDIRECTS)) {
+      if (page.type.equals(HandlerType.REDIRECTS)) {
         redirections.put(id, lstLinks);
-      } else if (handlerToExecute.getType().equals(HandlerType.DISAMBIGUATIONS)) {
+      } else if (page.type.equals(HandlerType.DISAMBIGUATIONS)) {
         disambiguations.put(id, lstLinks);
       }
     }
 
     // Need to extract page links for both source and target
     if (!isSpecialPage) {
-      pageLinks.put(id, lstLinks);
+      if (linkStore != null) {
+        // links stored for a reused page are shared with the store of the target, not copied
+        if (page.linkOwner == null || !linkStore.share(id, page.linkOwner)) {
+          try {
+            linkStore.put(id, page.getLinks());
+          } catch (IOException e) {
+            throw new RuntimeException("Failed to store links of page " + id, e);
+          }
+        }
+      } else {
+        pageLinks.put(id, page.getLinks());
+      }
     }
 
     // update stat
-    updateStat(handlerToExecute.getType());
+    updateStat(page.type);
+    metrics.addPage(page.type, page.linkCount());
     
     updateCounter();
   }
 
+  /**
+   * A page classified and with its links extracted, ready to be stored.
+   */
+  public static class Page {
+    private final int id;
+    private final String title;
+    private final String text;
+    private final HandlerType type;
+    private final List<String> links;
+    private final long revisionId;
+    private final long contentKey;
+
+    // holds the links instead of the page if set, for pages reused from a dump with a link store
+    private final LinkStore linkOwner;
+
+    Page(int id, String title, String text, HandlerType type, List<String> links, long revisionId, long contentKey) {
+      this(id, title, text, type, links, null, revisionId, contentKey);
+    }
+
+    Page(int id, String title, String text, HandlerType type, List<String> links, LinkStore linkOwner, long revisionId,
+        long contentKey) {
+      this.id = id;
+      this.title = title;
+      this.text = text;
+      this.type = type;
+      this.links = links;
+      this.linkOwner = linkOwner;
+      this.revisionId = revisionId;
+      this.contentKey = contentKey;
+    }
+
+    public int getId() {
+      return id;
+    }
+
+    public String getTitle() {
+      return title;
+    }
+
+    public HandlerType getType() {
+      return type;
+    }
+
+    /**
+     * Returns the links of the page, the redirect target of a redirect or the candidates of a disambiguation.
+     */
+    public List<String> getLinks() {
+      return (linkOwner != null) ? linkOwner.links(id) : links;
+    }
+
+    int linkCount() {
+      return (linkOwner != null) ? linkOwner.count(id) : links.size();
+    }
+
+    /**
+     * Returns the revision id of the page, -1 if unknown.
+     */
+    public long getRevisionId() {
+      return revisionId;
+    }
+  }
+
+  /**
+   * Removes all information stored for the given page.
+   *
+   * @return the title of the removed page, null if the page is unknown.
+   */
+  public String removePageEntry(int id) {
+    checkNotCompacted();
+    String title = idTitleMap.remove(id);
+    if (title == null) {
+      return null;
+    }
+    HandlerType type = storedType(id);
+    stats.put(type, stats.get(type) - 1);
+    metrics.removePage(type);
+    // the title may already have been taken over by another page
+    if (titleIdMap.containsKey(title) && titleIdMap.get(title) == id) {
+      titleIdMap.remove(title);
+    }
+    idTextMap.remove(id);
+    contentKeys.remove(id);
+    pageLinks.remove(id);
+    if (linkStore != null) {
+      linkStore.remove(id);
+    }
+    redirections.remove(id);
+    disambiguations.remove(id);
+    if (updatedIds != null) {
+      updatedIds.add(id);
+      updatedTitles.add(title);
+    }
+    return title;
+  }
+
+  /**
+   * Replaces the maps keyed by page id with columns sorted by id (see {@link DumpColumns}), once the dump was
+   * scanned. This saves the memory of the hash tables, and lets results be generated by walking the source
+   * and target columns in id order. Pages cannot be added or removed afterwards; titles are still looked up
+   * by hashing.
+   */
+  public synchronized void compact() {
+    if (columns != null) {
+      return;
+    }
+    int[] ids = idTitleMap.keys();
+    Arrays.sort(ids);
+    byte[] kinds = new byte[ids.length];
+    String[] titles = new String[ids.length];
+    List<String>[] links = newLinkArray(ids.length);
+    for (int i = 0; i < ids.length; i++) {
+      int id = ids[i];
+      titles[i] = idTitleMap.get(id);
+      if (hasPageLinks(id)) {
+        // links kept in a link store are read through the columns
+        kinds[i] = PAGE_LINKS;
+        links[i] = pageLinks.get(id);
+      } else if (redirections.containsKey(id)) {
+        kinds[i] = REDIRECT_LINKS;
+        links[i] = redirections.get(id);
+      } else if (disambiguations.containsKey(id)) {
+        kinds[i] = DISAMBIGUATION_LINKS;
+        links[i] = disambiguations.get(id);
+      }
+    }
+    columns = new DumpColumns(ids, kinds, titles, links, linkStore);
+    idTitleMap = null;
+    pageLinks = null;
+    redirections = null;
+    disambiguations = null;
+    contentKeys = null;
+    logger_.debug("Compacted " + ids.length + " pages into columns");
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static List<String>[] newLinkArray(int size) {
+    return new List[size];
+  }
+
+  /**
+   * Returns the columns of the compacted dump data, null if it was not compacted.
+   */
+  public DumpColumns getColumns() {
+    return columns;
+  }
+
+  private void checkNotCompacted() {
+    if (columns != null) {
+      throw new IllegalStateException("Pages cannot be changed once the dump data was compacted");
+    }
+  }
+
+  // source dumps keep no links of special pages, a page without links is counted as redirect there
+  private HandlerType storedType(int id) {
+    if (hasPageLinks(id)) {
+      return HandlerType.NORMAL;
+    }
+    return disambiguations.containsKey(id) ? HandlerType.DISAMBIGUATIONS : HandlerType.REDIRECTS;
+  }
+
+  private boolean hasPageLinks(int id) {
+    return (linkStore != null) ? linkStore.contains(id) : pageLinks.containsKey(id);
+  }
+
+  private List<String> pageLinks(int id) {
+    return (linkStore != null) ? linkStore.links(id) : pageLinks.get(id);
+  }
+
+  // the kind of the page, NO_LINKS if it is unknown
+  private byte kind(int id) {
+    if (columns != null) {
+      int idx = columns.indexOf(id);
+      return (idx >= 0) ? columns.getKind(idx) : NO_LINKS;
+    }
+    if (hasPageLinks(id)) {
+      return PAGE_LINKS;
+    }
+    if (redirections.containsKey(id)) {
+      return REDIRECT_LINKS;
+    }
+    return disambiguations.containsKey(id) ? DISAMBIGUATION_LINKS : NO_LINKS;
+  }
+
+  // the links of the page if it is of the given kind, null otherwise
+  private List<String> links(int id, byte kind) {
+    if (columns != null) {
+      int idx = columns.indexOf(id);
+      return (idx >= 0 && columns.getKind(idx) == kind) ? columns.getLinks(idx) : null;
+    }
+    switch (kind) {
+      case PAGE_LINKS:
+        return pageLinks(id);
+      case REDIRECT_LINKS:
+        return redirections.get(id);
+      default:
+        return disambiguations.get(id);
+    }
+  }
+
+  /**
+   * Starts recording the ids and titles of pages added, replaced or removed from now on.
+   */
+  public void trackUpdates() {
+    updatedIds = new TIntHashSet();
+    updatedTitles = new HashSet<>();
+  }
+
+  public void clearUpdates() {
+    updatedIds = null;
+    updatedTitles = null;
+  }
+
+  public TIntSet getUpdatedIds() {
+    return updatedIds;
+  }
+
+  public Set<String> getUpdatedTitles() {
+    return updatedTitles;
+  }
+
   private void updateStat(HandlerType type) {
     int count = stats.get(type);
     stats.put(type, count + 1);
   }
 
   public int size() {
-    return idTitleMap.size();
+    return (columns != null) ? columns.size() : idTitleMap.size();
+  }
+
+  public MappingMetrics getMetrics() {
+    return metrics;
   }
 
   public int[] getPageIds() {
-    return idTitleMap.keys();
+    return (columns != null) ? columns.getIds() : idTitleMap.keys();
   }
   
   public String getTitle(int id) {
+    if (columns != null) {
+      int idx = columns.indexOf(id);
+      return (idx >= 0) ? columns.getTitle(idx) : null;
+    }
     return idTitleMap.get(id);
   }
+
+  public int getId(String title) {
+    return titleIdMap.get(title);
+  }
+
+  public boolean hasTitle(String title) {
+    return titleIdMap.containsKey(title);
+  }
   
   public String getPageText(int id) {
     return idTextMap.get(id);
   }
   
   public boolean isValidId(int id) {
-    return pageLinks.containsKey(id);
+    return (columns != null) ? kind(id) == PAGE_LINKS : hasPageLinks(id);
   }
   
   public boolean isRedirect(int id) {
-    return redirections.containsKey(id);
+    return (columns != null) ? kind(id) == REDIRECT_LINKS : redirections.containsKey(id);
   }
 
   public int getRedirectedId(int id) {
-    return resolveRedirection(id);
+    return resolveRedirection(id, null);
+  }
+
+  /**
+   * Same as {@link #getRedirectedId(int)}, the redirect chain is recorded in the trace if the id is sampled.
+   */
+  public int getRedirectedId(int id, DecisionTrace trace) {
+    return resolveRedirection(id, (trace != null && trace.isSampled(id)) ? trace : null);
   }
   
   public int getDisambiguatedId(int id, List<String> links) {
-    return disambiguate(id, links);
+    return disambiguate(id, links, null);
+  }
+
+  /**
+   * Same as {@link #getDisambiguatedId(int, List)}, the candidates and their scores are recorded in the trace
+   * if the id is sampled.
+   */
+  public int getDisambiguatedId(int id, List<String> links, DecisionTrace trace) {
+    return disambiguate(id, links, (trace != null && trace.isSampled(id)) ? trace : null);
   }
     
   public boolean isDisambiguation(int id) {
-    return disambiguations.containsKey(id);
+    return (columns != null) ? kind(id) == DISAMBIGUATION_LINKS : disambiguations.containsKey(id);
   }
   
   public List<String> getPageLinks(int pId) {
-    return pageLinks.get(pId);
+    return links(pId, PAGE_LINKS);
   }
 
   public boolean hasId(int id) {
-    return idTitleMap.containsKey(id);
+    return (columns != null) ? columns.indexOf(id) >= 0 : idTitleMap.containsKey(id);
+  }
+
+  public int[] getRedirectIds() {
+    return (columns != null) ? columns.getIds(REDIRECT_LINKS) : redirections.keys();
+  }
+
+  // returns the title the page redirects to, null if unknown
+  public String getRedirectTitle(int id) {
+    List<String> links = links(id, REDIRECT_LINKS);
+    return (links == null || links.isEmpty()) ? null : links.get(0);
+  }
+
+  public int[] getDisambiguationIds() {
+    return (columns != null) ? columns.getIds(DISAMBIGUATION_LINKS) : disambiguations.keys();
+  }
+
+  public List<String> getDisambiguationLinks(int id) {
+    return links(id, DISAMBIGUATION_LINKS);
+  }
+
+  /**
+   * Writes the scanned state, so that it can be restored with {@link #readFrom(DataInputStream, MappingMetrics)}
+   * instead of scanning the dump again.
+   */
+  public void writeTo(DataOutputStream out) throws IOException {
+    out.writeUTF(dumpType.name());
+    out.writeInt(processedPages);
+    for (HandlerType type : HandlerType.values()) {
+      out.writeInt(stats.get(type));
+    }
+    out.writeInt(size());
+    for (int id : getPageIds()) {
+      out.writeInt(id);
+      Utils.writeString(out, getTitle(id));
+      Utils.writeString(out, idTextMap.get(id));
+      byte kind = kind(id);
+      if (kind != NO_LINKS) {
+        writeLinks(out, kind, links(id, kind));
+      } else {
+        out.writeByte(NO_LINKS);
+      }
+    }
+  }
+
+  public static DumpData readFrom(DataInputStream in, MappingMetrics metrics) throws IOException {
+    DumpData data = new DumpData(DumpType.valueOf(in.readUTF()), metrics);
+    data.processedPages = in.readInt();
+    for (HandlerType type : HandlerType.values()) {
+      data.stats.put(type, in.readInt());
+    }
+    int pages = in.readInt();
+    for (int i = 0; i < pages; i++) {
+      int id = in.readInt();
+      String title = Utils.readString(in);
+      data.idTitleMap.put(id, title);
+      data.titleIdMap.put(title, id);
+      String text = Utils.readString(in);
+      if (text != null) {
+        data.idTextMap.put(id, text);
+      }
+      byte kind = in.readByte();
+      if (kind == NO_LINKS) {
+        continue;
+      }
+      List<String> links = readLinks(in);
+      if (kind == PAGE_LINKS) {
+        data.pageLinks.put(id, links);
+      } else if (kind == REDIRECT_LINKS) {
+        data.redirections.put(id, links);
+      } else {
+        data.disambiguations.put(id, links);
+      }
+    }
+    return data;
+  }
+
+  private static void writeLinks(DataOutputStream out, byte kind, List<String> links) throws IOException {
+    out.writeByte(kind);
+    out.writeInt((links != null) ? links.size() : -1);
+    if (links != null) {
+      for (String link : links) {
+        Utils.writeString(out, link);
+      }
+    }
+  }
+
+  private static List<String> readLinks(DataInputStream in) throws IOException {
+    int size = in.readInt();
+    if (size < 0) {
+      return null;
+    }
+    List<String> links = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      links.add(Utils.readString(in));
+    }
+    return links;
   }
   
 
-  private int disambiguate(int srcPageId, List<String> srcPageLinks) {    
-    List<String> tgtPageDisambiguationLinks = disambiguations.get(srcPageId);
+  // trace is null if the decision is not traced
+  private int disambiguate(int srcPageId, List<String> srcPageLinks, DecisionTrace trace) {
+    List<String> tgtPageDisambiguationLinks = links(srcPageId, DISAMBIGUATION_LINKS);
     tgtPageDisambiguationLinks = Utils.verifyList(tgtPageDisambiguationLinks);
+    metrics.addDisambiguation(tgtPageDisambiguationLinks.size());
 
     double maxScore = 0.0;
     int result = srcPageId; // return the current pageId, if no disambiguations are found
+    int[] candidates = (trace != null) ? new int[tgtPageDisambiguationLinks.size()] : null;
+    double[] scores = (trace != null) ? new double[candidates.length] : null;
 
     // for each disambiguation option, get the content stored in pageContent and compute similarity
-    for(String tgtPageTitle : tgtPageDisambiguationLinks) {
-      int tgtPageId = titleIdMap.get(tgtPageTitle);
-      List<String> tgtPageLinks = pageLinks.get(tgtPageId);      
+    for(int i = 0; i < tgtPageDisambiguationLinks.size(); i++) {
+      int tgtPageId = titleIdMap.get(tgtPageDisambiguationLinks.get(i));
+      List<String> tgtPageLinks = links(tgtPageId, PAGE_LINKS);
       double score = Jaccard.compute(srcPageLinks, tgtPageLinks);
-      logger_.debug("Target Disambiguation Page : "+ tgtPageTitle + " with score : " + score);
+      if(trace != null) {
+        candidates[i] = tgtPageId;
+        scores[i] = score;
+      }
       if(score > maxScore) {
         result = tgtPageId;
         maxScore = score;
       }
     }
+    if(trace != null) {
+      trace.disambiguation(srcPageId, result, candidates, scores);
+    }
     return result;
   }
 
   //This method resolves redirection pages(including multiple redirections).
   //  In case of a cycle, the given id is returned i.e id is mapped on to itself.
-  private int resolveRedirection(int redirectId) {
+  //  The chain is recorded in trace, unless it is null.
+  private int resolveRedirection(int redirectId, DecisionTrace trace) {
     TIntSet processed = new TIntHashSet();
     processed.add(redirectId);
+    TIntList chain = (trace != null) ? new TIntArrayList() : null;
     int itK = redirectId;
     boolean found = false;
-    while(redirections.containsKey(itK)) {
+    while(isRedirect(itK)) {
+      if(chain != null) {
+        chain.add(itK);
+      }
       
-      List<String> tmp = redirections.get(itK);
+      List<String> tmp = links(itK, REDIRECT_LINKS);
       
       if(tmp == null || tmp.isEmpty()) {
-        return itK;
+        break;
       }
 
       //FIXME: if tmp size is greater than 1, then something is wrong with the redirect page : Not handled!
@@ -222,7 +824,10 @@ public class DumpData {
         break;
       }
     }
-    if(found) return redirectId;
-    return itK;
+    int resolved = found ? redirectId : itK;
+    if(trace != null) {
+      trace.redirect(redirectId, resolved, chain.toArray(), found);
+    }
+    return resolved;
   }
 }
\ No newline at end of file
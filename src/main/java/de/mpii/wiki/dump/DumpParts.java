@@ -0,0 +1,266 @@
+package de.mpii.wiki.dump;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mpii.wiki.metrics.MappingMetrics;
+
+/**
+ * Dumps split into numbered part files (e.g. pages-articles1.xml-p1p41242, pages-articles2.xml-p41243p151573).
+ * The parts are read concurrently, each with its own parser, into one {@link DumpData}. Parsing and link
+ * extraction run in parallel, only storing the pages is serialized (see {@link DumpData#addPage(DumpData.Page)}).
+ */
+public class DumpParts {
+
+  private static final long PROGRESS_SECONDS = 30;
+
+  private static Logger logger_ = LoggerFactory.getLogger(DumpParts.class);
+
+  // orders part files by their numbers, so that part 10 follows part 9
+  private static final Comparator<File> NATURAL_ORDER = new Comparator<File>() {
+    @Override
+    public int compare(File f1, File f2) {
+      String s1 = f1.getPath();
+      String s2 = f2.getPath();
+      int i = 0;
+      int j = 0;
+      while (i < s1.length() && j < s2.length()) {
+        char c1 = s1.charAt(i);
+        char c2 = s2.charAt(j);
+        if (Character.isDigit(c1) && Character.isDigit(c2)) {
+          int end1 = digitsEnd(s1, i);
+          int end2 = digitsEnd(s2, j);
+          String n1 = stripZeros(s1.substring(i, end1));
+          String n2 = stripZeros(s2.substring(j, end2));
+          int cmp = (n1.length() != n2.length()) ? Integer.compare(n1.length(), n2.length()) : n1.compareTo(n2);
+          if (cmp != 0) {
+            return cmp;
+          }
+          i = end1;
+          j = end2;
+        } else {
+          if (c1 != c2) {
+            return Character.compare(c1, c2);
+          }
+          i++;
+          j++;
+        }
+      }
+      return Integer.compare(s1.length() - i, s2.length() - j);
+    }
+  };
+
+  private static int digitsEnd(String s, int start) {
+    int end = start;
+    while (end < s.length() && Character.isDigit(s.charAt(end))) {
+      end++;
+    }
+    return end;
+  }
+
+  private static String stripZeros(String digits) {
+    int i = 0;
+    while (i < digits.length() - 1 && digits.charAt(i) == '0') {
+      i++;
+    }
+    return digits.substring(i);
+  }
+
+  /**
+   * Resolves a comma separated list of dump files. An entry with wildcards in its file name (glob syntax,
+   * e.g. "dumps/enwiki-pages-articles*.xml-p*") is replaced by the matching files in number order.
+   *
+   * @throws IOException if a pattern matches no files.
+   */
+  public static List<File> resolve(String spec) throws IOException {
+    List<File> parts = new ArrayList<>();
+    for (String entry : spec.split(",")) {
+      entry = entry.trim();
+      if (entry.isEmpty()) {
+        continue;
+      }
+      File file = new File(entry);
+      String name = file.getName();
+      if (!name.matches(".*[*?\\[{].*")) {
+        parts.add(file);
+        continue;
+      }
+      File dir = (file.getParentFile() != null) ? file.getParentFile() : new File(".");
+      PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + name);
+      List<File> matches = new ArrayList<>();
+      File[] files = dir.listFiles();
+      if (files != null) {
+        for (File candidate : files) {
+          if (candidate.isFile() && matcher.matches(candidate.toPath().getFileName())) {
+            matches.add(candidate);
+          }
+        }
+      }
+      if (matches.isEmpty()) {
+        throw new IOException("No dump parts match : " + entry);
+      }
+      Collections.sort(matches, NATURAL_ORDER);
+      parts.addAll(matches);
+    }
+    return parts;
+  }
+
+  /**
+   * Reads all parts into data, using up to the given number of threads. Progress is logged per part.
+   */
+  public static void read(List<File> parts, DumpData data, int threads) throws IOException, XMLStreamException {
+    read(parts, data, threads, null);
+  }
+
+  /**
+   * Reads all parts of a full history dump into data, see {@link HistoryReader}.
+   *
+   * @param revisions Selects the revision of each page, null if the parts hold one revision per page.
+   */
+  public static void read(List<File> parts, DumpData data, int threads, RevisionSelector revisions) throws IOException, XMLStreamException {
+    if (parts.size() == 1) {
+      readPart(parts.get(0), data, revisions, null, 0);
+      return;
+    }
+    final List<File> files = parts;
+    final AtomicLongArray progress = new AtomicLongArray(parts.size());
+    ExecutorService readers = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, parts.size())), daemonThreads("dump-part"));
+    ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(daemonThreads("dump-progress"));
+    reporter.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < files.size(); i++) {
+          long read = progress.get(i);
+          long size = files.get(i).length();
+          if (read > 0 && read < size) {
+            logger_.info(files.get(i).getName() + " : " + (read * 100 / Math.max(1, size)) + "% (" + (read >> 20) + " of " + (size >> 20) + " MB)");
+          }
+        }
+      }
+    }, PROGRESS_SECONDS, PROGRESS_SECONDS, TimeUnit.SECONDS);
+
+    long start = System.currentTimeMillis();
+    try {
+      List<Future<Integer>> results = new ArrayList<>();
+      for (int i = 0; i < parts.size(); i++) {
+        results.add(readers.submit(new PartReader(parts.get(i), data, revisions, progress, i)));
+      }
+      for (Future<Integer> result : results) {
+        result.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while reading dump parts", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof XMLStreamException) {
+        throw (XMLStreamException) cause;
+      }
+      throw new RuntimeException(cause);
+    } finally {
+      readers.shutdownNow();
+      reporter.shutdownNow();
+    }
+    logger_.info("Read " + parts.size() + " parts (" + data.size() + " pages) in " + (System.currentTimeMillis() - start) / 1000 + " s");
+  }
+
+  private static int readPart(File part, DumpData data, RevisionSelector revisions, AtomicLongArray progress, int index) throws IOException, XMLStreamException {
+    long start = System.currentTimeMillis();
+    MappingMetrics metrics = data.getMetrics();
+    try (InputStream in = metrics.track(count(new BufferedInputStream(new FileInputStream(part), 1 << 16), progress, index))) {
+      int pages = (revisions == null) ? DumpReader.read(XMLInputFactory.newInstance().createXMLStreamReader(in), data)
+          : HistoryReader.read(XMLInputFactory.newInstance().createXMLStreamReader(in), data, null, revisions);
+      long elapsed = Math.max(1, System.currentTimeMillis() - start);
+      logger_.info(part.getName() + " : " + pages + " pages, " + (part.length() >> 20) + " MB in " + elapsed / 1000 + " s ("
+          + pages * 1000 / elapsed + " pages/s)");
+      return pages;
+    }
+  }
+
+  private static InputStream count(InputStream in, final AtomicLongArray progress, final int index) {
+    if (progress == null) {
+      return in;
+    }
+    return new FilterInputStream(in) {
+      @Override
+      public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+          progress.incrementAndGet(index);
+        }
+        return b;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+          progress.addAndGet(index, n);
+        }
+        return n;
+      }
+    };
+  }
+
+  private static ThreadFactory daemonThreads(final String name) {
+    return new ThreadFactory() {
+      private int count = 0;
+
+      @Override
+      public synchronized Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, name + "-" + (count++));
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+  }
+
+  private static class PartReader implements Callable<Integer> {
+    private final File part;
+    private final DumpData data;
+    private final RevisionSelector revisions;
+    private final AtomicLongArray progress;
+    private final int index;
+
+    PartReader(File part, DumpData data, RevisionSelector revisions, AtomicLongArray progress, int index) {
+      this.part = part;
+      this.data = data;
+      this.revisions = revisions;
+      this.progress = progress;
+      this.index = index;
+    }
+
+    @Override
+    public Integer call() throws IOException, XMLStreamException {
+      return readPart(part, data, revisions, progress, index);
+    }
+  }
+}
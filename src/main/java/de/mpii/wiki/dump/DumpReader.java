@@ -1,87 +1,348 @@
 package de.mpii.wiki.dump;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
 import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.events.EndElement;
-import javax.xml.stream.events.StartElement;
-import javax.xml.stream.events.XMLEvent;
+import javax.xml.stream.XMLStreamReader;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class DumpReader {
+import de.mpii.wiki.metrics.MappingMetrics;
+import de.mpii.wiki.metrics.MappingMetrics.Phase;
+
+/**
+ * Reads the pages of a dump one at a time (see {@link PageSource}), or all of them into {@link DumpData} and
+ * other {@link PageVisitor}s. A text that is skipped (of a page rejected by the filter, or when no visitor
+ * needs it) is stepped over by the parser without being turned into strings.
+ */
+public class DumpReader implements PageSource {
   //Xml markups used in Wikipedia dump file.
   private static final String PAGE_TAG = "page";
   private static final String PAGE_ID_TAG = "id";
   private static final String PAGE_TITLE_TAG = "title";
   private static final String PAGE_REVISION_TAG = "revision";
   private static final String PAGE_REVISION_TEXT_TAG = "text";
+  private static final String PAGE_REVISION_ID_TAG = "id";
+  private static final String PAGE_REVISION_SHA1_TAG = "sha1";
+  private static final String PAGE_REVISION_CONTRIBUTOR_TAG = "contributor";
 
   private static Logger logger_ = LoggerFactory.getLogger(DumpReader.class);
 
-  public static void read(XMLEventReader reader, DumpData data) throws XMLStreamException {
-    // basic page info
-    int pageId = -1;
-    String title = null;
-    String pageText = null;
+  private final XMLStreamReader reader;
+
+  private final PageFilter filter;
+
+  // basic page info
+  private int pageId = -1;
+  private String title = null;
+  private String pageText = null;
+  private long revisionId = -1;
+  private String sha1 = null;
+
+  // the text is read as one string (see getText), skipped, or read as chunks for page visitors
+  private boolean readText = true;
+  private List<String> textChunks = null;
+
+  public DumpReader(XMLStreamReader reader) {
+    this(reader, null);
+  }
+
+  /**
+   * @param filter Selects the pages to be returned (all pages if it is null), rejected pages are skipped before
+   *  their text is read.
+   */
+  public DumpReader(XMLStreamReader reader, PageFilter filter) {
+    this.reader = reader;
+    this.filter = filter;
+  }
+
+  /**
+   * @deprecated Use {@link #DumpReader(XMLStreamReader)}, an event reader builds the text of skipped pages.
+   */
+  @Deprecated
+  public DumpReader(XMLEventReader reader) {
+    this(reader, null);
+  }
+
+  /**
+   * @deprecated Use {@link #DumpReader(XMLStreamReader, PageFilter)}, an event reader builds the text of
+   *  skipped pages.
+   */
+  @Deprecated
+  public DumpReader(XMLEventReader reader, PageFilter filter) {
+    this(new EventStreamReader(reader), filter);
+  }
+
+  public static int read(XMLStreamReader reader, DumpData data) throws XMLStreamException {
+    return read(reader, data, null);
+  }
+
+  /**
+   * @deprecated Use {@link #read(XMLStreamReader, DumpData)}.
+   */
+  @Deprecated
+  public static int read(XMLEventReader reader, DumpData data) throws XMLStreamException {
+    return read(new EventStreamReader(reader), data, null);
+  }
+
+  /**
+   * Reads the pages accepted by the filter (all pages if it is null) into data. Rejected pages are skipped
+   * before their text is read.
+   *
+   * @return Number of pages read.
+   */
+  public static int read(XMLStreamReader reader, DumpData data, PageFilter filter) throws XMLStreamException {
+    return read(reader, filter, Collections.singletonList(data.visitor()), null);
+  }
+
+  /**
+   * @deprecated Use {@link #read(XMLStreamReader, DumpData, PageFilter)}.
+   */
+  @Deprecated
+  public static int read(XMLEventReader reader, DumpData data, PageFilter filter) throws XMLStreamException {
+    return read(new EventStreamReader(reader), data, filter);
+  }
+
+  /**
+   * Reads the pages accepted by the filter (all pages if it is null) in one pass and passes each of them to
+   * all visitors. The text of the pages is skipped if no visitor needs it, and each page is classified and its
+   * links extracted at most once (see {@link DumpData#visitor()}). The filter is called on the reading thread,
+   * {@link PageFilter#added(int)} once the page was dispatched.
+   *
+   * @param pool Runs the visitors (each visitor on one thread at a time) concurrently with reading, null to
+   *  call them on the reading thread. The pool must not be shut down during the scan.
+   * @return Number of pages read.
+   */
+  public static int read(XMLStreamReader reader, PageFilter filter, List<? extends PageVisitor> visitors, ExecutorService pool) throws XMLStreamException {
+    PageDispatcher dispatcher = new PageDispatcher(visitors, pool);
+    DumpReader pages = new DumpReader(reader, filter);
+    if (dispatcher.needsText()) {
+      pages.textChunks = new ArrayList<>();
+    } else {
+      pages.readText = false;
+    }
+
+    // time spent outside of page processing is accounted to parsing
+    MappingMetrics metrics = dispatcher.getExtractor().getMetrics();
+    long mark = System.nanoTime();
+    int count = 0;
+
+    try {
+      while (pages.nextPage()) {
+        count++;
+        metrics.time(Phase.PARSE, System.nanoTime() - mark);
+        dispatcher.dispatch(pages.pageId, pages.title, pages.textChunks, pages.revisionId, pages.sha1);
+        if(filter != null) {
+          filter.added(pages.pageId);
+        }
+        mark = System.nanoTime();
+      }
+      metrics.time(Phase.PARSE, System.nanoTime() - mark);
+    } finally {
+      dispatcher.await();
+    }
+    dispatcher.endDump();
+//    data.resolveAdditionalInfo();
+    return count;
+  }
+
+  /**
+   * @deprecated Use {@link #read(XMLStreamReader, PageFilter, List, ExecutorService)}.
+   */
+  @Deprecated
+  public static int read(XMLEventReader reader, PageFilter filter, List<? extends PageVisitor> visitors, ExecutorService pool) throws XMLStreamException {
+    return read(new EventStreamReader(reader), filter, visitors, pool);
+  }
+
+  @Override
+  public boolean next() throws IOException {
+    try {
+      return nextPage();
+    } catch (XMLStreamException e) {
+      throw new IOException("Invalid dump xml", e);
+    }
+  }
+
+  /**
+   * Advances to the next valid page accepted by the filter.
+   *
+   * @return false at the end of the dump.
+   */
+  public boolean nextPage() throws XMLStreamException {
+    reset();
 
     boolean withinRevisionTag = false;
+    boolean withinContributorTag = false;
+    boolean filtered = false;
+    boolean skipPage = false;
 
     while (reader.hasNext()) {
-      XMLEvent event = reader.nextEvent();
-      if (event.isStartElement()) {
-        StartElement startElement = event.asStartElement();
-        String strStartElement = startElement.getName().getLocalPart();
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        String strStartElement = reader.getLocalName();
 
         if(strStartElement.equals(PAGE_REVISION_TAG)) {
           withinRevisionTag = true;
         }
+        // title and id precede the revision, the filter is asked at the first other element once both are known
+        if(!filtered && (withinRevisionTag || (pageId != -1 && title != null && !strStartElement.equals(PAGE_ID_TAG)
+            && !strStartElement.equals(PAGE_TITLE_TAG)))) {
+          filtered = true;
+          skipPage = filter != null && !filter.accept(pageId, title);
+        }
 
         if(!withinRevisionTag) {
           switch (strStartElement) {
             case PAGE_ID_TAG:
-              pageId = Integer.parseInt(reader.nextEvent().asCharacters().getData());
+              pageId = Integer.parseInt(reader.getElementText().trim());
               break;
             case PAGE_TITLE_TAG:
-              title = reader.nextEvent().asCharacters().getData();
+              title = reader.getElementText();
               break;
             default:
               break;
           }
-        } else {
-          if(strStartElement.equals(PAGE_REVISION_TEXT_TAG)) {
-            pageText = reader.getElementText();            
+        } else if(!skipPage) {
+          switch (strStartElement) {
+            case PAGE_REVISION_TEXT_TAG:
+              if (textChunks != null) {
+                readChunks();
+              } else if (readText) {
+                pageText = reader.getElementText();
+              } else {
+                skipElement();
+              }
+              break;
+            case PAGE_REVISION_ID_TAG:
+              // the contributor has an id as well
+              if(!withinContributorTag) {
+                revisionId = Long.parseLong(reader.getElementText().trim());
+              }
+              break;
+            case PAGE_REVISION_SHA1_TAG:
+              sha1 = reader.getElementText().trim();
+              break;
+            case PAGE_REVISION_CONTRIBUTOR_TAG:
+              withinContributorTag = true;
+              break;
+            default:
+              break;
           }
         }
       }
 
-      if (event.isEndElement()) {
-        EndElement endElement = event.asEndElement();
-        String strEndElement = endElement.getName().getLocalPart();
+      if (event == XMLStreamConstants.END_ELEMENT) {
+        String strEndElement = reader.getLocalName();
         switch (strEndElement) {
           case PAGE_REVISION_TAG:
             withinRevisionTag = false;
             break;
+          case PAGE_REVISION_CONTRIBUTOR_TAG:
+            withinContributorTag = false;
+            break;
           case PAGE_TAG:
             // process retrieved page related information depending on the dump.
             if(pageId == -1 || title == null) {
               //  || pageText == null || pageText.equals("")
               logger_.warn("Invalid Page Entry");
             } else {
-              logger_.debug("Extracted page : " + title + "(id : " + pageId + ")");
-              data.addPageEntry(pageId, title, pageText);
+              // a page without revision
+              if(!filtered) {
+                skipPage = filter != null && !filter.accept(pageId, title);
+              }
+              if(!skipPage) {
+                logger_.debug("Extracted page : " + title + "(id : " + pageId + ")");
+                return true;
+              }
             }
-            
-            // reset
-            pageId = -1;
-            title = null;
-            pageText = null;            
+
+            reset();
+            filtered = false;
+            skipPage = false;
             break;
           default:
             break;
         }
-      }      
+      }
     }
-//    data.resolveAdditionalInfo();
-  } 
-}
\ No newline at end of file
+    return false;
+  }
+
+  private void reset() {
+    pageId = -1;
+    title = null;
+    pageText = null;
+    revisionId = -1;
+    sha1 = null;
+    if (textChunks != null) {
+      textChunks.clear();
+    }
+  }
+
+  // keeps the character data of the current element as reported by the parser
+  private void readChunks() throws XMLStreamException {
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.END_ELEMENT) {
+        return;
+      }
+      if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE) {
+        textChunks.add(reader.getText());
+      }
+    }
+  }
+
+  // the text is not requested from the parser, so no strings are built for it
+  private void skipElement() throws XMLStreamException {
+    while (reader.hasNext()) {
+      if (reader.next() == XMLStreamConstants.END_ELEMENT) {
+        return;
+      }
+    }
+  }
+
+  @Override
+  public int getId() {
+    return pageId;
+  }
+
+  @Override
+  public String getTitle() {
+    return title;
+  }
+
+  @Override
+  public String getText() {
+    return pageText;
+  }
+
+  /**
+   * Returns the revision id of the current page, -1 if the dump has none.
+   */
+  public long getRevisionId() {
+    return revisionId;
+  }
+
+  /**
+   * Returns the sha1 of the revision text of the current page, null if the dump has none.
+   */
+  public String getSha1() {
+    return sha1;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      reader.close();
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+  }
+}
@@ -45,6 +45,16 @@ public class DumpSettings {
     public String toString() {      
       return reprText;
     }
+
+    // returns the type for the representation text used in output, or null if unknown
+    public static MappedType fromRepr(String repr) {
+      for (MappedType type : values()) {
+        if (type.reprText.equals(repr)) {
+          return type;
+        }
+      }
+      return null;
+    }
   }
   
 }
@@ -0,0 +1,72 @@
+package de.mpii.wiki.dump;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+/**
+ * Steps through an {@link XMLEventReader} as a stream reader, for the deprecated event reader entry points of
+ * {@link DumpReader}. Only the cursor methods used by DumpReader are supported.
+ */
+class EventStreamReader extends StreamReaderDelegate {
+
+  private final XMLEventReader events;
+
+  private XMLEvent current = null;
+
+  EventStreamReader(XMLEventReader events) {
+    this.events = events;
+  }
+
+  @Override
+  public boolean hasNext() throws XMLStreamException {
+    return events.hasNext();
+  }
+
+  @Override
+  public int next() throws XMLStreamException {
+    current = events.nextEvent();
+    return current.getEventType();
+  }
+
+  @Override
+  public int getEventType() {
+    return current == null ? XMLStreamConstants.START_DOCUMENT : current.getEventType();
+  }
+
+  @Override
+  public String getLocalName() {
+    if (current.isStartElement()) {
+      return current.asStartElement().getName().getLocalPart();
+    }
+    return current.asEndElement().getName().getLocalPart();
+  }
+
+  // like the stream reader, leaves the cursor on the end element
+  @Override
+  public String getElementText() throws XMLStreamException {
+    StringBuilder text = new StringBuilder();
+    while (events.hasNext()) {
+      current = events.nextEvent();
+      if (current.isEndElement()) {
+        return text.toString();
+      }
+      if (current.isCharacters()) {
+        text.append(current.asCharacters().getData());
+      }
+    }
+    throw new XMLStreamException("Unexpected end of document in element text");
+  }
+
+  @Override
+  public String getText() {
+    return current.asCharacters().getData();
+  }
+
+  @Override
+  public void close() throws XMLStreamException {
+    events.close();
+  }
+}
@@ -0,0 +1,276 @@
+package de.mpii.wiki.dump;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mpii.wiki.metrics.MappingMetrics;
+import de.mpii.wiki.metrics.MappingMetrics.Phase;
+
+/**
+ * Reads full history dumps (pages-meta-history), which hold many revisions per page. Only one revision of
+ * each page is returned, chosen by a {@link RevisionSelector}. The timestamp of a revision precedes its
+ * text, so the text of a revision that cannot be selected is skipped by the parser without being copied.
+ * The text of the best revision so far is copied into a reused buffer, a String is built only for the
+ * revision finally selected. Dumps with one revision per page are read as well.
+ *
+ * Page titles are those at the time of the dump, as earlier titles are not part of history dumps.
+ */
+public class HistoryReader implements PageSource {
+  private static final String PAGE_TAG = "page";
+  private static final String PAGE_ID_TAG = "id";
+  private static final String PAGE_TITLE_TAG = "title";
+  private static final String PAGE_REVISION_TAG = "revision";
+  private static final String PAGE_REVISION_TIMESTAMP_TAG = "timestamp";
+  private static final String PAGE_REVISION_TEXT_TAG = "text";
+  private static final String PAGE_REVISION_ID_TAG = "id";
+  private static final String PAGE_REVISION_SHA1_TAG = "sha1";
+  private static final String PAGE_REVISION_CONTRIBUTOR_TAG = "contributor";
+
+  private static Logger logger_ = LoggerFactory.getLogger(HistoryReader.class);
+
+  private final XMLStreamReader reader;
+
+  private final PageFilter filter;
+
+  private final RevisionSelector selector;
+
+  // text of the best revision of the current page
+  private char[] buffer = new char[1 << 16];
+  private int length = 0;
+
+  private int pageId = -1;
+  private String title = null;
+  private String pageText = null;
+  private long revisionId = -1;
+  private String sha1 = null;
+
+  private long revisions = 0;
+  private long textsCopied = 0;
+  private long pagesMissing = 0;
+
+  /**
+   * @param filter Selects the pages to be returned (all pages if it is null), rejected pages are skipped before
+   *  their revisions are read.
+   */
+  public HistoryReader(XMLStreamReader reader, PageFilter filter, RevisionSelector selector) {
+    this.reader = reader;
+    this.filter = filter;
+    this.selector = selector;
+  }
+
+  /**
+   * Reads the selected revision of the pages accepted by the filter (all pages if it is null) into data.
+   *
+   * @return Number of pages read.
+   */
+  public static int read(XMLStreamReader reader, DumpData data, PageFilter filter, RevisionSelector selector) throws XMLStreamException {
+    HistoryReader pages = new HistoryReader(reader, filter, selector);
+
+    // time spent outside of page processing is accounted to parsing
+    MappingMetrics metrics = data.getMetrics();
+    long mark = System.nanoTime();
+    int count = 0;
+
+    while (pages.nextPage()) {
+      count++;
+      metrics.time(Phase.PARSE, System.nanoTime() - mark);
+      data.addPageEntry(pages.pageId, pages.title, pages.pageText, pages.revisionId, pages.sha1);
+      if(filter != null) {
+        filter.added(pages.pageId);
+      }
+      mark = System.nanoTime();
+    }
+    metrics.time(Phase.PARSE, System.nanoTime() - mark);
+    logger_.info("Selected " + selector + " revisions of " + count + " pages : " + pages.revisions + " revisions, "
+        + pages.textsCopied + " texts copied, " + pages.pagesMissing + " pages without revision");
+    return count;
+  }
+
+  @Override
+  public boolean next() throws IOException {
+    try {
+      return nextPage();
+    } catch (XMLStreamException e) {
+      throw new IOException("Invalid dump xml", e);
+    }
+  }
+
+  /**
+   * Advances to the next valid page accepted by the filter which has a revision selected.
+   *
+   * @return false at the end of the dump.
+   */
+  public boolean nextPage() throws XMLStreamException {
+    reset();
+    boolean withinRevisionTag = false;
+    boolean withinContributorTag = false;
+    boolean filtered = false;
+    boolean skipPage = false;
+    boolean selected = false;
+    String best = null;
+    String timestamp = null;
+    // id and whether the text was selected of the current revision
+    long currentId = -1;
+    boolean currentSelected = false;
+
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        String element = reader.getLocalName();
+        // title and id precede the revisions, the filter is asked at the first other element once both are known
+        if (!filtered && (element.equals(PAGE_REVISION_TAG) || (pageId != -1 && title != null && !element.equals(PAGE_ID_TAG)
+            && !element.equals(PAGE_TITLE_TAG)))) {
+          filtered = true;
+          skipPage = filter != null && !filter.accept(pageId, title);
+        }
+        if (element.equals(PAGE_REVISION_TAG)) {
+          withinRevisionTag = true;
+          timestamp = null;
+          currentId = -1;
+          currentSelected = false;
+        } else if (!withinRevisionTag) {
+          switch (element) {
+            case PAGE_ID_TAG:
+              pageId = Integer.parseInt(reader.getElementText().trim());
+              break;
+            case PAGE_TITLE_TAG:
+              title = reader.getElementText();
+              break;
+            default:
+              break;
+          }
+        } else if (element.equals(PAGE_REVISION_TIMESTAMP_TAG)) {
+          timestamp = reader.getElementText().trim();
+        } else if (element.equals(PAGE_REVISION_TEXT_TAG)) {
+          if (!skipPage && selector.accepts(timestamp) && (!selected || timestamp == null || best == null || timestamp.compareTo(best) >= 0)) {
+            copyText();
+            selected = true;
+            best = timestamp;
+            currentSelected = true;
+            revisionId = currentId;
+            sha1 = null;
+          } else {
+            skipElement();
+          }
+        } else if (element.equals(PAGE_REVISION_ID_TAG) && !withinContributorTag) {
+          currentId = Long.parseLong(reader.getElementText().trim());
+        } else if (element.equals(PAGE_REVISION_SHA1_TAG) && currentSelected) {
+          // the sha1 follows the text
+          sha1 = reader.getElementText().trim();
+        } else if (element.equals(PAGE_REVISION_CONTRIBUTOR_TAG)) {
+          withinContributorTag = true;
+        }
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        String element = reader.getLocalName();
+        if (element.equals(PAGE_REVISION_TAG)) {
+          withinRevisionTag = false;
+          revisions++;
+        } else if (element.equals(PAGE_REVISION_CONTRIBUTOR_TAG)) {
+          withinContributorTag = false;
+        } else if (element.equals(PAGE_TAG)) {
+          if (!filtered && pageId != -1 && title != null) {
+            // a page without revision
+            skipPage = filter != null && !filter.accept(pageId, title);
+          }
+          if (pageId == -1 || title == null) {
+            logger_.warn("Invalid Page Entry");
+          } else if (!skipPage && !selected) {
+            pagesMissing++;
+          } else if (!skipPage) {
+            pageText = new String(buffer, 0, length);
+            logger_.debug("Extracted page : " + title + "(id : " + pageId + ", revision time : " + best + ")");
+            return true;
+          }
+          reset();
+          filtered = false;
+          skipPage = false;
+          selected = false;
+          best = null;
+        }
+      }
+    }
+    return false;
+  }
+
+  private void reset() {
+    pageId = -1;
+    title = null;
+    pageText = null;
+    revisionId = -1;
+    sha1 = null;
+    length = 0;
+  }
+
+  // copies the characters of the current element into the buffer, without creating Strings
+  private void copyText() throws XMLStreamException {
+    length = 0;
+    textsCopied++;
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.END_ELEMENT) {
+        return;
+      }
+      if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE) {
+        int n = reader.getTextLength();
+        if (length + n > buffer.length) {
+          buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + n));
+        }
+        System.arraycopy(reader.getTextCharacters(), reader.getTextStart(), buffer, length, n);
+        length += n;
+      }
+    }
+  }
+
+  private void skipElement() throws XMLStreamException {
+    while (reader.hasNext()) {
+      if (reader.next() == XMLStreamConstants.END_ELEMENT) {
+        return;
+      }
+    }
+  }
+
+  @Override
+  public int getId() {
+    return pageId;
+  }
+
+  @Override
+  public String getTitle() {
+    return title;
+  }
+
+  @Override
+  public String getText() {
+    return pageText;
+  }
+
+  /**
+   * Returns the id of the selected revision of the current page, -1 if the dump has none.
+   */
+  public long getRevisionId() {
+    return revisionId;
+  }
+
+  /**
+   * Returns the sha1 of the selected revision text of the current page, null if the dump has none.
+   */
+  public String getSha1() {
+    return sha1;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      reader.close();
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+  }
+}
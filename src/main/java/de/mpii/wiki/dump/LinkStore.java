@@ -0,0 +1,336 @@
+package de.mpii.wiki.dump;
+
+import gnu.trove.map.TIntLongMap;
+import gnu.trove.map.hash.TIntLongHashMap;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mpii.wiki.metrics.MappingMetrics;
+
+/**
+ * Keeps the link lists of the pages of a dump in a log file instead of the heap, see
+ * {@link DumpData#setLinkStore(LinkStore)}. Only the offset of each list is held in memory; lists read back
+ * are kept in a size bounded LRU cache, as the lists of disambiguation candidates are read repeatedly.
+ *
+ * Lists are appended in the order pages are added and read with positional reads of the log file, so
+ * reading the lists in dump order (e.g. when writing the link graph) reads the file sequentially. A list
+ * replaced or removed stays in the log. The log file is deleted on {@link #close()}.
+ *
+ * A list of another store can be shared (see {@link #share(int, LinkStore)}) instead of being copied, e.g.
+ * for the unchanged pages of a source dump reused from the target. It is read from the log of the other
+ * store, which must be closed after this one.
+ *
+ * Instances are safe for concurrent use by multiple threads.
+ */
+public class LinkStore implements Closeable {
+
+  public static final long DEFAULT_CACHE_BYTES = 256L << 20;
+
+  // most lists are read with a single read of this size
+  private static final int READ_SIZE = 1 << 12;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static Logger logger_ = LoggerFactory.getLogger(LinkStore.class);
+
+  private final File file;
+
+  private final long cacheBytes;
+
+  private final MappingMetrics metrics;
+
+  private final DataOutputStream out;
+
+  private final RandomAccessFile in;
+
+  // page id -> offset of its list in the log and number of its links, see entry
+  private final TIntLongMap index = new TIntLongHashMap();
+
+  // page id -> entry of its list in the log of the shared store
+  private final TIntLongMap sharedIndex = new TIntLongHashMap();
+
+  private LinkStore shared;
+
+  // bits of an index entry holding the number of links, the offset is held by the upper bits
+  private static final int COUNT_BITS = 24;
+
+  // bytes appended to the log, and bytes written through to the file
+  private long size = 0;
+  private long flushed = 0;
+
+  // lists read back, least recently used first
+  private final LinkedHashMap<Integer, List<String>> cache = new LinkedHashMap<>(1024, 0.75f, true);
+
+  private long cachedBytes = 0;
+
+  private long hits = 0;
+  private long misses = 0;
+
+  private LinkStore(File file, long cacheBytes, MappingMetrics metrics) throws IOException {
+    this.file = file;
+    this.cacheBytes = cacheBytes;
+    this.metrics = metrics;
+    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    in = new RandomAccessFile(file, "r");
+  }
+
+  /**
+   * Creates a store with a new log file in the given directory.
+   *
+   * @param cacheBytes Approximate heap size bound of the lists cached.
+   * @param metrics Metrics the cache hits and read latencies are recorded in.
+   */
+  public static LinkStore create(File dir, String name, long cacheBytes, MappingMetrics metrics) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Cannot create link store directory : " + dir);
+    }
+    return new LinkStore(File.createTempFile(name, ".links", dir), cacheBytes, metrics);
+  }
+
+  /**
+   * Stores the links of the given page, replacing its earlier list.
+   */
+  public synchronized void put(int id, List<String> links) throws IOException {
+    byte[][] encoded = new byte[links.size()][];
+    int length = 4;
+    for (int i = 0; i < encoded.length; i++) {
+      encoded[i] = links.get(i).getBytes(UTF8);
+      length += 4 + encoded[i].length;
+    }
+    out.writeInt(length);
+    out.writeInt(encoded.length);
+    for (byte[] bytes : encoded) {
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+    index.put(id, entry(size, encoded.length));
+    sharedIndex.remove(id);
+    size += 4 + length;
+    uncache(id);
+  }
+
+  /**
+   * Stores the list the given store holds for the page as the list of the page, without reading or copying
+   * it. All lists shared by a store have to be of the same other store.
+   *
+   * @return false if the other store holds no list for the page.
+   */
+  public boolean share(int id, LinkStore other) {
+    if (other == this) {
+      throw new IllegalArgumentException("A store cannot share its own lists");
+    }
+    long entry;
+    synchronized (other) {
+      if (!other.index.containsKey(id)) {
+        return false;
+      }
+      entry = other.index.get(id);
+    }
+    synchronized (this) {
+      if (shared != null && shared != other) {
+        throw new IllegalStateException("Lists are already shared with another store");
+      }
+      shared = other;
+      index.remove(id);
+      sharedIndex.put(id, entry);
+      uncache(id);
+    }
+    return true;
+  }
+
+  public synchronized boolean contains(int id) {
+    return index.containsKey(id) || sharedIndex.containsKey(id);
+  }
+
+  public synchronized void remove(int id) {
+    index.remove(id);
+    sharedIndex.remove(id);
+    uncache(id);
+  }
+
+  /**
+   * Returns the number of links of the given page without reading its list, -1 if the page has no list stored.
+   */
+  public synchronized int count(int id) {
+    if (index.containsKey(id)) {
+      return (int) (index.get(id) & ((1 << COUNT_BITS) - 1));
+    }
+    if (sharedIndex.containsKey(id)) {
+      return (int) (sharedIndex.get(id) & ((1 << COUNT_BITS) - 1));
+    }
+    return -1;
+  }
+
+  // the number of links is capped, lists of more links are only counted wrong
+  private static long entry(long offset, int count) {
+    return (offset << COUNT_BITS) | Math.min(count, (1 << COUNT_BITS) - 1);
+  }
+
+  /**
+   * Returns the links of the given page, null if the page has no list stored.
+   */
+  public List<String> get(int id) throws IOException {
+    LinkStore owner;
+    long entry;
+    synchronized (this) {
+      List<String> links = cache.get(id);
+      if (links != null) {
+        hits++;
+        metrics.addLinkStoreHit();
+        return links;
+      }
+      if (index.containsKey(id)) {
+        owner = this;
+        entry = index.get(id);
+      } else if (sharedIndex.containsKey(id)) {
+        owner = shared;
+        entry = sharedIndex.get(id);
+      } else {
+        return null;
+      }
+      misses++;
+    }
+
+    List<String> links = owner.read(entry >>> COUNT_BITS);
+
+    synchronized (this) {
+      // the page may have been replaced while its list was read
+      TIntLongMap entries = (owner == this) ? index : sharedIndex;
+      if (entries.containsKey(id) && entries.get(id) == entry) {
+        cache(id, links);
+      }
+    }
+    return links;
+  }
+
+  // reads the list at the given offset of the log, it is not cached
+  private List<String> read(long offset) throws IOException {
+    long limit;
+    synchronized (this) {
+      if (offset >= flushed) {
+        out.flush();
+        flushed = size;
+      }
+      limit = flushed;
+    }
+
+    long start = System.nanoTime();
+    FileChannel channel = in.getChannel();
+    ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(READ_SIZE, limit - offset));
+    read(channel, buffer, offset);
+    int length = buffer.getInt();
+    if (length > buffer.remaining()) {
+      ByteBuffer entry = ByteBuffer.allocate(length);
+      entry.put(buffer);
+      read(channel, entry, offset + 4 + entry.position());
+      buffer = entry;
+    }
+    int count = buffer.getInt();
+    List<String> links = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int bytes = buffer.getInt();
+      links.add(new String(buffer.array(), buffer.position(), bytes, UTF8));
+      buffer.position(buffer.position() + bytes);
+    }
+    metrics.addLinkStoreRead(System.nanoTime() - start);
+    return links;
+  }
+
+  // same as get, for the accessors of DumpData which do not throw IOException
+  List<String> links(int id) {
+    try {
+      return get(id);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to read links of page " + id + " from " + file, e);
+    }
+  }
+
+  // fills the remaining buffer from the given position and flips it
+  private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int n = channel.read(buffer, position);
+      if (n < 0) {
+        throw new IOException("Unexpected end of link store");
+      }
+      position += n;
+    }
+    buffer.flip();
+  }
+
+  private void cache(int id, List<String> links) {
+    long bytes = weight(links);
+    if (bytes > cacheBytes) {
+      return;
+    }
+    uncache(id);
+    cache.put(id, links);
+    cachedBytes += bytes;
+    for (Iterator<Map.Entry<Integer, List<String>>> it = cache.entrySet().iterator(); cachedBytes > cacheBytes && it.hasNext();) {
+      List<String> eldest = it.next().getValue();
+      it.remove();
+      cachedBytes -= weight(eldest);
+    }
+  }
+
+  private void uncache(int id) {
+    List<String> links = cache.remove(id);
+    if (links != null) {
+      cachedBytes -= weight(links);
+    }
+  }
+
+  // estimated heap size of a list: two bytes per char plus the list and string overheads
+  private static long weight(List<String> links) {
+    long bytes = 64;
+    for (String link : links) {
+      bytes += 56 + 2L * link.length();
+    }
+    return bytes;
+  }
+
+  public synchronized int size() {
+    return index.size() + sharedIndex.size();
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Closes and deletes the log file.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    try {
+      out.close();
+      in.close();
+    } finally {
+      if (!file.delete()) {
+        logger_.warn("Failed to delete link store : " + file);
+      }
+    }
+    logger_.info("Link store " + file.getName() + " : " + index.size() + " lists, " + sharedIndex.size() + " shared, " + (size >> 20)
+        + " MB, " + hits + " hits, " + misses + " misses");
+  }
+}
@@ -0,0 +1,248 @@
+package de.mpii.wiki.dump;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.mpii.wiki.metrics.MappingMetrics;
+
+/**
+ * Dispatches the pages read by {@link DumpReader} to the registered visitors. Without a pool, the visitors
+ * are called on the reading thread. With a pool, each visitor has its own lane: the pages are queued per
+ * visitor and the lanes run on the pool, so the visitors run concurrently with each other and with parsing
+ * while each of them still sees the pages one at a time in dump order. The number of pages queued is bounded.
+ */
+class PageDispatcher {
+
+  private static final int MAX_PAGES_IN_FLIGHT = 256;
+
+  // pages visited by a lane before it yields its thread to other lanes
+  private static final int LANE_BATCH = 64;
+
+  private final List<Lane> lanes = new ArrayList<>();
+
+  private final ExecutorService pool;
+
+  // extracts the pages for all visitors needing their links
+  private final DumpData extractor;
+
+  private final boolean needsText;
+
+  private final Semaphore inFlight = new Semaphore(MAX_PAGES_IN_FLIGHT);
+
+  // first exception thrown by a visitor running on the pool
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+  PageDispatcher(List<? extends PageVisitor> visitors, ExecutorService pool) {
+    this.pool = pool;
+    DumpData data = null;
+    boolean text = false;
+    for (PageVisitor visitor : visitors) {
+      lanes.add(new Lane(visitor));
+      text |= visitor.needsText() || visitor.needsLinks();
+      if (data == null && visitor instanceof DumpData.DataVisitor) {
+        data = ((DumpData.DataVisitor) visitor).getData();
+      }
+    }
+    needsText = text;
+    extractor = (data != null) ? data : DumpData.extractor(new MappingMetrics());
+  }
+
+  /**
+   * Returns true if some visitor needs the text or the links of the pages.
+   */
+  boolean needsText() {
+    return needsText;
+  }
+
+  DumpData getExtractor() {
+    return extractor;
+  }
+
+  /**
+   * Visits the page with all visitors, or queues it on their lanes. The chunks (null if no visitor needs the
+   * text) are copied if needed.
+   */
+  void dispatch(int id, String title, List<String> chunks, long revisionId, String sha1) {
+    if (pool == null) {
+      VisitedPage page = new VisitedPage(id, title, chunks, revisionId, sha1);
+      for (Lane lane : lanes) {
+        lane.visit(page);
+      }
+      return;
+    }
+    checkFailure();
+    try {
+      inFlight.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("Interrupted while dispatching pages");
+    }
+    VisitedPage page = new VisitedPage(id, title, (chunks != null) ? new ArrayList<>(chunks) : chunks, revisionId, sha1);
+    page.remaining = new AtomicInteger(lanes.size());
+    for (Lane lane : lanes) {
+      lane.offer(page);
+    }
+  }
+
+  /**
+   * Waits until the lanes visited all pages queued.
+   */
+  void await() {
+    if (pool != null) {
+      inFlight.acquireUninterruptibly(MAX_PAGES_IN_FLIGHT);
+      inFlight.release(MAX_PAGES_IN_FLIGHT);
+    }
+  }
+
+  /**
+   * Ends the scan, after {@link #await()}. Exceptions of visitors running on the pool are rethrown.
+   */
+  void endDump() {
+    checkFailure();
+    for (Lane lane : lanes) {
+      lane.visitor.endDump();
+    }
+  }
+
+  private void checkFailure() {
+    Throwable cause = failure.get();
+    if (cause instanceof RuntimeException) {
+      throw (RuntimeException) cause;
+    }
+    if (cause instanceof Error) {
+      throw (Error) cause;
+    }
+    if (cause != null) {
+      throw new IllegalStateException("Page visitor failed", cause);
+    }
+  }
+
+  private void done(VisitedPage page) {
+    if (page.remaining.decrementAndGet() == 0) {
+      inFlight.release();
+    }
+  }
+
+  private class VisitedPage {
+    final int id;
+    final String title;
+    final List<String> chunks;
+    final long revisionId;
+    final String sha1;
+    AtomicInteger remaining;
+    private DumpData.Page parsed;
+
+    VisitedPage(int id, String title, List<String> chunks, long revisionId, String sha1) {
+      this.id = id;
+      this.title = title;
+      this.chunks = chunks;
+      this.revisionId = revisionId;
+      this.sha1 = sha1;
+    }
+
+    // extracted once, by the first visitor needing the links
+    synchronized DumpData.Page parsed() {
+      if (parsed == null) {
+        String text;
+        if (chunks.size() == 1) {
+          text = chunks.get(0);
+        } else {
+          StringBuilder sb = new StringBuilder();
+          for (String chunk : chunks) {
+            sb.append(chunk);
+          }
+          text = sb.toString();
+        }
+        parsed = extractor.extractPage(id, title, text, revisionId, sha1);
+      }
+      return parsed;
+    }
+  }
+
+  private class Lane implements Runnable {
+    final PageVisitor visitor;
+    private final boolean text;
+    private final boolean links;
+
+    private final ArrayDeque<VisitedPage> queue = new ArrayDeque<>();
+    private boolean scheduled = false;
+
+    Lane(PageVisitor visitor) {
+      this.visitor = visitor;
+      this.text = visitor.needsText();
+      this.links = visitor.needsLinks();
+    }
+
+    void visit(VisitedPage page) {
+      visitor.startPage(page.id, page.title);
+      if (text) {
+        for (String chunk : page.chunks) {
+          visitor.text(chunk);
+        }
+      }
+      visitor.revision(page.revisionId, page.sha1);
+      if (links) {
+        visitor.parsed(page.parsed());
+      }
+      visitor.endPage();
+    }
+
+    void offer(VisitedPage page) {
+      synchronized (this) {
+        queue.add(page);
+        if (scheduled) {
+          return;
+        }
+        scheduled = true;
+      }
+      schedule();
+    }
+
+    private void schedule() {
+      try {
+        pool.execute(this);
+      } catch (RejectedExecutionException e) {
+        // the pages are still released, the scan fails
+        failure.compareAndSet(null, e);
+        process(Integer.MAX_VALUE);
+      }
+    }
+
+    @Override
+    public void run() {
+      if (process(LANE_BATCH)) {
+        schedule();
+      }
+    }
+
+    // visits up to max pages, returns true if pages remain
+    private boolean process(int max) {
+      for (int i = 0; i < max; i++) {
+        VisitedPage page;
+        synchronized (this) {
+          page = queue.poll();
+          if (page == null) {
+            scheduled = false;
+            return false;
+          }
+        }
+        if (failure.get() == null) {
+          try {
+            visit(page);
+          } catch (RuntimeException | Error e) {
+            failure.compareAndSet(null, e);
+          }
+        }
+        done(page);
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package de.mpii.wiki.dump;
+
+/**
+ * Selects the pages of a dump to be read, see {@link DumpReader#read(javax.xml.stream.XMLStreamReader, DumpData, PageFilter)}.
+ */
+public interface PageFilter {
+
+  /**
+   * Called with the id and title of each page before its text is read.
+   *
+   * @return true if the page should be added to the dump data, false to skip it.
+   */
+  boolean accept(int id, String title);
+
+  /**
+   * Called after an accepted page was added to the dump data.
+   */
+  void added(int id);
+}
@@ -0,0 +1,23 @@
+package de.mpii.wiki.dump;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Sequence of dump pages, read one at a time.
+ */
+public interface PageSource extends Closeable {
+
+  /**
+   * Advances to the next page.
+   *
+   * @return false if there are no more pages.
+   */
+  boolean next() throws IOException;
+
+  int getId();
+
+  String getTitle();
+
+  String getText();
+}
@@ -0,0 +1,51 @@
+package de.mpii.wiki.dump;
+
+/**
+ * Receives the pages of a dump scan, see {@link DumpReader#read(javax.xml.stream.XMLStreamReader, PageFilter, java.util.List, java.util.concurrent.ExecutorService)}.
+ * Several visitors are fed by one scan, e.g. {@link DumpData#visitor()} and a visitor collecting link statistics.
+ *
+ * For each page, the callbacks are called in this order: startPage, text (only if the visitor needs the text,
+ * once per chunk reported by the parser), revision, parsed (only if the visitor needs the links), endPage.
+ * Pages are visited in dump order, and the callbacks of one visitor are never called concurrently.
+ */
+public interface PageVisitor {
+
+  /**
+   * Returns true if the text chunks of the pages should be passed to {@link #text(String)}. If no visitor needs
+   * the text or the links, the text of the pages is skipped by the reader.
+   */
+  boolean needsText();
+
+  /**
+   * Returns true if the pages should be classified and their links extracted for {@link #parsed(DumpData.Page)}.
+   * Each page is extracted once for all visitors.
+   */
+  boolean needsLinks();
+
+  void startPage(int id, String title);
+
+  /**
+   * Called with the next chunk of the page text, the text is the concatenation of the chunks.
+   */
+  void text(String chunk);
+
+  /**
+   * Called with the revision of the page.
+   *
+   * @param revisionId The revision id, -1 if the dump has none.
+   * @param sha1 The sha1 of the revision text, null if the dump has none.
+   */
+  void revision(long revisionId, String sha1);
+
+  /**
+   * Called with the page classified and its links extracted.
+   */
+  void parsed(DumpData.Page page);
+
+  void endPage();
+
+  /**
+   * Called once after the last page of the dump.
+   */
+  void endDump();
+}
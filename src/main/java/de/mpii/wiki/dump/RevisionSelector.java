@@ -0,0 +1,80 @@
+package de.mpii.wiki.dump;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Selects the revision of each page read from a full history dump (pages-meta-history), see
+ * {@link HistoryReader}: the latest revision, or the latest revision at or before a given time.
+ */
+public final class RevisionSelector {
+
+  /** Selects the latest revision of each page. */
+  public static final RevisionSelector LATEST = new RevisionSelector(null);
+
+  // dump timestamps (e.g. 2014-05-02T18:06:15Z) compare in time order as strings
+  private static final String TIMESTAMP_FORMAT = "yyyy-MM-dd'T'HH:mm:ss'Z'";
+
+  private static final String DATE_FORMAT = "yyyy-MM-dd";
+
+  private final String asOf;
+
+  private RevisionSelector(String asOf) {
+    this.asOf = asOf;
+  }
+
+  /**
+   * Selects the revision of each page current at the given time. Pages created later are skipped.
+   */
+  public static RevisionSelector asOf(Date time) {
+    return new RevisionSelector(format(TIMESTAMP_FORMAT).format(time));
+  }
+
+  /**
+   * Parses "latest", a dump timestamp (2014-05-02T18:06:15Z) or a date (2014-05-02, the start of the day
+   * in UTC).
+   *
+   * @throws IllegalArgumentException if the value is neither.
+   */
+  public static RevisionSelector parse(String value) {
+    if (value.equals("latest")) {
+      return LATEST;
+    }
+    try {
+      String pattern = (value.length() == DATE_FORMAT.length()) ? DATE_FORMAT : TIMESTAMP_FORMAT;
+      return asOf(format(pattern).parse(value));
+    } catch (ParseException e) {
+      throw new IllegalArgumentException("Invalid revision time : " + value);
+    }
+  }
+
+  private static SimpleDateFormat format(String pattern) {
+    SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.ROOT);
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    format.setLenient(false);
+    return format;
+  }
+
+  /**
+   * @param timestamp The timestamp of a revision, null if the dump has none.
+   * @return true if the revision may be selected.
+   */
+  public boolean accepts(String timestamp) {
+    return asOf == null || timestamp == null || timestamp.compareTo(asOf) <= 0;
+  }
+
+  /**
+   * Returns the time revisions are selected at, null for the latest revisions.
+   */
+  public String getAsOf() {
+    return asOf;
+  }
+
+  @Override
+  public String toString() {
+    return (asOf == null) ? "latest" : asOf;
+  }
+}
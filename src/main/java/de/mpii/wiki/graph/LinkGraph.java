@@ -0,0 +1,146 @@
+package de.mpii.wiki.graph;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Memory mapped link graph written by {@link LinkGraphWriter}. Nodes are numbered 0 to nodes - 1 in the
+ * order of their page ids.
+ */
+public class LinkGraph implements Closeable {
+
+  private final RandomAccessFile file;
+
+  private final int nodes;
+
+  private final long edges;
+
+  private final IntBuffer ids;
+
+  private final LongBuffer offsets;
+
+  private final IntBuffer[] regions;
+
+  private LinkGraph(RandomAccessFile file) throws IOException {
+    this.file = file;
+    FileChannel channel = file.getChannel();
+
+    ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, LinkGraphFormat.HEADER_SIZE).order(LinkGraphFormat.ORDER);
+    if (header.getInt() != LinkGraphFormat.MAGIC) {
+      throw new IOException("Not a link graph file");
+    }
+    int version = header.getInt();
+    if (version != LinkGraphFormat.VERSION) {
+      throw new IOException("Unsupported link graph version : " + version);
+    }
+    nodes = header.getInt();
+    header.getInt();
+    edges = header.getLong();
+    long offsetsOffset = header.getLong();
+    long targetsOffset = header.getLong();
+
+    ids = channel.map(MapMode.READ_ONLY, LinkGraphFormat.HEADER_SIZE, 4L * nodes).order(LinkGraphFormat.ORDER).asIntBuffer();
+    offsets = channel.map(MapMode.READ_ONLY, offsetsOffset, 8L * (nodes + 1)).order(LinkGraphFormat.ORDER).asLongBuffer();
+
+    long targetsSize = 4L * edges;
+    int regionCount = (int) ((targetsSize + LinkGraphFormat.REGION_SIZE - 1) >>> LinkGraphFormat.REGION_SHIFT);
+    regions = new IntBuffer[regionCount];
+    for (int i = 0; i < regionCount; i++) {
+      long start = (long) i << LinkGraphFormat.REGION_SHIFT;
+      regions[i] = channel.map(MapMode.READ_ONLY, targetsOffset + start, Math.min(LinkGraphFormat.REGION_SIZE, targetsSize - start))
+          .order(LinkGraphFormat.ORDER).asIntBuffer();
+    }
+  }
+
+  public static LinkGraph open(File graphFile) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(graphFile, "r");
+    try {
+      return new LinkGraph(raf);
+    } catch (IOException ioe) {
+      raf.close();
+      throw ioe;
+    }
+  }
+
+  public int getNodeCount() {
+    return nodes;
+  }
+
+  public long getEdgeCount() {
+    return edges;
+  }
+
+  public int getPageId(int node) {
+    return ids.get(node);
+  }
+
+  /**
+   * Returns the node of the given page, -1 if the page is not part of the graph.
+   */
+  public int getNode(int pageId) {
+    int low = 0;
+    int high = nodes - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int id = ids.get(mid);
+      if (id < pageId) {
+        low = mid + 1;
+      } else if (id > pageId) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  public int getOutDegree(int node) {
+    return (int) (offsets.get(node + 1) - offsets.get(node));
+  }
+
+  /**
+   * Returns the nodes the given node links to, in ascending order.
+   */
+  public int[] getTargets(int node) {
+    long start = offsets.get(node);
+    int[] targets = new int[(int) (offsets.get(node + 1) - start)];
+    for (int i = 0; i < targets.length; i++) {
+      targets[i] = getTarget(start + i);
+    }
+    return targets;
+  }
+
+  public boolean hasEdge(int from, int to) {
+    long low = offsets.get(from);
+    long high = offsets.get(from + 1) - 1;
+    while (low <= high) {
+      long mid = (low + high) >>> 1;
+      int target = getTarget(mid);
+      if (target < to) {
+        low = mid + 1;
+      } else if (target > to) {
+        high = mid - 1;
+      } else {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private int getTarget(long edge) {
+    // regions hold a multiple of 4 bytes, so targets never span two regions
+    return regions[(int) (edge >>> (LinkGraphFormat.REGION_SHIFT - 2))].get((int) (edge & ((LinkGraphFormat.REGION_SIZE >>> 2) - 1)));
+  }
+
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+}
@@ -0,0 +1,45 @@
+package de.mpii.wiki.graph;
+
+import java.nio.ByteOrder;
+
+/**
+ * Layout of the binary link graph file, compressed sparse row (CSR) in little endian byte order.
+ *
+ * <pre>
+ * header  : magic(int) version(int) nodes(int) reserved(int) edges(long) offsetsOffset(long) targetsOffset(long)
+ * ids     : nodes x pageId(int), ascending, padded to 8 bytes
+ * offsets : (nodes + 1) x edge offset(long), the targets of node i are targets[offsets[i], offsets[i + 1])
+ * targets : edges x node index(int), ascending and without duplicates per node
+ * </pre>
+ *
+ * Nodes are the pages of the target dump which are not redirects. Links are resolved to node indices (not page
+ * ids) through the titles of the dump, links to redirects are resolved to the page redirected to and links
+ * which cannot be resolved are dropped.
+ */
+final class LinkGraphFormat {
+
+  static final int MAGIC = 0x57474c43; // "WGLC"
+
+  static final int VERSION = 1;
+
+  static final int HEADER_SIZE = 40;
+
+  static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+  // targets are mapped in regions of this size
+  static final int REGION_SHIFT = 30;
+
+  static final long REGION_SIZE = 1L << REGION_SHIFT;
+
+  private LinkGraphFormat() {
+  }
+
+  static long offsetsOffset(int nodes) {
+    long idsEnd = HEADER_SIZE + 4L * nodes;
+    return (idsEnd + 7) & ~7L;
+  }
+
+  static long targetsOffset(int nodes) {
+    return offsetsOffset(nodes) + 8L * (nodes + 1);
+  }
+}
@@ -0,0 +1,146 @@
+package de.mpii.wiki.graph;
+
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mpii.wiki.dump.DumpData;
+import de.mpii.wiki.metrics.MappingMetrics.Phase;
+
+/**
+ * Writes the link graph of a target dump, as extracted during the mapping, into the format read by
+ * {@link LinkGraph}. Targets are written as they are resolved, only the offsets are held in memory.
+ */
+public class LinkGraphWriter {
+
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  private static Logger logger_ = LoggerFactory.getLogger(LinkGraphWriter.class);
+
+  /**
+   * Writes the graph of the pages of data, which must be a target dump (redirects and disambiguations are
+   * only kept for target dumps).
+   *
+   * @return Number of edges written.
+   */
+  public static long write(File file, DumpData data) throws IOException {
+    long start = System.nanoTime();
+
+    // nodes are all pages except redirects, disambiguations link to their candidates
+    int[] pageIds = data.getPageIds();
+    int nodes = 0;
+    for (int id : pageIds) {
+      if (data.isValidId(id) || data.isDisambiguation(id)) {
+        pageIds[nodes++] = id;
+      }
+    }
+    int[] ids = Arrays.copyOf(pageIds, nodes);
+    Arrays.sort(ids);
+    TIntIntMap index = new TIntIntHashMap(nodes * 2, 0.5f, -1, -1);
+    for (int i = 0; i < nodes; i++) {
+      index.put(ids[i], i);
+    }
+    // redirects are resolved once, not per link
+    for (int id : data.getRedirectIds()) {
+      int node = index.get(data.getRedirectedId(id));
+      if (node >= 0) {
+        index.put(id, node);
+      }
+    }
+
+    long[] offsets = new long[nodes + 1];
+    long edges = 0;
+    long unresolved = 0;
+    int[] row = new int[64];
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+      raf.setLength(0);
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(LinkGraphFormat.ORDER);
+
+      channel.position(LinkGraphFormat.targetsOffset(nodes));
+      for (int i = 0; i < nodes; i++) {
+        List<String> links = data.isValidId(ids[i]) ? data.getPageLinks(ids[i]) : data.getDisambiguationLinks(ids[i]);
+        int size = 0;
+        if (links != null) {
+          if (row.length < links.size()) {
+            row = new int[links.size()];
+          }
+          for (String link : links) {
+            int node = data.hasTitle(link) ? index.get(data.getId(link)) : -1;
+            if (node >= 0) {
+              row[size++] = node;
+            } else {
+              unresolved++;
+            }
+          }
+        }
+        Arrays.sort(row, 0, size);
+        int previous = -1;
+        for (int j = 0; j < size; j++) {
+          if (row[j] == previous) {
+            continue;
+          }
+          previous = row[j];
+          if (buffer.remaining() < 4) {
+            flush(channel, buffer);
+          }
+          buffer.putInt(row[j]);
+          edges++;
+        }
+        offsets[i + 1] = edges;
+      }
+      flush(channel, buffer);
+
+      // header, ids and offsets precede the targets
+      channel.position(0);
+      buffer.putInt(LinkGraphFormat.MAGIC);
+      buffer.putInt(LinkGraphFormat.VERSION);
+      buffer.putInt(nodes);
+      buffer.putInt(0);
+      buffer.putLong(edges);
+      buffer.putLong(LinkGraphFormat.offsetsOffset(nodes));
+      buffer.putLong(LinkGraphFormat.targetsOffset(nodes));
+      for (int i = 0; i < nodes; i++) {
+        if (buffer.remaining() < 4) {
+          flush(channel, buffer);
+        }
+        buffer.putInt(ids[i]);
+      }
+      if (buffer.remaining() < 8) {
+        flush(channel, buffer);
+      }
+      for (long pad = LinkGraphFormat.HEADER_SIZE + 4L * nodes; pad < LinkGraphFormat.offsetsOffset(nodes); pad++) {
+        buffer.put((byte) 0);
+      }
+      for (int i = 0; i <= nodes; i++) {
+        if (buffer.remaining() < 8) {
+          flush(channel, buffer);
+        }
+        buffer.putLong(offsets[i]);
+      }
+      flush(channel, buffer);
+      channel.force(false);
+    }
+    data.getMetrics().time(Phase.LINK_GRAPH, System.nanoTime() - start);
+    logger_.info("Link graph written to " + file.getName() + " : " + nodes + " nodes, " + edges + " edges, "
+        + unresolved + " links unresolved, in " + (System.nanoTime() - start) / 1000000 + " ms");
+    return edges;
+  }
+
+  private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+}
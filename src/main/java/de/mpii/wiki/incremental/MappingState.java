@@ -0,0 +1,203 @@
+package de.mpii.wiki.incremental;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mpii.wiki.dump.DumpData;
+import de.mpii.wiki.dump.DumpReader;
+import de.mpii.wiki.metrics.MappingMetrics;
+import de.mpii.wiki.result.MappedIdResults;
+import de.mpii.wiki.result.ResultGenerator;
+
+/**
+ * Persisted state of a mapping run: the scanned source and target dumps and the results. Adds-changes dumps
+ * (containing only pages modified since the target dump) can be applied to the state, which updates the
+ * target pages in place and recomputes only the results affected by the modified pages.
+ *
+ * A result depends on the target page with the source id, the pages along its redirect chain and, for
+ * disambiguation pages, the candidate pages. The affected results are found by walking redirects backwards
+ * from the modified titles and by checking the candidate lists of disambiguation pages.
+ *
+ * Adds-changes dumps do not contain deletions, pages deleted after the target dump keep their last state.
+ */
+public class MappingState {
+
+  private static final int MAGIC = 0x574d5354; // "WMST"
+
+  private static final int VERSION = 1;
+
+  private static Logger logger_ = LoggerFactory.getLogger(MappingState.class);
+
+  private final DumpData sourceData;
+
+  private final DumpData targetData;
+
+  private final MappedIdResults results;
+
+  /**
+   * @param sourceData The source dump the results were generated for.
+   * @param targetData The target dump the results were generated for.
+   */
+  public MappingState(MappedIdResults results, DumpData sourceData, DumpData targetData) {
+    this.sourceData = sourceData;
+    this.targetData = targetData;
+    this.results = results;
+  }
+
+  public MappedIdResults getResults() {
+    return results;
+  }
+
+  public DumpData getSourceData() {
+    return sourceData;
+  }
+
+  public DumpData getTargetData() {
+    return targetData;
+  }
+
+  public static MappingState load(File file, MappingMetrics metrics) throws IOException {
+    long start = System.currentTimeMillis();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a mapping state file : " + file);
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported mapping state version " + version + " : " + file);
+      }
+      DumpData sourceData = DumpData.readFrom(in, metrics);
+      DumpData targetData = DumpData.readFrom(in, metrics);
+      MappingState state = new MappingState(MappedIdResults.readFrom(in, sourceData, targetData), sourceData, targetData);
+      logger_.info("Loaded mapping state " + file.getName() + " (" + state.results.size() + " entries) in "
+          + (System.currentTimeMillis() - start) / 1000 + " s");
+      return state;
+    }
+  }
+
+  /**
+   * Writes the state to the given file. The file is replaced only once the state is written completely.
+   */
+  public void save(File file) throws IOException {
+    long start = System.currentTimeMillis();
+    File tmpFile = new File(file.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      sourceData.writeTo(out);
+      targetData.writeTo(out);
+      results.writeTo(out);
+    }
+    if (file.exists() && !file.delete()) {
+      throw new IOException("Failed to replace mapping state : " + file);
+    }
+    if (!tmpFile.renameTo(file)) {
+      throw new IOException("Failed to write mapping state : " + file);
+    }
+    logger_.info("Mapping state written to " + file.getName() + " in " + (System.currentTimeMillis() - start) / 1000 + " s");
+  }
+
+  /**
+   * Applies the given adds-changes dumps (in order) to the target and recomputes the affected results.
+   *
+   * @return Number of recomputed results.
+   */
+  public int apply(List<File> changes) throws IOException, XMLStreamException {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    MappingMetrics metrics = targetData.getMetrics();
+    targetData.trackUpdates();
+    try {
+      for (File file : changes) {
+        long start = System.currentTimeMillis();
+        metrics.setPhase("apply " + file.getName());
+        try (InputStream in = metrics.track(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+          DumpReader.read(factory.createXMLStreamReader(in), targetData);
+        }
+        logger_.info("Time to apply " + file.getName() + " : " + (System.currentTimeMillis() - start) / 1000 + " s.");
+      }
+      metrics.setPhase("update results");
+      TIntSet affected = affectedIds(targetData.getUpdatedIds(), targetData.getUpdatedTitles());
+      int updated = ResultGenerator.update(results, sourceData, targetData, affected);
+      logger_.info(targetData.getUpdatedIds().size() + " pages updated, " + updated + " results recomputed");
+      return updated;
+    } finally {
+      targetData.clearUpdates();
+    }
+  }
+
+  // ids of the target pages whose results may change after the given pages and titles were updated
+  TIntSet affectedIds(TIntSet updatedIds, Set<String> updatedTitles) {
+    TIntSet affected = new TIntHashSet(updatedIds);
+    Set<String> titles = new HashSet<>(updatedTitles);
+
+    // redirects leading to an updated title, followed back level by level through the redirects by target title
+    Map<String, TIntList> redirectsTo = new HashMap<>();
+    for (int id : targetData.getRedirectIds()) {
+      String title = targetData.getRedirectTitle(id);
+      if (title == null) {
+        continue;
+      }
+      TIntList ids = redirectsTo.get(title);
+      if (ids == null) {
+        ids = new TIntArrayList(1);
+        redirectsTo.put(title, ids);
+      }
+      ids.add(id);
+    }
+    Set<String> level = updatedTitles;
+    while (!level.isEmpty()) {
+      Set<String> next = new HashSet<>();
+      for (String title : level) {
+        TIntList ids = redirectsTo.get(title);
+        if (ids == null) {
+          continue;
+        }
+        for (int i = 0; i < ids.size(); i++) {
+          int id = ids.get(i);
+          if (affected.add(id) && titles.add(targetData.getTitle(id))) {
+            next.add(targetData.getTitle(id));
+          }
+        }
+      }
+      level = next;
+    }
+
+    // disambiguation pages with an updated candidate
+    for (int id : targetData.getDisambiguationIds()) {
+      List<String> candidates = targetData.getDisambiguationLinks(id);
+      if (candidates == null) {
+        continue;
+      }
+      for (String candidate : candidates) {
+        if (titles.contains(candidate)) {
+          affected.add(id);
+          break;
+        }
+      }
+    }
+    return affected;
+  }
+}
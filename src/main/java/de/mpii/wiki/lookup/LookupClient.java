@@ -0,0 +1,104 @@
+package de.mpii.wiki.lookup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.mpii.wiki.dump.DumpSettings.MappedType;
+import de.mpii.wiki.result.MappedResult;
+
+/**
+ * Client for the local {@link LookupServer}. Not thread safe, use one client per thread.
+ */
+public class LookupClient implements Closeable {
+
+  private final Socket socket;
+
+  private final BufferedReader reader;
+
+  private final Writer writer;
+
+  public LookupClient(int port) throws IOException {
+    socket = new Socket(InetAddress.getLoopbackAddress(), port);
+    reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), LookupFormat.UTF8));
+    writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), LookupFormat.UTF8), 1 << 16);
+  }
+
+  /**
+   * Returns the mapping for the given title, or null if the title is unknown to the server.
+   */
+  public MappedResult lookup(String title) throws IOException {
+    writer.append("GET ").append(title).append('\n');
+    writer.flush();
+    return readResult();
+  }
+
+  /**
+   * Looks up all titles with a single request. Unknown titles are returned as null.
+   */
+  public List<MappedResult> lookup(List<String> titles) throws IOException {
+    writer.append("MGET ").append(Integer.toString(titles.size())).append('\n');
+    for (String title : titles) {
+      writer.append(title).append('\n');
+    }
+    writer.flush();
+    List<MappedResult> results = new ArrayList<>(titles.size());
+    for (int i = 0; i < titles.size(); i++) {
+      results.add(readResult());
+    }
+    return results;
+  }
+
+  public Map<String, Long> getStats() throws IOException {
+    writer.write("STATS\n");
+    writer.flush();
+    Map<String, Long> stats = new LinkedHashMap<>();
+    String line;
+    while (!(line = readLine()).equals("END")) {
+      int idx = line.indexOf('\t');
+      stats.put(line.substring(0, idx), Long.parseLong(line.substring(idx + 1)));
+    }
+    return stats;
+  }
+
+  private MappedResult readResult() throws IOException {
+    String[] fields = readLine().split("\t", -1);
+    if (fields.length != 3) {
+      throw new IOException("Invalid response : " + fields[0]);
+    }
+    if (fields[2].equals(LookupServer.NOT_FOUND)) {
+      return null;
+    }
+    MappedType type = MappedType.fromRepr(fields[2]);
+    String target = (type == MappedType.DELETED) ? null : fields[1];
+    return new MappedResult(fields[0], target, type, null, null);
+  }
+
+  private String readLine() throws IOException {
+    String line = reader.readLine();
+    if (line == null) {
+      throw new IOException("Connection closed by server");
+    }
+    return line;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      writer.write("QUIT\n");
+      writer.flush();
+    } finally {
+      socket.close();
+    }
+  }
+}
@@ -0,0 +1,199 @@
+package de.mpii.wiki.lookup;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.mpii.wiki.dump.DumpSettings.MappedType;
+import de.mpii.wiki.result.MappedResult;
+
+/**
+ * Read-only, memory mapped view of a lookup file written by {@link LookupFileWriter}. Lookups probe the
+ * mapped hash index and compare title bytes in place, so opening a file does not deserialize any entries and
+ * several processes mapping the same file share the page cache.
+ *
+ * Instances are safe for concurrent use by multiple threads.
+ */
+public class LookupFile implements Closeable {
+
+  private static final MappedType[] TYPES = MappedType.values();
+
+  private final RandomAccessFile file;
+
+  private final int entries;
+
+  private final int slots;
+
+  private final MappedByteBuffer index;
+
+  private final MappedByteBuffer[] regions;
+
+  private LookupFile(RandomAccessFile file) throws IOException {
+    this.file = file;
+    FileChannel channel = file.getChannel();
+
+    ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, LookupFormat.HEADER_SIZE);
+    if (header.getInt() != LookupFormat.MAGIC) {
+      throw new IOException("Not a lookup file");
+    }
+    int version = header.getInt();
+    if (version != LookupFormat.VERSION) {
+      throw new IOException("Unsupported lookup file version : " + version);
+    }
+    entries = header.getInt();
+    slots = header.getInt();
+    long dataOffset = header.getLong();
+    long indexOffset = header.getLong();
+
+    index = channel.map(MapMode.READ_ONLY, indexOffset, (long) slots * LookupFormat.SLOT_SIZE);
+
+    long dataSize = indexOffset - dataOffset;
+    int regionCount = (int) ((dataSize + LookupFormat.REGION_SIZE - 1) >>> LookupFormat.REGION_SHIFT);
+    regions = new MappedByteBuffer[regionCount];
+    for (int i = 0; i < regionCount; i++) {
+      long start = (long) i << LookupFormat.REGION_SHIFT;
+      regions[i] = channel.map(MapMode.READ_ONLY, dataOffset + start, Math.min(LookupFormat.REGION_SIZE, dataSize - start));
+    }
+  }
+
+  public static LookupFile open(File lookupFile) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(lookupFile, "r");
+    try {
+      return new LookupFile(raf);
+    } catch (IOException ioe) {
+      raf.close();
+      throw ioe;
+    }
+  }
+
+  public int size() {
+    return entries;
+  }
+
+  public boolean contains(String title) {
+    return find(title.getBytes(LookupFormat.UTF8)) >= 0;
+  }
+
+  /**
+   * Returns the mapping type for the given source title without decoding the target title, or null if the
+   * title is not present in the file.
+   */
+  public MappedType getMappingType(String title) {
+    long record = find(title.getBytes(LookupFormat.UTF8));
+    if (record < 0) {
+      return null;
+    }
+    ByteBuffer region = region(record);
+    int pos = position(record);
+    return TYPES[region.get(pos + 2 + readLength(region, pos))];
+  }
+
+  /**
+   * Returns the mapping for the given source title, or null if the title is not present in the file.
+   */
+  public MappedResult lookup(String title) {
+    long record = find(title.getBytes(LookupFormat.UTF8));
+    return (record >= 0) ? read(title, record) : null;
+  }
+
+  /**
+   * Looks up several titles at once. Probes are issued in index order to keep accesses to the mapped index
+   * sequential; the results are returned in the order of the given titles, with null for unknown titles.
+   */
+  public List<MappedResult> lookup(List<String> titles) {
+    int n = titles.size();
+    byte[][] keys = new byte[n][];
+    long[] order = new long[n];
+    int mask = slots - 1;
+    for (int i = 0; i < n; i++) {
+      keys[i] = titles.get(i).getBytes(LookupFormat.UTF8);
+      order[i] = ((long) (LookupFormat.hash(keys[i]) & mask) << 32) | i;
+    }
+    Arrays.sort(order);
+
+    MappedResult[] results = new MappedResult[n];
+    for (long o : order) {
+      int i = (int) o;
+      long record = find(keys[i]);
+      if (record >= 0) {
+        results[i] = read(titles.get(i), record);
+      }
+    }
+    return new ArrayList<>(Arrays.asList(results));
+  }
+
+  private long find(byte[] key) {
+    int hash = LookupFormat.hash(key);
+    int mask = slots - 1;
+    int slot = hash & mask;
+    while (true) {
+      int pos = slot * LookupFormat.SLOT_SIZE;
+      long offset = index.getLong(pos + 4);
+      if (offset == 0) {
+        return -1;
+      }
+      if (index.getInt(pos) == hash && matches(offset - 1, key)) {
+        return offset - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  private boolean matches(long record, byte[] key) {
+    ByteBuffer region = region(record);
+    int pos = position(record);
+    if (readLength(region, pos) != key.length) {
+      return false;
+    }
+    pos += 2;
+    for (int i = 0; i < key.length; i++) {
+      if (region.get(pos + i) != key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private MappedResult read(String source, long record) {
+    ByteBuffer region = region(record);
+    int pos = position(record);
+    pos += 2 + readLength(region, pos);
+    MappedType type = TYPES[region.get(pos++)];
+    int tgtLen = readLength(region, pos);
+    String target = null;
+    if (tgtLen != LookupFormat.NULL_TITLE) {
+      byte[] tgt = new byte[tgtLen];
+      pos += 2;
+      for (int i = 0; i < tgtLen; i++) {
+        tgt[i] = region.get(pos + i);
+      }
+      target = new String(tgt, LookupFormat.UTF8);
+    }
+    return new MappedResult(source, target, type, null, null);
+  }
+
+  private ByteBuffer region(long record) {
+    return regions[(int) (record >>> LookupFormat.REGION_SHIFT)];
+  }
+
+  private static int position(long record) {
+    return (int) (record & (LookupFormat.REGION_SIZE - 1));
+  }
+
+  private static int readLength(ByteBuffer region, int pos) {
+    return region.getShort(pos) & 0xFFFF;
+  }
+
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+}
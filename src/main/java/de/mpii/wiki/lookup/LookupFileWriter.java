@@ -0,0 +1,137 @@
+package de.mpii.wiki.lookup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mpii.wiki.result.MappedIdResults;
+
+/**
+ * Writes mapping results into the binary lookup format read by {@link LookupFile}.
+ */
+public class LookupFileWriter {
+
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  private static Logger logger_ = LoggerFactory.getLogger(LookupFileWriter.class);
+
+  public static void write(File file, MappedIdResults results) throws IOException {
+    int entries = results.size();
+    int[] hashes = new int[entries];
+    long[] offsets = new long[entries];
+
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+      raf.setLength(0);
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+      // data section, index is built once all record offsets are known
+      long dataOffset = LookupFormat.HEADER_SIZE;
+      long position = 0;
+      channel.position(dataOffset);
+      for (int i = 0; i < entries; i++) {
+        byte[] src = encode(results.getSourceTitle(i));
+        String target = results.getTargetTitle(i);
+        byte[] tgt = (target != null) ? encode(target) : null;
+
+        int recordSize = 2 + src.length + 1 + 2 + ((tgt != null) ? tgt.length : 0);
+        long regionEnd = ((position >>> LookupFormat.REGION_SHIFT) + 1) << LookupFormat.REGION_SHIFT;
+        if (position + recordSize > regionEnd) {
+          // pad, so that records never span two mapped regions
+          position = pad(channel, buffer, position, regionEnd);
+        }
+        if (buffer.remaining() < recordSize) {
+          flush(channel, buffer);
+        }
+
+        hashes[i] = LookupFormat.hash(src);
+        offsets[i] = position;
+
+        buffer.putShort((short) src.length);
+        buffer.put(src);
+        buffer.put((byte) results.getMappingType(i).ordinal());
+        if (tgt != null) {
+          buffer.putShort((short) tgt.length);
+          buffer.put(tgt);
+        } else {
+          buffer.putShort((short) LookupFormat.NULL_TITLE);
+        }
+        position += recordSize;
+      }
+      flush(channel, buffer);
+
+      // index section
+      int slots = LookupFormat.slotCount(entries);
+      if ((long) slots * LookupFormat.SLOT_SIZE > Integer.MAX_VALUE) {
+        throw new IOException("Too many entries for a lookup file : " + entries);
+      }
+      int[] slotHashes = new int[slots];
+      long[] slotOffsets = new long[slots];
+      int mask = slots - 1;
+      for (int i = 0; i < entries; i++) {
+        int slot = hashes[i] & mask;
+        while (slotOffsets[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        slotHashes[slot] = hashes[i];
+        slotOffsets[slot] = offsets[i] + 1;
+      }
+
+      long indexOffset = dataOffset + position;
+      channel.position(indexOffset);
+      for (int slot = 0; slot < slots; slot++) {
+        if (buffer.remaining() < LookupFormat.SLOT_SIZE) {
+          flush(channel, buffer);
+        }
+        buffer.putInt(slotHashes[slot]);
+        buffer.putLong(slotOffsets[slot]);
+      }
+      flush(channel, buffer);
+
+      buffer.putInt(LookupFormat.MAGIC);
+      buffer.putInt(LookupFormat.VERSION);
+      buffer.putInt(entries);
+      buffer.putInt(slots);
+      buffer.putLong(dataOffset);
+      buffer.putLong(indexOffset);
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer, LookupFormat.HEADER_SIZE - buffer.remaining());
+      }
+      channel.force(false);
+    }
+    logger_.info(entries + " entries written to lookup file " + file.getName());
+  }
+
+  private static byte[] encode(String title) throws IOException {
+    byte[] bytes = title.getBytes(LookupFormat.UTF8);
+    if (bytes.length > LookupFormat.MAX_TITLE_BYTES) {
+      throw new IOException("Title too long for lookup file : " + title.substring(0, 64) + "...");
+    }
+    return bytes;
+  }
+
+  private static long pad(FileChannel channel, ByteBuffer buffer, long position, long regionEnd) throws IOException {
+    while (position < regionEnd) {
+      if (!buffer.hasRemaining()) {
+        flush(channel, buffer);
+      }
+      int n = (int) Math.min(buffer.remaining(), regionEnd - position);
+      buffer.position(buffer.position() + n);
+      position += n;
+    }
+    return position;
+  }
+
+  private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+}
@@ -0,0 +1,54 @@
+package de.mpii.wiki.lookup;
+
+import java.nio.charset.Charset;
+
+import de.mpii.wiki.common.Utils;
+
+/**
+ * Layout of the binary lookup file.
+ *
+ * <pre>
+ * header : magic(int) version(int) entries(int) slots(int) dataOffset(long) indexOffset(long)
+ * data   : records - srcLen(ushort) srcBytes type(byte) tgtLen(ushort, 0xFFFF = null) tgtBytes
+ * index  : open addressing hash table - slots x [hash(int) recordOffset+1(long)], 0 marks an empty slot
+ * </pre>
+ *
+ * Titles are stored as UTF-8 and hashed with 32 bit FNV-1a over their bytes. Records never cross a
+ * {@link #REGION_SIZE} boundary so that the data section can be mapped in fixed size regions.
+ */
+final class LookupFormat {
+
+  static final int MAGIC = 0x574d4c46; // "WMLF"
+
+  static final int VERSION = 1;
+
+  static final int HEADER_SIZE = 32;
+
+  static final int SLOT_SIZE = 12;
+
+  static final int REGION_SHIFT = 30;
+
+  static final long REGION_SIZE = 1L << REGION_SHIFT;
+
+  static final int NULL_TITLE = 0xFFFF;
+
+  static final int MAX_TITLE_BYTES = 0xFFFE;
+
+  static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private LookupFormat() {
+  }
+
+  static int hash(byte[] bytes) {
+    return Utils.hash(bytes, 0, bytes.length);
+  }
+
+  static int slotCount(int entries) {
+    // keep the load factor at or below 0.5 to keep probe chains short
+    int slots = 16;
+    while (slots < entries * 2L) {
+      slots <<= 1;
+    }
+    return slots;
+  }
+}
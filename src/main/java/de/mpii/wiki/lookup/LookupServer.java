@@ -0,0 +1,321 @@
+package de.mpii.wiki.lookup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mpii.wiki.common.Histogram;
+import de.mpii.wiki.result.MappedResult;
+
+/**
+ * Long running lookup service, answering title lookups from a {@link LookupFile} over a socket bound to the
+ * loopback interface. The protocol is line based (UTF-8):
+ *
+ * <pre>
+ * GET &lt;title&gt;          -&gt; &lt;title&gt;\t&lt;target&gt;\t&lt;type&gt;
+ * MGET &lt;n&gt;             -&gt; followed by n title lines, answered by n result lines
+ * STATS                -&gt; &lt;name&gt;\t&lt;value&gt; lines, terminated by END
+ * QUIT                 -&gt; closes the connection
+ * </pre>
+ *
+ * Unknown titles are answered with an empty target and type {@link #NOT_FOUND}, deleted entries with target
+ * "null" (as in the text output). Requests may be pipelined, responses are flushed once no further request is
+ * pending on the connection. Recently requested titles are kept in a bounded cache.
+ *
+ * Each connection is served by a thread of a bounded pool; connections beyond the pool size are answered
+ * with "ERROR busy" and closed.
+ */
+public class LookupServer implements Closeable {
+
+  public static final String NOT_FOUND = "__NF__";
+
+  public static final int DEFAULT_MAX_CONNECTIONS = 64;
+
+  private static final int MAX_BATCH_SIZE = 1 << 20;
+
+  // caches of at least this size are split into segments locked separately
+  private static final int MIN_STRIPED_CACHE_SIZE = 1024;
+
+  private static final int CACHE_SEGMENTS = 16;
+
+  private static Logger logger_ = LoggerFactory.getLogger(LookupServer.class);
+
+  private final LookupFile lookupFile;
+
+  private final ServerSocket serverSocket;
+
+  private final ExecutorService connectionPool;
+
+  private final ResultCache cache;
+
+  // statistics
+  private final AtomicLong connections = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong lookups = new AtomicLong();
+  private final AtomicLong notFound = new AtomicLong();
+  private final AtomicLong cacheHits = new AtomicLong();
+  private final Histogram requestLatency = new Histogram();
+
+  public LookupServer(LookupFile lookupFile, int port, int cacheSize) throws IOException {
+    this(lookupFile, port, cacheSize, DEFAULT_MAX_CONNECTIONS);
+  }
+
+  /**
+   * @param maxConnections Number of connections served concurrently.
+   */
+  public LookupServer(LookupFile lookupFile, int port, int cacheSize, int maxConnections) throws IOException {
+    this.lookupFile = lookupFile;
+    this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    // no queue, a connection waiting for a thread would not be answered
+    this.connectionPool = new ThreadPoolExecutor(0, maxConnections, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+    this.cache = new ResultCache(cacheSize);
+  }
+
+  /**
+   * LRU cache of lookup results. Large caches are split into segments by title hash, each with its own lock,
+   * so that concurrent lookups do not all wait for one lock.
+   */
+  private static class ResultCache {
+    private final List<Map<String, MappedResult>> segments = new ArrayList<>();
+
+    ResultCache(int size) {
+      int count = (size >= MIN_STRIPED_CACHE_SIZE) ? CACHE_SEGMENTS : 1;
+      final int segmentSize = size / count;
+      for (int i = 0; i < count; i++) {
+        segments.add(new LinkedHashMap<String, MappedResult>(16, 0.75f, true) {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, MappedResult> eldest) {
+            return size() > segmentSize;
+          }
+        });
+      }
+    }
+
+    private Map<String, MappedResult> segment(String title) {
+      int h = title.hashCode();
+      return segments.get(((h ^ (h >>> 16)) & 0x7fffffff) % segments.size());
+    }
+
+    MappedResult get(String title) {
+      Map<String, MappedResult> segment = segment(title);
+      synchronized (segment) {
+        return segment.get(title);
+      }
+    }
+
+    void put(String title, MappedResult result) {
+      Map<String, MappedResult> segment = segment(title);
+      synchronized (segment) {
+        segment.put(title, result);
+      }
+    }
+
+    int size() {
+      int size = 0;
+      for (Map<String, MappedResult> segment : segments) {
+        synchronized (segment) {
+          size += segment.size();
+        }
+      }
+      return size;
+    }
+  }
+
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * Accepts connections until the server is closed.
+   */
+  public void serve() throws IOException {
+    logger_.info("Serving " + lookupFile.size() + " mappings on localhost:" + getPort());
+    while (!serverSocket.isClosed()) {
+      final Socket socket;
+      try {
+        socket = serverSocket.accept();
+      } catch (SocketException se) {
+        // server socket closed
+        break;
+      }
+      connections.incrementAndGet();
+      try {
+        connectionPool.execute(new Runnable() {
+          @Override
+          public void run() {
+            handle(socket);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        reject(socket);
+      }
+    }
+  }
+
+  private void reject(Socket socket) {
+    rejected.incrementAndGet();
+    try (Socket s = socket; Writer writer = new OutputStreamWriter(s.getOutputStream(), LookupFormat.UTF8)) {
+      writer.write("ERROR busy\n");
+    } catch (IOException e) {
+      // the client is gone
+    }
+  }
+
+  private void handle(Socket socket) {
+    try (Socket s = socket;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(), LookupFormat.UTF8));
+        Writer writer = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), LookupFormat.UTF8), 1 << 16)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        long start = System.nanoTime();
+        requests.incrementAndGet();
+        if (line.startsWith("GET ")) {
+          String title = line.substring(4);
+          writeResult(writer, title, lookup(title));
+        } else if (line.startsWith("MGET ")) {
+          int n = Integer.parseInt(line.substring(5).trim());
+          if (n < 0 || n > MAX_BATCH_SIZE) {
+            writer.write("ERROR invalid batch size\n");
+            break;
+          }
+          List<String> titles = new ArrayList<>(n);
+          for (int i = 0; i < n; i++) {
+            String title = reader.readLine();
+            if (title == null) {
+              return;
+            }
+            titles.add(title);
+          }
+          List<MappedResult> results = lookup(titles);
+          for (int i = 0; i < n; i++) {
+            writeResult(writer, titles.get(i), results.get(i));
+          }
+        } else if (line.equals("STATS")) {
+          writeStats(writer);
+        } else if (line.equals("QUIT")) {
+          break;
+        } else {
+          writer.write("ERROR unknown request\n");
+        }
+        requestLatency.record((System.nanoTime() - start) / 1000);
+        if (!reader.ready()) {
+          writer.flush();
+        }
+      }
+      writer.flush();
+    } catch (IOException | NumberFormatException e) {
+      logger_.warn("Closing connection : " + e.getMessage());
+    }
+  }
+
+  private MappedResult lookup(String title) {
+    lookups.incrementAndGet();
+    MappedResult result = cache.get(title);
+    if (result != null) {
+      cacheHits.incrementAndGet();
+      return result;
+    }
+    result = lookupFile.lookup(title);
+    if (result == null) {
+      notFound.incrementAndGet();
+      return null;
+    }
+    cache.put(title, result);
+    return result;
+  }
+
+  private List<MappedResult> lookup(List<String> titles) {
+    lookups.addAndGet(titles.size());
+    List<MappedResult> results = new ArrayList<>(titles.size());
+    List<String> uncached = new ArrayList<>();
+    for (String title : titles) {
+      MappedResult result = cache.get(title);
+      results.add(result);
+      if (result == null) {
+        uncached.add(title);
+      }
+    }
+    cacheHits.addAndGet(titles.size() - uncached.size());
+    if (uncached.isEmpty()) {
+      return results;
+    }
+
+    List<MappedResult> fetched = lookupFile.lookup(uncached);
+    for (int i = 0, j = 0; i < results.size(); i++) {
+      if (results.get(i) == null) {
+        MappedResult result = fetched.get(j++);
+        if (result == null) {
+          notFound.incrementAndGet();
+        } else {
+          cache.put(result.getSourceTitle(), result);
+          results.set(i, result);
+        }
+      }
+    }
+    return results;
+  }
+
+  private static void writeResult(Writer writer, String title, MappedResult result) throws IOException {
+    writer.append(title).append('\t');
+    if (result == null) {
+      writer.append('\t').append(NOT_FOUND);
+    } else {
+      writer.append(String.valueOf(result.getTargetTitle())).append('\t').append(result.getMappingType().toString());
+    }
+    writer.append('\n');
+  }
+
+  private void writeStats(Writer writer) throws IOException {
+    int cacheSize = cache.size();
+    writeStat(writer, "entries", lookupFile.size());
+    writeStat(writer, "connections", connections.get());
+    writeStat(writer, "rejected", rejected.get());
+    writeStat(writer, "requests", requests.get());
+    writeStat(writer, "lookups", lookups.get());
+    writeStat(writer, "not_found", notFound.get());
+    writeStat(writer, "cache_hits", cacheHits.get());
+    writeStat(writer, "cache_size", cacheSize);
+    writeStat(writer, "latency_us_mean", (long) requestLatency.getMean());
+    writeStat(writer, "latency_us_p50", requestLatency.getPercentile(50));
+    writeStat(writer, "latency_us_p99", requestLatency.getPercentile(99));
+    writeStat(writer, "latency_us_max", requestLatency.getMax());
+    for (int i = 0; i < requestLatency.getBucketCount(); i++) {
+      writeStat(writer, "latency_us_lt_" + Histogram.upperBound(i), requestLatency.getBucket(i));
+    }
+    writer.write("END\n");
+  }
+
+  private static void writeStat(Writer writer, String name, long value) throws IOException {
+    writer.append(name).append('\t').append(Long.toString(value)).append('\n');
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+    connectionPool.shutdownNow();
+  }
+}
@@ -0,0 +1,398 @@
+package de.mpii.wiki.metrics;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mpii.wiki.common.Histogram;
+import de.mpii.wiki.common.Utils;
+import de.mpii.wiki.dump.DumpSettings.MappedType;
+import de.mpii.wiki.page.handlers.Handler.HandlerType;
+import de.mpii.wiki.result.MappedIdResults;
+
+/**
+ * Collects timings and counters of a mapping run. While a run is in progress the metrics can be watched over
+ * JMX (see {@link #registerMBean()}), at the end they can be written as a JSON report.
+ */
+public class MappingMetrics implements MappingMetricsMXBean {
+
+  public enum Phase {
+    PARSE, CLASSIFY, LINK_EXTRACTION, REDIRECT_RESOLUTION, DISAMBIGUATION, LINK_GRAPH, OUTPUT
+  }
+
+  private static final Phase[] PHASES = Phase.values();
+
+  private static final HandlerType[] HANDLER_TYPES = HandlerType.values();
+
+  private static final AtomicInteger instances = new AtomicInteger();
+
+  private static Logger logger_ = LoggerFactory.getLogger(MappingMetrics.class);
+
+  private final long start = System.currentTimeMillis();
+
+  private volatile String phase = "init";
+
+  private volatile long end = 0;
+
+  private final AtomicLongArray phaseNanos = new AtomicLongArray(PHASES.length);
+
+  private final AtomicLongArray phaseCounts = new AtomicLongArray(PHASES.length);
+
+  private final AtomicLongArray handlerCounts = new AtomicLongArray(HANDLER_TYPES.length);
+
+  private final AtomicLong pages = new AtomicLong();
+
+  private final AtomicLong bytesRead = new AtomicLong();
+
+  private final AtomicLong pagesReused = new AtomicLong();
+
+  private final AtomicLong pagesCached = new AtomicLong();
+
+  private final AtomicLong linkStoreHits = new AtomicLong();
+
+  private final Histogram linkStoreReadMicros = new Histogram();
+
+  private final Histogram linksPerPage = new Histogram();
+
+  private final Histogram disambiguationCandidates = new Histogram();
+
+  private final Map<MappedType, Integer> resultCounts = new LinkedHashMap<>();
+
+  private ObjectName objectName;
+
+  public void setPhase(String phase) {
+    logger_.debug("Mapping phase : " + phase);
+    this.phase = phase;
+  }
+
+  public void time(Phase p, long nanos) {
+    phaseNanos.addAndGet(p.ordinal(), nanos);
+    phaseCounts.incrementAndGet(p.ordinal());
+  }
+
+  public void addPage(HandlerType type, int links) {
+    pages.incrementAndGet();
+    handlerCounts.incrementAndGet(type.ordinal());
+    linksPerPage.record(links);
+  }
+
+  // a stored page replaced by a newer revision, it is still counted as processed
+  public void removePage(HandlerType type) {
+    handlerCounts.decrementAndGet(type.ordinal());
+  }
+
+  // a page whose classification and links were reused from the target dump, as its text is unchanged
+  public void addReusedPage() {
+    pagesReused.incrementAndGet();
+  }
+
+  // a page whose classification and links were found in the parse cache
+  public void addCachedPage() {
+    pagesCached.incrementAndGet();
+  }
+
+  // a link list found in the cache of a link store
+  public void addLinkStoreHit() {
+    linkStoreHits.incrementAndGet();
+  }
+
+  // a link list read from the log of a link store
+  public void addLinkStoreRead(long nanos) {
+    linkStoreReadMicros.record(nanos / 1000);
+  }
+
+  public void addDisambiguation(int candidates) {
+    disambiguationCandidates.record(candidates);
+  }
+
+  public void setResults(MappedIdResults results) {
+    synchronized (resultCounts) {
+      for (MappedType type : MappedType.values()) {
+        resultCounts.put(type, results.getCount(type));
+      }
+    }
+  }
+
+  public void setResultCount(MappedType type, int count) {
+    synchronized (resultCounts) {
+      resultCounts.put(type, count);
+    }
+  }
+
+  /**
+   * Wraps the given dump stream so that the bytes read are counted.
+   */
+  public InputStream track(InputStream in) {
+    return new FilterInputStream(in) {
+      @Override
+      public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+          bytesRead.incrementAndGet();
+        }
+        return b;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+          bytesRead.addAndGet(n);
+        }
+        return n;
+      }
+    };
+  }
+
+  public void finish() {
+    end = System.currentTimeMillis();
+    setPhase("done");
+  }
+
+  public void registerMBean() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      objectName = new ObjectName("de.mpii.wiki:type=MappingMetrics,name=run-" + instances.incrementAndGet());
+      server.registerMBean(this, objectName);
+    } catch (JMException e) {
+      logger_.warn("Failed to register metrics MBean : " + e.getMessage());
+      objectName = null;
+    }
+  }
+
+  public void unregisterMBean() {
+    if (objectName == null) {
+      return;
+    }
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    } catch (JMException e) {
+      logger_.warn("Failed to unregister metrics MBean : " + e.getMessage());
+    }
+    objectName = null;
+  }
+
+  @Override
+  public String getPhase() {
+    return phase;
+  }
+
+  @Override
+  public long getElapsedMillis() {
+    return ((end != 0) ? end : System.currentTimeMillis()) - start;
+  }
+
+  @Override
+  public long getPagesProcessed() {
+    return pages.get();
+  }
+
+  @Override
+  public long getPagesPerSecond() {
+    return pages.get() * 1000 / Math.max(1, getElapsedMillis());
+  }
+
+  @Override
+  public long getPagesReused() {
+    return pagesReused.get();
+  }
+
+  @Override
+  public long getPagesCached() {
+    return pagesCached.get();
+  }
+
+  @Override
+  public long getBytesRead() {
+    return bytesRead.get();
+  }
+
+  @Override
+  public long getBytesPerSecond() {
+    return bytesRead.get() * 1000 / Math.max(1, getElapsedMillis());
+  }
+
+  @Override
+  public Map<String, Long> getPhaseMillis() {
+    Map<String, Long> millis = new LinkedHashMap<>();
+    for (Phase p : PHASES) {
+      millis.put(p.name(), phaseNanos.get(p.ordinal()) / 1000000);
+    }
+    return millis;
+  }
+
+  public long getPhaseCount(Phase p) {
+    return phaseCounts.get(p.ordinal());
+  }
+
+  @Override
+  public Map<String, Long> getHandlerCounts() {
+    Map<String, Long> counts = new LinkedHashMap<>();
+    for (HandlerType type : HANDLER_TYPES) {
+      counts.put(type.name(), handlerCounts.get(type.ordinal()));
+    }
+    return counts;
+  }
+
+  public long getLinkStoreHits() {
+    return linkStoreHits.get();
+  }
+
+  public long getLinkStoreMisses() {
+    return linkStoreReadMicros.getCount();
+  }
+
+  @Override
+  public double getLinkStoreHitRate() {
+    long hits = linkStoreHits.get();
+    return (double) hits / Math.max(1, hits + linkStoreReadMicros.getCount());
+  }
+
+  @Override
+  public double getLinkStoreReadMicrosMean() {
+    return linkStoreReadMicros.getMean();
+  }
+
+  public Histogram getLinkStoreReadMicros() {
+    return linkStoreReadMicros;
+  }
+
+  public Histogram getLinksPerPage() {
+    return linksPerPage;
+  }
+
+  public Histogram getDisambiguationCandidates() {
+    return disambiguationCandidates;
+  }
+
+  @Override
+  public double getLinksPerPageMean() {
+    return linksPerPage.getMean();
+  }
+
+  @Override
+  public double getDisambiguationCandidatesMean() {
+    return disambiguationCandidates.getMean();
+  }
+
+  @Override
+  public long getHeapUsed() {
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+  /**
+   * Returns the peak resident set size of this process in kB (Linux only), -1 if not available.
+   */
+  public static long getPeakRssKb() {
+    File status = new File("/proc/self/status");
+    if (!status.canRead()) {
+      return -1;
+    }
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(status), Charset.forName("UTF-8")))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith("VmHWM:")) {
+          return Long.parseLong(line.substring(6).replace("kB", "").trim());
+        }
+      }
+    } catch (IOException | NumberFormatException e) {
+      logger_.debug("Failed to read peak RSS : " + e.getMessage());
+    }
+    return -1;
+  }
+
+  public void writeReport(File report) throws IOException {
+    try (Writer writer = new OutputStreamWriter(new FileOutputStream(report), Charset.forName("UTF-8"))) {
+      writer.write(toJson());
+    }
+    logger_.info("Metrics report written to " + report.getName());
+  }
+
+  public String toJson() {
+    StringBuilder sb = new StringBuilder("{\n");
+    field(sb, "phase", Utils.jsonString(phase));
+    field(sb, "elapsedMillis", getElapsedMillis());
+    field(sb, "pagesProcessed", getPagesProcessed());
+    field(sb, "pagesPerSecond", getPagesPerSecond());
+    field(sb, "pagesReused", getPagesReused());
+    field(sb, "pagesCached", getPagesCached());
+    field(sb, "bytesRead", getBytesRead());
+    field(sb, "bytesPerSecond", getBytesPerSecond());
+
+    StringBuilder phases = new StringBuilder("{");
+    for (Phase p : PHASES) {
+      phases.append((p.ordinal() > 0) ? ", " : "").append('"').append(p.name()).append("\": {\"millis\": ")
+          .append(phaseNanos.get(p.ordinal()) / 1000000).append(", \"count\": ").append(phaseCounts.get(p.ordinal())).append('}');
+    }
+    field(sb, "phases", phases.append('}'));
+    field(sb, "handlers", object(getHandlerCounts()));
+    synchronized (resultCounts) {
+      Map<String, Long> results = new LinkedHashMap<>();
+      for (Map.Entry<MappedType, Integer> e : resultCounts.entrySet()) {
+        results.put(e.getKey().name(), (long) e.getValue());
+      }
+      field(sb, "results", object(results));
+    }
+    field(sb, "linksPerPage", linksPerPage.toJson());
+    field(sb, "disambiguationCandidates", disambiguationCandidates.toJson());
+    field(sb, "linkStore", "{\"hits\": " + getLinkStoreHits() + ", \"misses\": " + getLinkStoreMisses() + ", \"hitRate\": "
+        + String.format(Locale.ROOT, "%.4f", getLinkStoreHitRate()) + ", \"readMicros\": " + linkStoreReadMicros.toJson() + "}");
+
+    MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    field(sb, "heap", "{\"used\": " + heap.getUsed() + ", \"committed\": " + heap.getCommitted() + ", \"max\": "
+        + heap.getMax() + ", \"peakUsed\": " + peak + "}");
+    field(sb, "process", "{\"peakRssKb\": " + getPeakRssKb() + "}");
+
+    StringBuilder gc = new StringBuilder("[");
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      gc.append((gc.length() > 1) ? ", " : "").append("{\"name\": ").append(Utils.jsonString(collector.getName())).append(", \"count\": ")
+          .append(collector.getCollectionCount()).append(", \"timeMillis\": ").append(collector.getCollectionTime()).append('}');
+    }
+    sb.append("  \"gc\": ").append(gc.append(']')).append("\n}\n");
+    return sb.toString();
+  }
+
+  private static void field(StringBuilder sb, String name, Object value) {
+    sb.append("  \"").append(name).append("\": ").append(value).append(",\n");
+  }
+
+  private static String object(Map<String, Long> values) {
+    StringBuilder sb = new StringBuilder("{");
+    for (Map.Entry<String, Long> e : values.entrySet()) {
+      sb.append((sb.length() > 1) ? ", " : "").append(Utils.jsonString(e.getKey())).append(": ").append(e.getValue());
+    }
+    return sb.append('}').toString();
+  }
+}
@@ -0,0 +1,39 @@
+package de.mpii.wiki.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of a running mapping, see {@link MappingMetrics}.
+ */
+public interface MappingMetricsMXBean {
+
+  String getPhase();
+
+  long getElapsedMillis();
+
+  long getPagesProcessed();
+
+  long getPagesPerSecond();
+
+  long getPagesReused();
+
+  long getPagesCached();
+
+  long getBytesRead();
+
+  long getBytesPerSecond();
+
+  Map<String, Long> getPhaseMillis();
+
+  Map<String, Long> getHandlerCounts();
+
+  double getLinksPerPageMean();
+
+  double getDisambiguationCandidatesMean();
+
+  double getLinkStoreHitRate();
+
+  double getLinkStoreReadMicrosMean();
+
+  long getHeapUsed();
+}
@@ -0,0 +1,139 @@
+package de.mpii.wiki.partition;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Message exchange between the workers through a shared directory, in rounds. During a round, messages for
+ * each worker are written to one file per sender and receiver. Finishing a round publishes these files
+ * (renamed into place), then waits until every worker has finished the round. The files addressed to this
+ * worker are then read as the input of the next round.
+ *
+ * Each worker announces the number of messages it sent with its done marker, so all workers learn the total
+ * and stop in the same round when nothing was sent. The coordinator aborts the exchange by creating the
+ * abort marker, e.g. when a worker failed.
+ */
+class Exchange {
+
+  static final String ABORT = "abort";
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final long POLL_MILLIS = 20;
+
+  private final File dir;
+
+  private final int partitions;
+
+  private final int index;
+
+  private final DataOutputStream[] outboxes;
+
+  private int round = 0;
+
+  private long sent = 0;
+
+  Exchange(File dir, int partitions, int index) {
+    this.dir = dir;
+    this.partitions = partitions;
+    this.index = index;
+    outboxes = new DataOutputStream[partitions];
+  }
+
+  /**
+   * Returns the stream for one message to the given worker in the current round.
+   */
+  DataOutputStream to(int partition) throws IOException {
+    if (outboxes[partition] == null) {
+      File roundDir = roundDir(round);
+      roundDir.mkdirs();
+      outboxes[partition] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile(round, partition)), 1 << 16));
+    }
+    sent++;
+    return outboxes[partition];
+  }
+
+  /**
+   * Publishes the messages of the current round and waits for all workers to finish it.
+   *
+   * @return Number of messages sent by all workers in the round.
+   */
+  long finishRound() throws IOException {
+    File roundDir = roundDir(round);
+    roundDir.mkdirs();
+    for (int p = 0; p < partitions; p++) {
+      if (outboxes[p] != null) {
+        outboxes[p].close();
+        outboxes[p] = null;
+        rename(tmpFile(round, p), messageFile(round, index, p));
+      }
+    }
+    File done = new File(roundDir, "done-" + index);
+    File tmp = new File(roundDir, "done-" + index + ".tmp");
+    Files.write(tmp.toPath(), String.valueOf(sent).getBytes(UTF8));
+    rename(tmp, done);
+
+    long total = 0;
+    for (int p = 0; p < partitions; p++) {
+      File other = new File(roundDir, "done-" + p);
+      while (!other.exists()) {
+        if (new File(dir, ABORT).exists()) {
+          throw new IOException("Exchange aborted in round " + round);
+        }
+        try {
+          Thread.sleep(POLL_MILLIS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted in round " + round, e);
+        }
+      }
+      total += Long.parseLong(new String(Files.readAllBytes(other.toPath()), UTF8).trim());
+    }
+    round++;
+    sent = 0;
+    return total;
+  }
+
+  /**
+   * Returns the message files addressed to this worker in the last finished round.
+   */
+  List<File> inbox() {
+    List<File> files = new ArrayList<>();
+    for (int p = 0; p < partitions; p++) {
+      File file = messageFile(round - 1, p, index);
+      if (file.exists()) {
+        files.add(file);
+      }
+    }
+    return files;
+  }
+
+  int getRound() {
+    return round;
+  }
+
+  private File roundDir(int r) {
+    return new File(dir, "round-" + r);
+  }
+
+  private File messageFile(int r, int from, int to) {
+    return new File(roundDir(r), from + "-" + to + ".msg");
+  }
+
+  private File tmpFile(int r, int to) {
+    return new File(roundDir(r), index + "-" + to + ".tmp");
+  }
+
+  private static void rename(File from, File to) throws IOException {
+    if (!from.renameTo(to)) {
+      throw new IOException("Failed to rename " + from + " to " + to);
+    }
+  }
+}
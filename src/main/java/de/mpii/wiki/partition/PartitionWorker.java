@@ -0,0 +1,474 @@
+package de.mpii.wiki.partition;
+
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mpii.wiki.common.Utils;
+import de.mpii.wiki.compute.Jaccard;
+import de.mpii.wiki.dump.DumpData;
+import de.mpii.wiki.dump.DumpReader;
+import de.mpii.wiki.dump.DumpSettings.DumpType;
+import de.mpii.wiki.dump.DumpSettings.MappedType;
+import de.mpii.wiki.dump.PageFilter;
+import de.mpii.wiki.metrics.MappingMetrics;
+import de.mpii.wiki.metrics.MappingMetrics.Phase;
+
+/**
+ * Maps one partition of the source pages, see {@link PartitionedMapper}. Both dumps are scanned, but only
+ * the pages of the own partition are kept. Everything that can be decided by page id (ignored, deleted,
+ * updated and unchanged entries) is local. Redirect chains and disambiguation candidates refer to pages by
+ * title, these lookups go through the {@link Exchange}:
+ *
+ * <ol>
+ * <li>Every worker publishes title, id, position in the dump and redirect link of its target pages to the owner
+ * of the title. A title used by several pages belongs to the last of them in the dump, as in memory.</li>
+ * <li>A redirect chain is followed hop by hop at the owners of the titles along the chain, carrying the ids
+ * visited so far for cycle detection. The resolved id and title are returned to the source page's worker.</li>
+ * <li>Each candidate of a disambiguation page is looked up at the owner of its title and forwarded, with the
+ * links of the source page, to the worker holding the candidate page, which computes the similarity. Only
+ * candidates with a positive score are returned to the source page's worker.</li>
+ * </ol>
+ *
+ * The results are the same as those of the in memory mapping, written sorted by source id to the partition's
+ * result file. The evaluation mode (page texts) is not supported.
+ */
+public class PartitionWorker {
+
+  // message kinds
+  private static final byte TITLE = 0, WALK = 1, REDIRECT_RESULT = 2, CANDIDATE = 3, CANDIDATE_FETCH = 4, CANDIDATE_SCORE = 5;
+
+  private static Logger logger_ = LoggerFactory.getLogger(PartitionWorker.class);
+
+  private final File workDir;
+
+  private final Partitioner partitioner;
+
+  private final int index;
+
+  private final MappingMetrics metrics;
+
+  private final Exchange exchange;
+
+  private final DumpData sourceData;
+
+  private final DumpData targetData;
+
+  // position in the dump of the own target pages
+  private final TIntIntMap targetPositions = new TIntIntHashMap();
+
+  // titles owned by this worker: title -> id, redirect title -> title redirected to (null if it has no link)
+  private final TObjectIntMap<String> titleIds = new TObjectIntHashMap<>();
+  private final TObjectIntMap<String> titlePositions = new TObjectIntHashMap<>();
+  private final Map<String, String> redirects = new HashMap<>();
+
+  // resolved redirects of the own source ids
+  private final TIntIntMap redirectIds = new TIntIntHashMap();
+  private final TIntObjectMap<String> redirectTitles = new TIntObjectHashMap<>();
+
+  // best disambiguation candidate returned so far for the own source ids
+  private final TIntObjectMap<Candidate> candidates = new TIntObjectHashMap<>();
+
+  public PartitionWorker(File workDir, Partitioner partitioner, int index, MappingMetrics metrics) {
+    this.workDir = workDir;
+    this.partitioner = partitioner;
+    this.index = index;
+    this.metrics = metrics;
+    exchange = new Exchange(workDir, partitioner.getPartitions(), index);
+    sourceData = new DumpData(DumpType.SOURCE, metrics);
+    targetData = new DumpData(DumpType.TARGET, metrics);
+  }
+
+  // rows of (source id, source title, target title, type ordinal), sorted by source id
+  static File resultFile(File workDir, int index) {
+    return new File(workDir, "part-" + index + ".bin");
+  }
+
+  public void run(File oldDump, File newDump) throws IOException, XMLStreamException {
+    long start = System.currentTimeMillis();
+    metrics.setPhase("scan target");
+    scan(newDump, targetData, targetPositions);
+    metrics.setPhase("scan source");
+    scan(oldDump, sourceData, null);
+    logger_.info("Partition " + index + " : " + sourceData.size() + " source and " + targetData.size() + " target pages kept, scanned in "
+        + (System.currentTimeMillis() - start) / 1000 + " s");
+
+    start = System.currentTimeMillis();
+    metrics.setPhase("exchange titles");
+    for (int id : targetData.getPageIds()) {
+      String title = targetData.getTitle(id);
+      DataOutputStream out = exchange.to(partitioner.ownerOf(title));
+      out.writeByte(TITLE);
+      Utils.writeString(out, title);
+      out.writeInt(id);
+      out.writeInt(targetPositions.get(id));
+      out.writeBoolean(targetData.isRedirect(id));
+      Utils.writeString(out, targetData.getRedirectTitle(id));
+    }
+    exchange.finishRound();
+    readInbox();
+    logger_.info("Partition " + index + " : " + titleIds.size() + " titles owned");
+
+    metrics.setPhase("exchange lookups");
+    startLookups();
+    while (exchange.finishRound() > 0) {
+      readInbox();
+    }
+    logger_.info("Partition " + index + " : lookups finished after " + exchange.getRound() + " rounds in "
+        + (System.currentTimeMillis() - start) / 1000 + " s");
+
+    metrics.setPhase("generate results");
+    writeResults();
+  }
+
+  // positions is null if the positions of the pages are not needed
+  private void scan(File dump, DumpData data, final TIntIntMap positions) throws IOException, XMLStreamException {
+    PageFilter filter = new PageFilter() {
+      private int position = 0;
+
+      @Override
+      public boolean accept(int id, String title) {
+        position++;
+        if (partitioner.partitionOf(id) != index) {
+          return false;
+        }
+        if (positions != null) {
+          positions.put(id, position);
+        }
+        return true;
+      }
+
+      @Override
+      public void added(int id) {
+      }
+    };
+    try (InputStream in = metrics.track(new BufferedInputStream(new FileInputStream(dump), 1 << 16))) {
+      DumpReader.read(XMLInputFactory.newInstance().createXMLStreamReader(in), data, filter);
+    }
+  }
+
+  private void startLookups() throws IOException {
+    for (int srcId : sourceData.getPageIds()) {
+      if (!sourceData.isValidId(srcId)) {
+        continue;
+      }
+      if (targetData.isRedirect(srcId)) {
+        String title = targetData.getRedirectTitle(srcId);
+        if (title == null) {
+          // a redirect without link resolves to itself
+          redirectIds.put(srcId, srcId);
+        } else {
+          walk(srcId, new int[] { srcId }, title);
+        }
+      } else if (targetData.isDisambiguation(srcId)) {
+        List<String> titles = Utils.verifyList(targetData.getDisambiguationLinks(srcId));
+        metrics.addDisambiguation(titles.size());
+        List<String> srcLinks = Utils.verifyList(sourceData.getPageLinks(srcId));
+        for (int pos = 0; pos < titles.size(); pos++) {
+          DataOutputStream out = exchange.to(partitioner.ownerOf(titles.get(pos)));
+          out.writeByte(CANDIDATE);
+          out.writeInt(srcId);
+          out.writeInt(pos);
+          Utils.writeString(out, titles.get(pos));
+          writeLinks(out, srcLinks);
+        }
+      }
+    }
+  }
+
+  private void readInbox() throws IOException {
+    for (File file : exchange.inbox()) {
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+        while (true) {
+          byte kind;
+          try {
+            kind = in.readByte();
+          } catch (EOFException e) {
+            break;
+          }
+          handle(kind, in);
+        }
+      }
+      file.delete();
+    }
+  }
+
+  private void handle(byte kind, DataInputStream in) throws IOException {
+    switch (kind) {
+      case TITLE: {
+        String title = Utils.readString(in);
+        int id = in.readInt();
+        int position = in.readInt();
+        boolean redirect = in.readBoolean();
+        String redirectTitle = Utils.readString(in);
+        // the inboxes are read by sender, not in dump order
+        if (titlePositions.containsKey(title) && titlePositions.get(title) > position) {
+          break;
+        }
+        titleIds.put(title, id);
+        titlePositions.put(title, position);
+        if (redirect) {
+          redirects.put(title, redirectTitle);
+        } else {
+          redirects.remove(title);
+        }
+        break;
+      }
+      case WALK: {
+        int srcId = in.readInt();
+        int[] visited = new int[in.readInt()];
+        for (int i = 0; i < visited.length; i++) {
+          visited[i] = in.readInt();
+        }
+        step(srcId, visited, Utils.readString(in));
+        break;
+      }
+      case REDIRECT_RESULT: {
+        int srcId = in.readInt();
+        redirectIds.put(srcId, in.readInt());
+        String title = Utils.readString(in);
+        if (title != null) {
+          redirectTitles.put(srcId, title);
+        }
+        break;
+      }
+      case CANDIDATE: {
+        int srcId = in.readInt();
+        int pos = in.readInt();
+        String title = Utils.readString(in);
+        List<String> srcLinks = readLinks(in);
+        if (titleIds.containsKey(title)) {
+          // candidates missing in target never match
+          int candId = titleIds.get(title);
+          DataOutputStream out = exchange.to(partitioner.partitionOf(candId));
+          out.writeByte(CANDIDATE_FETCH);
+          out.writeInt(srcId);
+          out.writeInt(pos);
+          out.writeInt(candId);
+          writeLinks(out, srcLinks);
+        }
+        break;
+      }
+      case CANDIDATE_FETCH: {
+        int srcId = in.readInt();
+        int pos = in.readInt();
+        int candId = in.readInt();
+        List<String> srcLinks = readLinks(in);
+        List<String> candLinks = targetData.getPageLinks(candId);
+        if (candLinks == null) {
+          // redirect or disambiguation pages have no links to compare
+          break;
+        }
+        long start = System.nanoTime();
+        double score = Jaccard.compute(srcLinks, candLinks);
+        metrics.time(Phase.DISAMBIGUATION, System.nanoTime() - start);
+        if (score > 0.0) {
+          DataOutputStream out = exchange.to(partitioner.partitionOf(srcId));
+          out.writeByte(CANDIDATE_SCORE);
+          out.writeInt(srcId);
+          out.writeInt(pos);
+          Utils.writeString(out, targetData.getTitle(candId));
+          out.writeDouble(score);
+        }
+        break;
+      }
+      case CANDIDATE_SCORE: {
+        int srcId = in.readInt();
+        Candidate candidate = new Candidate(in.readInt(), Utils.readString(in), in.readDouble());
+        Candidate best = candidates.get(srcId);
+        // the first of the best scoring candidates wins, as in the in memory mapping
+        if (best == null || candidate.score > best.score || (candidate.score == best.score && candidate.pos < best.pos)) {
+          candidates.put(srcId, candidate);
+        }
+        break;
+      }
+      default:
+        throw new IOException("Invalid message kind : " + kind);
+    }
+  }
+
+  // one hop of a redirect chain, at the owner of the title
+  private void step(int srcId, int[] visited, String title) throws IOException {
+    if (!titleIds.containsKey(title)) {
+      // redirect to a missing page
+      resolved(srcId, 0, null);
+      return;
+    }
+    int id = titleIds.get(title);
+    for (int v : visited) {
+      if (v == id) {
+        logger_.warn("Cycle Found for id : " + srcId + ": " + Arrays.toString(visited));
+        resolved(srcId, srcId, null);
+        return;
+      }
+    }
+    String next = redirects.get(title);
+    if (next == null) {
+      // not a redirect, or one without link
+      resolved(srcId, id, title);
+      return;
+    }
+    int[] path = Arrays.copyOf(visited, visited.length + 1);
+    path[visited.length] = id;
+    walk(srcId, path, next);
+  }
+
+  private void walk(int srcId, int[] visited, String title) throws IOException {
+    DataOutputStream out = exchange.to(partitioner.ownerOf(title));
+    out.writeByte(WALK);
+    out.writeInt(srcId);
+    out.writeInt(visited.length);
+    for (int v : visited) {
+      out.writeInt(v);
+    }
+    Utils.writeString(out, title);
+  }
+
+  private void resolved(int srcId, int tgtId, String title) throws IOException {
+    DataOutputStream out = exchange.to(partitioner.partitionOf(srcId));
+    out.writeByte(REDIRECT_RESULT);
+    out.writeInt(srcId);
+    out.writeInt(tgtId);
+    Utils.writeString(out, title);
+  }
+
+  private void writeResults() throws IOException {
+    int[] srcIds = sourceData.getPageIds();
+    Arrays.sort(srcIds);
+    File results = resultFile(workDir, index);
+    File tmp = new File(workDir, results.getName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+      for (int srcId : srcIds) {
+        String srcTitle = sourceData.getTitle(srcId);
+        String tgtTitle;
+        MappedType type;
+        if (!sourceData.isValidId(srcId)) {
+          type = MappedType.SOURCE_IGNORED;
+          // ignored entries missing in target are mapped on to themselves
+          tgtTitle = targetData.hasId(srcId) ? targetData.getTitle(srcId) : srcTitle;
+        } else if (targetData.isRedirect(srcId)) {
+          int tgtId = redirectIds.get(srcId);
+          if (tgtId == srcId) {
+            type = MappedType.REDIRECTED_CYCLE;
+            tgtTitle = targetData.getTitle(srcId);
+          } else {
+            type = MappedType.REDIRECTED;
+            tgtTitle = redirectTitles.get(srcId);
+          }
+        } else if (targetData.isDisambiguation(srcId)) {
+          type = MappedType.DISAMBIGUATED;
+          Candidate best = candidates.get(srcId);
+          tgtTitle = (best != null) ? best.title : targetData.getTitle(srcId);
+        } else if (!targetData.hasId(srcId)) {
+          type = MappedType.DELETED;
+          tgtTitle = null;
+        } else {
+          tgtTitle = targetData.getTitle(srcId);
+          type = srcTitle.equals(tgtTitle) ? MappedType.UNCHANGED : MappedType.UPDATED;
+        }
+        out.writeInt(srcId);
+        Utils.writeString(out, srcTitle);
+        Utils.writeString(out, tgtTitle);
+        out.writeByte(type.ordinal());
+      }
+    }
+    if (!tmp.renameTo(results)) {
+      throw new IOException("Failed to rename " + tmp + " to " + results);
+    }
+  }
+
+  private static void writeLinks(DataOutputStream out, List<String> links) throws IOException {
+    out.writeInt(links.size());
+    for (String link : links) {
+      Utils.writeString(out, link);
+    }
+  }
+
+  private static List<String> readLinks(DataInputStream in) throws IOException {
+    int size = in.readInt();
+    List<String> links = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      links.add(Utils.readString(in));
+    }
+    return links;
+  }
+
+  private static class Candidate {
+    final int pos;
+    final String title;
+    final double score;
+
+    Candidate(int pos, String title, double score) {
+      this.pos = pos;
+      this.title = title;
+      this.score = score;
+    }
+  }
+
+  @SuppressWarnings("static-access")
+  private static Options buildCommandLineOptions() throws ParseException {
+    Options options = new Options();
+    options.addOption(OptionBuilder.withLongOpt("source").withDescription("Old dump to be mapped").hasArg().withArgName("SOURCE_DUMP").create("s"));
+    options.addOption(OptionBuilder.withLongOpt("target").withDescription("New dump to check against").hasArg().withArgName("TARGET_DUMP").create("t"));
+    options.addOption(OptionBuilder.withLongOpt("work").withDescription("Work directory shared by all workers").hasArg().withArgName("DIR").create());
+    options.addOption(OptionBuilder.withLongOpt("partitions").withDescription("Number of partitions").hasArg().withArgName("K").create());
+    options.addOption(OptionBuilder.withLongOpt("index").withDescription("Partition of this worker (0 based)").hasArg().withArgName("I").create());
+    options.addOption(OptionBuilder.withLongOpt("partitioning").withDescription("hash (default) or range:MAX_ID").hasArg().withArgName("SCHEME").create());
+    options.addOption(OptionBuilder.withLongOpt("metrics").withDescription("Write a JSON metrics report of this worker").hasArg().withArgName("FILENAME").create());
+    options.addOption(OptionBuilder.withLongOpt("help").create('h'));
+    return options;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = buildCommandLineOptions();
+    CommandLineParser parser = new PosixParser();
+    CommandLine cmd = parser.parse(options, args);
+    if (cmd.hasOption("h") || !cmd.hasOption('s') || !cmd.hasOption('t') || !cmd.hasOption("work") || !cmd.hasOption("partitions")
+        || !cmd.hasOption("index")) {
+      new HelpFormatter().printHelp("PartitionWorker", options);
+      return;
+    }
+    int partitions = Integer.parseInt(cmd.getOptionValue("partitions"));
+    Partitioner partitioner = Partitioner.parse(cmd.getOptionValue("partitioning", "hash"), partitions);
+    MappingMetrics metrics = new MappingMetrics();
+    PartitionWorker worker = new PartitionWorker(new File(cmd.getOptionValue("work")), partitioner,
+        Integer.parseInt(cmd.getOptionValue("index")), metrics);
+    worker.run(new File(cmd.getOptionValue('s')), new File(cmd.getOptionValue('t')));
+    metrics.finish();
+    if (cmd.hasOption("metrics")) {
+      metrics.writeReport(new File(cmd.getOptionValue("metrics")));
+    }
+  }
+}
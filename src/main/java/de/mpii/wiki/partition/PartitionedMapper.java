@@ -0,0 +1,306 @@
+package de.mpii.wiki.partition;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mpii.wiki.common.ResultWriter;
+import de.mpii.wiki.common.Utils;
+import de.mpii.wiki.dump.DumpSettings.MappedType;
+import de.mpii.wiki.metrics.MappingMetrics;
+import de.mpii.wiki.result.MappedResult;
+import de.mpii.wiki.stream.DumpOrder;
+
+/**
+ * Coordinates a partitioned mapping run, for dumps too large to be mapped within one JVM. The source pages
+ * are split into partitions by page id, each partition is mapped by a separate worker process (see
+ * {@link PartitionWorker}). Workers exchange the lookups crossing partitions through files in a work
+ * directory, so they may run on other machines as long as the work directory and dumps are shared (see
+ * {@link #setWorkerCommand(String)}). The per partition results are merged in source id order, which gives
+ * the same output as the in memory mapping.
+ *
+ * If a worker fails, the others are aborted and the work directory (with the worker logs) is kept.
+ */
+public class PartitionedMapper {
+
+  private static final long POLL_MILLIS = 100;
+
+  // lines of a failed worker's log included in the error
+  private static final int LOG_TAIL_LINES = 20;
+
+  private static final MappedType[] TYPES = MappedType.values();
+
+  private static Logger logger_ = LoggerFactory.getLogger(PartitionedMapper.class);
+
+  private final int partitions;
+
+  private final File tmpDir;
+
+  private final MappingMetrics metrics;
+
+  private boolean rangePartitioning = false;
+
+  private String workerHeap;
+
+  private String workerCommand;
+
+  private String workerClasspath;
+
+  private final int[] counts = new int[TYPES.length];
+
+  /**
+   * @param partitions Number of partitions (worker processes).
+   * @param tmpDir Directory the work directory is created in.
+   */
+  public PartitionedMapper(int partitions, File tmpDir, MappingMetrics metrics) {
+    this.partitions = partitions;
+    this.tmpDir = tmpDir;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Partitions page ids into ranges instead of hashing them. This needs an extra (raw byte) scan of both
+   * dumps for the largest page id.
+   */
+  public void setRangePartitioning(boolean rangePartitioning) {
+    this.rangePartitioning = rangePartitioning;
+  }
+
+  /**
+   * @param heap Maximum heap of each worker JVM (e.g. 32g), the JVM default if null.
+   */
+  public void setWorkerHeap(String heap) {
+    this.workerHeap = heap;
+  }
+
+  /**
+   * @param command Command prepended to the java command line of each worker, e.g. "ssh node%d" to start
+   *  the workers on other machines. "%d" is replaced by the worker index. The java installation and class
+   *  path of the coordinator must then be available at the same paths on these machines.
+   */
+  public void setWorkerCommand(String command) {
+    this.workerCommand = command;
+  }
+
+  /**
+   * @param classpath Class path of the worker JVMs, by default the class path this class was loaded from
+   *  (see {@link Utils#classpath()}).
+   */
+  public void setWorkerClasspath(String classpath) {
+    this.workerClasspath = classpath;
+  }
+
+  public void map(File oldDump, File newDump, ResultWriter writer) throws IOException {
+    Partitioner partitioner = Partitioner.hash(partitions);
+    if (rangePartitioning) {
+      metrics.setPhase("find id range");
+      partitioner = Partitioner.range(partitions, Math.max(DumpOrder.maxId(oldDump), DumpOrder.maxId(newDump)));
+    }
+    File workDir = Files.createTempDirectory(tmpDir.toPath(), "wiki-partitions").toFile();
+    logger_.info("Mapping with " + partitions + " workers (" + partitioner + " partitioning) in " + workDir);
+
+    long start = System.currentTimeMillis();
+    metrics.setPhase("run workers");
+    runWorkers(oldDump, newDump, workDir, partitioner);
+    logger_.info("Time to run workers : " + (System.currentTimeMillis() - start) / 1000 + " s.");
+
+    start = System.currentTimeMillis();
+    metrics.setPhase("merge results");
+    merge(workDir, writer);
+    logger_.info("Time to merge results : " + (System.currentTimeMillis() - start) / 1000 + " s.");
+    for (MappedType type : TYPES) {
+      metrics.setResultCount(type, counts[type.ordinal()]);
+    }
+    delete(workDir);
+  }
+
+  private void runWorkers(File oldDump, File newDump, File workDir, Partitioner partitioner) throws IOException {
+    String classpath = (workerClasspath != null) ? workerClasspath : Utils.classpath();
+    List<Process> workers = new ArrayList<>();
+    try {
+      for (int i = 0; i < partitions; i++) {
+        List<String> command = new ArrayList<>();
+        if (workerCommand != null) {
+          for (String part : workerCommand.trim().split("\\s+")) {
+            command.add(part.replace("%d", String.valueOf(i)));
+          }
+        }
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        if (workerHeap != null) {
+          command.add("-Xmx" + workerHeap);
+        }
+        command.add("-cp");
+        command.add(classpath);
+        command.add(PartitionWorker.class.getName());
+        command.add("-s");
+        command.add(oldDump.getAbsolutePath());
+        command.add("-t");
+        command.add(newDump.getAbsolutePath());
+        command.add("--work");
+        command.add(workDir.getAbsolutePath());
+        command.add("--partitions");
+        command.add(String.valueOf(partitions));
+        command.add("--index");
+        command.add(String.valueOf(i));
+        command.add("--partitioning");
+        command.add(partitioner.toString());
+        command.add("--metrics");
+        command.add(new File(workDir, "worker-" + i + ".json").getAbsolutePath());
+        File log = new File(workDir, "worker-" + i + ".log");
+        workers.add(new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start());
+      }
+
+      int finished = 0;
+      while (finished < partitions) {
+        finished = 0;
+        for (int i = 0; i < partitions; i++) {
+          Integer exitCode = exitCode(workers.get(i));
+          if (exitCode == null) {
+            continue;
+          }
+          if (exitCode != 0 || !PartitionWorker.resultFile(workDir, i).exists()) {
+            File log = new File(workDir, "worker-" + i + ".log");
+            logger_.error("Worker " + i + " failed with exit code " + exitCode + ", last lines of " + log + " :\n" + tail(log));
+            throw new IOException("Worker " + i + " failed with exit code " + exitCode + ", see " + log);
+          }
+          finished++;
+        }
+        if (finished < partitions) {
+          Thread.sleep(POLL_MILLIS);
+        }
+      }
+    } catch (IOException | InterruptedException e) {
+      new File(workDir, Exchange.ABORT).createNewFile();
+      for (Process worker : workers) {
+        worker.destroy();
+      }
+      if (e instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for workers", e);
+      }
+      throw (IOException) e;
+    }
+  }
+
+  private static String tail(File log) {
+    Deque<String> lines = new ArrayDeque<>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(log), Charset.forName("UTF-8")))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+        if (lines.size() > LOG_TAIL_LINES) {
+          lines.removeFirst();
+        }
+      }
+    } catch (IOException e) {
+      return "(log not readable : " + e.getMessage() + ")";
+    }
+    StringBuilder sb = new StringBuilder();
+    for (String line : lines) {
+      sb.append(line).append('\n');
+    }
+    return sb.toString();
+  }
+
+  private static Integer exitCode(Process process) {
+    try {
+      return process.exitValue();
+    } catch (IllegalThreadStateException e) {
+      // still running
+      return null;
+    }
+  }
+
+  // merges the partition results, each sorted by source id
+  private void merge(File workDir, ResultWriter writer) throws IOException {
+    List<Part> parts = new ArrayList<>();
+    PriorityQueue<Part> queue = new PriorityQueue<>(partitions, new Comparator<Part>() {
+      @Override
+      public int compare(Part p1, Part p2) {
+        return Integer.compare(p1.srcId, p2.srcId);
+      }
+    });
+    try {
+      for (int i = 0; i < partitions; i++) {
+        Part part = new Part(PartitionWorker.resultFile(workDir, i));
+        parts.add(part);
+        if (part.advance()) {
+          queue.add(part);
+        }
+      }
+      Part part;
+      while ((part = queue.poll()) != null) {
+        counts[part.type.ordinal()]++;
+        String text = part.type.equals(MappedType.DISAMBIGUATED) ? MappedResult.NO_STR : null;
+        writer.write(new MappedResult(part.srcTitle, part.tgtTitle, part.type, text, text));
+        if (part.advance()) {
+          queue.add(part);
+        }
+      }
+    } finally {
+      for (Part p : parts) {
+        p.in.close();
+      }
+    }
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  public int getCount(MappedType type) {
+    return counts[type.ordinal()];
+  }
+
+  public void printResultStats() {
+    for (MappedType type : TYPES) {
+      System.out.println(type.name() + "\t:\t" + counts[type.ordinal()]);
+    }
+  }
+
+  private static class Part {
+    final DataInputStream in;
+    int srcId;
+    String srcTitle;
+    String tgtTitle;
+    MappedType type;
+
+    Part(File file) throws IOException {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    }
+
+    boolean advance() throws IOException {
+      try {
+        srcId = in.readInt();
+      } catch (EOFException e) {
+        return false;
+      }
+      srcTitle = Utils.readString(in);
+      tgtTitle = Utils.readString(in);
+      type = TYPES[in.readByte()];
+      return true;
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package de.mpii.wiki.partition;
+
+/**
+ * Assigns pages to partitions by page id (the pages a worker keeps and maps) and titles to partitions by
+ * title (the worker answering lookups of that title). Page ids are either hashed or split into ranges of
+ * equal width, titles are always hashed.
+ */
+public class Partitioner {
+
+  private static final String HASH = "hash";
+
+  private static final String RANGE = "range:";
+
+  private final int partitions;
+
+  // largest page id for range partitioning, 0 for hash partitioning
+  private final long maxId;
+
+  private Partitioner(int partitions, long maxId) {
+    if (partitions < 1) {
+      throw new IllegalArgumentException("Invalid number of partitions : " + partitions);
+    }
+    this.partitions = partitions;
+    this.maxId = maxId;
+  }
+
+  public static Partitioner hash(int partitions) {
+    return new Partitioner(partitions, 0);
+  }
+
+  public static Partitioner range(int partitions, long maxId) {
+    return new Partitioner(partitions, Math.max(1, maxId));
+  }
+
+  /**
+   * Parses the form written by {@link #toString()}: "hash" or "range:MAX_ID".
+   */
+  public static Partitioner parse(String str, int partitions) {
+    if (str.equals(HASH)) {
+      return hash(partitions);
+    }
+    if (str.startsWith(RANGE)) {
+      return range(partitions, Long.parseLong(str.substring(RANGE.length())));
+    }
+    throw new IllegalArgumentException("Invalid partitioning : " + str);
+  }
+
+  public int getPartitions() {
+    return partitions;
+  }
+
+  public int partitionOf(int id) {
+    if (maxId > 0) {
+      return (int) (Math.min(Math.max(id, 0), maxId) * partitions / (maxId + 1));
+    }
+    return mix(id);
+  }
+
+  public int ownerOf(String title) {
+    return mix(title.hashCode());
+  }
+
+  private int mix(int value) {
+    // fibonacci hashing spreads consecutive ids over all partitions
+    long h = (value * 0x9E3779B97F4A7C15L) >>> 32;
+    return (int) (h % partitions);
+  }
+
+  @Override
+  public String toString() {
+    return (maxId > 0) ? RANGE + maxId : HASH;
+  }
+}
@@ -0,0 +1,345 @@
+package de.mpii.wiki.profile;
+
+import gnu.trove.map.TLongLongMap;
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mpii.wiki.common.Histogram;
+import de.mpii.wiki.common.Utils;
+import de.mpii.wiki.dump.AbstractPageVisitor;
+import de.mpii.wiki.dump.DumpData;
+import de.mpii.wiki.dump.DumpReader;
+import de.mpii.wiki.dump.PageFilter;
+import de.mpii.wiki.metrics.MappingMetrics;
+import de.mpii.wiki.page.handlers.Handler.HandlerType;
+
+/**
+ * Profiles a dump without storing its pages, to plan the resources of a mapping: pages per namespace and
+ * handler type, text sizes, links per page, redirect chains, disambiguation fan-out and the heap the
+ * {@link DumpData} of the dump would need. The pages are classified and their links extracted on a second
+ * thread while the dump is read; only the redirects are kept (as title hashes) to resolve their chains.
+ *
+ * A profile of the first part of a dump is a quick estimate: counts are those of the pages read, the
+ * projected page count and memory are scaled by the fraction of the dump file read.
+ */
+public class DumpProfiler extends AbstractPageVisitor {
+
+  // canonical names of the namespaces, titles without one of these prefixes are in the main namespace
+  private static final Set<String> NAMESPACES = new HashSet<>(Arrays.asList("Talk", "User", "User talk", "Wikipedia",
+      "Wikipedia talk", "File", "File talk", "Image", "MediaWiki", "MediaWiki talk", "Template", "Template talk", "Help",
+      "Help talk", "Category", "Category talk", "Portal", "Portal talk", "Draft", "Draft talk", "TimedText",
+      "TimedText talk", "Module", "Module talk", "Book", "Book talk"));
+
+  private static final String MAIN_NAMESPACE = "(main)";
+
+  private static final HandlerType[] TYPES = HandlerType.values();
+
+  /*
+   * Heap estimates of DumpData (64 bit JVM, compressed references): trove maps use open addressing at load
+   * factor 0.5 and store key, value and state per slot; strings and lists have object and array headers.
+   */
+  private static final long MAP_ENTRY = 26;
+  private static final long COLUMNS_ENTRY = 21;
+  private static final long STRING = 40;
+  private static final long LIST = 40;
+  private static final long REFERENCE = 8;
+
+  private static Logger logger_ = LoggerFactory.getLogger(DumpProfiler.class);
+
+  private final String name;
+
+  private final long fileBytes;
+
+  private final double samplePercent;
+
+  private long bytesRead;
+
+  private long elapsedMillis;
+
+  private long pages = 0;
+
+  private final Map<String, Long> namespaces = new TreeMap<>();
+
+  private final long[] handlerCounts = new long[TYPES.length];
+
+  private final Histogram textSize = new Histogram();
+
+  private final Histogram linksPerPage = new Histogram();
+
+  private final Histogram fanOut = new Histogram();
+
+  private final Histogram chainLengths = new Histogram();
+
+  private long cycles = 0;
+
+  // title hash of each redirect -> title hash of its target
+  private final TLongLongMap redirects = new TLongLongHashMap();
+
+  // sums for the memory projection
+  private long titleChars = 0;
+  private final long[] lists = new long[TYPES.length];
+  private final long[] links = new long[TYPES.length];
+  private final long[] linkChars = new long[TYPES.length];
+
+  // page being visited
+  private String title;
+  private long textLength;
+
+  private DumpProfiler(String name, long fileBytes, double samplePercent) {
+    this.name = name;
+    this.fileBytes = fileBytes;
+    this.samplePercent = samplePercent;
+  }
+
+  /**
+   * Profiles the given dump.
+   *
+   * @param samplePercent Percentage of the dump (by file size) to profile, from its start, 100 for all pages.
+   */
+  public static DumpProfiler profile(File dump, double samplePercent) throws IOException, XMLStreamException {
+    if (samplePercent <= 0 || samplePercent > 100) {
+      throw new IllegalArgumentException("Invalid sample percentage : " + samplePercent);
+    }
+    final DumpProfiler profiler = new DumpProfiler(dump.getName(), dump.length(), samplePercent);
+    final MappingMetrics metrics = new MappingMetrics();
+    final long limit = (samplePercent < 100) ? (long) (dump.length() * samplePercent / 100) : Long.MAX_VALUE;
+    long start = System.currentTimeMillis();
+
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    try (InputStream in = new BufferedInputStream(metrics.track(new FileInputStream(dump)), 1 << 16)) {
+      PageFilter filter = new PageFilter() {
+        @Override
+        public boolean accept(int id, String title) {
+          if (metrics.getBytesRead() >= limit) {
+            throw new CancellationException("Sample limit reached");
+          }
+          return true;
+        }
+
+        @Override
+        public void added(int id) {
+        }
+      };
+      List<DumpProfiler> visitors = Collections.singletonList(profiler);
+      DumpReader.read(XMLInputFactory.newInstance().createXMLStreamReader(in), filter, visitors, pool);
+    } catch (CancellationException e) {
+      // the rest of the dump is not profiled
+      logger_.info("Profiled the first " + (metrics.getBytesRead() >> 20) + " MB of " + dump.getName());
+    } finally {
+      pool.shutdownNow();
+    }
+    profiler.bytesRead = Math.min(metrics.getBytesRead(), dump.length());
+    profiler.resolveRedirects();
+    profiler.elapsedMillis = System.currentTimeMillis() - start;
+    return profiler;
+  }
+
+  @Override
+  public boolean needsText() {
+    return true;
+  }
+
+  @Override
+  public boolean needsLinks() {
+    return true;
+  }
+
+  @Override
+  public void startPage(int id, String title) {
+    this.title = title;
+    textLength = 0;
+    int colon = title.indexOf(':');
+    String namespace = (colon > 0 && NAMESPACES.contains(title.substring(0, colon))) ? title.substring(0, colon) : MAIN_NAMESPACE;
+    Long count = namespaces.get(namespace);
+    namespaces.put(namespace, (count != null) ? count + 1 : 1);
+  }
+
+  @Override
+  public void text(String chunk) {
+    textLength += chunk.length();
+  }
+
+  @Override
+  public void parsed(DumpData.Page page) {
+    HandlerType type = page.getType();
+    List<String> pageLinks = page.getLinks();
+    handlerCounts[type.ordinal()]++;
+    lists[type.ordinal()]++;
+    links[type.ordinal()] += pageLinks.size();
+    for (String link : pageLinks) {
+      linkChars[type.ordinal()] += link.length();
+    }
+    if (type == HandlerType.NORMAL) {
+      linksPerPage.record(pageLinks.size());
+    } else if (type == HandlerType.DISAMBIGUATIONS) {
+      fanOut.record(pageLinks.size());
+    } else if (!pageLinks.isEmpty()) {
+      redirects.put(Utils.hash64(title), Utils.hash64(pageLinks.get(0)));
+    }
+  }
+
+  @Override
+  public void endPage() {
+    pages++;
+    titleChars += title.length();
+    textSize.record(textLength);
+  }
+
+  // follows the redirect chain of each redirect, as DumpData resolves them
+  private void resolveRedirects() {
+    TLongSet visited = new TLongHashSet();
+    for (long redirect : redirects.keys()) {
+      visited.clear();
+      visited.add(redirect);
+      long current = redirect;
+      int length = 1;
+      while (redirects.containsKey(current = redirects.get(current))) {
+        if (!visited.add(current)) {
+          cycles++;
+          break;
+        }
+        length++;
+      }
+      chainLengths.record(length);
+    }
+    // only the chain lengths are reported
+    redirects.clear();
+  }
+
+  public long getPages() {
+    return pages;
+  }
+
+  public long getHandlerCount(HandlerType type) {
+    return handlerCounts[type.ordinal()];
+  }
+
+  public Map<String, Long> getNamespaces() {
+    return Collections.unmodifiableMap(namespaces);
+  }
+
+  public Histogram getTextSize() {
+    return textSize;
+  }
+
+  public Histogram getLinksPerPage() {
+    return linksPerPage;
+  }
+
+  public Histogram getDisambiguationFanOut() {
+    return fanOut;
+  }
+
+  public Histogram getRedirectChainLengths() {
+    return chainLengths;
+  }
+
+  public long getRedirectCycles() {
+    return cycles;
+  }
+
+  /**
+   * Returns the ratio of the dump size to the bytes profiled, 1 if the whole dump was profiled.
+   */
+  public double getScale() {
+    return (bytesRead > 0 && bytesRead < fileBytes) ? (double) fileBytes / bytesRead : 1.0;
+  }
+
+  /**
+   * Returns the projected heap size of the dump data of the whole dump, when it is mapped as target (all
+   * link lists and revision hashes kept) or as source (links of articles only).
+   */
+  public long getProjectedBytes(boolean target) {
+    long bytes = pages * (2 * MAP_ENTRY + COLUMNS_ENTRY + STRING) + 2 * titleChars;
+    for (HandlerType type : TYPES) {
+      if (target || !type.isSpecialInfoPage()) {
+        bytes += listBytes(type);
+      }
+    }
+    if (target) {
+      bytes += pages * MAP_ENTRY;
+    }
+    return (long) (bytes * getScale());
+  }
+
+  // heap size of the link lists of the pages of the given type
+  private long listBytes(HandlerType type) {
+    int t = type.ordinal();
+    return lists[t] * (MAP_ENTRY + LIST) + links[t] * (REFERENCE + STRING) + 2 * linkChars[t];
+  }
+
+  public String toJson() {
+    StringBuilder sb = new StringBuilder("{\n");
+    field(sb, "dump", Utils.jsonString(name));
+    field(sb, "fileBytes", fileBytes);
+    field(sb, "bytesProfiled", bytesRead);
+    field(sb, "samplePercent", format(samplePercent));
+    field(sb, "elapsedMillis", elapsedMillis);
+    field(sb, "bytesPerSecond", bytesRead * 1000 / Math.max(1, elapsedMillis));
+    field(sb, "pages", pages);
+    field(sb, "projectedPages", Math.round(pages * getScale()));
+
+    StringBuilder ns = new StringBuilder("{");
+    for (Map.Entry<String, Long> e : namespaces.entrySet()) {
+      ns.append((ns.length() > 1) ? ", " : "").append(Utils.jsonString(e.getKey())).append(": ").append(e.getValue());
+    }
+    field(sb, "namespaces", ns.append('}'));
+    StringBuilder handlers = new StringBuilder("{");
+    for (HandlerType type : TYPES) {
+      handlers.append((type.ordinal() > 0) ? ", " : "").append('"').append(type.name()).append("\": ").append(handlerCounts[type.ordinal()]);
+    }
+    field(sb, "handlers", handlers.append('}'));
+
+    field(sb, "textSize", textSize.toJson());
+    field(sb, "linksPerPage", linksPerPage.toJson());
+    field(sb, "redirects", "{\"count\": " + chainLengths.getCount() + ", \"cycles\": " + cycles + ", \"chainLength\": "
+        + chainLengths.toJson() + "}");
+    field(sb, "disambiguationFanOut", fanOut.toJson());
+    sb.append("  \"projectedMemory\": {\"targetBytes\": ").append(getProjectedBytes(true)).append(", \"sourceBytes\": ")
+        .append(getProjectedBytes(false)).append(", \"pageLinkBytes\": ")
+        .append((long) (listBytes(HandlerType.NORMAL) * getScale())).append("}\n}\n");
+    return sb.toString();
+  }
+
+  public void writeReport(File report) throws IOException {
+    try (Writer writer = new OutputStreamWriter(new FileOutputStream(report), Charset.forName("UTF-8"))) {
+      writer.write(toJson());
+    }
+  }
+
+  private static void field(StringBuilder sb, String name, Object value) {
+    sb.append("  \"").append(name).append("\": ").append(value).append(",\n");
+  }
+
+  private static String format(double value) {
+    return String.format(Locale.ROOT, "%.2f", value);
+  }
+}
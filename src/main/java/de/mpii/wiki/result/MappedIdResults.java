@@ -0,0 +1,334 @@
+package de.mpii.wiki.result;
+
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import de.mpii.wiki.dump.DumpColumns;
+import de.mpii.wiki.dump.DumpData;
+import de.mpii.wiki.dump.DumpSettings.MappedType;
+
+/**
+ * Compact, id based representation of the mapping results. Source ids, target ids and mapping types are
+ * held in parallel primitive arrays (sorted by source id), next to the source and target titles. The titles
+ * are the instances of the dumps, the results keep no reference to the dumps themselves, so the memory of
+ * the scan is released once the results were generated.
+ */
+public class MappedIdResults {
+
+  private static final MappedType[] TYPES = MappedType.values();
+
+  private int[] sourceIds;
+  private int[] targetIds;
+  private byte[] types;
+  private String[] sourceTitles;
+  private String[] targetTitles;
+
+  // texts of disambiguated entries by position, only if the dumps were read with their texts
+  private TIntObjectMap<String> sourceTexts;
+  private TIntObjectMap<String> targetTexts;
+
+  // source title -> position, built on the first lookup through the Map view
+  private TObjectIntMap<String> titleIndex;
+
+  private int size = 0;
+
+  private final int[] stats = new int[TYPES.length];
+
+  public MappedIdResults(int capacity) {
+    sourceIds = new int[capacity];
+    targetIds = new int[capacity];
+    types = new byte[capacity];
+    sourceTitles = new String[capacity];
+    targetTitles = new String[capacity];
+  }
+
+  /**
+   * Adds a result entry. Entries have to be added in ascending order of source id.
+   *
+   * @param tgtTitle The title the source title is mapped to, null if the page was deleted.
+   */
+  public void add(int srcId, String srcTitle, int tgtId, String tgtTitle, MappedType type) {
+    if (size > 0 && sourceIds[size - 1] >= srcId) {
+      throw new IllegalArgumentException("Source ids must be added in ascending order : " + srcId);
+    }
+    if (size == sourceIds.length) {
+      int capacity = Math.max(16, size * 2);
+      sourceIds = Arrays.copyOf(sourceIds, capacity);
+      targetIds = Arrays.copyOf(targetIds, capacity);
+      types = Arrays.copyOf(types, capacity);
+      sourceTitles = Arrays.copyOf(sourceTitles, capacity);
+      targetTitles = Arrays.copyOf(targetTitles, capacity);
+    }
+    sourceIds[size] = srcId;
+    targetIds[size] = tgtId;
+    types[size] = (byte) type.ordinal();
+    sourceTitles[size] = srcTitle;
+    targetTitles[size] = tgtTitle;
+    stats[type.ordinal()]++;
+    size++;
+    titleIndex = null;
+  }
+
+  /**
+   * Keeps the page texts of the entry at the given position, for evaluation.
+   */
+  void setTexts(int idx, String srcText, String tgtText) {
+    if (sourceTexts == null) {
+      sourceTexts = new TIntObjectHashMap<>();
+      targetTexts = new TIntObjectHashMap<>();
+    }
+    sourceTexts.put(idx, srcText);
+    targetTexts.put(idx, tgtText);
+  }
+
+  /**
+   * Replaces the result at the given position, e.g. after it was recomputed for an updated target.
+   */
+  public void set(int idx, int tgtId, String tgtTitle, MappedType type) {
+    if (idx < 0 || idx >= size) {
+      throw new IndexOutOfBoundsException("Invalid result index : " + idx);
+    }
+    stats[types[idx]]--;
+    targetIds[idx] = tgtId;
+    targetTitles[idx] = tgtTitle;
+    types[idx] = (byte) type.ordinal();
+    stats[type.ordinal()]++;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int getSourceId(int idx) {
+    return sourceIds[idx];
+  }
+
+  public int getTargetId(int idx) {
+    return targetIds[idx];
+  }
+
+  public MappedType getMappingType(int idx) {
+    return TYPES[types[idx]];
+  }
+
+  public String getSourceTitle(int idx) {
+    return sourceTitles[idx];
+  }
+
+  public String getTargetTitle(int idx) {
+    return targetTitles[idx];
+  }
+
+  /**
+   * Returns the source page text of a disambiguated entry, null if the texts were not loaded.
+   */
+  public String getSourceText(int idx) {
+    return (sourceTexts != null) ? sourceTexts.get(idx) : null;
+  }
+
+  public String getTargetText(int idx) {
+    return (targetTexts != null) ? targetTexts.get(idx) : null;
+  }
+
+  /**
+   * Returns the position of the given source id, or a negative value if the id is not part of the results.
+   */
+  public int indexOf(int srcId) {
+    return Arrays.binarySearch(sourceIds, 0, size, srcId);
+  }
+
+  public void writeTo(DataOutputStream out) throws IOException {
+    out.writeInt(size);
+    for (int i = 0; i < size; i++) {
+      out.writeInt(sourceIds[i]);
+      out.writeInt(targetIds[i]);
+      out.writeByte(types[i]);
+    }
+  }
+
+  /**
+   * Reads results written with {@link #writeTo(DataOutputStream)}, the titles are taken from the given dumps.
+   */
+  public static MappedIdResults readFrom(DataInputStream in, DumpData sourceData, DumpData targetData) throws IOException {
+    int size = in.readInt();
+    MappedIdResults results = new MappedIdResults(size);
+    // the results are sorted by source id, compacted source columns are walked in step
+    DumpColumns columns = sourceData.getColumns();
+    int s = 0;
+    for (int i = 0; i < size; i++) {
+      int srcId = in.readInt();
+      int tgtId = in.readInt();
+      MappedType type = TYPES[in.readByte()];
+      String srcTitle;
+      if (columns != null) {
+        while (s < columns.size() && columns.getId(s) < srcId) {
+          s++;
+        }
+        srcTitle = (s < columns.size() && columns.getId(s) == srcId) ? columns.getTitle(s) : null;
+      } else {
+        srcTitle = sourceData.getTitle(srcId);
+      }
+      results.add(srcId, srcTitle, tgtId, targetTitle(type, srcTitle, tgtId, targetData), type);
+    }
+    return results;
+  }
+
+  /**
+   * Returns the title a source page is mapped to: null for deleted pages, the source title for ignored pages
+   * missing in the target.
+   */
+  static String targetTitle(MappedType type, String srcTitle, int tgtId, DumpData targetData) {
+    if (type.equals(MappedType.DELETED)) {
+      return null;
+    }
+    return targetTitle(type, srcTitle, targetData.getTitle(tgtId));
+  }
+
+  /**
+   * Same as {@link #targetTitle(MappedType, String, int, DumpData)}, for a target title already known (null if
+   * the target id is missing in the target dump).
+   */
+  static String targetTitle(MappedType type, String srcTitle, String title) {
+    if (type.equals(MappedType.DELETED)) {
+      return null;
+    }
+    if (title == null && type.equals(MappedType.SOURCE_IGNORED)) {
+      // ignored entries missing in target are mapped on to themselves
+      return srcTitle;
+    }
+    return title;
+  }
+
+  public int getCount(MappedType type) {
+    return stats[type.ordinal()];
+  }
+
+  public void printResultStats() {
+    for (MappedType type : TYPES) {
+      System.out.println(type.name() + "\t:\t" + stats[type.ordinal()]);
+    }
+  }
+
+  /**
+   * Returns a read-only Map view (source title -> target title) backed by these results. No per entry
+   * objects are kept; lookups go through an index of the source titles built on first use.
+   *
+   * @param includeUnchangedEntries Flag to include/exclude unchanged entries.
+   * @return Map view of old page titles to new page titles.
+   */
+  public Map<String, String> asMap(boolean includeUnchangedEntries) {
+    return new TitleMapView(includeUnchangedEntries);
+  }
+
+  private synchronized TObjectIntMap<String> titleIndex() {
+    if (titleIndex == null) {
+      TObjectIntMap<String> index = new TObjectIntHashMap<>(size, 0.5f, -1);
+      for (int i = 0; i < size; i++) {
+        index.put(sourceTitles[i], i);
+      }
+      titleIndex = index;
+    }
+    return titleIndex;
+  }
+
+  private class TitleMapView extends AbstractMap<String, String> {
+
+    private final boolean includeUnchanged;
+
+    private Set<Map.Entry<String, String>> entrySet;
+
+    TitleMapView(boolean includeUnchanged) {
+      this.includeUnchanged = includeUnchanged;
+    }
+
+    private boolean isVisible(int idx) {
+      return includeUnchanged || !getMappingType(idx).equals(MappedType.UNCHANGED);
+    }
+
+    private int lookup(Object key) {
+      if (!(key instanceof String)) {
+        return -1;
+      }
+      int idx = titleIndex().get(key);
+      return (idx >= 0 && isVisible(idx)) ? idx : -1;
+    }
+
+    @Override
+    public int size() {
+      return includeUnchanged ? size : size - getCount(MappedType.UNCHANGED);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return lookup(key) >= 0;
+    }
+
+    @Override
+    public String get(Object key) {
+      int idx = lookup(key);
+      return (idx >= 0) ? getTargetTitle(idx) : null;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+      if (entrySet == null) {
+        entrySet = new AbstractSet<Map.Entry<String, String>>() {
+          @Override
+          public Iterator<Map.Entry<String, String>> iterator() {
+            return new EntryIterator();
+          }
+
+          @Override
+          public int size() {
+            return TitleMapView.this.size();
+          }
+        };
+      }
+      return entrySet;
+    }
+
+    private class EntryIterator implements Iterator<Map.Entry<String, String>> {
+      private int next = advance(0);
+
+      private int advance(int from) {
+        while (from < size && !isVisible(from)) {
+          from++;
+        }
+        return from;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return next < size;
+      }
+
+      @Override
+      public Map.Entry<String, String> next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        int idx = next;
+        next = advance(next + 1);
+        return new AbstractMap.SimpleImmutableEntry<>(getSourceTitle(idx), getTargetTitle(idx));
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    }
+  }
+}
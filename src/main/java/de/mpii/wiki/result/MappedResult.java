@@ -11,7 +11,7 @@ public class MappedResult {
   private final String sourceText;
   private final String targetText;
 
-  private static final String NO_STR = "--NA--";
+  public static final String NO_STR = "--NA--";
 
   public MappedResult(String source, String target, MappedType type, String srcText, String tgtText) {
     this.source = source;
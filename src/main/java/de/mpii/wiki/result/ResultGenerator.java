@@ -1,78 +1,199 @@
 package de.mpii.wiki.result;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.set.TIntSet;
 
+import java.util.Arrays;
+import java.util.List;
+
+import de.mpii.wiki.dump.DumpColumns;
 import de.mpii.wiki.dump.DumpData;
 import de.mpii.wiki.dump.DumpSettings.MappedType;
+import de.mpii.wiki.metrics.MappingMetrics;
+import de.mpii.wiki.metrics.MappingMetrics.Phase;
+import de.mpii.wiki.trace.DecisionTrace;
 
 public class ResultGenerator {
 
-  private static Logger logger_ = LoggerFactory.getLogger(ResultGenerator.class);
+  private static final MappedType[] TYPES = MappedType.values();
 
   public static MappedResults generate(DumpData sourceData, DumpData targetData) {
+    return toMappedResults(generateIds(sourceData, targetData));
+  }
+
+  public static MappedResults toMappedResults(MappedIdResults idResults) {
     MappedResults results = new MappedResults();
+    for (int i = 0; i < idResults.size(); i++) {
+      MappedType type = idResults.getMappingType(i);
 
-    int[] srcIds = sourceData.getPageIds();
-    for (int srcId : srcIds) {
-      int tgtId = 0;
+      String srcText = null;
+      String tgtText = null;
+      if (type.equals(MappedType.DISAMBIGUATED)) {
+        srcText = idResults.getSourceText(i);
+        tgtText = idResults.getTargetText(i);
+      }
+      results.add(new MappedResult(idResults.getSourceTitle(i), idResults.getTargetTitle(i), type, srcText, tgtText));
+    }
+    return results;
+  }
 
-      MappedType type = null;
+  /**
+   * Maps all source pages. If both dumps are compacted (see {@link DumpData#compact()}), their columns are
+   * merge joined in id order, otherwise each source id is looked up in the target.
+   */
+  public static MappedIdResults generateIds(DumpData sourceData, DumpData targetData) {
+    return generateIds(sourceData, targetData, null);
+  }
 
-      String srcTitle = null;
-      String tgtTitle = null;
+  /**
+   * Same as {@link #generateIds(DumpData, DumpData)}, the redirect and disambiguation decisions are recorded
+   * in the given trace (if not null).
+   */
+  public static MappedIdResults generateIds(DumpData sourceData, DumpData targetData, DecisionTrace trace) {
+    DumpColumns source = sourceData.getColumns();
+    DumpColumns target = targetData.getColumns();
+    if (source != null && target != null) {
+      return join(sourceData, targetData, source, target, trace);
+    }
+    int[] srcIds = sourceData.getPageIds();
+    Arrays.sort(srcIds);
 
-      String srcText = null;
-      String tgtText = null;
+    MappedIdResults results = new MappedIdResults(srcIds.length);
+    for (int srcId : srcIds) {
+      long mapped = map(srcId, sourceData, targetData, trace);
+      String srcTitle = sourceData.getTitle(srcId);
+      add(results, srcId, srcTitle, mapped, MappedIdResults.targetTitle(mappedType(mapped), srcTitle, targetId(mapped), targetData),
+          sourceData, targetData);
+    }
+    targetData.getMetrics().setResults(results);
+    return results;
+  }
 
-      srcTitle = sourceData.getTitle(srcId);
-
-      if(!sourceData.isValidId(srcId)) {
-        // Source entry is either redirect/disambiguation and ignored 
-        type = MappedType.SOURCE_IGNORED;
-        if(targetData.hasId(srcId)) {
-          tgtTitle = targetData.getTitle(srcId);
-        } else {
-          tgtTitle = srcTitle;
-        }
-      } else if (targetData.isRedirect(srcId)) {
-        // source id is valid, check target for redirections
-        tgtId = targetData.getRedirectedId(srcId);
-        if (tgtId == srcId) {
-          type = MappedType.REDIRECTED_CYCLE;
-        } else {
-          type = MappedType.REDIRECTED;
-        }
-
-        tgtTitle = targetData.getTitle(tgtId);
-        logger_.debug(srcTitle + "(" + srcId + ") redirects to : " + tgtTitle + "(" + tgtId + ")");
-      } else if (targetData.isDisambiguation(srcId)) {
-        // not a redirection, verifying for disambiguation
-        type = MappedType.DISAMBIGUATED;
-        
-        tgtId = targetData.getDisambiguatedId(srcId, sourceData.getPageLinks(srcId));
-        tgtTitle = targetData.getTitle(tgtId);
-
-        logger_.info(srcTitle + "(" + srcId + ") disambiguates to : " + tgtTitle + "(" + tgtId + ")");
-        srcText = sourceData.getPageText(srcId);
-        tgtText = targetData.getPageText(tgtId);
-      } else if(!targetData.hasId(srcId)) {
-        type = MappedType.DELETED;
-        //TODO : check which one to use null or srcTitle?
-        tgtTitle = null; 
+  private static MappedIdResults join(DumpData sourceData, DumpData targetData, DumpColumns source, DumpColumns target,
+      DecisionTrace trace) {
+    MappedIdResults results = new MappedIdResults(source.size());
+    int t = 0;
+    int targets = target.size();
+    for (int s = 0; s < source.size(); s++) {
+      int srcId = source.getId(s);
+      while (t < targets && target.getId(t) < srcId) {
+        t++;
+      }
+      boolean found = t < targets && target.getId(t) == srcId;
+      byte targetKind = found ? target.getKind(t) : DumpColumns.OTHER;
+
+      long mapped;
+      if (source.getKind(s) != DumpColumns.PAGE) {
+        mapped = pack(MappedType.SOURCE_IGNORED, srcId);
+      } else if (targetKind == DumpColumns.REDIRECT) {
+        mapped = redirect(srcId, targetData, trace);
+      } else if (targetKind == DumpColumns.DISAMBIGUATION) {
+        mapped = disambiguate(srcId, source.getLinks(s), targetData, trace);
+      } else if (!found) {
+        mapped = pack(MappedType.DELETED, srcId);
+      } else if (!source.getTitle(s).equals(target.getTitle(t))) {
+        mapped = pack(MappedType.UPDATED, srcId);
+      } else {
+        mapped = pack(MappedType.UNCHANGED, srcId);
+      }
+      // the titles are taken from the columns, the target is only looked up if the page maps to another id
+      String srcTitle = source.getTitle(s);
+      String tgtTitle;
+      if (targetId(mapped) == srcId) {
+        tgtTitle = MappedIdResults.targetTitle(mappedType(mapped), srcTitle, found ? target.getTitle(t) : null);
       } else {
-        // if not any of above, check whether it has been updated/unchanged!        
-        tgtTitle = targetData.getTitle(srcId);
-        if(!srcTitle.equals(tgtTitle)) {
-          type = MappedType.UPDATED;
-          results.add(new MappedResult(srcTitle, tgtTitle, type, srcText, tgtText));
-          continue;
-        }
-        // A valid source id that is not deleted, updated, redirected or disambiguated in target is an Unchanged entry
-        type = MappedType.UNCHANGED;
-      } 
-      results.add(new MappedResult(srcTitle, tgtTitle, type, srcText, tgtText));
+        tgtTitle = MappedIdResults.targetTitle(mappedType(mapped), srcTitle, targetId(mapped), targetData);
+      }
+      add(results, srcId, srcTitle, mapped, tgtTitle, sourceData, targetData);
     }
+    targetData.getMetrics().setResults(results);
     return results;
   }
-}
\ No newline at end of file
+
+  // adds the result with its titles, and the page texts of disambiguations if they were loaded
+  private static void add(MappedIdResults results, int srcId, String srcTitle, long mapped, String tgtTitle, DumpData sourceData,
+      DumpData targetData) {
+    int tgtId = targetId(mapped);
+    MappedType type = mappedType(mapped);
+    results.add(srcId, srcTitle, tgtId, tgtTitle, type);
+    if (type.equals(MappedType.DISAMBIGUATED) && sourceData.getPageText(srcId) != null) {
+      results.setTexts(results.size() - 1, sourceData.getPageText(srcId), targetData.getPageText(tgtId));
+    }
+  }
+
+  /**
+   * Recomputes the results of the given source ids against the (updated) target the results were generated
+   * for. Ids which are not part of the results are ignored.
+   *
+   * @return Number of recomputed results.
+   */
+  public static int update(MappedIdResults results, DumpData sourceData, DumpData targetData, TIntSet srcIds) {
+    int updated = 0;
+    for (TIntIterator it = srcIds.iterator(); it.hasNext();) {
+      int srcId = it.next();
+      int idx = results.indexOf(srcId);
+      if (idx < 0) {
+        continue;
+      }
+      long mapped = map(srcId, sourceData, targetData, null);
+      MappedType type = mappedType(mapped);
+      results.set(idx, targetId(mapped), MappedIdResults.targetTitle(type, results.getSourceTitle(idx), targetId(mapped), targetData), type);
+      updated++;
+    }
+    targetData.getMetrics().setResults(results);
+    return updated;
+  }
+
+  // maps a single source id, the result is packed as (type ordinal << 32 | target id) to avoid an object per entry
+  private static long map(int srcId, DumpData sourceData, DumpData targetData, DecisionTrace trace) {
+    MappedType type = null;
+
+    if(!sourceData.isValidId(srcId)) {
+      // Source entry is either redirect/disambiguation and ignored
+      type = MappedType.SOURCE_IGNORED;
+    } else if (targetData.isRedirect(srcId)) {
+      // source id is valid, check target for redirections
+      return redirect(srcId, targetData, trace);
+    } else if (targetData.isDisambiguation(srcId)) {
+      // not a redirection, verifying for disambiguation
+      return disambiguate(srcId, sourceData.getPageLinks(srcId), targetData, trace);
+    } else if(!targetData.hasId(srcId)) {
+      type = MappedType.DELETED;
+    } else if(!sourceData.getTitle(srcId).equals(targetData.getTitle(srcId))) {
+      // if not any of above, check whether it has been updated/unchanged!
+      type = MappedType.UPDATED;
+    } else {
+      // A valid source id that is not deleted, updated, redirected or disambiguated in target is an Unchanged entry
+      type = MappedType.UNCHANGED;
+    }
+    return pack(type, srcId);
+  }
+
+  // decisions are not logged per page, see DecisionTrace
+  private static long redirect(int srcId, DumpData targetData, DecisionTrace trace) {
+    long start = System.nanoTime();
+    int tgtId = targetData.getRedirectedId(srcId, trace);
+    targetData.getMetrics().time(Phase.REDIRECT_RESOLUTION, System.nanoTime() - start);
+    return pack((tgtId == srcId) ? MappedType.REDIRECTED_CYCLE : MappedType.REDIRECTED, tgtId);
+  }
+
+  private static long disambiguate(int srcId, List<String> srcLinks, DumpData targetData, DecisionTrace trace) {
+    MappingMetrics metrics = targetData.getMetrics();
+    long start = System.nanoTime();
+    int tgtId = targetData.getDisambiguatedId(srcId, srcLinks, trace);
+    metrics.time(Phase.DISAMBIGUATION, System.nanoTime() - start);
+    return pack(MappedType.DISAMBIGUATED, tgtId);
+  }
+
+  private static long pack(MappedType type, int tgtId) {
+    return ((long) type.ordinal() << 32) | (tgtId & 0xffffffffL);
+  }
+
+  private static int targetId(long mapped) {
+    return (int) mapped;
+  }
+
+  private static MappedType mappedType(long mapped) {
+    return TYPES[(int) (mapped >>> 32)];
+  }
+}
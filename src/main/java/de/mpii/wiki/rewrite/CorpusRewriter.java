@@ -0,0 +1,204 @@
+package de.mpii.wiki.rewrite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rewrites title columns of large tab separated files through a {@link MappingTable}. Input files are read in
+ * line aligned chunks which are rewritten in parallel and written back in their original order. Lines are
+ * processed as UTF-8 bytes, titles are never decoded.
+ */
+public class CorpusRewriter {
+
+  private static final int CHUNK_SIZE = 8 << 20;
+
+  private static Logger logger_ = LoggerFactory.getLogger(CorpusRewriter.class);
+
+  private final MappingTable table;
+
+  // 0 based, sorted column indexes to rewrite
+  private final int[] columns;
+
+  private final int threads;
+
+  private final Counts total = new Counts();
+
+  public CorpusRewriter(MappingTable table, int[] columns, int threads) {
+    this.table = table;
+    this.columns = Arrays.copyOf(columns, columns.length);
+    Arrays.sort(this.columns);
+    this.threads = threads;
+  }
+
+  public void rewrite(File input, File output) throws IOException {
+    long start = System.currentTimeMillis();
+    Counts counts = new Counts();
+
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    Deque<Future<Chunk>> pending = new ArrayDeque<>();
+    try (InputStream in = new FileInputStream(input); OutputStream out = new FileOutputStream(output)) {
+      byte[] carry = new byte[0];
+      boolean eof = false;
+      while (!eof) {
+        byte[] buf = Arrays.copyOf(carry, Math.max(CHUNK_SIZE, carry.length * 2));
+        int len = carry.length;
+        int n;
+        while (len < buf.length && (n = in.read(buf, len, buf.length - len)) > 0) {
+          len += n;
+        }
+        eof = len < buf.length;
+
+        int end = len;
+        if (!eof) {
+          // only hand out complete lines, the remainder is carried into the next chunk
+          while (end > 0 && buf[end - 1] != '\n') {
+            end--;
+          }
+          if (end == 0) {
+            // line longer than the chunk, read on
+            carry = Arrays.copyOf(buf, len);
+            continue;
+          }
+        }
+        carry = Arrays.copyOfRange(buf, end, len);
+        if (end > 0) {
+          pending.add(pool.submit(new Chunk(buf, end)));
+        }
+        while (pending.size() > threads * 2 || (eof && !pending.isEmpty())) {
+          pending.poll().get().writeTo(out, counts);
+        }
+      }
+    } catch (InterruptedException | ExecutionException e) {
+      throw new IOException("Failed to rewrite " + input.getName(), e);
+    } finally {
+      pool.shutdownNow();
+    }
+
+    long elapsed = Math.max(1, System.currentTimeMillis() - start);
+    logger_.info("Rewrote " + input.getName() + " : " + counts + ", " + (counts.rows * 1000 / elapsed) + " rows/s");
+    synchronized (total) {
+      total.add(counts);
+    }
+  }
+
+  public void printStats() {
+    System.out.println(total.toString().replace(", ", "\n").replace("=", "\t:\t"));
+  }
+
+  private void rewriteLines(byte[] buf, int len, ByteArrayOutputStream out, Counts counts) {
+    int lineStart = 0;
+    while (lineStart < len) {
+      int lineEnd = lineStart;
+      while (lineEnd < len && buf[lineEnd] != '\n') {
+        lineEnd++;
+      }
+      // keep carriage returns out of the last column
+      int contentEnd = (lineEnd > lineStart && buf[lineEnd - 1] == '\r') ? lineEnd - 1 : lineEnd;
+
+      int column = 0;
+      int next = 0;
+      int fieldStart = lineStart;
+      int written = lineStart;
+      while (next < columns.length && fieldStart <= contentEnd) {
+        int fieldEnd = fieldStart;
+        while (fieldEnd < contentEnd && buf[fieldEnd] != '\t') {
+          fieldEnd++;
+        }
+        if (column == columns[next]) {
+          next++;
+          out.write(buf, written, fieldStart - written);
+          int outcome = table.rewrite(buf, fieldStart, fieldEnd - fieldStart, out);
+          if (outcome != MappingTable.REPLACED) {
+            out.write(buf, fieldStart, fieldEnd - fieldStart);
+          }
+          written = fieldEnd;
+          counts.count(outcome);
+        }
+        column++;
+        fieldStart = fieldEnd + 1;
+      }
+      int end = Math.min(lineEnd + 1, len);
+      out.write(buf, written, end - written);
+      counts.rows++;
+      lineStart = end;
+    }
+  }
+
+  private class Chunk implements Callable<Chunk> {
+    private final byte[] buf;
+    private final int len;
+    private final Counts counts = new Counts();
+    private ByteArrayOutputStream out;
+
+    Chunk(byte[] buf, int len) {
+      this.buf = buf;
+      this.len = len;
+    }
+
+    @Override
+    public Chunk call() {
+      out = new ByteArrayOutputStream(len + (len >> 4));
+      rewriteLines(buf, len, out, counts);
+      return this;
+    }
+
+    void writeTo(OutputStream stream, Counts total) throws IOException {
+      out.writeTo(stream);
+      total.add(counts);
+    }
+  }
+
+  private static class Counts {
+    long rows;
+    long replaced;
+    long kept;
+    long deleted;
+    long unmapped;
+
+    void count(int outcome) {
+      switch (outcome) {
+        case MappingTable.REPLACED:
+          replaced++;
+          break;
+        case MappingTable.KEEP:
+          kept++;
+          break;
+        case MappingTable.DELETED:
+          deleted++;
+          break;
+        default:
+          unmapped++;
+          break;
+      }
+    }
+
+    void add(Counts other) {
+      rows += other.rows;
+      replaced += other.replaced;
+      kept += other.kept;
+      deleted += other.deleted;
+      unmapped += other.unmapped;
+    }
+
+    @Override
+    public String toString() {
+      return "rows=" + rows + ", replaced=" + replaced + ", kept=" + kept + ", deleted=" + deleted + ", unmapped=" + unmapped;
+    }
+  }
+}
@@ -0,0 +1,219 @@
+package de.mpii.wiki.rewrite;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mpii.wiki.common.Utils;
+import de.mpii.wiki.dump.DumpSettings.MappedType;
+
+/**
+ * Compact in-memory title mapping used for rewriting. Titles are kept as UTF-8 bytes in large byte pages and
+ * indexed with an open addressing hash table, so that lookups work directly on byte ranges of the input without
+ * decoding Strings.
+ */
+public class MappingTable {
+
+  // lookup outcomes
+  public static final int MISSING = 0;
+  public static final int KEEP = 1;
+  public static final int DELETED = 2;
+  public static final int REPLACED = 3;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final int PAGE_SHIFT = 24;
+  private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+  private static Logger logger_ = LoggerFactory.getLogger(MappingTable.class);
+
+  // entry : srcLen(ushort) srcBytes action(byte) tgtLen(ushort) tgtBytes
+  private byte[][] pages = new byte[1][];
+  private int pageCount = 0;
+  private int pagePosition = PAGE_SIZE;
+
+  private int[] hashes = new int[1024];
+  private long[] refs = new long[1024];
+  private int size = 0;
+
+  public static MappingTable load(File mappingFile, Set<MappedType> followTypes) throws IOException {
+    MappingTable table = new MappingTable();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(mappingFile), UTF8), 1 << 20)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] fields = line.split("\t", 4);
+        MappedType type = (fields.length >= 3) ? MappedType.fromRepr(fields[2]) : null;
+        if (type == null) {
+          logger_.warn("Skipping invalid mapping line : " + line);
+          continue;
+        }
+        table.put(fields[0], fields[1], type, followTypes);
+      }
+    }
+    logger_.info("Loaded " + table.size() + " mappings from " + mappingFile.getName() + " (" + table.memoryUsage() / (1 << 20) + " MB)");
+    return table;
+  }
+
+  public static Set<MappedType> allTypes() {
+    return EnumSet.allOf(MappedType.class);
+  }
+
+  public static Set<MappedType> resolvedTypes() {
+    return EnumSet.of(MappedType.REDIRECTED, MappedType.DISAMBIGUATED);
+  }
+
+  /**
+   * Adds a mapping. Titles are only replaced for mappings whose type is part of followTypes, other (and
+   * unchanged) entries are recorded so that they are not reported as unmapped.
+   */
+  public void put(String source, String target, MappedType type, Set<MappedType> followTypes) {
+    byte action;
+    byte[] tgt = null;
+    if (type.equals(MappedType.DELETED)) {
+      action = DELETED;
+    } else if (!followTypes.contains(type) || source.equals(target)) {
+      action = KEEP;
+    } else {
+      action = REPLACED;
+      tgt = target.getBytes(UTF8);
+    }
+    put(source.getBytes(UTF8), action, tgt);
+  }
+
+  private void put(byte[] src, byte action, byte[] tgt) {
+    int tgtLen = (tgt != null) ? tgt.length : 0;
+    if (src.length > 0xFFFF || tgtLen > 0xFFFF) {
+      throw new IllegalArgumentException("Title too long");
+    }
+    int hash = Utils.hash(src, 0, src.length);
+    if (find(src, 0, src.length, hash) >= 0) {
+      // first mapping wins for duplicate titles
+      return;
+    }
+
+    int entrySize = 2 + src.length + 1 + 2 + tgtLen;
+    if (pagePosition + entrySize > PAGE_SIZE) {
+      if (pageCount == pages.length) {
+        pages = Arrays.copyOf(pages, pageCount * 2);
+      }
+      pages[pageCount++] = new byte[PAGE_SIZE];
+      pagePosition = 0;
+    }
+    byte[] page = pages[pageCount - 1];
+    long ref = ((long) (pageCount - 1) << PAGE_SHIFT) | pagePosition;
+    int pos = pagePosition;
+    pos = putLength(page, pos, src.length);
+    System.arraycopy(src, 0, page, pos, src.length);
+    pos += src.length;
+    page[pos++] = action;
+    pos = putLength(page, pos, tgtLen);
+    if (tgt != null) {
+      System.arraycopy(tgt, 0, page, pos, tgtLen);
+    }
+    pagePosition += entrySize;
+
+    if ((size + 1) * 2 > refs.length) {
+      grow();
+    }
+    insert(hash, ref + 1);
+    size++;
+  }
+
+  private void insert(int hash, long ref) {
+    int mask = refs.length - 1;
+    int slot = hash & mask;
+    while (refs[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    hashes[slot] = hash;
+    refs[slot] = ref;
+  }
+
+  private void grow() {
+    int[] oldHashes = hashes;
+    long[] oldRefs = refs;
+    hashes = new int[oldHashes.length * 2];
+    refs = new long[oldRefs.length * 2];
+    for (int i = 0; i < oldRefs.length; i++) {
+      if (oldRefs[i] != 0) {
+        insert(oldHashes[i], oldRefs[i]);
+      }
+    }
+  }
+
+  private long find(byte[] buf, int off, int len, int hash) {
+    int mask = refs.length - 1;
+    int slot = hash & mask;
+    while (refs[slot] != 0) {
+      if (hashes[slot] == hash && matches(refs[slot] - 1, buf, off, len)) {
+        return refs[slot] - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  private boolean matches(long ref, byte[] buf, int off, int len) {
+    byte[] page = pages[(int) (ref >>> PAGE_SHIFT)];
+    int pos = (int) (ref & (PAGE_SIZE - 1));
+    if (getLength(page, pos) != len) {
+      return false;
+    }
+    pos += 2;
+    for (int i = 0; i < len; i++) {
+      if (page[pos + i] != buf[off + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Looks up the title in the given byte range. If the title has to be replaced, the replacement is written
+   * to out; for all other outcomes nothing is written.
+   *
+   * @return one of {@link #MISSING}, {@link #KEEP}, {@link #DELETED} or {@link #REPLACED}.
+   */
+  public int rewrite(byte[] buf, int off, int len, ByteArrayOutputStream out) {
+    long ref = find(buf, off, len, Utils.hash(buf, off, len));
+    if (ref < 0) {
+      return MISSING;
+    }
+    byte[] page = pages[(int) (ref >>> PAGE_SHIFT)];
+    int pos = (int) (ref & (PAGE_SIZE - 1));
+    pos += 2 + len;
+    int action = page[pos++];
+    if (action == REPLACED) {
+      out.write(page, pos + 2, getLength(page, pos));
+    }
+    return action;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public long memoryUsage() {
+    return (long) pageCount * PAGE_SIZE + refs.length * 12L;
+  }
+
+  private static int putLength(byte[] page, int pos, int len) {
+    page[pos] = (byte) (len >>> 8);
+    page[pos + 1] = (byte) len;
+    return pos + 2;
+  }
+
+  private static int getLength(byte[] page, int pos) {
+    return ((page[pos] & 0xff) << 8) | (page[pos + 1] & 0xff);
+  }
+}
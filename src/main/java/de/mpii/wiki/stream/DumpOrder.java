@@ -0,0 +1,84 @@
+package de.mpii.wiki.stream;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Checks whether the pages of a dump are in ascending id order, or finds the largest page id. The check
+ * scans the raw bytes for the first &lt;id&gt; after each &lt;page&gt; (markup inside titles and texts is
+ * escaped), which is much faster than parsing the xml.
+ */
+public class DumpOrder {
+
+  private static final byte[] PAGE_TAG = "<page>".getBytes();
+
+  private static final byte[] ID_TAG = "<id>".getBytes();
+
+  public static boolean isSorted(File dump) throws IOException {
+    try (InputStream in = new FileInputStream(dump)) {
+      return isSorted(in);
+    }
+  }
+
+  static boolean isSorted(InputStream in) throws IOException {
+    return scan(in, true) >= 0;
+  }
+
+  /**
+   * @return The largest page id of the dump, 0 if it has no pages.
+   */
+  public static long maxId(File dump) throws IOException {
+    try (InputStream in = new FileInputStream(dump)) {
+      return scan(in, false);
+    }
+  }
+
+  // returns the largest id, or -1 if checkOrder is set and the ids are not ascending
+  private static long scan(InputStream in, boolean checkOrder) throws IOException {
+    byte[] buffer = new byte[1 << 20];
+    byte[] tag = PAGE_TAG;
+    int matched = 0;
+    boolean parsingId = false;
+    long id = 0;
+    long lastId = Long.MIN_VALUE;
+    long maxId = 0;
+
+    int n;
+    while ((n = in.read(buffer)) > 0) {
+      for (int i = 0; i < n; i++) {
+        byte b = buffer[i];
+        if (parsingId) {
+          if (b >= '0' && b <= '9') {
+            id = id * 10 + (b - '0');
+            continue;
+          }
+          if (checkOrder && id <= lastId) {
+            return -1;
+          }
+          lastId = id;
+          maxId = Math.max(maxId, id);
+          parsingId = false;
+          tag = PAGE_TAG;
+          matched = 0;
+        }
+        if (b == tag[matched]) {
+          if (++matched == tag.length) {
+            matched = 0;
+            if (tag == PAGE_TAG) {
+              tag = ID_TAG;
+            } else {
+              parsingId = true;
+              id = 0;
+            }
+          }
+        } else {
+          // neither tag repeats its first character, so a mismatch can only restart a match at '<'
+          matched = (b == '<') ? 1 : 0;
+        }
+      }
+    }
+    return maxId;
+  }
+}
@@ -0,0 +1,179 @@
+package de.mpii.wiki.stream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mpii.wiki.common.Utils;
+import de.mpii.wiki.dump.PageSource;
+
+/**
+ * External sort of dump pages by id, for dumps that are not in id order. Pages are collected into runs of
+ * bounded size, each run is sorted and written to a temporary file, the runs are merged while reading.
+ */
+public class PageSorter {
+
+  private static Logger logger_ = LoggerFactory.getLogger(PageSorter.class);
+
+  private static final Comparator<Page> BY_ID = new Comparator<Page>() {
+    @Override
+    public int compare(Page p1, Page p2) {
+      return Integer.compare(p1.id, p2.id);
+    }
+  };
+
+  /**
+   * Writes the pages as sorted runs of about runChars characters (title and text) each.
+   *
+   * @return The run files, to be read with {@link #merge(List)}.
+   */
+  public static List<File> writeRuns(PageSource pages, File tmpDir, long runChars) throws IOException {
+    long start = System.currentTimeMillis();
+    List<File> runs = new ArrayList<>();
+    List<Page> run = new ArrayList<>();
+    long chars = 0;
+    while (pages.next()) {
+      Page page = new Page(pages.getId(), pages.getTitle(), pages.getText());
+      run.add(page);
+      chars += page.title.length() + ((page.text != null) ? page.text.length() : 0);
+      if (chars >= runChars) {
+        runs.add(writeRun(run, tmpDir));
+        run.clear();
+        chars = 0;
+      }
+    }
+    if (!run.isEmpty() || runs.isEmpty()) {
+      runs.add(writeRun(run, tmpDir));
+    }
+    logger_.info("Sorted pages into " + runs.size() + " runs in " + (System.currentTimeMillis() - start) / 1000 + " s");
+    return runs;
+  }
+
+  private static File writeRun(List<Page> run, File tmpDir) throws IOException {
+    Collections.sort(run, BY_ID);
+    File file = File.createTempFile("wiki-pages", ".run", tmpDir);
+    file.deleteOnExit();
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+      for (Page page : run) {
+        out.writeInt(page.id);
+        Utils.writeString(out, page.title);
+        Utils.writeString(out, page.text);
+      }
+    }
+    return file;
+  }
+
+  /**
+   * Returns the pages of the given runs in ascending id order.
+   */
+  public static PageSource merge(List<File> runs) throws IOException {
+    return new MergedRuns(runs);
+  }
+
+  private static class Page {
+    final int id;
+    final String title;
+    final String text;
+
+    Page(int id, String title, String text) {
+      this.id = id;
+      this.title = title;
+      this.text = text;
+    }
+  }
+
+  private static class Run {
+    final DataInputStream in;
+    Page page;
+
+    Run(File file) throws IOException {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    }
+
+    boolean advance() throws IOException {
+      int id;
+      try {
+        id = in.readInt();
+      } catch (EOFException e) {
+        page = null;
+        return false;
+      }
+      page = new Page(id, Utils.readString(in), Utils.readString(in));
+      return true;
+    }
+  }
+
+  private static class MergedRuns implements PageSource {
+    private final List<Run> runs = new ArrayList<>();
+
+    private final PriorityQueue<Run> queue;
+
+    private Page current;
+
+    MergedRuns(List<File> files) throws IOException {
+      queue = new PriorityQueue<>(Math.max(1, files.size()), new Comparator<Run>() {
+        @Override
+        public int compare(Run r1, Run r2) {
+          return BY_ID.compare(r1.page, r2.page);
+        }
+      });
+      for (File file : files) {
+        Run run = new Run(file);
+        runs.add(run);
+        if (run.advance()) {
+          queue.add(run);
+        }
+      }
+    }
+
+    @Override
+    public boolean next() throws IOException {
+      Run run = queue.poll();
+      if (run == null) {
+        current = null;
+        return false;
+      }
+      current = run.page;
+      if (run.advance()) {
+        queue.add(run);
+      }
+      return true;
+    }
+
+    @Override
+    public int getId() {
+      return current.id;
+    }
+
+    @Override
+    public String getTitle() {
+      return current.title;
+    }
+
+    @Override
+    public String getText() {
+      return current.text;
+    }
+
+    @Override
+    public void close() throws IOException {
+      for (Run run : runs) {
+        run.in.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,238 @@
+package de.mpii.wiki.stream;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mpii.wiki.common.ResultWriter;
+import de.mpii.wiki.compute.Jaccard;
+import de.mpii.wiki.dump.DumpReader;
+import de.mpii.wiki.dump.DumpSettings.MappedType;
+import de.mpii.wiki.dump.PageFilter;
+import de.mpii.wiki.dump.PageSource;
+import de.mpii.wiki.metrics.MappingMetrics;
+import de.mpii.wiki.metrics.MappingMetrics.Phase;
+import de.mpii.wiki.page.PageIdentifier;
+import de.mpii.wiki.page.handlers.Handler;
+import de.mpii.wiki.page.handlers.Handler.HandlerType;
+import de.mpii.wiki.result.MappedResult;
+
+/**
+ * Maps dumps with memory bounded by the target index instead of both dumps. Dumps are written in ascending
+ * page id order and the mapping is a join on page id, so the source and target are streamed in lockstep and
+ * each result is written as soon as its source page is read. Only a {@link TargetIndex} (titles, redirect
+ * targets and links of disambiguation candidates) is kept in memory for resolving redirects and
+ * disambiguations. The source dump is never held in memory.
+ *
+ * Dumps which are not in id order are sorted externally first (see {@link PageSorter}). The results are the
+ * same as those of the in memory mapping, except that the evaluation mode (page texts) is not supported.
+ */
+public class StreamingMapper {
+
+  public static final long DEFAULT_RUN_CHARS = 1L << 27;
+
+  private static Logger logger_ = LoggerFactory.getLogger(StreamingMapper.class);
+
+  private final MappingMetrics metrics;
+
+  private final File tmpDir;
+
+  private final long runChars;
+
+  private final int[] counts = new int[MappedType.values().length];
+
+  /**
+   * @param tmpDir Directory for the sorted runs of unsorted dumps.
+   * @param runChars Characters (titles and texts) per sorted run.
+   */
+  public StreamingMapper(MappingMetrics metrics, File tmpDir, long runChars) {
+    this.metrics = metrics;
+    this.tmpDir = tmpDir;
+    this.runChars = runChars;
+  }
+
+  public void map(File oldDump, File newDump, ResultWriter writer) throws IOException, XMLStreamException {
+    List<File> sourceRuns = null;
+    List<File> targetRuns = null;
+    try {
+      metrics.setPhase("check order");
+      if (!DumpOrder.isSorted(oldDump)) {
+        logger_.info(oldDump.getName() + " is not in id order, sorting externally");
+        try (PageSource pages = open(oldDump, null)) {
+          sourceRuns = PageSorter.writeRuns(pages, tmpDir, runChars);
+        }
+      }
+      if (!DumpOrder.isSorted(newDump)) {
+        logger_.info(newDump.getName() + " is not in id order, sorting externally");
+        try (PageSource pages = open(newDump, null)) {
+          targetRuns = PageSorter.writeRuns(pages, tmpDir, runChars);
+        }
+      }
+
+      long start = System.currentTimeMillis();
+      metrics.setPhase("index target");
+      TargetIndex index = new TargetIndex(metrics);
+      try (PageSource pages = open(newDump, null)) {
+        index.add(pages);
+      }
+      if (index.getLateCandidateCount() > 0) {
+        logger_.info("Reading links of " + index.getLateCandidateCount() + " disambiguation candidates preceding their disambiguation pages");
+        try (PageSource pages = open(newDump, index.lateCandidateFilter())) {
+          index.addLateCandidates(pages);
+        }
+      }
+      logger_.info("Time to index target dump : " + (System.currentTimeMillis() - start) / 1000 + " s (" + index.size() + " pages).");
+
+      start = System.currentTimeMillis();
+      metrics.setPhase("join");
+      try (PageSource source = (sourceRuns != null) ? PageSorter.merge(sourceRuns) : open(oldDump, null);
+          PageSource target = (targetRuns != null) ? PageSorter.merge(targetRuns) : open(newDump, null)) {
+        join(source, target, index, writer);
+      }
+      logger_.info("Time to join dumps : " + (System.currentTimeMillis() - start) / 1000 + " s.");
+      for (MappedType type : MappedType.values()) {
+        metrics.setResultCount(type, counts[type.ordinal()]);
+      }
+    } finally {
+      delete(sourceRuns);
+      delete(targetRuns);
+    }
+  }
+
+  private void join(PageSource source, PageSource target, TargetIndex index, ResultWriter writer) throws IOException {
+    boolean hasTarget = target.next();
+    int lastId = Integer.MIN_VALUE;
+    while (source.next()) {
+      int id = source.getId();
+      if (id <= lastId) {
+        // the in memory mapping keeps the last of duplicate pages, here the first one is mapped
+        logger_.warn("Skipping duplicate source page : " + source.getTitle() + "(" + id + ")");
+        continue;
+      }
+      lastId = id;
+      while (hasTarget && target.getId() < id) {
+        hasTarget = target.next();
+      }
+      boolean inTarget = hasTarget && target.getId() == id;
+      MappedResult result = map(source, inTarget ? target : null, index);
+      counts[result.getMappingType().ordinal()]++;
+      writer.write(result);
+    }
+  }
+
+  private MappedResult map(PageSource source, PageSource target, TargetIndex index) {
+    String srcTitle = source.getTitle();
+    long start = System.nanoTime();
+    Handler srcHandler = PageIdentifier.getHandler(srcTitle, source.getText());
+    metrics.time(Phase.CLASSIFY, System.nanoTime() - start);
+    if (srcHandler.getType().isSpecialInfoPage()) {
+      metrics.addPage(srcHandler.getType(), 0);
+      // ignored entries missing in target are mapped on to themselves
+      String tgtTitle = (target != null) ? target.getTitle() : srcTitle;
+      return new MappedResult(srcTitle, tgtTitle, MappedType.SOURCE_IGNORED, null, null);
+    }
+    if (target == null) {
+      metrics.addPage(srcHandler.getType(), 0);
+      return new MappedResult(srcTitle, null, MappedType.DELETED, null, null);
+    }
+
+    String tgtTitle = target.getTitle();
+    Handler tgtHandler = PageIdentifier.getHandler(tgtTitle, target.getText());
+    if (tgtHandler.getType().equals(HandlerType.REDIRECTS)) {
+      metrics.addPage(srcHandler.getType(), 0);
+      start = System.nanoTime();
+      String resolved = resolveRedirection(tgtTitle, index);
+      metrics.time(Phase.REDIRECT_RESOLUTION, System.nanoTime() - start);
+      MappedType type = tgtTitle.equals(resolved) ? MappedType.REDIRECTED_CYCLE : MappedType.REDIRECTED;
+      return new MappedResult(srcTitle, resolved, type, null, null);
+    }
+    if (tgtHandler.getType().equals(HandlerType.DISAMBIGUATIONS)) {
+      List<String> srcLinks = srcHandler.process(source.getText());
+      metrics.addPage(srcHandler.getType(), srcLinks.size());
+      start = System.nanoTime();
+      String disambiguated = disambiguate(tgtTitle, srcLinks, tgtHandler.process(target.getText()), index);
+      metrics.time(Phase.DISAMBIGUATION, System.nanoTime() - start);
+      return new MappedResult(srcTitle, disambiguated, MappedType.DISAMBIGUATED, MappedResult.NO_STR, MappedResult.NO_STR);
+    }
+    metrics.addPage(srcHandler.getType(), 0);
+    MappedType type = srcTitle.equals(tgtTitle) ? MappedType.UNCHANGED : MappedType.UPDATED;
+    return new MappedResult(srcTitle, tgtTitle, type, null, null);
+  }
+
+  // follows the redirects from the given redirect page, a cycle resolves to the page itself and a redirect
+  // to a missing page resolves to null (same as DumpData)
+  private static String resolveRedirection(String title, TargetIndex index) {
+    Set<String> processed = new HashSet<>();
+    processed.add(title);
+    String current = title;
+    while (index.isRedirect(current)) {
+      String next = index.getRedirectTitle(current);
+      if (next == null) {
+        return current;
+      }
+      if (!index.hasTitle(next)) {
+        return null;
+      }
+      if (!processed.add(next)) {
+        logger_.warn("Cycle Found for : " + title + ": " + processed);
+        return title;
+      }
+      current = next;
+    }
+    return current;
+  }
+
+  private String disambiguate(String title, List<String> srcLinks, List<String> candidates, TargetIndex index) {
+    metrics.addDisambiguation(candidates.size());
+    double maxScore = 0.0;
+    String result = title; // the page itself, if no candidate matches
+    for (String candidate : candidates) {
+      double score = Jaccard.compute(srcLinks, index.getCandidateLinks(candidate));
+      if (score > maxScore) {
+        result = candidate;
+        maxScore = score;
+      }
+    }
+    return result;
+  }
+
+  private PageSource open(File dump, PageFilter filter) throws IOException, XMLStreamException {
+    final InputStream in = metrics.track(new BufferedInputStream(new FileInputStream(dump), 1 << 16));
+    return new DumpReader(XMLInputFactory.newInstance().createXMLStreamReader(in), filter) {
+      @Override
+      public void close() throws IOException {
+        super.close();
+        in.close();
+      }
+    };
+  }
+
+  private static void delete(List<File> runs) {
+    if (runs != null) {
+      for (File run : runs) {
+        run.delete();
+      }
+    }
+  }
+
+  public int getCount(MappedType type) {
+    return counts[type.ordinal()];
+  }
+
+  public void printResultStats() {
+    for (MappedType type : MappedType.values()) {
+      System.out.println(type.name() + "\t:\t" + counts[type.ordinal()]);
+    }
+  }
+}
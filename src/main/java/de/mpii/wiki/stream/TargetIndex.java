@@ -0,0 +1,139 @@
+package de.mpii.wiki.stream;
+
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.mpii.wiki.dump.PageFilter;
+import de.mpii.wiki.dump.PageSource;
+import de.mpii.wiki.metrics.MappingMetrics;
+import de.mpii.wiki.metrics.MappingMetrics.Phase;
+import de.mpii.wiki.page.PageIdentifier;
+import de.mpii.wiki.page.handlers.Handler;
+import de.mpii.wiki.page.handlers.Handler.HandlerType;
+
+/**
+ * The part of a target dump needed for resolving redirects and disambiguations: page titles, redirect
+ * targets and the links of disambiguation candidates. Links of other pages are not extracted.
+ */
+class TargetIndex {
+
+  // titles of all pages
+  private final TObjectIntMap<String> titleIds = new TObjectIntHashMap<>();
+
+  // title of redirect page -> title redirected to (null if the redirect has no link)
+  private final Map<String, String> redirects = new HashMap<>();
+
+  // titles listed on disambiguation pages
+  private final Set<String> candidates = new HashSet<>();
+
+  // titles of the disambiguation pages, they are special pages and never carry candidate links
+  private final Set<String> disambiguations = new HashSet<>();
+
+  // links of the (non special) candidate pages
+  private final Map<String, List<String>> candidateLinks = new HashMap<>();
+
+  // candidates which were already passed when they became candidates
+  private final Set<String> lateCandidates = new HashSet<>();
+
+  private final MappingMetrics metrics;
+
+  TargetIndex(MappingMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  void add(PageSource pages) throws IOException {
+    while (pages.next()) {
+      add(pages.getId(), pages.getTitle(), pages.getText());
+    }
+  }
+
+  void add(int id, String title, String text) {
+    long start = System.nanoTime();
+    Handler handler = PageIdentifier.getHandler(title, text);
+    long classified = System.nanoTime();
+    metrics.time(Phase.CLASSIFY, classified - start);
+
+    titleIds.put(title, id);
+    int links = 0;
+    if (handler.getType().equals(HandlerType.REDIRECTS)) {
+      List<String> target = handler.process(text);
+      redirects.put(title, target.isEmpty() ? null : target.get(0));
+      links = target.size();
+    } else if (handler.getType().equals(HandlerType.DISAMBIGUATIONS)) {
+      disambiguations.add(title);
+      List<String> titles = handler.process(text);
+      for (String candidate : titles) {
+        if (candidates.add(candidate) && titleIds.containsKey(candidate) && !candidateLinks.containsKey(candidate)
+            && !redirects.containsKey(candidate) && !disambiguations.contains(candidate)) {
+          lateCandidates.add(candidate);
+        }
+      }
+      links = titles.size();
+    } else if (candidates.contains(title)) {
+      List<String> pageLinks = handler.process(text);
+      candidateLinks.put(title, pageLinks);
+      lateCandidates.remove(title);
+      links = pageLinks.size();
+    }
+    metrics.time(Phase.LINK_EXTRACTION, System.nanoTime() - classified);
+    metrics.addPage(handler.getType(), links);
+  }
+
+  /**
+   * Adds the links of the candidates which appeared before the disambiguation pages listing them, from
+   * another pass over the dump.
+   */
+  void addLateCandidates(PageSource pages) throws IOException {
+    while (pages.next() && !lateCandidates.isEmpty()) {
+      String title = pages.getTitle();
+      if (lateCandidates.remove(title)) {
+        candidateLinks.put(title, PageIdentifier.getHandler(title, pages.getText()).process(pages.getText()));
+      }
+    }
+  }
+
+  // skips pages other than late candidates before their text is read
+  PageFilter lateCandidateFilter() {
+    return new PageFilter() {
+      @Override
+      public boolean accept(int id, String title) {
+        return lateCandidates.contains(title);
+      }
+
+      @Override
+      public void added(int id) {
+      }
+    };
+  }
+
+  int getLateCandidateCount() {
+    return lateCandidates.size();
+  }
+
+  boolean hasTitle(String title) {
+    return titleIds.containsKey(title);
+  }
+
+  boolean isRedirect(String title) {
+    return redirects.containsKey(title);
+  }
+
+  String getRedirectTitle(String title) {
+    return redirects.get(title);
+  }
+
+  List<String> getCandidateLinks(String title) {
+    return candidateLinks.get(title);
+  }
+
+  int size() {
+    return titleIds.size();
+  }
+}
@@ -0,0 +1,488 @@
+package de.mpii.wiki.synthetic;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates a pair of synthetic MediaWiki XML dumps (an old one and a later one) for testing and
+ * benchmarking the mapper at arbitrary scale.
+ *
+ * Every decision about a page (its title, kind, links, text and how it changes in the later dump) is
+ * derived from the seed and the page id alone, so the dumps are reproducible and are written in a
+ * single streaming pass with constant memory. Pages of the later dump are written in ascending id order:
+ * first the pages of the old dump, then the pages created by moves and disambiguations.
+ *
+ * Changes applied to articles in the later dump:
+ * <ul>
+ * <li>rename: same id, new title</li>
+ * <li>delete: page removed</li>
+ * <li>move: page becomes a redirect chain ending in a new page with the old content, a fraction of the
+ * chains ends in a cycle back to the page instead</li>
+ * <li>disambiguate: page becomes a disambiguation page, one of its candidates carries the old content</li>
+ * <li>edit: text changes slightly, title stays</li>
+ * </ul>
+ */
+public class DumpGenerator {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final String[] SYLLABLES = { "ka", "lo", "mi", "ren", "ta", "vo", "sel", "dri", "an", "bu",
+      "cor", "el", "fi", "gan", "ho", "is", "jul", "ke", "lum", "ne", "or", "pa", "qui", "ro", "sa", "ti",
+      "ul", "ve", "wen", "xa", "yo", "zer" };
+
+  private static final String SOURCE_TIMESTAMP = "2010-08-17T00:00:00Z";
+
+  private static final String TARGET_TIMESTAMP = "2014-08-11T00:00:00Z";
+
+  // salts separating the random streams derived from a page id
+  private static final int TITLE = 1, KIND = 2, TEXT = 3, CHANGE = 4, RENAME = 5, CANDIDATE = 16;
+
+  enum Change {
+    NONE, EDIT, RENAME, DELETE, MOVE, CYCLE, DISAMBIGUATE
+  }
+
+  private static Logger logger_ = LoggerFactory.getLogger(DumpGenerator.class);
+
+  private final long seed;
+
+  private int pages = 10000;
+
+  private int linksPerPage = 20;
+
+  private int textSize = 2000;
+
+  private double redirectRate = 0.3;
+
+  private double editRate = 0.2;
+
+  private double renameRate = 0.05;
+
+  private double deleteRate = 0.01;
+
+  private double moveRate = 0.03;
+
+  private int maxChainLength = 3;
+
+  private double cycleRate = 0.05;
+
+  private double disambiguationRate = 0.01;
+
+  private int fanOut = 4;
+
+  public DumpGenerator(long seed) {
+    this.seed = seed;
+  }
+
+  public void setPages(int pages) {
+    this.pages = pages;
+  }
+
+  public void setLinksPerPage(int linksPerPage) {
+    this.linksPerPage = linksPerPage;
+  }
+
+  public void setTextSize(int textSize) {
+    this.textSize = textSize;
+  }
+
+  /** Fraction of the old dump's pages that are redirects. */
+  public void setRedirectRate(double redirectRate) {
+    this.redirectRate = redirectRate;
+  }
+
+  public void setEditRate(double editRate) {
+    this.editRate = editRate;
+  }
+
+  public void setRenameRate(double renameRate) {
+    this.renameRate = renameRate;
+  }
+
+  public void setDeleteRate(double deleteRate) {
+    this.deleteRate = deleteRate;
+  }
+
+  /** Fraction of articles replaced by a redirect chain in the later dump. */
+  public void setMoveRate(double moveRate) {
+    this.moveRate = moveRate;
+  }
+
+  public void setMaxChainLength(int maxChainLength) {
+    this.maxChainLength = maxChainLength;
+  }
+
+  /** Fraction of the redirect chains which end in a cycle. */
+  public void setCycleRate(double cycleRate) {
+    this.cycleRate = cycleRate;
+  }
+
+  public void setDisambiguationRate(double disambiguationRate) {
+    this.disambiguationRate = disambiguationRate;
+  }
+
+  public void setFanOut(int fanOut) {
+    this.fanOut = fanOut;
+  }
+
+  public void generate(File sourceDump, File targetDump) throws IOException {
+    if (maxChainLength < 1 || fanOut < 1) {
+      throw new IllegalArgumentException("Chain length and fan out need to be at least 1");
+    }
+    if ((long) pages * (slots() + 1) >= Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Too many pages for the configured chain length/fan out : " + pages);
+    }
+    long start = System.currentTimeMillis();
+    writeSource(sourceDump);
+    writeTarget(targetDump);
+    logger_.info("Generated " + pages + " page dumps " + sourceDump.getName() + " and " + targetDump.getName() + " in "
+        + (System.currentTimeMillis() - start) / 1000 + " s");
+  }
+
+  private void writeSource(File file) throws IOException {
+    try (Writer out = open(file)) {
+      for (int id = 1; id <= pages; id++) {
+        if (isRedirect(id)) {
+          writePage(out, id, title(id), revision(id, false), SOURCE_TIMESTAMP, redirectText(id));
+        } else {
+          writePage(out, id, title(id), revision(id, false), SOURCE_TIMESTAMP, articleText(id, id, TEXT));
+        }
+      }
+      out.write("</mediawiki>\n");
+    }
+  }
+
+  private void writeTarget(File file) throws IOException {
+    try (Writer out = open(file)) {
+      for (int id = 1; id <= pages; id++) {
+        String title = title(id);
+        String revision = revision(id, true);
+        if (isRedirect(id)) {
+          writePage(out, id, title, revision(id, false), TARGET_TIMESTAMP, redirectText(id));
+          continue;
+        }
+        Random r = random(id, CHANGE);
+        switch (change(r)) {
+        case NONE:
+          writePage(out, id, title, revision(id, false), TARGET_TIMESTAMP, articleText(id, id, TEXT));
+          break;
+        case EDIT:
+          writePage(out, id, title, revision, TARGET_TIMESTAMP, articleText(id, id, TEXT) + "\n\nUpdated " + word(r) + ".");
+          break;
+        case RENAME:
+          writePage(out, id, renamedTitle(id), revision, TARGET_TIMESTAMP, articleText(id, id, TEXT));
+          break;
+        case DELETE:
+          break;
+        case MOVE:
+        case CYCLE:
+          writePage(out, id, title, revision, TARGET_TIMESTAMP, "#REDIRECT [[" + chainTitle(id, 0) + "]]");
+          break;
+        case DISAMBIGUATE:
+          writePage(out, id, title, revision, TARGET_TIMESTAMP, disambiguationText(id));
+          break;
+        }
+      }
+      // pages created by moves and disambiguations, their ids follow all ids of the old dump
+      for (int id = 1; id <= pages; id++) {
+        if (isRedirect(id)) {
+          continue;
+        }
+        Random r = random(id, CHANGE);
+        Change change = change(r);
+        if (change == Change.MOVE || change == Change.CYCLE) {
+          int length = 1 + r.nextInt(maxChainLength);
+          for (int j = 0; j < length; j++) {
+            int newId = newId(id, j);
+            String text;
+            if (j + 1 < length) {
+              text = "#REDIRECT [[" + chainTitle(id, j + 1) + "]]";
+            } else if (change == Change.CYCLE) {
+              text = "#REDIRECT [[" + title(id) + "]]";
+            } else {
+              text = articleText(id, id, TEXT);
+            }
+            writePage(out, newId, chainTitle(id, j), revision(newId, true), TARGET_TIMESTAMP, text);
+          }
+        } else if (change == Change.DISAMBIGUATE) {
+          int match = matchingCandidate(id);
+          for (int j = 0; j < fanOut; j++) {
+            int newId = newId(id, j);
+            // the matching candidate carries the links of the old page, the others get links of their own
+            String text = (j == match) ? articleText(id, id, TEXT) : articleText(newId, id, CANDIDATE + j);
+            writePage(out, newId, candidateTitle(id, j), revision(newId, true), TARGET_TIMESTAMP, text);
+          }
+        }
+      }
+      out.write("</mediawiki>\n");
+    }
+  }
+
+  // change of the article in the later dump, null for redirects
+  Change changeOf(int id) {
+    return isRedirect(id) ? null : change(random(id, CHANGE));
+  }
+
+  // the disambiguation candidate carrying the content of the article
+  int matchingCandidate(int id) {
+    return random(id, CANDIDATE).nextInt(fanOut);
+  }
+
+  private Change change(Random r) {
+    double u = r.nextDouble();
+    if ((u -= renameRate) < 0) {
+      return Change.RENAME;
+    }
+    if ((u -= deleteRate) < 0) {
+      return Change.DELETE;
+    }
+    if ((u -= moveRate) < 0) {
+      return (r.nextDouble() < cycleRate) ? Change.CYCLE : Change.MOVE;
+    }
+    if ((u -= disambiguationRate) < 0) {
+      return Change.DISAMBIGUATE;
+    }
+    if ((u -= editRate) < 0) {
+      return Change.EDIT;
+    }
+    return Change.NONE;
+  }
+
+  private int slots() {
+    return Math.max(maxChainLength, fanOut);
+  }
+
+  private int newId(int id, int j) {
+    return pages + (id - 1) * slots() + j + 1;
+  }
+
+  private boolean isRedirect(int id) {
+    return random(id, KIND).nextDouble() < redirectRate;
+  }
+
+  // the first values of Random are correlated for close seeds, so the seed is scrambled (splitmix64 finalizer)
+  private Random random(int id, int salt) {
+    long z = seed * 0x9E3779B97F4A7C15L + ((long) id << 8) + salt;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return new Random(z ^ (z >>> 31));
+  }
+
+  private static String word(Random r) {
+    int n = 2 + r.nextInt(2);
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < n; i++) {
+      sb.append(SYLLABLES[r.nextInt(SYLLABLES.length)]);
+    }
+    return sb.toString();
+  }
+
+  private static String capitalized(Random r) {
+    String word = word(r);
+    return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+  }
+
+  String title(int id) {
+    Random r = random(id, TITLE);
+    int words = 1 + r.nextInt(3);
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < words; i++) {
+      sb.append(capitalized(r)).append(' ');
+    }
+    // the id keeps titles unique
+    return sb.append(Integer.toString(id, 36)).toString();
+  }
+
+  String renamedTitle(int id) {
+    return title(id) + " (" + word(random(id, RENAME)) + ")";
+  }
+
+  String chainTitle(int id, int j) {
+    return title(id) + " (moved " + j + ")";
+  }
+
+  String candidateTitle(int id, int j) {
+    return title(id) + " (sense " + j + ")";
+  }
+
+  private static String revision(int id, boolean changed) {
+    return Long.toString(2L * id + (changed ? 1 : 0));
+  }
+
+  private String redirectText(int id) {
+    // redirects in the old dump point to some other page and stay as they are
+    Random r = random(id, TEXT);
+    return "#REDIRECT [[" + title(1 + r.nextInt(pages)) + "]]";
+  }
+
+  // text of about textSize chars with linksPerPage links, drawn from the random stream of (id, salt)
+  private String articleText(int id, int textId, int salt) {
+    Random r = random(textId, salt);
+    StringBuilder sb = new StringBuilder(textSize + linksPerPage * 32);
+    sb.append("'''").append(title(id)).append("''' is");
+    int gap = Math.max(1, textSize / (linksPerPage + 1));
+    int links = 0;
+    int next = gap;
+    while (sb.length() < textSize || links < linksPerPage) {
+      if (links < linksPerPage && sb.length() >= next) {
+        String link = title(1 + r.nextInt(pages));
+        sb.append(" [[").append(link);
+        if (r.nextInt(4) == 0) {
+          sb.append('|').append(word(r));
+        }
+        sb.append("]]");
+        links++;
+        next += gap;
+      } else {
+        sb.append(' ').append(word(r));
+        if (r.nextInt(12) == 0) {
+          sb.append('.');
+        }
+      }
+    }
+    return sb.append('.').toString();
+  }
+
+  private String disambiguationText(int id) {
+    StringBuilder sb = new StringBuilder("'''").append(title(id)).append("''' may refer to:\n");
+    for (int j = 0; j < fanOut; j++) {
+      sb.append("* [[").append(candidateTitle(id, j)).append("]]\n");
+    }
+    return sb.append("\n{{Disambiguation}}").toString();
+  }
+
+  private static Writer open(File file) throws IOException {
+    Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF8), 1 << 20);
+    out.write("<mediawiki xmlns=\"http://www.mediawiki.org/xml/export-0.8/\" version=\"0.8\" xml:lang=\"en\">\n");
+    return out;
+  }
+
+  private static void writePage(Writer out, int id, String title, String revision, String timestamp, String text)
+      throws IOException {
+    out.write("  <page>\n    <title>");
+    escape(out, title);
+    out.write("</title>\n    <ns>0</ns>\n    <id>");
+    out.write(Integer.toString(id));
+    out.write("</id>\n    <revision>\n      <id>");
+    out.write(revision);
+    out.write("</id>\n      <timestamp>");
+    out.write(timestamp);
+    out.write("</timestamp>\n      <text xml:space=\"preserve\">");
+    escape(out, text);
+    out.write("</text>\n      <sha1>");
+    out.write(sha1(text));
+    out.write("</sha1>\n    </revision>\n  </page>\n");
+  }
+
+  // sha1 of the text in base 36, as in MediaWiki dumps
+  private static String sha1(String text) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes(UTF8));
+      String sha1 = new BigInteger(1, digest).toString(36);
+      StringBuilder sb = new StringBuilder(31);
+      for (int i = sha1.length(); i < 31; i++) {
+        sb.append('0');
+      }
+      return sb.append(sha1).toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void escape(Writer out, String str) throws IOException {
+    for (int i = 0; i < str.length(); i++) {
+      char c = str.charAt(i);
+      switch (c) {
+      case '&':
+        out.write("&amp;");
+        break;
+      case '<':
+        out.write("&lt;");
+        break;
+      case '>':
+        out.write("&gt;");
+        break;
+      default:
+        out.write(c);
+      }
+    }
+  }
+
+  private static Options buildCommandLineOptions() throws ParseException {
+    Options options = new Options();
+    options.addOption(OptionBuilder.withLongOpt("pages").withDescription("Number of pages in the old dump (default 10000)")
+        .hasArg().withArgName("N").create("n"));
+    options.addOption(OptionBuilder.withLongOpt("source").withDescription("Old dump file to write").hasArg()
+        .withArgName("FILE").create("s"));
+    options.addOption(OptionBuilder.withLongOpt("target").withDescription("Later dump file to write").hasArg()
+        .withArgName("FILE").create("t"));
+    options.addOption(OptionBuilder.withLongOpt("seed").withDescription("Random seed (default 1)").hasArg()
+        .withArgName("SEED").create());
+    options.addOption(OptionBuilder.withLongOpt("links").withDescription("Links per article (default 20)").hasArg()
+        .withArgName("N").create());
+    options.addOption(OptionBuilder.withLongOpt("text-size").withDescription("Article text size in chars (default 2000)")
+        .hasArg().withArgName("CHARS").create());
+    options.addOption(OptionBuilder.withLongOpt("redirects").withDescription("Fraction of redirect pages (default 0.3)")
+        .hasArg().withArgName("RATE").create());
+    options.addOption(OptionBuilder.withLongOpt("edits").withDescription("Fraction of edited articles (default 0.2)")
+        .hasArg().withArgName("RATE").create());
+    options.addOption(OptionBuilder.withLongOpt("renames").withDescription("Fraction of renamed articles (default 0.05)")
+        .hasArg().withArgName("RATE").create());
+    options.addOption(OptionBuilder.withLongOpt("deletes").withDescription("Fraction of deleted articles (default 0.01)")
+        .hasArg().withArgName("RATE").create());
+    options.addOption(OptionBuilder.withLongOpt("moves").withDescription("Fraction of articles moved behind redirect chains (default 0.03)")
+        .hasArg().withArgName("RATE").create());
+    options.addOption(OptionBuilder.withLongOpt("chain-length").withDescription("Maximum redirect chain length (default 3)")
+        .hasArg().withArgName("N").create());
+    options.addOption(OptionBuilder.withLongOpt("cycles").withDescription("Fraction of redirect chains ending in a cycle (default 0.05)")
+        .hasArg().withArgName("RATE").create());
+    options.addOption(OptionBuilder.withLongOpt("disambiguations").withDescription("Fraction of articles turned into disambiguation pages (default 0.01)")
+        .hasArg().withArgName("RATE").create());
+    options.addOption(OptionBuilder.withLongOpt("fan-out").withDescription("Candidates per disambiguation page (default 4)")
+        .hasArg().withArgName("N").create());
+    options.addOption(OptionBuilder.withLongOpt("help").create('h'));
+    return options;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = buildCommandLineOptions();
+    CommandLineParser parser = new PosixParser();
+    CommandLine cmd = parser.parse(options, args);
+    if (cmd.hasOption("h") || !cmd.hasOption("s") || !cmd.hasOption("t")) {
+      new HelpFormatter().printHelp("DumpGenerator", options);
+      return;
+    }
+    DumpGenerator generator = new DumpGenerator(Long.parseLong(cmd.getOptionValue("seed", "1")));
+    generator.setPages(Integer.parseInt(cmd.getOptionValue("n", "10000")));
+    generator.setLinksPerPage(Integer.parseInt(cmd.getOptionValue("links", "20")));
+    generator.setTextSize(Integer.parseInt(cmd.getOptionValue("text-size", "2000")));
+    generator.setRedirectRate(Double.parseDouble(cmd.getOptionValue("redirects", "0.3")));
+    generator.setEditRate(Double.parseDouble(cmd.getOptionValue("edits", "0.2")));
+    generator.setRenameRate(Double.parseDouble(cmd.getOptionValue("renames", "0.05")));
+    generator.setDeleteRate(Double.parseDouble(cmd.getOptionValue("deletes", "0.01")));
+    generator.setMoveRate(Double.parseDouble(cmd.getOptionValue("moves", "0.03")));
+    generator.setMaxChainLength(Integer.parseInt(cmd.getOptionValue("chain-length", "3")));
+    generator.setCycleRate(Double.parseDouble(cmd.getOptionValue("cycles", "0.05")));
+    generator.setDisambiguationRate(Double.parseDouble(cmd.getOptionValue("disambiguations", "0.01")));
+    generator.setFanOut(Integer.parseInt(cmd.getOptionValue("fan-out", "4")));
+    generator.generate(new File(cmd.getOptionValue("s")), new File(cmd.getOptionValue("t")));
+  }
+}
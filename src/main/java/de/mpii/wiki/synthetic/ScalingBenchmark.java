@@ -0,0 +1,205 @@
+package de.mpii.wiki.synthetic;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mpii.wiki.WikiMapper;
+import de.mpii.wiki.common.Utils;
+
+/**
+ * End to end scaling benchmark. Generates synthetic dump pairs of the given sizes (see {@link DumpGenerator})
+ * and maps each pair in a separate JVM for every combination of heap size and processor count. Wall time,
+ * peak RSS, GC time and peak heap of each run are appended as a tab separated row to the results file.
+ *
+ * The mapper is run with the metrics report enabled, the figures are taken from that report. Processor
+ * counts are applied with -XX:ActiveProcessorCount, which bounds the threads used by the JVM (GC) and by
+ * the mapper's output compression. Runs that fail (e.g. running out of heap) are recorded with their exit code.
+ */
+public class ScalingBenchmark {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final String HEADER = "pages\tprocessors\theap\texitCode\twallMillis\tpeakRssKb\tgcMillis\tpeakHeapBytes\tpagesPerSecond";
+
+  private static final Pattern PEAK_RSS = Pattern.compile("\"peakRssKb\": (-?\\d+)");
+
+  private static final Pattern PEAK_HEAP = Pattern.compile("\"peakUsed\": (\\d+)");
+
+  private static final Pattern PAGES_PER_SECOND = Pattern.compile("\"pagesPerSecond\": (\\d+)");
+
+  private static final Pattern GC_TIME = Pattern.compile("\"timeMillis\": (\\d+)");
+
+  private static Logger logger_ = LoggerFactory.getLogger(ScalingBenchmark.class);
+
+  private final File workDir;
+
+  private final File results;
+
+  private final long seed;
+
+  // class path of the mapper JVMs
+  private String classpath = Utils.classpath();
+
+  public ScalingBenchmark(File workDir, File results, long seed) {
+    this.workDir = workDir;
+    this.results = results;
+    this.seed = seed;
+  }
+
+  public void setClasspath(String classpath) {
+    this.classpath = classpath;
+  }
+
+  public void run(int[] sizes, int[] processors, String[] heaps, boolean keepDumps) throws IOException, InterruptedException {
+    if (!workDir.isDirectory() && !workDir.mkdirs()) {
+      throw new IOException("Failed to create work directory : " + workDir);
+    }
+    boolean writeHeader = !results.exists();
+    try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(results, true), UTF8))) {
+      if (writeHeader) {
+        out.println(HEADER);
+      }
+      for (int size : sizes) {
+        File source = new File(workDir, "synthetic-" + size + "-old.xml");
+        File target = new File(workDir, "synthetic-" + size + "-new.xml");
+        if (!source.exists() || !target.exists()) {
+          DumpGenerator generator = new DumpGenerator(seed);
+          generator.setPages(size);
+          generator.generate(source, target);
+        } else {
+          logger_.info("Reusing generated dumps for " + size + " pages");
+        }
+        for (int p : processors) {
+          for (String heap : heaps) {
+            String row = runMapper(source, target, size, p, heap);
+            logger_.info(row);
+            out.println(row);
+            out.flush();
+          }
+        }
+        if (!keepDumps) {
+          source.delete();
+          target.delete();
+        }
+      }
+    }
+  }
+
+  private String runMapper(File source, File target, int size, int processors, String heap) throws IOException, InterruptedException {
+    String name = "run-" + size + "-" + processors + "-" + heap;
+    File output = new File(workDir, name + ".tsv.gz");
+    File report = new File(workDir, name + ".json");
+    File log = new File(workDir, name + ".log");
+    output.delete();
+    report.delete();
+
+    List<String> command = new ArrayList<>();
+    command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+    command.add("-Xmx" + heap);
+    command.add("-XX:ActiveProcessorCount=" + processors);
+    command.add("-cp");
+    command.add(classpath);
+    command.add(WikiMapper.class.getName());
+    command.add("-s");
+    command.add(source.getPath());
+    command.add("-t");
+    command.add(target.getPath());
+    command.add("-w");
+    command.add(output.getPath());
+    command.add("--metrics");
+    command.add(report.getPath());
+
+    logger_.info("Running " + name);
+    long start = System.currentTimeMillis();
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+    int exitCode = process.waitFor();
+    long wall = System.currentTimeMillis() - start;
+
+    String json = report.exists() ? new String(Files.readAllBytes(report.toPath()), UTF8) : "";
+    if (exitCode != 0 || json.isEmpty()) {
+      logger_.warn(name + " failed with exit code " + exitCode + ", see " + log.getPath());
+    }
+    long gcMillis = 0;
+    Matcher m = GC_TIME.matcher(json);
+    while (m.find()) {
+      gcMillis += Long.parseLong(m.group(1));
+    }
+    output.delete();
+    return size + "\t" + processors + "\t" + heap + "\t" + exitCode + "\t" + wall + "\t" + value(PEAK_RSS, json) + "\t"
+        + gcMillis + "\t" + value(PEAK_HEAP, json) + "\t" + value(PAGES_PER_SECOND, json);
+  }
+
+  private static String value(Pattern pattern, String json) {
+    Matcher m = pattern.matcher(json);
+    return m.find() ? m.group(1) : "-1";
+  }
+
+  private static int[] parseInts(String values) {
+    String[] parts = values.split(",");
+    int[] ints = new int[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      ints[i] = Integer.parseInt(parts[i].trim());
+    }
+    return ints;
+  }
+
+  private static Options buildCommandLineOptions() throws ParseException {
+    Options options = new Options();
+    options.addOption(OptionBuilder.withLongOpt("sizes").withDescription("Comma separated page counts (default 1000000,10000000,50000000)")
+        .hasArg().withArgName("N,..").create());
+    options.addOption(OptionBuilder.withLongOpt("processors").withDescription("Comma separated processor counts (default 1 and all)")
+        .hasArg().withArgName("N,..").create());
+    options.addOption(OptionBuilder.withLongOpt("heaps").withDescription("Comma separated heap sizes (default 8g,32g,64g)")
+        .hasArg().withArgName("SIZE,..").create());
+    options.addOption(OptionBuilder.withLongOpt("work").withDescription("Directory for generated dumps and run logs (default target/scaling)")
+        .hasArg().withArgName("DIR").create());
+    options.addOption(OptionBuilder.withLongOpt("results").withDescription("Results file, rows are appended (default scaling-results.tsv)")
+        .hasArg().withArgName("FILE").create());
+    options.addOption(OptionBuilder.withLongOpt("seed").withDescription("Random seed of the generated dumps (default 1)")
+        .hasArg().withArgName("SEED").create());
+    options.addOption(OptionBuilder.withLongOpt("classpath")
+        .withDescription("Class path of the mapper JVMs (default the class path of this JVM's application class loader)").hasArg()
+        .withArgName("CLASSPATH").create());
+    options.addOption(OptionBuilder.withLongOpt("keep-dumps").withDescription("Keep the generated dumps for later runs").create());
+    options.addOption(OptionBuilder.withLongOpt("help").create('h'));
+    return options;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = buildCommandLineOptions();
+    CommandLineParser parser = new PosixParser();
+    CommandLine cmd = parser.parse(options, args);
+    if (cmd.hasOption("h")) {
+      new HelpFormatter().printHelp("ScalingBenchmark", options);
+      return;
+    }
+    int[] sizes = parseInts(cmd.getOptionValue("sizes", "1000000,10000000,50000000"));
+    int[] processors = parseInts(cmd.getOptionValue("processors", "1," + Runtime.getRuntime().availableProcessors()));
+    String[] heaps = cmd.getOptionValue("heaps", "8g,32g,64g").split(",");
+    ScalingBenchmark benchmark = new ScalingBenchmark(new File(cmd.getOptionValue("work", "target/scaling")),
+        new File(cmd.getOptionValue("results", "scaling-results.tsv")), Long.parseLong(cmd.getOptionValue("seed", "1")));
+    if (cmd.hasOption("classpath")) {
+      benchmark.setClasspath(cmd.getOptionValue("classpath"));
+    }
+    benchmark.run(sizes, processors, heaps, cmd.hasOption("keep-dumps"));
+  }
+}
@@ -0,0 +1,201 @@
+package de.mpii.wiki.targeted;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mpii.wiki.common.Utils;
+import de.mpii.wiki.dump.DumpData;
+import de.mpii.wiki.dump.DumpReader;
+import de.mpii.wiki.dump.PageFilter;
+import de.mpii.wiki.metrics.MappingMetrics;
+
+/**
+ * Scans dumps for a subset of source titles only, so that memory and time spent on pages scale with the
+ * subset instead of the dump.
+ *
+ * The source scan keeps the pages with the given titles. The target scan keeps the pages with the ids of
+ * the kept source pages, and everything their results depend on: the pages along redirect chains and the
+ * candidates of disambiguation pages. Such a page appearing later in the dump is picked up in the same pass,
+ * one appearing earlier needs another pass. Passes are repeated while titles are missing and the last pass
+ * found new pages. The titles read in the first pass are recorded in a bloom filter, so that titles of pages
+ * not in the dump (red links) do not cause another pass.
+ */
+public class TargetedScan {
+
+  private static Logger logger_ = LoggerFactory.getLogger(TargetedScan.class);
+
+  public static void scanSource(List<File> parts, DumpData data, Set<String> titles) throws IOException, XMLStreamException {
+    read(parts, data, new SourceFilter(titles));
+    logger_.info("Found " + data.size() + " of " + titles.size() + " titles in source dump");
+  }
+
+  public static void scanTarget(List<File> parts, DumpData data, DumpData sourceData) throws IOException, XMLStreamException {
+    long bytes = 0;
+    for (File dump : parts) {
+      bytes += dump.length();
+    }
+    TargetFilter filter = new TargetFilter(data, sourceData, new SeenTitles(bytes));
+    int pass = 1;
+    while (true) {
+      int before = data.size();
+      read(parts, data, filter);
+      filter.endPass();
+      int missing = filter.missingTitles(false);
+      int findable = filter.missingTitles(true);
+      logger_.info("Target pass " + pass + " : " + data.size() + " pages kept, " + missing + " required titles missing, "
+          + (missing - findable) + " of them not in the dump");
+      if (findable == 0 || (pass > 1 && data.size() == before)) {
+        break;
+      }
+      pass++;
+    }
+  }
+
+  // the parts of a multi-part dump are read one after the other, the filters are not thread safe
+  private static void read(List<File> parts, DumpData data, PageFilter filter) throws IOException, XMLStreamException {
+    MappingMetrics metrics = data.getMetrics();
+    for (File dump : parts) {
+      try (InputStream in = metrics.track(new BufferedInputStream(new FileInputStream(dump), 1 << 16))) {
+        DumpReader.read(XMLInputFactory.newInstance().createXMLStreamReader(in), data, filter);
+      }
+    }
+  }
+
+  static class SourceFilter implements PageFilter {
+    private final Set<String> titles;
+
+    SourceFilter(Set<String> titles) {
+      this.titles = titles;
+    }
+
+    @Override
+    public boolean accept(int id, String title) {
+      return titles.contains(title);
+    }
+
+    @Override
+    public void added(int id) {
+    }
+  }
+
+  static class TargetFilter implements PageFilter {
+    private final DumpData data;
+
+    private final DumpData sourceData;
+
+    // titles of redirect targets and disambiguation candidates of kept pages
+    private final Set<String> required = new HashSet<>();
+
+    // titles of all pages, recorded in the first pass only
+    private final SeenTitles seen;
+
+    private boolean firstPass = true;
+
+    TargetFilter(DumpData data, DumpData sourceData, SeenTitles seen) {
+      this.data = data;
+      this.sourceData = sourceData;
+      this.seen = seen;
+    }
+
+    @Override
+    public boolean accept(int id, String title) {
+      if (firstPass) {
+        seen.add(title);
+      }
+      return !data.hasId(id) && (sourceData.hasId(id) || required.contains(title));
+    }
+
+    @Override
+    public void added(int id) {
+      if (!sourceData.isValidId(id) && !required.contains(data.getTitle(id))) {
+        // results of ignored source pages only depend on the page itself
+        return;
+      }
+      if (data.isRedirect(id)) {
+        require(data.getRedirectTitle(id));
+      } else if (data.isDisambiguation(id)) {
+        List<String> candidates = data.getDisambiguationLinks(id);
+        if (candidates != null) {
+          for (String candidate : candidates) {
+            require(candidate);
+          }
+        }
+      }
+    }
+
+    private void require(String title) {
+      if (title != null && !data.hasTitle(title)) {
+        required.add(title);
+      }
+    }
+
+    void endPass() {
+      firstPass = false;
+    }
+
+    // inDumpOnly: count only the titles that may be found by another pass
+    int missingTitles(boolean inDumpOnly) {
+      int missing = 0;
+      for (String title : required) {
+        if (!data.hasTitle(title) && (!inDumpOnly || seen.mayContain(title))) {
+          missing++;
+        }
+      }
+      return missing;
+    }
+  }
+
+  // bloom filter of titles, with about one bit per 64 bytes of dump
+  static class SeenTitles {
+    private static final int HASHES = 6;
+
+    private static final long MIN_BITS = 1L << 16;
+
+    private static final long MAX_BITS = 1L << 30;
+
+    private final long[] bits;
+
+    private final long mask;
+
+    SeenTitles(long dumpBytes) {
+      long size = Long.highestOneBit(Math.min(MAX_BITS, Math.max(MIN_BITS, dumpBytes / 64)));
+      bits = new long[(int) (size >>> 6)];
+      mask = size - 1;
+    }
+
+    void add(String title) {
+      long h = Utils.hash64(title);
+      long h1 = h & 0xffffffffL;
+      long h2 = (h >>> 32) | 1;
+      for (int i = 0; i < HASHES; i++) {
+        long bit = (h1 + i * h2) & mask;
+        bits[(int) (bit >>> 6)] |= 1L << bit;
+      }
+    }
+
+    boolean mayContain(String title) {
+      long h = Utils.hash64(title);
+      long h1 = h & 0xffffffffL;
+      long h2 = (h >>> 32) | 1;
+      for (int i = 0; i < HASHES; i++) {
+        long bit = (h1 + i * h2) & mask;
+        if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,224 @@
+package de.mpii.wiki.trace;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Trace of the redirect and disambiguation decisions of a mapping, written as TSV by a background thread
+ * so that recording a decision does not wait for I/O. Records are passed through a bounded queue; if the
+ * writer falls behind, records are dropped (and counted) rather than slowing the mapping down. Once writing
+ * failed, all records are dropped.
+ *
+ * Decisions are sampled by source page id, so the same pages are traced in every run with the same rate.
+ * Each line is one decision, the columns are separated by tabs:
+ * <pre>
+ * R  source id  resolved id  redirect chain (ids, comma separated)   1 if the chain ends in a cycle, else 0
+ * D  source id  chosen id    candidate ids (comma separated)         candidate scores (comma separated)
+ * </pre>
+ * Lines starting with # are comments. See {@link TraceSummary} for reading a trace.
+ *
+ * Instances are safe for concurrent use by multiple threads.
+ */
+public class DecisionTrace implements Closeable {
+
+  public static final int DEFAULT_CAPACITY = 1 << 16;
+
+  static final char REDIRECT = 'R', DISAMBIGUATION = 'D';
+
+  private static final Record END = new Record(REDIRECT, 0, 0, null, null, false);
+
+  private static Logger logger_ = LoggerFactory.getLogger(DecisionTrace.class);
+
+  private static class Record {
+    final char kind;
+    final int srcId;
+    final int tgtId;
+    final int[] ids;
+    final double[] scores;
+    final boolean cycle;
+
+    Record(char kind, int srcId, int tgtId, int[] ids, double[] scores, boolean cycle) {
+      this.kind = kind;
+      this.srcId = srcId;
+      this.tgtId = tgtId;
+      this.ids = ids;
+      this.scores = scores;
+      this.cycle = cycle;
+    }
+  }
+
+  private final File file;
+
+  // sampled ids hash below this threshold (out of 2^24), -1 if all ids are sampled
+  private final long threshold;
+
+  private final BlockingQueue<Record> queue;
+
+  private final Thread writerThread;
+
+  private final AtomicLong recorded = new AtomicLong();
+
+  private final AtomicLong dropped = new AtomicLong();
+
+  // failure of the writer thread, rethrown on close
+  private volatile IOException failure;
+
+  // package-private for tests
+  DecisionTrace(File file, double sampleRate, int capacity, final Writer writer) {
+    this.file = file;
+    this.threshold = (sampleRate >= 1.0) ? -1 : (long) (sampleRate * (1 << 24));
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    writerThread = new Thread("decision-trace") {
+      @Override
+      public void run() {
+        write(writer);
+      }
+    };
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  /**
+   * Opens a trace writing to the given file.
+   *
+   * @param sampleRate Fraction of source pages whose decisions are traced, between 0 and 1.
+   */
+  public static DecisionTrace open(File file, double sampleRate) throws IOException {
+    return open(file, sampleRate, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param capacity Number of records queued for the writer thread, further records are dropped.
+   */
+  public static DecisionTrace open(File file, double sampleRate, int capacity) throws IOException {
+    if (sampleRate < 0 || sampleRate > 1) {
+      throw new IllegalArgumentException("Invalid sample rate : " + sampleRate);
+    }
+    Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8")), 1 << 16);
+    writer.write("# kind\tsource\ttarget\tids\tscores|cycle\n");
+    return new DecisionTrace(file, sampleRate, capacity, writer);
+  }
+
+  /**
+   * Returns whether the decisions for the given source page are traced. Callers only collect the details
+   * of a decision if it is.
+   */
+  public boolean isSampled(int srcId) {
+    if (threshold < 0) {
+      return true;
+    }
+    long h = srcId * 0x9e3779b97f4a7c15L;
+    return ((h ^ (h >>> 32)) & 0xffffff) < threshold;
+  }
+
+  /**
+   * @param chain The ids of the redirect chain, starting with the source id.
+   */
+  public void redirect(int srcId, int resolvedId, int[] chain, boolean cycle) {
+    add(new Record(REDIRECT, srcId, resolvedId, chain, null, cycle));
+  }
+
+  public void disambiguation(int srcId, int chosenId, int[] candidates, double[] scores) {
+    add(new Record(DISAMBIGUATION, srcId, chosenId, candidates, scores, false));
+  }
+
+  private void add(Record record) {
+    // records are not written anymore once the writer thread failed
+    if (failure == null && queue.offer(record)) {
+      recorded.incrementAndGet();
+    } else {
+      dropped.incrementAndGet();
+    }
+  }
+
+  private void write(Writer writer) {
+    StringBuilder sb = new StringBuilder();
+    Record record = null;
+    try {
+      try {
+        while ((record = queue.take()) != END) {
+          sb.setLength(0);
+          sb.append(record.kind).append('\t').append(record.srcId).append('\t').append(record.tgtId).append('\t');
+          for (int i = 0; i < record.ids.length; i++) {
+            sb.append((i > 0) ? "," : "").append(record.ids[i]);
+          }
+          sb.append('\t');
+          if (record.kind == DISAMBIGUATION) {
+            for (int i = 0; i < record.scores.length; i++) {
+              sb.append((i > 0) ? "," : "").append(String.format(Locale.ROOT, "%.4f", record.scores[i]));
+            }
+          } else {
+            sb.append(record.cycle ? '1' : '0');
+          }
+          writer.write(sb.append('\n').toString());
+        }
+      } finally {
+        writer.close();
+      }
+    } catch (IOException e) {
+      failure = e;
+      discardQueued(record != END ? 1 : 0);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // counts the queued records, and the given number of records taken from the queue, as dropped
+  private void discardQueued(int taken) {
+    List<Record> lost = new ArrayList<>();
+    queue.drainTo(lost);
+    int count = taken;
+    for (Record record : lost) {
+      count += (record != END) ? 1 : 0;
+    }
+    recorded.addAndGet(-count);
+    dropped.addAndGet(count);
+  }
+
+  public long getRecorded() {
+    return recorded.get();
+  }
+
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  /**
+   * Writes the queued records and closes the file.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      // the writer thread stops early if writing failed
+      while (writerThread.isAlive() && !queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+        // retry
+      }
+      writerThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while closing decision trace " + file, e);
+    }
+    if (failure != null) {
+      // records added while the writer thread failed
+      discardQueued(0);
+      throw failure;
+    }
+    logger_.info("Decision trace " + file.getName() + " : " + recorded.get() + " decisions written, " + dropped.get() + " dropped");
+  }
+}
@@ -0,0 +1,166 @@
+package de.mpii.wiki.trace;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+import de.mpii.wiki.common.Histogram;
+
+/**
+ * Summarizes a trace written by {@link DecisionTrace}: redirect chain lengths and cycles, candidates per
+ * disambiguation, and how clear the disambiguation decisions were (pages left unresolved as no candidate
+ * shares any link, ties between the best candidates, margin of the best score over the second best).
+ *
+ * Usage: java de.mpii.wiki.trace.TraceSummary TRACE_FILE
+ */
+public class TraceSummary {
+
+  private long redirects = 0;
+  private long cycles = 0;
+  private final Histogram chainLengths = new Histogram();
+
+  private long disambiguations = 0;
+  private long unresolved = 0;
+  private long ties = 0;
+  private double topScores = 0;
+  private double margins = 0;
+  private final Histogram candidates = new Histogram();
+
+  private long malformed = 0;
+
+  public static TraceSummary read(File trace) throws IOException {
+    TraceSummary summary = new TraceSummary();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(trace), Charset.forName("UTF-8")), 1 << 16)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty() || line.charAt(0) == '#') {
+          continue;
+        }
+        try {
+          summary.add(line.split("\t", -1));
+        } catch (RuntimeException e) {
+          // NumberFormatException or ArrayIndexOutOfBoundsException of a line cut off by a crash
+          summary.malformed++;
+        }
+      }
+    }
+    return summary;
+  }
+
+  private void add(String[] fields) {
+    int srcId = Integer.parseInt(fields[1]);
+    int tgtId = Integer.parseInt(fields[2]);
+    int ids = fields[3].isEmpty() ? 0 : fields[3].split(",").length;
+    if (fields[0].charAt(0) == DecisionTrace.REDIRECT) {
+      redirects++;
+      chainLengths.record(ids);
+      if (fields[4].equals("1")) {
+        cycles++;
+      }
+      return;
+    }
+    if (fields[0].charAt(0) != DecisionTrace.DISAMBIGUATION) {
+      throw new IllegalArgumentException("Unknown decision : " + fields[0]);
+    }
+    disambiguations++;
+    candidates.record(ids);
+    if (tgtId == srcId) {
+      unresolved++;
+    }
+    double best = 0;
+    double second = 0;
+    if (ids > 0) {
+      for (String value : fields[4].split(",")) {
+        double score = Double.parseDouble(value);
+        if (score > best) {
+          second = best;
+          best = score;
+        } else if (score > second) {
+          // also a score equal to the best
+          second = score;
+        }
+      }
+    }
+    if (best > 0 && best == second) {
+      ties++;
+    }
+    topScores += best;
+    margins += best - second;
+  }
+
+  public long getRedirects() {
+    return redirects;
+  }
+
+  public long getCycles() {
+    return cycles;
+  }
+
+  public Histogram getChainLengths() {
+    return chainLengths;
+  }
+
+  public long getDisambiguations() {
+    return disambiguations;
+  }
+
+  /**
+   * Returns the number of disambiguations mapped to the disambiguation page itself.
+   */
+  public long getUnresolved() {
+    return unresolved;
+  }
+
+  /**
+   * Returns the number of disambiguations where several candidates have the best score, the first is chosen.
+   */
+  public long getTies() {
+    return ties;
+  }
+
+  public double getMeanTopScore() {
+    return topScores / Math.max(1, disambiguations);
+  }
+
+  public double getMeanMargin() {
+    return margins / Math.max(1, disambiguations);
+  }
+
+  public Histogram getCandidates() {
+    return candidates;
+  }
+
+  public long getMalformed() {
+    return malformed;
+  }
+
+  public void print(PrintStream out) {
+    out.println("Redirects         : " + redirects + " (" + cycles + " cycles)");
+    out.println("Chain length      : mean " + format(chainLengths.getMean()) + ", p50 " + chainLengths.getPercentile(50) + ", p99 "
+        + chainLengths.getPercentile(99) + ", max " + chainLengths.getMax());
+    out.println("Disambiguations   : " + disambiguations + " (" + unresolved + " unresolved, " + ties + " ties)");
+    out.println("Candidates        : mean " + format(candidates.getMean()) + ", p50 " + candidates.getPercentile(50) + ", p99 "
+        + candidates.getPercentile(99) + ", max " + candidates.getMax());
+    out.println("Best score        : mean " + format(getMeanTopScore()) + ", mean margin over second " + format(getMeanMargin()));
+    if (malformed > 0) {
+      out.println("Malformed lines   : " + malformed);
+    }
+  }
+
+  private static String format(double value) {
+    return String.format(Locale.ROOT, "%.4f", value);
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1) {
+      System.err.println("Usage: TraceSummary TRACE_FILE");
+      System.exit(1);
+    }
+    read(new File(args[0])).print(System.out);
+  }
+}
@@ -1,6 +1,7 @@
 package de.mpii.wiki;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 import java.io.BufferedWriter;
 import java.io.File;
@@ -8,12 +9,22 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.xml.stream.XMLStreamException;
 
 import org.junit.Test;
 
+import de.mpii.wiki.dump.DumpSettings.MappedType;
+import de.mpii.wiki.result.MappedIdResults;
+import de.mpii.wiki.synthetic.DumpGenerator;
+import de.mpii.wiki.synthetic.TestDumps;
+
 public class WikiMapperTest {
 
   @Test
@@ -130,6 +141,51 @@ public class WikiMapperTest {
     assertEquals(null, hshResults.get("Test2"));
   }
 
+  @Test
+  public void testIdResultsMapView() throws IOException, XMLStreamException {
+    // source dump
+    File tmpSrcDump = File.createTempFile("wiki-src-dump", "xml");
+    File tmpTargetDump = File.createTempFile("wiki-target-dump", "xml");
+
+    BufferedWriter bw = new BufferedWriter(new FileWriter(tmpSrcDump));
+    bw.write("<mediawiki>"
+        + "<page><title>Test1</title><id>1</id></page>"
+        + "<page><title>Test2</title><id>2</id></page>"
+        + "<page><title>Test3</title><id>3</id></page>"
+        + "</mediawiki>");
+    bw.close();
+
+    bw = new BufferedWriter(new FileWriter(tmpTargetDump));
+    bw.write("<mediawiki>"
+        + "<page><title>Test1</title><id>1</id></page>"
+        + "<page><title>NEW_Test2</title><id>2</id></page>"
+        + "</mediawiki>");
+    bw.close();
+
+    MappedIdResults idResults = WikiMapper.mapIds(tmpSrcDump, tmpTargetDump);
+    assertEquals(3, idResults.size());
+    assertEquals(MappedType.UPDATED, idResults.getMappingType(idResults.indexOf(2)));
+    assertEquals(MappedType.DELETED, idResults.getMappingType(idResults.indexOf(3)));
+
+    Map<String, String> view = idResults.asMap(true);
+    Map<String, String> map = WikiMapper.map(tmpSrcDump, tmpTargetDump);
+    assertEquals(map, new HashMap<>(view));
+    // map returns a HashMap callers may modify, unlike the view
+    assertEquals(HashMap.class, map.getClass());
+    map.remove("Test1");
+    assertEquals(2, map.size());
+    assertEquals("NEW_Test2", view.get("Test2"));
+    assertEquals(true, view.containsKey("Test3"));
+    assertEquals(null, view.get("Test3"));
+
+    view = idResults.asMap(false);
+    assertEquals(2, view.size());
+    assertEquals(false, view.containsKey("Test1"));
+
+    tmpSrcDump.delete();
+    tmpTargetDump.delete();
+  }
+
   @Test
   public void testSinglePageRedirection() throws IOException, XMLStreamException {
     // source dump
@@ -375,4 +431,69 @@ public class WikiMapperTest {
     // assertEquals(1, hshResults.size());
     assertEquals("Albert Einstein", hshResults.get("Einstein"));
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testSeveralSources() throws IOException, XMLStreamException {
+    File target = File.createTempFile("wiki-target-dump", "xml");
+    File unused = File.createTempFile("wiki-target-dump", "xml");
+    List<File> sources = Arrays.asList(File.createTempFile("wiki-src-dump", "xml"), File.createTempFile("wiki-src-dump", "xml"),
+        File.createTempFile("wiki-src-dump", "xml"));
+    List<File> outputs = Arrays.asList(File.createTempFile("wiki-results", "tsv"), File.createTempFile("wiki-results", "tsv"),
+        File.createTempFile("wiki-results", "tsv"));
+    File single = File.createTempFile("wiki-results", "tsv");
+    try {
+      // the sources of the other generated dumps are older versions of different wikis, mapped to the same target
+      for(int i = 0; i < sources.size(); i++) {
+        DumpGenerator generator = new DumpGenerator(i + 1);
+        generator.setPages(1000);
+        generator.generate(sources.get(i), (i == 0) ? target : unused);
+      }
+      for(File output : outputs) {
+        output.delete();
+      }
+      WikiMapper.mapToFiles(sources, target, outputs);
+      for(int i = 0; i < sources.size(); i++) {
+        single.delete();
+        WikiMapper.mapToFile(sources.get(i), target, single);
+        assertEquals(Files.readAllLines(single.toPath(), StandardCharsets.UTF_8),
+            Files.readAllLines(outputs.get(i).toPath(), StandardCharsets.UTF_8));
+      }
+      // the outputs exist now and are not overwritten
+      try {
+        WikiMapper.mapToFiles(sources, target, outputs);
+        fail("Existing outputs were not reported");
+      } catch (IOException e) {
+        // expected
+      }
+    } finally {
+      target.delete();
+      unused.delete();
+      single.delete();
+      for(int i = 0; i < sources.size(); i++) {
+        sources.get(i).delete();
+        outputs.get(i).delete();
+      }
+    }
+  }
+
+  @Test
+  public void testCommandLineDoesNotAffectLaterCalls() throws Exception {
+    File titles = File.createTempFile("wiki-titles", "txt");
+    File output = File.createTempFile("wiki-results", "tsv");
+    try (TestDumps dumps = new TestDumps(3, 500)) {
+      File source = dumps.getSource();
+      File target = dumps.getTarget();
+      MappedIdResults expected = WikiMapper.mapIds(source, target);
+      Files.write(titles.toPath(), Arrays.asList(expected.getSourceTitle(0)), StandardCharsets.UTF_8);
+
+      output.delete();
+      WikiMapper.main(new String[] { "-s", source.getPath(), "-t", target.getPath(), "-w", output.getPath(), "--titles", titles.getPath() });
+      assertEquals(1, Files.readAllLines(output.toPath(), StandardCharsets.UTF_8).size());
+      // the title subset of the command line is not applied to library calls
+      assertEquals(expected.size(), WikiMapper.mapIds(source, target).size());
+    } finally {
+      titles.delete();
+      output.delete();
+    }
+  }
+}
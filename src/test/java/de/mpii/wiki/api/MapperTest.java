@@ -0,0 +1,155 @@
+package de.mpii.wiki.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import de.mpii.wiki.WikiMapper;
+import de.mpii.wiki.dump.DumpSettings.MappedType;
+import de.mpii.wiki.result.MappedIdResults;
+import de.mpii.wiki.synthetic.DumpGenerator;
+import de.mpii.wiki.synthetic.TestDumps;
+
+public class MapperTest {
+
+  private static void assertSameResults(MappedIdResults expected, MappedIdResults actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.getSourceTitle(i), actual.getSourceTitle(i));
+      assertEquals(expected.getTargetTitle(i), actual.getTargetTitle(i));
+      assertEquals(expected.getMappingType(i), actual.getMappingType(i));
+    }
+  }
+
+  // an endless dump, read until the mapping is cancelled
+  private static class EndlessDump extends InputStream {
+    private final byte[] header = "<mediawiki>".getBytes(Charset.forName("UTF-8"));
+    private byte[] current = header;
+    private int pos = 0;
+    private int id = 0;
+
+    @Override
+    public int read() {
+      if (pos == current.length) {
+        id++;
+        current = ("<page><title>Page " + id + "</title><id>" + id + "</id><revision><text>[[Page " + (id + 1)
+            + "]]</text></revision></page>").getBytes(Charset.forName("UTF-8"));
+        pos = 0;
+      }
+      return current[pos++];
+    }
+  }
+
+  @Test
+  public void verifyConcurrentMappingsOfStreamsAndChannels() throws Exception {
+    DumpGenerator generator = new DumpGenerator(9);
+    generator.setPages(1000);
+    generator.setDisambiguationRate(0.1);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try (TestDumps dumps = new TestDumps(generator)) {
+      File source = dumps.getSource();
+      File target = dumps.getTarget();
+      MappedIdResults expected = WikiMapper.mapIds(source, target);
+
+      MapperOptions options = new MapperOptions();
+      options.setProgressInterval(100);
+      final AtomicLong callbacks = new AtomicLong();
+      ProgressListener listener = new ProgressListener() {
+        @Override
+        public void progress(String phase, long pages, long bytes, long totalBytes) {
+          callbacks.incrementAndGet();
+        }
+      };
+      Mapper mapper = new Mapper(options, executor);
+      MappingTask files = mapper.submit(DumpSource.of(source), DumpSource.of(target), listener);
+      MappingTask streams;
+      try (InputStream in = new FileInputStream(source); FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.READ)) {
+        streams = mapper.submit(DumpSource.of(in, "old"), DumpSource.of(channel, "new"), listener);
+        assertSameResults(expected, streams.get());
+      }
+      assertSameResults(expected, files.get());
+      assertTrue(callbacks.get() > 2 * (1000 + 1000) / 100);
+
+      // options of another mapper do not affect this one
+      MapperOptions evaluate = new MapperOptions();
+      evaluate.setEvaluate(true);
+      MappedIdResults texts = new Mapper(evaluate, executor).map(DumpSource.of(source), DumpSource.of(target), null);
+      MappedIdResults noTexts = mapper.map(DumpSource.of(source), DumpSource.of(target), null);
+      for (int i = 0; i < texts.size(); i++) {
+        if (texts.getMappingType(i).equals(MappedType.DISAMBIGUATED)) {
+          assertTrue(texts.getSourceText(i) != null);
+          assertEquals(null, noTexts.getSourceText(i));
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void verifyCancellation() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    MapperOptions options = new MapperOptions();
+    options.setProgressInterval(1000);
+    final CountDownLatch started = new CountDownLatch(1);
+    Mapper mapper = new Mapper(options, executor);
+    MappingTask task = mapper.submit(DumpSource.of(new EndlessDump(), "old"), DumpSource.of(new EndlessDump(), "new"), new ProgressListener() {
+      @Override
+      public void progress(String phase, long pages, long bytes, long totalBytes) {
+        started.countDown();
+      }
+    });
+    assertTrue(started.await(30, TimeUnit.SECONDS));
+    assertTrue(task.cancel(false));
+    try {
+      task.get();
+      fail("Cancelled mapping returned results");
+    } catch (CancellationException e) {
+      // expected
+    }
+    // the mapping stops reading, so the executor becomes idle
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+    assertTrue(task.getMetrics().getPagesProcessed() > 0);
+  }
+
+  @Test
+  public void verifyStreamsAreReadOnce() throws IOException {
+    DumpSource source = DumpSource.of(new EndlessDump(), "old");
+    source.open();
+    try {
+      source.open();
+      fail("Stream opened twice");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  @Test(expected = ExecutionException.class)
+  public void verifyFailuresArePassedOn() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      File missing = new File("no-such-dump.xml");
+      new Mapper(new MapperOptions(), executor).submit(DumpSource.of(missing), DumpSource.of(missing), null).get();
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
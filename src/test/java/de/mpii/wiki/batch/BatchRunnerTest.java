@@ -0,0 +1,103 @@
+package de.mpii.wiki.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.mpii.wiki.WikiMapper;
+import de.mpii.wiki.synthetic.DumpGenerator;
+
+public class BatchRunnerTest {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static void deleteAll(File dir) {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  @Test
+  public void verifyBatchResults() throws Exception {
+    File dir = Files.createTempDirectory("wiki-batch").toFile();
+    try {
+      int[] sizes = { 2000, 300, 500, 200 };
+      StringBuilder manifest = new StringBuilder("# source target output\n\n");
+      List<File> expected = new ArrayList<>();
+      for (int i = 0; i < sizes.length; i++) {
+        File source = new File(dir, "old" + i + ".xml");
+        File target = new File(dir, "new" + i + ".xml");
+        DumpGenerator generator = new DumpGenerator(i);
+        generator.setPages(sizes[i]);
+        generator.setDisambiguationRate(0.1);
+        generator.generate(source, target);
+        File reference = new File(dir, "expected" + i + ".tsv");
+        WikiMapper.mapToFile(source, target, reference, true);
+        expected.add(reference);
+        manifest.append(source.getPath()).append('\t').append(target.getPath()).append(' ').append(new File(dir, "result" + i + ".tsv").getPath()).append('\n');
+      }
+      File manifestFile = new File(dir, "manifest.tsv");
+      Files.write(manifestFile.toPath(), manifest.toString().getBytes(UTF8));
+
+      List<BatchJob> jobs = BatchJob.readManifest(manifestFile);
+      assertEquals(sizes.length, jobs.size());
+      // small jobs run alongside the largest one, one at a time
+      BatchRunner runner = new BatchRunner(1, 2);
+      long budget = runner.estimateMemory(jobs.get(0)) + runner.estimateMemory(jobs.get(2));
+      runner = new BatchRunner(budget, 2);
+      assertEquals(0, runner.run(jobs));
+      assertTrue(runner.getPeakMemory() <= budget);
+      assertTrue(runner.getPages() > 0);
+      for (int i = 0; i < sizes.length; i++) {
+        BatchJob job = jobs.get(i);
+        assertEquals(null, job.getError());
+        assertEquals(new String(Files.readAllBytes(expected.get(i).toPath()), UTF8), new String(Files.readAllBytes(job.getOutput().toPath()), UTF8));
+      }
+
+      // existing outputs are not overwritten, the other jobs still run
+      jobs.get(1).getOutput().delete();
+      runner = new BatchRunner(budget, 2);
+      assertEquals(sizes.length - 1, runner.run(jobs));
+      assertEquals(null, jobs.get(1).getError());
+
+      File report = new File(dir, "report.json");
+      runner.writeReport(report);
+      String json = new String(Files.readAllBytes(report.toPath()), UTF8);
+      assertTrue(json.contains("\"pagesPerSecond\""));
+      assertTrue(json.contains("Output file already exists"));
+    } finally {
+      deleteAll(dir);
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void verifyMissingDumps() throws IOException {
+    File manifest = File.createTempFile("manifest", "tsv");
+    try {
+      Files.write(manifest.toPath(), Arrays.asList("no-such-old.xml no-such-new.xml out.tsv"), UTF8);
+      BatchJob.readManifest(manifest);
+    } finally {
+      manifest.delete();
+    }
+  }
+
+  @Test
+  public void verifySizes() {
+    assertEquals(512L << 20, BatchRunner.parseSize("512m"));
+    assertEquals(64L << 30, BatchRunner.parseSize("64G"));
+    assertEquals(1000, BatchRunner.parseSize("1000"));
+  }
+}
@@ -0,0 +1,203 @@
+package de.mpii.wiki.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.mpii.wiki.WikiMapper;
+import de.mpii.wiki.api.DumpSource;
+import de.mpii.wiki.api.Mapper;
+import de.mpii.wiki.api.MapperOptions;
+import de.mpii.wiki.api.MappingTask;
+import de.mpii.wiki.page.handlers.Handler.HandlerType;
+import de.mpii.wiki.result.MappedIdResults;
+import de.mpii.wiki.synthetic.DumpGenerator;
+import de.mpii.wiki.synthetic.TestDumps;
+
+public class ParseCacheTest {
+
+  private static void deleteAll(File dir) {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  private static String link(int i) {
+    char[] padding = new char[1000];
+    Arrays.fill(padding, 'x');
+    return "Page " + i + " " + new String(padding);
+  }
+
+  @Test
+  public void verifyEntriesPersist() throws Exception {
+    File dir = Files.createTempDirectory("parse-cache").toFile();
+    try {
+      String key = ParseCache.key("Berlin", 42, "abc");
+      List<String> links = Arrays.asList("Germany", "Spree", "Ünïcode");
+      try (ParseCache cache = ParseCache.open(dir, ParseCache.DEFAULT_MAX_BYTES)) {
+        cache.put(key, HandlerType.NORMAL, links);
+        cache.put(ParseCache.key("Mercury", 7, null), HandlerType.DISAMBIGUATIONS, Collections.<String>emptyList());
+        // entries of the current run are not looked up
+        assertEquals(null, cache.get(key));
+      }
+      // the key depends on title and revision
+      assertTrue(!key.equals(ParseCache.key("Berlin (city)", 42, "abc")));
+      assertEquals(null, ParseCache.key("Berlin", -1, null));
+
+      try (ParseCache cache = ParseCache.open(dir, ParseCache.DEFAULT_MAX_BYTES)) {
+        assertEquals(2, cache.size());
+        ParseCache.Entry entry = cache.get(key);
+        assertEquals(HandlerType.NORMAL, entry.getType());
+        assertEquals(links, entry.getLinks());
+        assertEquals(HandlerType.DISAMBIGUATIONS, cache.get(ParseCache.key("Mercury", 7, null)).getType());
+      }
+
+      // the index is rebuilt from the segments
+      assertTrue(new File(dir, "index").delete());
+      try (ParseCache cache = ParseCache.open(dir, ParseCache.DEFAULT_MAX_BYTES)) {
+        assertEquals(2, cache.size());
+        assertEquals(links, cache.get(key).getLinks());
+      }
+    } finally {
+      deleteAll(dir);
+    }
+  }
+
+  @Test
+  public void verifyOldestEntriesAreEvicted() throws Exception {
+    File dir = Files.createTempDirectory("parse-cache").toFile();
+    try {
+      int entries = 6000;
+      try (ParseCache cache = ParseCache.open(dir, 2 << 20)) {
+        for (int i = 0; i < entries; i++) {
+          cache.put(ParseCache.key("Page " + i, i, null), HandlerType.NORMAL, Arrays.asList(link(i)));
+        }
+      }
+      long size = 0;
+      for (File file : dir.listFiles()) {
+        if (file.getName().startsWith("segment-")) {
+          size += file.length();
+        }
+      }
+      assertTrue(size <= 2 << 20);
+      try (ParseCache cache = ParseCache.open(dir, 2 << 20)) {
+        assertTrue(cache.size() < entries);
+        assertEquals(null, cache.get(ParseCache.key("Page 0", 0, null)));
+        int last = entries - 1;
+        assertEquals(Arrays.asList(link(last)), cache.get(ParseCache.key("Page " + last, last, null)).getLinks());
+      }
+    } finally {
+      deleteAll(dir);
+    }
+  }
+
+  @Test
+  public void verifyUsedEntriesSurviveEviction() throws Exception {
+    File dir = Files.createTempDirectory("parse-cache").toFile();
+    try {
+      try (ParseCache cache = ParseCache.open(dir, 2 << 20)) {
+        for (int i = 0; i < 1500; i++) {
+          cache.put(ParseCache.key("Page " + i, i, null), HandlerType.NORMAL, Arrays.asList(link(i)));
+        }
+      }
+      try (ParseCache cache = ParseCache.open(dir, 2 << 20)) {
+        assertEquals(1500, cache.size());
+        assertEquals(Arrays.asList(link(0)), cache.get(ParseCache.key("Page 0", 0, null)).getLinks());
+        // the oldest segments are evicted while these are added
+        for (int i = 1500; i < 4000; i++) {
+          cache.put(ParseCache.key("Page " + i, i, null), HandlerType.NORMAL, Arrays.asList(link(i)));
+        }
+      }
+      try (ParseCache cache = ParseCache.open(dir, 2 << 20)) {
+        assertEquals(Arrays.asList(link(0)), cache.get(ParseCache.key("Page 0", 0, null)).getLinks());
+        assertEquals(null, cache.get(ParseCache.key("Page 1", 1, null)));
+      }
+    } finally {
+      deleteAll(dir);
+    }
+  }
+
+  @Test
+  public void verifyMovedEntriesRollSegments() throws Exception {
+    File dir = Files.createTempDirectory("parse-cache").toFile();
+    try {
+      // segments of 1 MB, about 1000 entries each
+      try (ParseCache cache = ParseCache.open(dir, 3 << 20)) {
+        for (int i = 0; i < 2000; i++) {
+          cache.put(ParseCache.key("Page " + i, i, null), HandlerType.NORMAL, Arrays.asList(link(i)));
+        }
+      }
+      try (ParseCache cache = ParseCache.open(dir, 3 << 20)) {
+        for (int i = 0; i < 2000; i++) {
+          assertEquals(Arrays.asList(link(i)), cache.get(ParseCache.key("Page " + i, i, null)).getLinks());
+        }
+        // the used entries of the evicted segments are moved to new segments
+        for (int i = 2000; i < 3100; i++) {
+          cache.put(ParseCache.key("Page " + i, i, null), HandlerType.NORMAL, Arrays.asList(link(i)));
+        }
+      }
+      for (File file : dir.listFiles()) {
+        if (file.getName().startsWith("segment-")) {
+          assertTrue(file.getName() + " : " + file.length(), file.length() < (1 << 20) + 2000);
+        }
+      }
+      try (ParseCache cache = ParseCache.open(dir, 3 << 20)) {
+        assertEquals(Arrays.asList(link(0)), cache.get(ParseCache.key("Page 0", 0, null)).getLinks());
+      }
+    } finally {
+      deleteAll(dir);
+    }
+  }
+
+  @Test
+  public void verifyRerunUsesCache() throws Exception {
+    DumpGenerator generator = new DumpGenerator(5);
+    generator.setPages(1000);
+    generator.setDisambiguationRate(0.1);
+    File dir = Files.createTempDirectory("parse-cache").toFile();
+    try (TestDumps dumps = new TestDumps(generator)) {
+      File source = dumps.getSource();
+      File target = dumps.getTarget();
+      MappedIdResults expected = WikiMapper.mapIds(source, target);
+
+      for (int run = 0; run < 2; run++) {
+        try (ParseCache cache = ParseCache.open(dir, ParseCache.DEFAULT_MAX_BYTES)) {
+          MapperOptions options = new MapperOptions();
+          options.setParseCache(cache);
+          MappingTask task = new Mapper(options, new java.util.concurrent.Executor() {
+            @Override
+            public void execute(Runnable command) {
+              command.run();
+            }
+          }).submit(DumpSource.of(source), DumpSource.of(target), null);
+          MappedIdResults results = task.get();
+          assertEquals(expected.size(), results.size());
+          for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getTargetTitle(i), results.getTargetTitle(i));
+            assertEquals(expected.getMappingType(i), results.getMappingType(i));
+          }
+          long cached = task.getMetrics().getPagesCached();
+          if (run == 0) {
+            assertEquals(0, cached);
+          } else {
+            // pages of the source unchanged in the target are reused from the target instead
+            assertEquals(task.getMetrics().getPagesProcessed() - task.getMetrics().getPagesReused(), cached);
+          }
+        }
+      }
+    } finally {
+      deleteAll(dir);
+    }
+  }
+}
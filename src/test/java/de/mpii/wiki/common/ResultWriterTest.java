@@ -0,0 +1,69 @@
+package de.mpii.wiki.common;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import de.mpii.wiki.dump.DumpSettings.MappedType;
+import de.mpii.wiki.result.MappedResult;
+
+public class ResultWriterTest {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static void writeResults(File file, boolean gzip, int rows) throws IOException {
+    try (ResultWriter writer = new ResultWriter(file, gzip, 2)) {
+      for (int i = 0; i < rows; i++) {
+        writer.write(new MappedResult("Zürich_" + i, "𝕫_" + i, MappedType.UPDATED, null, null));
+      }
+      writer.write(new MappedResult("Einstein", "Albert Einstein", MappedType.DISAMBIGUATED, "src", null));
+      writer.write(new MappedResult("Deleted", null, MappedType.DELETED, null, null));
+    }
+  }
+
+  private static String expected(int rows) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < rows; i++) {
+      sb.append("Zürich_" + i + "\t𝕫_" + i + "\t__UP__\n");
+    }
+    sb.append("Einstein\tAlbert Einstein\t__D__\tsrc\t--NA--\n");
+    sb.append("Deleted\tnull\t__DL__\n");
+    return sb.toString();
+  }
+
+  @Test
+  public void verifyRowsAreWrittenAsUtf8() throws IOException {
+    File tmpFile = File.createTempFile("wiki-result", "tsv");
+    writeResults(tmpFile, false, 3);
+    assertEquals(expected(3), new String(Files.readAllBytes(tmpFile.toPath()), UTF8));
+    tmpFile.delete();
+  }
+
+  @Test
+  public void verifyCompressedBlocksFormValidGzip() throws IOException {
+    // enough rows to span several blocks
+    int rows = 400000;
+    File tmpFile = File.createTempFile("wiki-result", "tsv.gz");
+    writeResults(tmpFile, true, rows);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (InputStream in = new GZIPInputStream(new FileInputStream(tmpFile))) {
+      byte[] buf = new byte[1 << 16];
+      int n;
+      while ((n = in.read(buf)) > 0) {
+        out.write(buf, 0, n);
+      }
+    }
+    assertEquals(expected(rows), new String(out.toByteArray(), UTF8));
+    tmpFile.delete();
+  }
+}
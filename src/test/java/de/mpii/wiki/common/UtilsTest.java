@@ -1,5 +1,7 @@
 package de.mpii.wiki.common;
 
+import static org.junit.Assert.assertEquals;
+
 import java.util.List;
 
 import org.junit.Test;
@@ -35,4 +37,10 @@ public class UtilsTest {
       assert links.contains(link) == outcome;      
     }
   }
+
+  @Test
+  public void verifyJsonStringsAreEscaped() {
+    assertEquals("\"plain\"", Utils.jsonString("plain"));
+    assertEquals("\"apply \\\"C:\\\\dumps\\\\a.xml\\\"\\u000a\"", Utils.jsonString("apply \"C:\\dumps\\a.xml\"\n"));
+  }
 }
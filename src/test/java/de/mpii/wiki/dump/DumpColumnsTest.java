@@ -0,0 +1,92 @@
+package de.mpii.wiki.dump;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import de.mpii.wiki.dump.DumpSettings.DumpType;
+import de.mpii.wiki.metrics.MappingMetrics;
+import de.mpii.wiki.result.MappedIdResults;
+import de.mpii.wiki.result.ResultGenerator;
+import de.mpii.wiki.synthetic.DumpGenerator;
+import de.mpii.wiki.synthetic.TestDumps;
+
+public class DumpColumnsTest {
+
+  private static int[] sorted(int[] ids) {
+    Arrays.sort(ids);
+    return ids;
+  }
+
+  @Test
+  public void verifyMergeJoinMatchesLookups() throws Exception {
+    DumpGenerator generator = new DumpGenerator(21);
+    generator.setPages(3000);
+    generator.setDisambiguationRate(0.1);
+    try (TestDumps dumps = new TestDumps(generator)) {
+      DumpData sourceData = TestDumps.read(dumps.getSource(), DumpType.SOURCE);
+      DumpData targetData = TestDumps.read(dumps.getTarget(), DumpType.TARGET);
+      MappedIdResults expected = ResultGenerator.generateIds(sourceData, targetData);
+
+      int[] ids = sorted(targetData.getPageIds());
+      int[] redirects = sorted(targetData.getRedirectIds());
+      int[] disambiguations = sorted(targetData.getDisambiguationIds());
+      assertTrue(redirects.length > 0);
+      assertTrue(disambiguations.length > 0);
+      int redirect = redirects[0];
+      int resolved = targetData.getRedirectedId(redirect);
+
+      sourceData.compact();
+      targetData.compact();
+      assertNotNull(targetData.getColumns());
+
+      // the accessors read the columns
+      assertEquals(ids.length, targetData.size());
+      assertArrayEquals(ids, targetData.getPageIds());
+      assertArrayEquals(redirects, targetData.getRedirectIds());
+      assertArrayEquals(disambiguations, targetData.getDisambiguationIds());
+      assertEquals(resolved, targetData.getRedirectedId(redirect));
+      assertTrue(targetData.isRedirect(redirect));
+      assertNull(targetData.getPageLinks(redirect));
+      assertNotNull(targetData.getDisambiguationLinks(disambiguations[0]));
+      assertNull(targetData.getTitle(-1));
+
+      MappedIdResults joined = ResultGenerator.generateIds(sourceData, targetData);
+      assertEquals(expected.size(), joined.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertEquals(expected.getSourceId(i), joined.getSourceId(i));
+        assertEquals(expected.getTargetId(i), joined.getTargetId(i));
+        assertEquals(expected.getMappingType(i), joined.getMappingType(i));
+        assertEquals(expected.getTargetTitle(i), joined.getTargetTitle(i));
+      }
+
+      // compacted data is persisted as before
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (DataOutputStream out = new DataOutputStream(bytes)) {
+        targetData.writeTo(out);
+      }
+      DumpData restored = DumpData.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), new MappingMetrics());
+      assertArrayEquals(ids, sorted(restored.getPageIds()));
+      assertArrayEquals(redirects, sorted(restored.getRedirectIds()));
+      assertEquals(targetData.getTitle(ids[0]), restored.getTitle(ids[0]));
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void verifyCompactedDataIsReadOnly() {
+    DumpData data = new DumpData(DumpType.TARGET);
+    data.addPageEntry(1, "Test", "Some [[Link]]");
+    data.compact();
+    data.addPageEntry(2, "Other", "Text");
+  }
+}
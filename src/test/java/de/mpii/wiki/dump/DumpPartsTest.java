@@ -0,0 +1,135 @@
+package de.mpii.wiki.dump;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.junit.Test;
+
+import de.mpii.wiki.WikiMapper;
+import de.mpii.wiki.synthetic.DumpGenerator;
+
+public class DumpPartsTest {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  // splits the dump into the given number of parts, named like the parts of a published dump
+  private static void split(File dump, File dir, String prefix, int parts) throws IOException, XMLStreamException {
+    List<String[]> pages = new ArrayList<>();
+    try (InputStream in = new BufferedInputStream(new FileInputStream(dump))) {
+      DumpReader reader = new DumpReader(XMLInputFactory.newInstance().createXMLStreamReader(in));
+      while (reader.nextPage()) {
+        pages.add(new String[] { String.valueOf(reader.getId()), reader.getTitle(), reader.getText() });
+      }
+    }
+    int perPart = (pages.size() + parts - 1) / parts;
+    for (int p = 0; p < parts; p++) {
+      List<String[]> part = pages.subList(p * perPart, Math.min(pages.size(), (p + 1) * perPart));
+      File file = new File(dir, prefix + (p + 1) + ".xml-p" + part.get(0)[0] + "p" + part.get(part.size() - 1)[0]);
+      try (OutputStream out = new FileOutputStream(file)) {
+        XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.writeStartElement("mediawiki");
+        for (String[] page : part) {
+          writer.writeStartElement("page");
+          writer.writeStartElement("title");
+          writer.writeCharacters(page[1]);
+          writer.writeEndElement();
+          writer.writeStartElement("id");
+          writer.writeCharacters(page[0]);
+          writer.writeEndElement();
+          writer.writeStartElement("revision");
+          writer.writeStartElement("text");
+          writer.writeCharacters(page[2]);
+          writer.writeEndElement();
+          writer.writeEndElement();
+          writer.writeEndElement();
+        }
+        writer.writeEndElement();
+        writer.writeEndDocument();
+        writer.close();
+      }
+    }
+  }
+
+  @Test
+  public void verifyPartsAreResolvedInNumberOrder() throws IOException {
+    File dir = Files.createTempDirectory("dump-parts").toFile();
+    String[] names = { "pages-articles10.xml-p900p1000", "pages-articles2.xml-p11p20", "pages-articles1.xml-p1p10", "other.xml" };
+    for (String name : names) {
+      new File(dir, name).createNewFile();
+    }
+    List<File> parts = DumpParts.resolve(new File(dir, "pages-articles*.xml-p*").getPath());
+    assertEquals(Arrays.asList(new File(dir, names[2]), new File(dir, names[1]), new File(dir, names[0])), parts);
+
+    String list = new File(dir, names[3]).getPath() + "," + new File(dir, names[2]).getPath();
+    assertEquals(Arrays.asList(new File(dir, names[3]), new File(dir, names[2])), DumpParts.resolve(list));
+    for (String name : names) {
+      new File(dir, name).delete();
+    }
+    dir.delete();
+  }
+
+  @Test(expected = IOException.class)
+  public void verifyUnmatchedPatternFails() throws IOException {
+    DumpParts.resolve(new File(System.getProperty("java.io.tmpdir"), "no-such-dump*.xml").getPath());
+  }
+
+  @Test
+  public void verifyPartsMatchSingleDump() throws IOException, XMLStreamException {
+    File dir = Files.createTempDirectory("dump-parts").toFile();
+    File source = new File(dir, "old.xml");
+    File target = new File(dir, "new.xml");
+    DumpGenerator generator = new DumpGenerator(7);
+    generator.setPages(1500);
+    generator.setTextSize(200);
+    generator.setCycleRate(0.3);
+    generator.setDisambiguationRate(0.1);
+    generator.generate(source, target);
+
+    File output = new File(dir, "single.tsv");
+    WikiMapper.mapToFile(source, target, output, true);
+    String expected = new String(Files.readAllBytes(output.toPath()), UTF8);
+
+    split(source, dir, "old-pages-articles", 3);
+    split(target, dir, "new-pages-articles", 4);
+    File partsOutput = new File(dir, "parts.tsv");
+    WikiMapper.mapToFile(DumpParts.resolve(new File(dir, "old-pages-articles*").getPath()),
+        DumpParts.resolve(new File(dir, "new-pages-articles*").getPath()), partsOutput);
+    assertEquals(expected, new String(Files.readAllBytes(partsOutput.toPath()), UTF8));
+
+    // concurrent reads regardless of the processors available
+    DumpData single = new DumpData(DumpSettings.DumpType.TARGET);
+    DumpParts.read(Arrays.asList(target), single, 1);
+    DumpData concurrent = new DumpData(DumpSettings.DumpType.TARGET);
+    DumpParts.read(DumpParts.resolve(new File(dir, "new-pages-articles*").getPath()), concurrent, 4);
+    assertEquals(single.size(), concurrent.size());
+    for (int id : single.getPageIds()) {
+      assertEquals(single.getTitle(id), concurrent.getTitle(id));
+      assertEquals(single.getPageLinks(id), concurrent.getPageLinks(id));
+      assertEquals(single.getRedirectTitle(id), concurrent.getRedirectTitle(id));
+      assertEquals(single.getDisambiguationLinks(id), concurrent.getDisambiguationLinks(id));
+    }
+
+    for (File file : dir.listFiles()) {
+      file.delete();
+    }
+    dir.delete();
+  }
+}
@@ -1,20 +1,30 @@
 package de.mpii.wiki.dump;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 
 import org.junit.Test;
 
 import de.mpii.wiki.dump.DumpSettings.DumpType;
+import de.mpii.wiki.metrics.MappingMetrics;
+import de.mpii.wiki.metrics.MappingMetrics.Phase;
 
 
 public class DumpReaderTest {
@@ -63,7 +73,7 @@ public class DumpReaderTest {
     
     XMLInputFactory factory = XMLInputFactory.newInstance();
 
-    XMLEventReader dumpReader = factory.createXMLEventReader(new FileReader(tmpDump));
+    XMLStreamReader dumpReader = factory.createXMLStreamReader(new FileReader(tmpDump));
     DumpData dumpData = new DumpData(DumpType.TARGET);
 
     DumpReader.read(dumpReader, dumpData);
@@ -81,7 +91,46 @@ public class DumpReaderTest {
 
     assertEquals(true, dumpData.isDisambiguation(4));        
   }
+
+  @Test
+  public void verifyMetricsCollectedWhileReading() throws XMLStreamException {
+    String dump = "<mediawiki>"
+        + "<page><title>Test1</title><id>1</id><revision><text>About [[Test2]].</text></revision></page>"
+        + "<page><title>Test2</title><id>2</id><revision><text>About [[Test1]].</text></revision></page>"
+        + "<page><title>Test3</title><id>3</id><revision><text>#REDIRECT [[Test1]]</text></revision></page>"
+        + "<page><title>Test4</title><id>4</id><revision><text>Test 4 may refer to * [[Test1]] * [[Test2]] {{disambig}}</text></revision></page>"
+        + "</mediawiki>";
+    DumpData dumpData = new DumpData(DumpType.TARGET);
+    DumpReader.read(XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(dump)), dumpData);
+
+    MappingMetrics metrics = dumpData.getMetrics();
+    assertEquals(4, metrics.getPagesProcessed());
+    assertEquals(Long.valueOf(1), metrics.getHandlerCounts().get("REDIRECTS"));
+    assertEquals(Long.valueOf(1), metrics.getHandlerCounts().get("DISAMBIGUATIONS"));
+    assertEquals(4, metrics.getPhaseCount(Phase.LINK_EXTRACTION));
+
+    // phase names may contain file names
+    metrics.setPhase("apply \"changes\".xml");
+    assertTrue(metrics.toJson().contains("\"phase\": \"apply \\\"changes\\\".xml\""));
+  }
   
+  @Test
+  public void verifyReplacedPagesAreCountedOnce() throws XMLStreamException {
+    String dump = "<mediawiki>"
+        + "<page><title>Test1</title><id>1</id><revision><text>About [[Test2]].</text></revision></page>"
+        + "<page><title>Test2</title><id>2</id><revision><text>#REDIRECT [[Test1]]</text></revision></page>"
+        + "<page><title>Test2</title><id>2</id><revision><text>About [[Test1]].</text></revision></page>"
+        + "</mediawiki>";
+    DumpData dumpData = new DumpData(DumpType.TARGET);
+    DumpReader.read(XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(dump)), dumpData);
+
+    MappingMetrics metrics = dumpData.getMetrics();
+    assertEquals(2, dumpData.size());
+    assertEquals(3, metrics.getPagesProcessed());
+    assertEquals(Long.valueOf(2), metrics.getHandlerCounts().get("NORMAL"));
+    assertEquals(Long.valueOf(0), metrics.getHandlerCounts().get("REDIRECTS"));
+  }
+
   @Test
   public void verifySourceDumpReaderProcessing() throws IOException, XMLStreamException {
     File tmpDump = File.createTempFile("wiki-dump", "xml");
@@ -126,7 +175,7 @@ public class DumpReaderTest {
 
     XMLInputFactory factory = XMLInputFactory.newInstance();
 
-    XMLEventReader dumpReader = factory.createXMLEventReader(new FileReader(tmpDump));
+    XMLStreamReader dumpReader = factory.createXMLStreamReader(new FileReader(tmpDump));
     DumpData dumpData = new DumpData(DumpType.SOURCE);
 
     DumpReader.read(dumpReader, dumpData);
@@ -148,4 +197,86 @@ public class DumpReaderTest {
     // remove tmp files
     tmpDump.delete();
   }
-}
\ No newline at end of file
+
+  private static String page(int id, String title, String sha1, String text) {
+    return "<page><title>" + title + "</title><id>" + id + "</id><revision><id>" + (100 + id) + "</id>"
+        + "<contributor><username>X</username><id>99</id></contributor>"
+        + "<text xml:space=\"preserve\">" + text + "</text><sha1>" + sha1 + "</sha1></revision></page>";
+  }
+
+  @Test
+  public void verifyUnchangedPagesAreReused() throws XMLStreamException {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    String target = "<mediawiki>" + page(1, "A", "s1", "[[X]] [[Y]]") + page(2, "B", "s2", "[[Z]]")
+        + page(3, "C", "s3", "#REDIRECT [[A]]") + "</mediawiki>";
+    DumpReader reader = new DumpReader(factory.createXMLStreamReader(new StringReader(target)));
+    reader.nextPage();
+    assertEquals(101, reader.getRevisionId());
+    assertEquals("s1", reader.getSha1());
+
+    DumpData targetData = new DumpData(DumpType.TARGET);
+    DumpReader.read(factory.createXMLStreamReader(new StringReader(target)), targetData);
+
+    // page 2 was edited, page 3 renamed
+    String source = "<mediawiki>" + page(1, "A", "s1", "[[X]] [[Y]]") + page(2, "B", "s4", "[[W]]")
+        + page(3, "D", "s3", "#REDIRECT [[A]]") + "</mediawiki>";
+    DumpData sourceData = new DumpData(DumpType.SOURCE);
+    sourceData.reuseUnchangedPages(targetData);
+    DumpReader.read(factory.createXMLStreamReader(new StringReader(source)), sourceData);
+
+    assertSame(targetData.getPageLinks(1), sourceData.getPageLinks(1));
+    assertEquals(Arrays.asList("W"), sourceData.getPageLinks(2));
+    assertEquals("D", sourceData.getTitle(3));
+    assertEquals(1, sourceData.getMetrics().getPagesReused());
+    assertEquals(2, sourceData.getMetrics().getPhaseCount(Phase.LINK_EXTRACTION));
+  }
+
+  @Test
+  public void verifyPagesWithoutRevisionAreFiltered() throws XMLStreamException {
+    // B has no revision and C no element after its id
+    String xml = "<mediawiki>" + page(1, "A", "s1", "[[X]]") + "<page><title>B</title><ns>0</ns><id>2</id><redirect title=\"A\" /></page>"
+        + "<page><title>C</title><id>3</id></page>" + page(4, "D", "s4", "[[Y]]") + "</mediawiki>";
+    final List<Integer> asked = new ArrayList<>();
+    PageFilter filter = new PageFilter() {
+      @Override
+      public boolean accept(int id, String title) {
+        asked.add(id);
+        return id != 2 && id != 3;
+      }
+
+      @Override
+      public void added(int id) {
+      }
+    };
+    DumpReader reader = new DumpReader(XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(xml)), filter);
+    assertTrue(reader.nextPage());
+    assertEquals(1, reader.getId());
+    assertTrue(reader.nextPage());
+    assertEquals(4, reader.getId());
+    assertFalse(reader.nextPage());
+    // the filter is asked once per page
+    assertEquals(Arrays.asList(1, 2, 3, 4), asked);
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void verifyEventReaderIsStillRead() throws XMLStreamException {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    String xml = "<mediawiki>" + page(1, "A", "s1", "[[X]] [[Y]]") + page(2, "B", "s2", "#REDIRECT [[A]]") + "</mediawiki>";
+    DumpData data = new DumpData(DumpType.TARGET);
+    XMLEventReader events = factory.createXMLEventReader(new StringReader(xml));
+    assertEquals(2, DumpReader.read(events, data));
+    assertEquals(Arrays.asList("X", "Y"), data.getPageLinks(1));
+    assertEquals("B", data.getTitle(2));
+
+    DumpReader reader = new DumpReader(factory.createXMLEventReader(new StringReader(xml)));
+    assertTrue(reader.nextPage());
+    assertEquals("A", reader.getTitle());
+    assertEquals(101, reader.getRevisionId());
+    assertEquals("s1", reader.getSha1());
+    assertEquals("[[X]] [[Y]]", reader.getText());
+    assertTrue(reader.nextPage());
+    assertEquals(2, reader.getId());
+    assertFalse(reader.nextPage());
+  }
+}
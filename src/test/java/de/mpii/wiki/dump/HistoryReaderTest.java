@@ -0,0 +1,188 @@
+package de.mpii.wiki.dump;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.junit.Test;
+
+import de.mpii.wiki.WikiMapper;
+import de.mpii.wiki.api.DumpSource;
+import de.mpii.wiki.api.Mapper;
+import de.mpii.wiki.api.MapperOptions;
+import de.mpii.wiki.result.MappedIdResults;
+import de.mpii.wiki.synthetic.DumpGenerator;
+import de.mpii.wiki.synthetic.TestDumps;
+
+public class HistoryReaderTest {
+
+  private static final String JUNK_TEXT = "[[Nothing]]";
+
+  private static String revision(String time, String text) {
+    return "<revision><id>7</id><timestamp>" + time + "</timestamp><contributor><username>X</username><id>3</id></contributor>"
+        + "<text xml:space=\"preserve\">" + text + "</text><sha1>abc</sha1></revision>";
+  }
+
+  private static HistoryReader reader(String xml, RevisionSelector selector) throws XMLStreamException {
+    InputStream in = new ByteArrayInputStream(xml.getBytes(Charset.forName("UTF-8")));
+    return new HistoryReader(XMLInputFactory.newInstance().createXMLStreamReader(in), null, selector);
+  }
+
+  // writes the pages of the dump with a revision of junk text, one before and one after the page text
+  private static void writeHistory(File dump, File history, String textTime, String junkTime) throws IOException, XMLStreamException {
+    try (InputStream in = new BufferedInputStream(new FileInputStream(dump)); OutputStream out = new FileOutputStream(history)) {
+      DumpReader reader = new DumpReader(XMLInputFactory.newInstance().createXMLStreamReader(in));
+      XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+      writer.writeStartDocument("UTF-8", "1.0");
+      writer.writeStartElement("mediawiki");
+      while (reader.nextPage()) {
+        writer.writeStartElement("page");
+        writer.writeStartElement("title");
+        writer.writeCharacters(reader.getTitle());
+        writer.writeEndElement();
+        writer.writeStartElement("id");
+        writer.writeCharacters(String.valueOf(reader.getId()));
+        writer.writeEndElement();
+        String[][] revisions = { { "2001-01-01T00:00:00Z", JUNK_TEXT }, { textTime, reader.getText() }, { junkTime, JUNK_TEXT } };
+        for (String[] revision : revisions) {
+          writer.writeStartElement("revision");
+          writer.writeStartElement("timestamp");
+          writer.writeCharacters(revision[0]);
+          writer.writeEndElement();
+          writer.writeStartElement("text");
+          writer.writeCharacters(revision[1]);
+          writer.writeEndElement();
+          writer.writeEndElement();
+        }
+        writer.writeEndElement();
+      }
+      writer.writeEndElement();
+      writer.writeEndDocument();
+      writer.close();
+    }
+  }
+
+  private static void assertSameResults(MappedIdResults expected, MappedIdResults actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.getSourceTitle(i), actual.getSourceTitle(i));
+      assertEquals(expected.getTargetTitle(i), actual.getTargetTitle(i));
+      assertEquals(expected.getMappingType(i), actual.getMappingType(i));
+    }
+  }
+
+  @Test
+  public void verifyRevisionSelection() throws Exception {
+    char[] large = new char[200000];
+    Arrays.fill(large, 'x');
+    String xml = "<mediawiki><page><title>A</title><id>1</id>"
+        + revision("2010-01-01T00:00:00Z", "[[X]]") + revision("2012-01-01T00:00:00Z", "[[Y]]")
+        + revision("2014-01-01T00:00:00Z", "[[Z]] &amp; " + new String(large)) + "</page>"
+        + "<page><title>B</title><id>2</id>" + revision("2013-01-01T00:00:00Z", "[[B]]") + "</page>"
+        + "<page><title>C</title><id>3</id>" + revision("2015-01-01T00:00:00Z", "late")
+        + revision("2011-01-01T00:00:00Z", "early") + "</page></mediawiki>";
+
+    HistoryReader latest = reader(xml, RevisionSelector.LATEST);
+    assertTrue(latest.nextPage());
+    assertEquals(1, latest.getId());
+    assertEquals("[[Z]] & " + new String(large), latest.getText());
+    assertTrue(latest.nextPage());
+    assertEquals("[[B]]", latest.getText());
+    assertTrue(latest.nextPage());
+    assertEquals("C", latest.getTitle());
+    assertEquals("late", latest.getText());
+    assertFalse(latest.nextPage());
+
+    HistoryReader asOf = reader(xml, RevisionSelector.parse("2012-06-01"));
+    assertTrue(asOf.nextPage());
+    assertEquals("[[Y]]", asOf.getText());
+    // B did not exist yet
+    assertTrue(asOf.nextPage());
+    assertEquals(3, asOf.getId());
+    assertEquals("early", asOf.getText());
+    assertFalse(asOf.nextPage());
+
+    assertFalse(reader(xml, RevisionSelector.parse("2009-12-31T23:59:59Z")).nextPage());
+    assertTrue(reader(xml, RevisionSelector.parse("2010-01-01T00:00:00Z")).nextPage());
+  }
+
+  @Test
+  public void verifyPagesWithoutRevisionAreFiltered() throws Exception {
+    String xml = "<mediawiki><page><title>A</title><id>1</id>" + revision("2010-01-01T00:00:00Z", "[[X]]") + "</page>"
+        + "<page><title>B</title><ns>0</ns><id>2</id><redirect title=\"A\" /></page><page><title>C</title><id>3</id></page></mediawiki>";
+    final List<Integer> asked = new ArrayList<>();
+    PageFilter filter = new PageFilter() {
+      @Override
+      public boolean accept(int id, String title) {
+        asked.add(id);
+        return true;
+      }
+
+      @Override
+      public void added(int id) {
+      }
+    };
+    InputStream in = new ByteArrayInputStream(xml.getBytes(Charset.forName("UTF-8")));
+    HistoryReader reader = new HistoryReader(XMLInputFactory.newInstance().createXMLStreamReader(in), filter, RevisionSelector.LATEST);
+    assertTrue(reader.nextPage());
+    assertEquals(1, reader.getId());
+    assertFalse(reader.nextPage());
+    // the filter is asked once per page, with or without revision
+    assertEquals(Arrays.asList(1, 2, 3), asked);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void verifyInvalidTime() {
+    RevisionSelector.parse("May 2014");
+  }
+
+  @Test
+  public void verifyMappingOfHistoryDumps() throws Exception {
+    DumpGenerator generator = new DumpGenerator(11);
+    generator.setPages(1000);
+    generator.setDisambiguationRate(0.1);
+    File sourceHistory = File.createTempFile("synthetic-old-history", "xml");
+    File targetHistory = File.createTempFile("synthetic-new-history", "xml");
+    try (TestDumps dumps = new TestDumps(generator)) {
+      File source = dumps.getSource();
+      File target = dumps.getTarget();
+      MappedIdResults expected = WikiMapper.mapIds(source, target);
+
+      // the page texts are the latest revisions
+      writeHistory(source, sourceHistory, "2010-01-01T00:00:00Z", "2005-01-01T00:00:00Z");
+      writeHistory(target, targetHistory, "2012-01-01T00:00:00Z", "2011-06-01T00:00:00Z");
+      MapperOptions options = new MapperOptions();
+      options.setSourceRevisions(RevisionSelector.LATEST);
+      options.setTargetRevisions(RevisionSelector.LATEST);
+      assertSameResults(expected, new Mapper(options, null).map(DumpSource.of(sourceHistory), DumpSource.of(targetHistory), null));
+
+      // the page texts are current at the selected time, the junk revisions follow
+      writeHistory(source, sourceHistory, "2010-01-01T00:00:00Z", "2015-01-01T00:00:00Z");
+      writeHistory(target, targetHistory, "2010-01-01T00:00:00Z", "2015-01-01T00:00:00Z");
+      options.setSourceRevisions(RevisionSelector.parse("2014-05-02"));
+      options.setTargetRevisions(RevisionSelector.parse("2014-05-02T18:06:15Z"));
+      assertSameResults(expected, new Mapper(options, null).map(DumpSource.of(sourceHistory), DumpSource.of(targetHistory), null));
+    } finally {
+      sourceHistory.delete();
+      targetHistory.delete();
+    }
+  }
+}
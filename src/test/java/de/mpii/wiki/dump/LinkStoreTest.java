@@ -0,0 +1,162 @@
+package de.mpii.wiki.dump;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.mpii.wiki.dump.DumpSettings.DumpType;
+import de.mpii.wiki.metrics.MappingMetrics;
+import de.mpii.wiki.result.MappedIdResults;
+import de.mpii.wiki.result.ResultGenerator;
+import de.mpii.wiki.synthetic.DumpGenerator;
+import de.mpii.wiki.synthetic.TestDumps;
+
+public class LinkStoreTest {
+
+  @Test
+  public void verifyStore() throws Exception {
+    File dir = Files.createTempDirectory("link-store").toFile();
+    MappingMetrics metrics = new MappingMetrics();
+    List<String> large = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      large.add("Link ä " + i);
+    }
+    try (LinkStore store = LinkStore.create(dir, "test", 4096, metrics)) {
+      store.put(1, Arrays.asList("Alpha", "Beta"));
+      store.put(2, new ArrayList<String>());
+      store.put(3, large);
+      assertEquals(3, store.size());
+      assertEquals(1, dir.listFiles().length);
+
+      assertEquals(Arrays.asList("Alpha", "Beta"), store.get(1));
+      assertEquals(Arrays.asList("Alpha", "Beta"), store.get(1));
+      assertEquals(0, store.get(2).size());
+      assertNull(store.get(4));
+      assertEquals(1, store.getHits());
+      assertEquals(2, store.getMisses());
+
+      // larger than a single read and than the cache
+      assertEquals(large, store.get(3));
+      assertEquals(large, store.get(3));
+      assertEquals(4, store.getMisses());
+
+      // replaced and removed lists are not returned from the cache
+      store.put(1, Arrays.asList("Gamma"));
+      assertEquals(Arrays.asList("Gamma"), store.get(1));
+      store.remove(2);
+      assertFalse(store.contains(2));
+      assertNull(store.get(2));
+
+      assertEquals(1, metrics.getLinkStoreHits());
+      assertEquals(5, metrics.getLinkStoreMisses());
+      assertTrue(metrics.toJson().contains("\"linkStore\": {\"hits\": 1, \"misses\": 5"));
+    }
+    // the log is deleted on close
+    assertEquals(0, dir.listFiles().length);
+    dir.delete();
+  }
+
+  private static DumpData read(File dump, DumpType type, LinkStore store) throws Exception {
+    DumpData data = new DumpData(type);
+    if (store != null) {
+      data.setLinkStore(store);
+    }
+    TestDumps.read(dump, data);
+    data.compact();
+    return data;
+  }
+
+  @Test
+  public void verifyMappingWithStore() throws Exception {
+    DumpGenerator generator = new DumpGenerator(5);
+    generator.setPages(2000);
+    generator.setDisambiguationRate(0.1);
+    File dir = Files.createTempDirectory("link-store").toFile();
+    try (TestDumps dumps = new TestDumps(generator)) {
+      File source = dumps.getSource();
+      File target = dumps.getTarget();
+
+      MappedIdResults expected = ResultGenerator.generateIds(read(source, DumpType.SOURCE, null), read(target, DumpType.TARGET, null));
+      MappingMetrics metrics = new MappingMetrics();
+      try (LinkStore sourceLinks = LinkStore.create(dir, "source", 1 << 16, metrics);
+          LinkStore targetLinks = LinkStore.create(dir, "target", 1 << 16, metrics)) {
+        DumpData sourceData = read(source, DumpType.SOURCE, sourceLinks);
+        DumpData targetData = read(target, DumpType.TARGET, targetLinks);
+        int pages = 0;
+        for (int id : sourceData.getPageIds()) {
+          pages += sourceData.isValidId(id) ? 1 : 0;
+        }
+        assertEquals(pages, sourceLinks.size());
+
+        MappedIdResults results = ResultGenerator.generateIds(sourceData, targetData);
+        assertEquals(expected.size(), results.size());
+        for (int i = 0; i < expected.size(); i++) {
+          assertEquals(expected.getTargetId(i), results.getTargetId(i));
+          assertEquals(expected.getMappingType(i), results.getMappingType(i));
+        }
+        // only the links of disambiguated pages and their candidates were read
+        assertTrue(sourceLinks.getMisses() + targetLinks.getMisses() > 0);
+        assertTrue(sourceLinks.getMisses() < sourceLinks.size() / 2);
+      }
+    } finally {
+      dir.delete();
+    }
+  }
+
+  @Test
+  public void verifyReusedPagesShareTargetLists() throws Exception {
+    File dir = Files.createTempDirectory("link-store").toFile();
+    try (TestDumps dumps = new TestDumps(7, 2000)) {
+      File source = dumps.getSource();
+      File target = dumps.getTarget();
+
+      DumpData expectedSource = read(source, DumpType.SOURCE, null);
+      MappedIdResults expected = ResultGenerator.generateIds(expectedSource, read(target, DumpType.TARGET, null));
+      MappingMetrics metrics = new MappingMetrics();
+      MappedIdResults results;
+      try (LinkStore targetLinks = LinkStore.create(dir, "target", 1 << 16, metrics);
+          LinkStore sourceLinks = LinkStore.create(dir, "source", 1 << 16, metrics)) {
+        DumpData targetData = new DumpData(DumpType.TARGET, metrics);
+        targetData.setLinkStore(targetLinks);
+        TestDumps.read(target, targetData);
+        long targetMisses = targetLinks.getMisses();
+
+        DumpData sourceData = new DumpData(DumpType.SOURCE, metrics);
+        sourceData.setLinkStore(sourceLinks);
+        sourceData.reuseUnchangedPages(targetData);
+        TestDumps.read(source, sourceData);
+        assertTrue(metrics.getPagesReused() > 0);
+        // the lists of reused pages were neither read back from the target nor read by the source
+        assertEquals(targetMisses, targetLinks.getMisses());
+        assertEquals(0, sourceLinks.getMisses());
+
+        sourceData.compact();
+        targetData.compact();
+        for (int id : expectedSource.getPageIds()) {
+          if (expectedSource.isValidId(id)) {
+            assertEquals(expectedSource.getPageLinks(id), sourceData.getPageLinks(id));
+          }
+        }
+        results = ResultGenerator.generateIds(sourceData, targetData);
+      }
+      // the results do not depend on the closed stores
+      assertEquals(expected.size(), results.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertEquals(expected.getSourceTitle(i), results.getSourceTitle(i));
+        assertEquals(expected.getTargetTitle(i), results.getTargetTitle(i));
+        assertEquals(expected.getMappingType(i), results.getMappingType(i));
+      }
+    } finally {
+      dir.delete();
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package de.mpii.wiki.dump;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+
+import de.mpii.wiki.dump.DumpSettings.DumpType;
+import de.mpii.wiki.page.handlers.Handler.HandlerType;
+import de.mpii.wiki.synthetic.DumpGenerator;
+import de.mpii.wiki.synthetic.TestDumps;
+
+public class PageVisitorTest {
+
+  // collects the titles, without the text of the pages
+  private static class TitleVisitor extends AbstractPageVisitor {
+    final List<String> titles = new ArrayList<>();
+    boolean ended = false;
+
+    @Override
+    public void startPage(int id, String title) {
+      titles.add(title);
+    }
+
+    @Override
+    public void text(String chunk) {
+      throw new IllegalStateException("Text not requested");
+    }
+
+    @Override
+    public void endDump() {
+      ended = true;
+    }
+  }
+
+  private static class LinkVisitor extends AbstractPageVisitor {
+    long links = 0;
+    final Set<String> redirects = new HashSet<>();
+
+    @Override
+    public boolean needsLinks() {
+      return true;
+    }
+
+    @Override
+    public void parsed(DumpData.Page page) {
+      if (page.getType() == HandlerType.REDIRECTS) {
+        redirects.add(page.getTitle());
+      } else if (page.getType() == HandlerType.NORMAL) {
+        links += page.getLinks().size();
+      }
+    }
+  }
+
+  private static class TextVisitor extends AbstractPageVisitor {
+    long chars = 0;
+    int pages = 0;
+
+    @Override
+    public boolean needsText() {
+      return true;
+    }
+
+    @Override
+    public void text(String chunk) {
+      chars += chunk.length();
+    }
+
+    @Override
+    public void endPage() {
+      pages++;
+    }
+  }
+
+  private static int read(File dump, PageFilter filter, List<? extends PageVisitor> visitors, ExecutorService pool) throws IOException, XMLStreamException {
+    try (InputStream in = new BufferedInputStream(new FileInputStream(dump))) {
+      return DumpReader.read(XMLInputFactory.newInstance().createXMLStreamReader(in), filter, visitors, pool);
+    }
+  }
+
+  @Test
+  public void verifyOneScanFeedsAllVisitors() throws Exception {
+    DumpGenerator generator = new DumpGenerator(11);
+    generator.setPages(2000);
+    generator.setDisambiguationRate(0.1);
+    ExecutorService pool = Executors.newFixedThreadPool(3);
+    try (TestDumps dumps = new TestDumps(generator)) {
+      File target = dumps.getTarget();
+      DumpData expected = TestDumps.read(target, DumpType.TARGET);
+      Set<String> expectedRedirects = new HashSet<>();
+      for (int id : expected.getRedirectIds()) {
+        expectedRedirects.add(expected.getTitle(id));
+      }
+      long expectedLinks = 0;
+      for (int id : expected.getPageIds()) {
+        if (expected.getPageLinks(id) != null) {
+          expectedLinks += expected.getPageLinks(id).size();
+        }
+      }
+
+      for (ExecutorService executor : Arrays.asList(null, pool)) {
+        DumpData data = new DumpData(DumpType.TARGET);
+        TitleVisitor titles = new TitleVisitor();
+        LinkVisitor links = new LinkVisitor();
+        TextVisitor text = new TextVisitor();
+        int pages = read(target, null, Arrays.asList(data.visitor(), titles, links, text), executor);
+
+        assertEquals(expected.size(), pages);
+        assertEquals(expected.size(), data.size());
+        assertEquals(expected.getRedirectIds().length, data.getRedirectIds().length);
+        assertEquals(expected.getDisambiguationIds().length, data.getDisambiguationIds().length);
+        assertEquals(pages, titles.titles.size());
+        assertTrue(titles.ended);
+        assertEquals(expectedRedirects, links.redirects);
+        assertEquals(expectedLinks, links.links);
+        assertEquals(pages, text.pages);
+        assertTrue(text.chars > 0);
+        // pages are extracted once for all visitors
+        assertEquals(pages, data.getMetrics().getPagesProcessed());
+      }
+
+      // visitors not needing the text, pages in dump order
+      TitleVisitor titles = new TitleVisitor();
+      TitleVisitor other = new TitleVisitor();
+      read(target, null, Arrays.asList(titles, other), pool);
+      assertEquals(expected.size(), titles.titles.size());
+      assertEquals(titles.titles, other.titles);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void verifyVisitorFailureIsReported() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    try (TestDumps dumps = new TestDumps(12, 500)) {
+      // the title visitor fails on the first text chunk
+      TitleVisitor failing = new TitleVisitor() {
+        @Override
+        public boolean needsText() {
+          return true;
+        }
+      };
+      read(dumps.getTarget(), null, Arrays.asList(new DumpData(DumpType.TARGET).visitor(), failing), pool);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+}
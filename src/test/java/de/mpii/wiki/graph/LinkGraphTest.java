@@ -0,0 +1,66 @@
+package de.mpii.wiki.graph;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.StringReader;
+
+import javax.xml.stream.XMLInputFactory;
+
+import org.junit.Test;
+
+import de.mpii.wiki.dump.DumpData;
+import de.mpii.wiki.dump.DumpReader;
+import de.mpii.wiki.dump.DumpSettings.DumpType;
+
+public class LinkGraphTest {
+
+  private static String page(int id, String title, String text) {
+    return "<page><title>" + title + "</title><id>" + id + "</id><revision><id>" + (id * 10)
+        + "</id><text xml:space=\"preserve\">" + text + "</text></revision></page>";
+  }
+
+  @Test
+  public void verifyGraph() throws Exception {
+    String dump = "<mediawiki>"
+        + page(7, "Alpha", "See [[Beta]], [[Gamma (redirect)]], [[Beta|again]] and [[Missing]].")
+        + page(3, "Beta", "Back to [[Alpha]].")
+        + page(12, "Gamma", "No links.")
+        + page(5, "Gamma (redirect)", "#REDIRECT [[Gamma]]")
+        + page(9, "Delta", "Delta may refer to * [[Alpha]] * [[Beta]] {{disambig}}")
+        + "</mediawiki>";
+    DumpData data = new DumpData(DumpType.TARGET);
+    DumpReader.read(XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(dump)), data);
+
+    File file = File.createTempFile("link-graph", "bin");
+    try {
+      assertEquals(5, LinkGraphWriter.write(file, data));
+      try (LinkGraph graph = LinkGraph.open(file)) {
+        // the redirect is not a node
+        assertEquals(4, graph.getNodeCount());
+        assertEquals(5, graph.getEdgeCount());
+        assertEquals(-1, graph.getNode(5));
+        int beta = graph.getNode(3);
+        int alpha = graph.getNode(7);
+        int delta = graph.getNode(9);
+        int gamma = graph.getNode(12);
+        assertArrayEquals(new int[] { 0, 1, 2, 3 }, new int[] { beta, alpha, delta, gamma });
+        assertEquals(7, graph.getPageId(alpha));
+
+        // duplicates removed, redirect resolved, unknown title dropped
+        assertArrayEquals(new int[] { beta, gamma }, graph.getTargets(alpha));
+        assertArrayEquals(new int[] { alpha }, graph.getTargets(beta));
+        assertArrayEquals(new int[0], graph.getTargets(gamma));
+        assertArrayEquals(new int[] { beta, alpha }, graph.getTargets(delta));
+        assertEquals(2, graph.getOutDegree(alpha));
+        assertTrue(graph.hasEdge(alpha, gamma));
+        assertFalse(graph.hasEdge(gamma, alpha));
+      }
+    } finally {
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package de.mpii.wiki.incremental;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+
+import de.mpii.wiki.dump.DumpData;
+import de.mpii.wiki.dump.DumpSettings.DumpType;
+import de.mpii.wiki.metrics.MappingMetrics;
+import de.mpii.wiki.result.MappedIdResults;
+import de.mpii.wiki.result.ResultGenerator;
+
+public class MappingStateTest {
+
+  private static DumpData source() {
+    DumpData source = new DumpData(DumpType.SOURCE);
+    source.addPageEntry(1, "Test1", "About [[Test2]] and [[Test3]].");
+    source.addPageEntry(2, "Test2", "About [[Test1]].");
+    source.addPageEntry(3, "Test3", "About [[Test1]] and [[Test2]].");
+    source.addPageEntry(4, "Einstein", "About [[Physics]] and [[Relativity]].");
+    source.addPageEntry(5, "Old chain", "About [[Test1]].");
+    source.addPageEntry(9, "Unrelated", "About [[Test3]].");
+    return source;
+  }
+
+  private static void addCommonTargetPages(DumpData target) {
+    target.addPageEntry(1, "Test1", "About [[Test2]] and [[Test3]].");
+    target.addPageEntry(3, "Test3", "About [[Test1]] and [[Test2]].");
+    target.addPageEntry(4, "Einstein", "'''Einstein''' may refer to: [[Albert Einstein]], [[Einstein (crater)]] {{Disambiguation}}");
+    target.addPageEntry(5, "Old chain", "#REDIRECT [[Middle]]");
+    target.addPageEntry(7, "Final", "About [[Test1]].");
+    target.addPageEntry(8, "Other", "About [[Test3]].");
+    target.addPageEntry(9, "Unrelated", "About [[Test3]].");
+    target.addPageEntry(11, "Einstein (crater)", "About [[Moon]].");
+  }
+
+  private static DumpData target() {
+    DumpData target = new DumpData(DumpType.TARGET);
+    addCommonTargetPages(target);
+    target.addPageEntry(2, "Test2", "About [[Test1]].");
+    target.addPageEntry(6, "Middle", "#REDIRECT [[Final]]");
+    target.addPageEntry(10, "Albert Einstein", "About [[Moon]].");
+    return target;
+  }
+
+  // target as it looks after the adds-changes dump below
+  private static DumpData updatedTarget() {
+    DumpData target = new DumpData(DumpType.TARGET);
+    addCommonTargetPages(target);
+    target.addPageEntry(2, "Test2 (renamed)", "About [[Test1]].");
+    target.addPageEntry(6, "Middle", "#REDIRECT [[Other]]");
+    target.addPageEntry(10, "Albert Einstein", "About [[Physics]] and [[Relativity]].");
+    return target;
+  }
+
+  private static void writePage(Writer out, int id, String title, String text) throws IOException {
+    out.write("<page><title>" + title + "</title><id>" + id + "</id><revision><id>" + (100 + id)
+        + "</id><text xml:space=\"preserve\">" + text + "</text></revision></page>\n");
+  }
+
+  private static void assertSameResults(MappedIdResults expected, MappedIdResults actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.getSourceTitle(i), actual.getSourceTitle(i));
+      assertEquals(expected.getSourceTitle(i), expected.getMappingType(i), actual.getMappingType(i));
+      assertEquals(expected.getSourceTitle(i), expected.getTargetTitle(i), actual.getTargetTitle(i));
+    }
+  }
+
+  @Test
+  public void verifyStateRoundTrip() throws IOException {
+    DumpData source = source();
+    DumpData target = target();
+    MappedIdResults results = ResultGenerator.generateIds(source, target);
+    File stateFile = File.createTempFile("wiki-state", "bin");
+    new MappingState(results, source, target).save(stateFile);
+
+    MappingState state = MappingState.load(stateFile, new MappingMetrics());
+    assertSameResults(results, state.getResults());
+    assertEquals(target.getPageLinks(1), state.getTargetData().getPageLinks(1));
+    assertEquals("Final", state.getTargetData().getRedirectTitle(6));
+    stateFile.delete();
+  }
+
+  @Test
+  public void verifyChangesUpdateAffectedResults() throws IOException, XMLStreamException {
+    File stateFile = File.createTempFile("wiki-state", "bin");
+    DumpData source = source();
+    DumpData target = target();
+    new MappingState(ResultGenerator.generateIds(source, target), source, target).save(stateFile);
+
+    File changes = File.createTempFile("wiki-adds-changes", "xml");
+    try (Writer out = new OutputStreamWriter(new FileOutputStream(changes), Charset.forName("UTF-8"))) {
+      out.write("<mediawiki>\n");
+      writePage(out, 2, "Test2 (renamed)", "About [[Test1]].");
+      // changes the end of the redirect chain of "Old chain"
+      writePage(out, 6, "Middle", "#REDIRECT [[Other]]");
+      // makes "Albert Einstein" the best disambiguation candidate for "Einstein"
+      writePage(out, 10, "Albert Einstein", "About [[Physics]] and [[Relativity]].");
+      out.write("</mediawiki>\n");
+    }
+
+    MappingState state = MappingState.load(stateFile, new MappingMetrics());
+    int recomputed = state.apply(Arrays.asList(changes));
+    // Test2, Old chain and Einstein, not the untouched pages
+    assertEquals(3, recomputed);
+
+    MappedIdResults expected = ResultGenerator.generateIds(source(), updatedTarget());
+    assertSameResults(expected, state.getResults());
+    assertEquals("Other", state.getResults().getTargetTitle(state.getResults().indexOf(5)));
+    assertEquals("Albert Einstein", state.getResults().getTargetTitle(state.getResults().indexOf(4)));
+
+    assertTrue(state.getTargetData().hasTitle("Test2 (renamed)"));
+    assertTrue(!state.getTargetData().hasTitle("Test2"));
+    changes.delete();
+    stateFile.delete();
+  }
+}
@@ -0,0 +1,62 @@
+package de.mpii.wiki.lookup;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.mpii.wiki.dump.DumpData;
+import de.mpii.wiki.dump.DumpSettings.DumpType;
+import de.mpii.wiki.dump.DumpSettings.MappedType;
+import de.mpii.wiki.result.MappedResult;
+import de.mpii.wiki.result.ResultGenerator;
+
+public class LookupFileTest {
+
+  @Test
+  public void verifyLookupsMatchMappingResults() throws IOException {
+    DumpData source = new DumpData(DumpType.SOURCE);
+    source.addPageEntry(1, "Test1", "Information written about Test1.");
+    source.addPageEntry(2, "Test2", "Information written about Test2.");
+    source.addPageEntry(3, "Test3", "Information written about Test3.");
+    source.addPageEntry(4, "Zürich", "Information written about Zürich.");
+
+    DumpData target = new DumpData(DumpType.TARGET);
+    target.addPageEntry(1, "Test1", "#REDIRECT [[Zürich]]");
+    target.addPageEntry(2, "NEW_Test2", "Information written about Test2.");
+    target.addPageEntry(4, "Zürich", "Information written about Zürich.");
+
+    File tmpLookup = File.createTempFile("wiki-lookup", "bin");
+    LookupFileWriter.write(tmpLookup, ResultGenerator.generateIds(source, target));
+
+    try (LookupFile lookup = LookupFile.open(tmpLookup)) {
+      assertEquals(4, lookup.size());
+
+      MappedResult result = lookup.lookup("Test1");
+      assertEquals("Zürich", result.getTargetTitle());
+      assertEquals(MappedType.REDIRECTED, result.getMappingType());
+
+      assertEquals(MappedType.UPDATED, lookup.getMappingType("Test2"));
+      assertEquals(MappedType.UNCHANGED, lookup.getMappingType("Zürich"));
+
+      // deleted entries are mapped to null
+      result = lookup.lookup("Test3");
+      assertEquals(MappedType.DELETED, result.getMappingType());
+      assertEquals(null, result.getTargetTitle());
+
+      assertEquals(false, lookup.contains("Test5"));
+      assertEquals(null, lookup.lookup("Test5"));
+
+      List<MappedResult> batch = lookup.lookup(Arrays.asList("Test5", "Zürich", "Test2"));
+      assertEquals(3, batch.size());
+      assertEquals(null, batch.get(0));
+      assertEquals("Zürich", batch.get(1).getTargetTitle());
+      assertEquals("NEW_Test2", batch.get(2).getTargetTitle());
+    }
+    tmpLookup.delete();
+  }
+}
@@ -0,0 +1,108 @@
+package de.mpii.wiki.lookup;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import de.mpii.wiki.dump.DumpData;
+import de.mpii.wiki.dump.DumpSettings.DumpType;
+import de.mpii.wiki.dump.DumpSettings.MappedType;
+import de.mpii.wiki.result.MappedResult;
+import de.mpii.wiki.result.ResultGenerator;
+
+public class LookupServerTest {
+
+  @Test
+  public void verifyLookupsOverSocket() throws Exception {
+    DumpData source = new DumpData(DumpType.SOURCE);
+    source.addPageEntry(1, "Test1", "Information written about Test1.");
+    source.addPageEntry(2, "Test2", "Information written about Test2.");
+
+    DumpData target = new DumpData(DumpType.TARGET);
+    target.addPageEntry(1, "Test1", "#REDIRECT [[NEW_Test2]]");
+    target.addPageEntry(2, "NEW_Test2", "Information written about Test2.");
+
+    File tmpLookup = File.createTempFile("wiki-lookup", "bin");
+    LookupFileWriter.write(tmpLookup, ResultGenerator.generateIds(source, target));
+
+    try (LookupFile lookup = LookupFile.open(tmpLookup); final LookupServer server = new LookupServer(lookup, 0, 10)) {
+      Thread serverThread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            server.serve();
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      });
+      serverThread.start();
+
+      try (LookupClient client = new LookupClient(server.getPort())) {
+        MappedResult result = client.lookup("Test1");
+        assertEquals("NEW_Test2", result.getTargetTitle());
+        assertEquals(MappedType.REDIRECTED, result.getMappingType());
+
+        List<MappedResult> results = client.lookup(Arrays.asList("Test2", "Test3", "Test1"));
+        assertEquals(MappedType.UPDATED, results.get(0).getMappingType());
+        assertEquals(null, results.get(1));
+        assertEquals("NEW_Test2", results.get(2).getTargetTitle());
+
+        Map<String, Long> stats = client.getStats();
+        assertEquals(Long.valueOf(4), stats.get("lookups"));
+        assertEquals(Long.valueOf(1), stats.get("cache_hits"));
+        assertEquals(Long.valueOf(1), stats.get("not_found"));
+      }
+      server.close();
+      serverThread.join();
+    }
+    tmpLookup.delete();
+  }
+
+  @Test
+  public void verifyConnectionsBeyondPoolAreRejected() throws Exception {
+    DumpData source = new DumpData(DumpType.SOURCE);
+    source.addPageEntry(1, "Test1", "Information written about Test1.");
+    DumpData target = new DumpData(DumpType.TARGET);
+    target.addPageEntry(1, "Test1", "Information written about Test1.");
+
+    File tmpLookup = File.createTempFile("wiki-lookup", "bin");
+    LookupFileWriter.write(tmpLookup, ResultGenerator.generateIds(source, target));
+
+    try (LookupFile lookup = LookupFile.open(tmpLookup); final LookupServer server = new LookupServer(lookup, 0, 10, 1)) {
+      Thread serverThread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            server.serve();
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      });
+      serverThread.start();
+
+      try (LookupClient client = new LookupClient(server.getPort())) {
+        assertEquals(MappedType.UNCHANGED, client.lookup("Test1").getMappingType());
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), LookupFormat.UTF8))) {
+          assertEquals("ERROR busy", reader.readLine());
+        }
+        assertEquals(Long.valueOf(1), client.getStats().get("rejected"));
+      }
+      server.close();
+      serverThread.join();
+    }
+    tmpLookup.delete();
+  }
+}
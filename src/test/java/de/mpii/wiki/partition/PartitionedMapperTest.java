@@ -0,0 +1,97 @@
+package de.mpii.wiki.partition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+
+import de.mpii.wiki.WikiMapper;
+import de.mpii.wiki.common.ResultWriter;
+import de.mpii.wiki.metrics.MappingMetrics;
+import de.mpii.wiki.synthetic.DumpGenerator;
+import de.mpii.wiki.synthetic.TestDumps;
+
+public class PartitionedMapperTest {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static String partitionedResults(File source, File target, int partitions, boolean range) throws IOException {
+    File output = File.createTempFile("wiki-result", "tsv");
+    PartitionedMapper mapper = new PartitionedMapper(partitions, output.getParentFile(), new MappingMetrics());
+    mapper.setRangePartitioning(range);
+    mapper.setWorkerHeap("256m");
+    try (ResultWriter writer = new ResultWriter(output, false, 1)) {
+      mapper.map(source, target, writer);
+    }
+    String results = new String(Files.readAllBytes(output.toPath()), UTF8);
+    output.delete();
+    return results;
+  }
+
+  @Test
+  public void verifyPartitionedMatchesInMemoryMapping() throws IOException, XMLStreamException {
+    DumpGenerator generator = new DumpGenerator(5);
+    generator.setPages(2000);
+    generator.setLinksPerPage(6);
+    generator.setTextSize(200);
+    generator.setMoveRate(0.1);
+    generator.setCycleRate(0.3);
+    generator.setDisambiguationRate(0.1);
+    try (TestDumps dumps = new TestDumps(generator)) {
+      File output = File.createTempFile("wiki-result", "tsv");
+      WikiMapper.mapToFile(dumps.getSource(), dumps.getTarget(), output, true);
+      String expected = new String(Files.readAllBytes(output.toPath()), UTF8);
+      output.delete();
+
+      assertEquals(expected, partitionedResults(dumps.getSource(), dumps.getTarget(), 3, false));
+      assertEquals(expected, partitionedResults(dumps.getSource(), dumps.getTarget(), 2, true));
+    }
+  }
+
+  @Test
+  public void verifyDuplicateTitlesResolveInDumpOrder() throws IOException, XMLStreamException {
+    File source = TestDumps.writeDump("1", "Start", "About [[Other]].", "2", "Other", "About [[Start]].");
+    String[][] orders = { { "7", "3" }, { "3", "7" } };
+    for (String[] order : orders) {
+      File target = TestDumps.writeDump("1", "Start", "#REDIRECT [[Dup]]", "2", "Other", "About [[Start]].",
+          order[0], "Dup", "#REDIRECT [[Other]]", order[1], "Dup", "Second.");
+      File output = File.createTempFile("wiki-result", "tsv");
+      output.delete();
+      WikiMapper.mapToFile(source, target, output, true);
+      String expected = new String(Files.readAllBytes(output.toPath()), UTF8);
+      output.delete();
+
+      for (int partitions = 2; partitions <= 4; partitions++) {
+        assertEquals(expected, partitionedResults(source, target, partitions, false));
+      }
+      target.delete();
+    }
+    source.delete();
+  }
+
+  @Test
+  public void verifyPartitioner() {
+    Partitioner hash = Partitioner.parse("hash", 4);
+    int[] sizes = new int[4];
+    for (int id = 1; id <= 4000; id++) {
+      sizes[hash.partitionOf(id)]++;
+    }
+    for (int size : sizes) {
+      assertTrue(size > 800 && size < 1200);
+    }
+
+    Partitioner range = Partitioner.parse(Partitioner.range(4, 399).toString(), 4);
+    assertEquals(0, range.partitionOf(0));
+    assertEquals(0, range.partitionOf(99));
+    assertEquals(1, range.partitionOf(100));
+    assertEquals(3, range.partitionOf(399));
+    assertEquals(3, range.partitionOf(1000));
+  }
+}
@@ -0,0 +1,83 @@
+package de.mpii.wiki.profile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+import de.mpii.wiki.page.handlers.Handler.HandlerType;
+import de.mpii.wiki.synthetic.TestDumps;
+
+public class DumpProfilerTest {
+
+  private static String page(int id, String title, String text) {
+    return "<page><title>" + title + "</title><id>" + id + "</id><revision><id>" + (id * 10)
+        + "</id><text xml:space=\"preserve\">" + text + "</text></revision></page>";
+  }
+
+  @Test
+  public void verifyProfile() throws Exception {
+    File dump = File.createTempFile("profile", "xml");
+    try {
+      try (Writer writer = new OutputStreamWriter(new FileOutputStream(dump), Charset.forName("UTF-8"))) {
+        writer.write("<mediawiki>"
+            + page(1, "Alpha", "See [[Beta]] and [[Gamma]].")
+            + page(2, "Beta", "Back to [[Alpha]].")
+            + page(3, "Category:Greek letters", "Letters.")
+            + page(4, "Talk:Alpha", "Discussion of [[Alpha]].")
+            + page(5, "A1", "#REDIRECT [[A2]]")
+            + page(6, "A2", "#REDIRECT [[Alpha]]")
+            + page(7, "X", "#REDIRECT [[Y]]")
+            + page(8, "Y", "#REDIRECT [[X]]")
+            + page(9, "Delta", "Delta may refer to * [[Alpha]] * [[Beta]] * [[Gamma]] {{disambig}}")
+            + "</mediawiki>");
+      }
+      DumpProfiler profiler = DumpProfiler.profile(dump, 100);
+      assertEquals(9, profiler.getPages());
+      assertEquals(Long.valueOf(7), profiler.getNamespaces().get("(main)"));
+      assertEquals(Long.valueOf(1), profiler.getNamespaces().get("Category"));
+      assertEquals(Long.valueOf(1), profiler.getNamespaces().get("Talk"));
+      assertEquals(4, profiler.getHandlerCount(HandlerType.REDIRECTS));
+      assertEquals(1, profiler.getHandlerCount(HandlerType.DISAMBIGUATIONS));
+      assertEquals(4, profiler.getHandlerCount(HandlerType.NORMAL));
+
+      // A1 -> A2 -> Alpha, A2 -> Alpha, X -> Y -> X and Y -> X -> Y
+      assertEquals(4, profiler.getRedirectChainLengths().getCount());
+      assertEquals(2, profiler.getRedirectCycles());
+      assertEquals(2, profiler.getRedirectChainLengths().getMax());
+      assertEquals(3, profiler.getDisambiguationFanOut().getMax());
+      assertEquals(2, profiler.getLinksPerPage().getMax());
+      assertEquals(9, profiler.getTextSize().getCount());
+      assertEquals(1.0, profiler.getScale(), 0.0);
+      assertTrue(profiler.getProjectedBytes(true) > profiler.getProjectedBytes(false));
+
+      String json = profiler.toJson();
+      assertTrue(json.contains("\"namespaces\": {\"(main)\": 7, \"Category\": 1, \"Talk\": 1}"));
+      assertTrue(json.contains("\"handlers\": {\"REDIRECTS\": 4, \"DISAMBIGUATIONS\": 1, \"NORMAL\": 4}"));
+      assertTrue(json.contains("\"redirects\": {\"count\": 4, \"cycles\": 2"));
+    } finally {
+      dump.delete();
+    }
+  }
+
+  @Test
+  public void verifySample() throws Exception {
+    try (TestDumps dumps = new TestDumps(3, 5000)) {
+      File target = dumps.getTarget();
+      DumpProfiler full = DumpProfiler.profile(target, 100);
+      DumpProfiler sample = DumpProfiler.profile(target, 20);
+      assertTrue(sample.getPages() > 0 && sample.getPages() < full.getPages() / 2);
+      assertTrue(sample.getScale() > 3);
+      // the projection of the sample is close to the full profile
+      double ratio = (double) sample.getProjectedBytes(true) / full.getProjectedBytes(true);
+      assertTrue("ratio " + ratio, ratio > 0.7 && ratio < 1.3);
+      assertTrue(sample.toJson().contains("\"samplePercent\": 20.00"));
+    }
+  }
+}
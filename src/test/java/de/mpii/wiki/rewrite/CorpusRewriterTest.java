@@ -0,0 +1,61 @@
+package de.mpii.wiki.rewrite;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+public class CorpusRewriterTest {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static File writeTmpFile(String prefix, String content) throws IOException {
+    File file = File.createTempFile(prefix, "tsv");
+    Files.write(file.toPath(), content.getBytes(UTF8));
+    return file;
+  }
+
+  @Test
+  public void verifyColumnsAreRewritten() throws IOException {
+    File mapping = writeTmpFile("wiki-mapping", "Test1\tTest3\t__R__\n"
+        + "Test2\tNEW_Test2\t__UP__\n"
+        + "Einstein\tAlbert Einstein\t__D__\t--NA--\t--NA--\n"
+        + "Test4\tnull\t__DL__\n"
+        + "Zürich\tZürich\t__UC__\n");
+    File input = writeTmpFile("wiki-corpus", "Test1\tsome text\tTest2\n"
+        + "Einstein\tmore text\tZürich\r\n"
+        + "Unknown\ttext\n"
+        + "Test4\n"
+        + "\n"
+        + "Test2\tlast line\tTest1");
+
+    File output = File.createTempFile("wiki-corpus-out", "tsv");
+    MappingTable table = MappingTable.load(mapping, MappingTable.allTypes());
+    assertEquals(5, table.size());
+    new CorpusRewriter(table, new int[] { 2, 0 }, 2).rewrite(input, output);
+    assertEquals("Test3\tsome text\tNEW_Test2\n"
+        + "Albert Einstein\tmore text\tZürich\r\n"
+        + "Unknown\ttext\n"
+        + "Test4\n"
+        + "\n"
+        + "NEW_Test2\tlast line\tTest3", new String(Files.readAllBytes(output.toPath()), UTF8));
+
+    // only redirected and disambiguated titles are followed
+    table = MappingTable.load(mapping, MappingTable.resolvedTypes());
+    new CorpusRewriter(table, new int[] { 0 }, 1).rewrite(input, output);
+    assertEquals("Test3\tsome text\tTest2\n"
+        + "Albert Einstein\tmore text\tZürich\r\n"
+        + "Unknown\ttext\n"
+        + "Test4\n"
+        + "\n"
+        + "Test2\tlast line\tTest1", new String(Files.readAllBytes(output.toPath()), UTF8));
+
+    mapping.delete();
+    input.delete();
+    output.delete();
+  }
+}
@@ -0,0 +1,145 @@
+package de.mpii.wiki.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.junit.Test;
+
+import de.mpii.wiki.WikiMapper;
+import de.mpii.wiki.common.ResultWriter;
+import de.mpii.wiki.dump.DumpReader;
+import de.mpii.wiki.metrics.MappingMetrics;
+import de.mpii.wiki.synthetic.DumpGenerator;
+import de.mpii.wiki.synthetic.TestDumps;
+
+public class StreamingMapperTest {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static TestDumps generate() throws IOException {
+    DumpGenerator generator = new DumpGenerator(11);
+    generator.setPages(1500);
+    generator.setLinksPerPage(6);
+    generator.setTextSize(200);
+    generator.setMoveRate(0.1);
+    generator.setCycleRate(0.3);
+    generator.setDisambiguationRate(0.1);
+    return new TestDumps(generator);
+  }
+
+  private static String inMemoryResults(File source, File target) throws IOException, XMLStreamException {
+    File output = File.createTempFile("wiki-result", "tsv");
+    WikiMapper.mapToFile(source, target, output, true);
+    String results = new String(Files.readAllBytes(output.toPath()), UTF8);
+    output.delete();
+    return results;
+  }
+
+  private static String streamingResults(File source, File target, long runChars) throws IOException, XMLStreamException {
+    File output = File.createTempFile("wiki-result", "tsv");
+    StreamingMapper mapper = new StreamingMapper(new MappingMetrics(), output.getParentFile(), runChars);
+    try (ResultWriter writer = new ResultWriter(output, false, 1)) {
+      mapper.map(source, target, writer);
+    }
+    String results = new String(Files.readAllBytes(output.toPath()), UTF8);
+    output.delete();
+    return results;
+  }
+
+  // writes the pages of the dump in random order
+  private static File shuffle(File dump) throws IOException, XMLStreamException {
+    List<String[]> pages = new ArrayList<>();
+    try (InputStream in = new BufferedInputStream(new FileInputStream(dump))) {
+      DumpReader reader = new DumpReader(XMLInputFactory.newInstance().createXMLStreamReader(in));
+      while (reader.nextPage()) {
+        pages.add(new String[] { String.valueOf(reader.getId()), reader.getTitle(), reader.getText() });
+      }
+    }
+    Collections.shuffle(pages, new Random(3));
+
+    File shuffled = File.createTempFile("synthetic-shuffled", "xml");
+    try (OutputStream out = new FileOutputStream(shuffled)) {
+      XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+      writer.writeStartDocument("UTF-8", "1.0");
+      writer.writeStartElement("mediawiki");
+      for (String[] page : pages) {
+        writer.writeStartElement("page");
+        writer.writeStartElement("title");
+        writer.writeCharacters(page[1]);
+        writer.writeEndElement();
+        writer.writeStartElement("id");
+        writer.writeCharacters(page[0]);
+        writer.writeEndElement();
+        writer.writeStartElement("revision");
+        writer.writeStartElement("text");
+        writer.writeCharacters(page[2]);
+        writer.writeEndElement();
+        writer.writeEndElement();
+        writer.writeEndElement();
+      }
+      writer.writeEndElement();
+      writer.writeEndDocument();
+      writer.close();
+    }
+    return shuffled;
+  }
+
+  @Test
+  public void verifyStreamingMatchesInMemoryMapping() throws IOException, XMLStreamException {
+    try (TestDumps dumps = generate()) {
+      File source = dumps.getSource();
+      File target = dumps.getTarget();
+      assertTrue(DumpOrder.isSorted(source));
+      assertTrue(DumpOrder.isSorted(target));
+
+      String expected = inMemoryResults(source, target);
+      assertEquals(expected, streamingResults(source, target, StreamingMapper.DEFAULT_RUN_CHARS));
+    }
+  }
+
+  @Test
+  public void verifyUnsortedDumpsAreSortedExternally() throws IOException, XMLStreamException {
+    try (TestDumps dumps = generate()) {
+      String expected = inMemoryResults(dumps.getSource(), dumps.getTarget());
+
+      File shuffledSource = shuffle(dumps.getSource());
+      File shuffledTarget = shuffle(dumps.getTarget());
+      assertFalse(DumpOrder.isSorted(shuffledSource));
+      assertFalse(DumpOrder.isSorted(shuffledTarget));
+      // small runs, so that several runs are merged
+      assertEquals(expected, streamingResults(shuffledSource, shuffledTarget, 50000));
+      shuffledSource.delete();
+      shuffledTarget.delete();
+    }
+  }
+
+  @Test
+  public void verifyOrderCheck() throws IOException {
+    String sorted = "<mediawiki><page><title>A</title><id>2</id><revision><id>10</id><text>a</text></revision></page>"
+        + "<page><title>B</title><id>12</id><revision><id>3</id><text>&lt;page&gt;&lt;id&gt;1</text></revision></page></mediawiki>";
+    assertTrue(DumpOrder.isSorted(new ByteArrayInputStream(sorted.getBytes(UTF8))));
+    String unsorted = sorted.replace("<id>12</id>", "<id>1</id>");
+    assertFalse(DumpOrder.isSorted(new ByteArrayInputStream(unsorted.getBytes(UTF8))));
+  }
+}
@@ -0,0 +1,95 @@
+package de.mpii.wiki.synthetic;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.EnumSet;
+import java.util.Set;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+
+import de.mpii.wiki.WikiMapper;
+import de.mpii.wiki.dump.DumpSettings.MappedType;
+import de.mpii.wiki.result.MappedIdResults;
+import de.mpii.wiki.synthetic.DumpGenerator.Change;
+
+public class DumpGeneratorTest {
+
+  private static DumpGenerator generator(int pages) {
+    DumpGenerator generator = new DumpGenerator(42);
+    generator.setPages(pages);
+    generator.setLinksPerPage(8);
+    generator.setTextSize(300);
+    generator.setRenameRate(0.1);
+    generator.setDeleteRate(0.1);
+    generator.setMoveRate(0.1);
+    generator.setCycleRate(0.3);
+    generator.setDisambiguationRate(0.1);
+    return generator;
+  }
+
+  @Test
+  public void verifyMappingMatchesGeneratedChanges() throws IOException, XMLStreamException {
+    DumpGenerator generator = generator(500);
+    MappedIdResults results;
+    try (TestDumps dumps = new TestDumps(generator)) {
+      results = WikiMapper.mapIds(dumps.getSource(), dumps.getTarget());
+    }
+    assertEquals(500, results.size());
+
+    Set<MappedType> seen = EnumSet.noneOf(MappedType.class);
+    for (int i = 0; i < results.size(); i++) {
+      int id = results.getSourceId(i);
+      String title = generator.title(id);
+      MappedType type = results.getMappingType(i);
+      assertEquals(title, results.getSourceTitle(i));
+      seen.add(type);
+
+      Change change = generator.changeOf(id);
+      if (change == null) {
+        assertEquals(MappedType.SOURCE_IGNORED, type);
+        continue;
+      }
+      switch (change) {
+      case NONE:
+      case EDIT:
+        assertEquals(MappedType.UNCHANGED, type);
+        assertEquals(title, results.getTargetTitle(i));
+        break;
+      case RENAME:
+        assertEquals(MappedType.UPDATED, type);
+        assertEquals(generator.renamedTitle(id), results.getTargetTitle(i));
+        break;
+      case DELETE:
+        assertEquals(MappedType.DELETED, type);
+        break;
+      case MOVE:
+        assertEquals(MappedType.REDIRECTED, type);
+        assertTrue(results.getTargetTitle(i).startsWith(title + " (moved "));
+        break;
+      case CYCLE:
+        assertEquals(MappedType.REDIRECTED_CYCLE, type);
+        assertEquals(title, results.getTargetTitle(i));
+        break;
+      case DISAMBIGUATE:
+        assertEquals(MappedType.DISAMBIGUATED, type);
+        assertEquals(generator.candidateTitle(id, generator.matchingCandidate(id)), results.getTargetTitle(i));
+        break;
+      }
+    }
+    assertEquals(EnumSet.allOf(MappedType.class), seen);
+  }
+
+  @Test
+  public void verifyDumpsAreReproducible() throws IOException {
+    try (TestDumps first = new TestDumps(generator(200)); TestDumps second = new TestDumps(generator(200))) {
+      assertArrayEquals(Files.readAllBytes(first.getSource().toPath()), Files.readAllBytes(second.getSource().toPath()));
+      assertArrayEquals(Files.readAllBytes(first.getTarget().toPath()), Files.readAllBytes(second.getTarget().toPath()));
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package de.mpii.wiki.synthetic;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import de.mpii.wiki.dump.DumpData;
+import de.mpii.wiki.dump.DumpReader;
+import de.mpii.wiki.dump.DumpSettings.DumpType;
+
+/**
+ * Dumps for tests: a source and a target dump generated into temporary files, which are deleted on
+ * {@link #close()}, and helpers to write small dumps and to scan dumps.
+ */
+public class TestDumps implements Closeable {
+
+  private final DumpGenerator generator;
+
+  private final File source;
+
+  private final File target;
+
+  /**
+   * Generates the dumps of the given (configured) generator.
+   */
+  public TestDumps(DumpGenerator generator) throws IOException {
+    this.generator = generator;
+    source = File.createTempFile("synthetic-old", "xml");
+    target = File.createTempFile("synthetic-new", "xml");
+    try {
+      generator.generate(source, target);
+    } catch (IOException | RuntimeException e) {
+      close();
+      throw e;
+    }
+  }
+
+  /**
+   * Generates dumps of the given number of pages with the default settings of the generator.
+   */
+  public TestDumps(long seed, int pages) throws IOException {
+    this(generator(seed, pages));
+  }
+
+  private static DumpGenerator generator(long seed, int pages) {
+    DumpGenerator generator = new DumpGenerator(seed);
+    generator.setPages(pages);
+    return generator;
+  }
+
+  public DumpGenerator getGenerator() {
+    return generator;
+  }
+
+  public File getSource() {
+    return source;
+  }
+
+  public File getTarget() {
+    return target;
+  }
+
+  @Override
+  public void close() {
+    source.delete();
+    target.delete();
+  }
+
+  /**
+   * Scans the given dump into new dump data of the given type. The data is not compacted.
+   */
+  public static DumpData read(File dump, DumpType type) throws IOException, XMLStreamException {
+    return read(dump, new DumpData(type));
+  }
+
+  /**
+   * Scans the given dump into the given dump data.
+   */
+  public static DumpData read(File dump, DumpData data) throws IOException, XMLStreamException {
+    try (InputStream in = new BufferedInputStream(new FileInputStream(dump))) {
+      DumpReader.read(XMLInputFactory.newInstance().createXMLStreamReader(in), data);
+    }
+    return data;
+  }
+
+  /**
+   * Writes a dump of the given pages to a temporary file, each page given by its id, title and text.
+   */
+  public static File writeDump(String... pages) throws IOException {
+    File dump = File.createTempFile("wiki-dump", "xml");
+    try (Writer out = new OutputStreamWriter(new FileOutputStream(dump), Charset.forName("UTF-8"))) {
+      out.write("<mediawiki>\n");
+      for (int i = 0; i < pages.length; i += 3) {
+        out.write("<page><title>" + pages[i + 1] + "</title><id>" + pages[i] + "</id><revision><text>" + pages[i + 2]
+            + "</text></revision></page>\n");
+      }
+      out.write("</mediawiki>\n");
+    }
+    return dump;
+  }
+}
@@ -0,0 +1,95 @@
+package de.mpii.wiki.targeted;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+
+import de.mpii.wiki.WikiMapper;
+import de.mpii.wiki.dump.DumpData;
+import de.mpii.wiki.dump.DumpSettings.DumpType;
+import de.mpii.wiki.dump.DumpSettings.MappedType;
+import de.mpii.wiki.result.MappedIdResults;
+import de.mpii.wiki.synthetic.DumpGenerator;
+import de.mpii.wiki.synthetic.TestDumps;
+
+public class TargetedScanTest {
+
+  @Test
+  public void verifySubsetMatchesFullMapping() throws IOException, XMLStreamException {
+    DumpGenerator generator = new DumpGenerator(7);
+    generator.setPages(2000);
+    generator.setLinksPerPage(5);
+    generator.setTextSize(200);
+    generator.setMoveRate(0.2);
+    generator.setCycleRate(0.2);
+    generator.setDisambiguationRate(0.1);
+    try (TestDumps dumps = new TestDumps(generator)) {
+      File source = dumps.getSource();
+      File target = dumps.getTarget();
+      MappedIdResults full = WikiMapper.mapIds(source, target);
+
+      Set<String> titles = new HashSet<>();
+      for (int i = 0; i < full.size(); i += 10) {
+        titles.add(full.getSourceTitle(i));
+      }
+      titles.add("Not in the dump");
+      MappedIdResults subset = WikiMapper.mapIds(source, target, titles);
+
+      assertEquals(titles.size() - 1, subset.size());
+      for (int i = 0; i < subset.size(); i++) {
+        int idx = full.indexOf(subset.getSourceId(i));
+        assertEquals(full.getSourceTitle(idx), subset.getSourceTitle(i));
+        assertEquals(full.getSourceTitle(idx), full.getMappingType(idx), subset.getMappingType(i));
+        assertEquals(full.getSourceTitle(idx), full.getTargetTitle(idx), subset.getTargetTitle(i));
+      }
+      // only the pages the subset depends on are kept
+      assertTrue(scanTarget(source, target, titles).size() < full.size() / 4);
+    }
+  }
+
+  private static DumpData scanTarget(File source, File target, Set<String> titles) throws IOException, XMLStreamException {
+    DumpData sourceData = new DumpData(DumpType.SOURCE);
+    TargetedScan.scanSource(Arrays.asList(source), sourceData, titles);
+    DumpData targetData = new DumpData(DumpType.TARGET);
+    TargetedScan.scanTarget(Arrays.asList(target), targetData, sourceData);
+    return targetData;
+  }
+
+  @Test
+  public void verifyEarlierRedirectTargetsAreFoundInLaterPass() throws IOException, XMLStreamException {
+    File source = TestDumps.writeDump("1", "Start", "About [[Other]].", "2", "Other", "About [[Start]].");
+    // Start -> Middle -> Final, with Final written before Middle is known to be required
+    File target = TestDumps.writeDump("3", "Final", "About [[Other]].", "4", "Unrelated", "About [[Other]].",
+        "1", "Start", "#REDIRECT [[Middle]]", "5", "Middle", "#REDIRECT [[Final]]", "2", "Other", "About [[Start]].");
+
+    MappedIdResults results = WikiMapper.mapIds(source, target, new HashSet<>(Arrays.asList("Start")));
+    assertEquals(1, results.size());
+    assertEquals(MappedType.REDIRECTED, results.getMappingType(0));
+    assertEquals("Final", results.getTargetTitle(0));
+    assertEquals(3, scanTarget(source, target, new HashSet<>(Arrays.asList("Start"))).size());
+    source.delete();
+    target.delete();
+  }
+
+  @Test
+  public void verifyRedLinksNeedNoFurtherPass() throws IOException, XMLStreamException {
+    File source = TestDumps.writeDump("1", "Start", "About [[Other]].", "2", "Other", "About [[Start]].");
+    File target = TestDumps.writeDump("1", "Start", "Start may refer to * [[Missing]] * [[Other]] {{disambig}}", "2", "Other", "About [[Start]].");
+
+    DumpData targetData = scanTarget(source, target, new HashSet<>(Arrays.asList("Start")));
+    assertEquals(2, targetData.size());
+    // one pass over the target, although a candidate is missing
+    assertEquals(target.length(), targetData.getMetrics().getBytesRead());
+    source.delete();
+    target.delete();
+  }
+}
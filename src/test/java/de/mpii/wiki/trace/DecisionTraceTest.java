@@ -0,0 +1,147 @@
+package de.mpii.wiki.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+import de.mpii.wiki.dump.DumpData;
+import de.mpii.wiki.dump.DumpSettings.DumpType;
+import de.mpii.wiki.dump.DumpSettings.MappedType;
+import de.mpii.wiki.result.MappedIdResults;
+import de.mpii.wiki.result.ResultGenerator;
+import de.mpii.wiki.synthetic.DumpGenerator;
+import de.mpii.wiki.synthetic.TestDumps;
+
+public class DecisionTraceTest {
+
+  @Test
+  public void verifyTrace() throws Exception {
+    DumpGenerator generator = new DumpGenerator(11);
+    generator.setPages(2000);
+    generator.setDisambiguationRate(0.1);
+    generator.setCycleRate(0.2);
+    File traceFile = File.createTempFile("decisions", "tsv");
+    try (TestDumps dumps = new TestDumps(generator)) {
+      DumpData sourceData = TestDumps.read(dumps.getSource(), DumpType.SOURCE);
+      DumpData targetData = TestDumps.read(dumps.getTarget(), DumpType.TARGET);
+      sourceData.compact();
+      targetData.compact();
+
+      MappedIdResults results;
+      try (DecisionTrace trace = DecisionTrace.open(traceFile, 1.0)) {
+        results = ResultGenerator.generateIds(sourceData, targetData, trace);
+        assertEquals(0, trace.getDropped());
+      }
+      MappedIdResults untraced = ResultGenerator.generateIds(sourceData, targetData);
+      for (int i = 0; i < results.size(); i++) {
+        assertEquals(untraced.getTargetId(i), results.getTargetId(i));
+      }
+
+      TraceSummary summary = TraceSummary.read(traceFile);
+      int redirected = results.getCount(MappedType.REDIRECTED) + results.getCount(MappedType.REDIRECTED_CYCLE);
+      assertTrue(redirected > 0);
+      assertEquals(redirected, summary.getRedirects());
+      assertEquals(results.getCount(MappedType.REDIRECTED_CYCLE), summary.getCycles());
+      assertTrue(results.getCount(MappedType.DISAMBIGUATED) > 0);
+      assertEquals(results.getCount(MappedType.DISAMBIGUATED), summary.getDisambiguations());
+      assertTrue(summary.getChainLengths().getMax() >= 1);
+      assertEquals(0, summary.getMalformed());
+
+      // the same pages are sampled in every run
+      try (DecisionTrace trace = DecisionTrace.open(traceFile, 0.5)) {
+        ResultGenerator.generateIds(sourceData, targetData, trace);
+        long sampled = trace.getRecorded();
+        assertTrue(sampled > 0 && sampled < redirected + summary.getDisambiguations());
+        ResultGenerator.generateIds(sourceData, targetData, trace);
+        assertEquals(2 * sampled, trace.getRecorded());
+      }
+    } finally {
+      traceFile.delete();
+    }
+  }
+
+  @Test
+  public void verifySampling() throws Exception {
+    File traceFile = File.createTempFile("decisions", "tsv");
+    try (DecisionTrace trace = DecisionTrace.open(traceFile, 0.0)) {
+      for (int id = 0; id < 1000; id++) {
+        assertFalse(trace.isSampled(id));
+      }
+    } finally {
+      traceFile.delete();
+    }
+  }
+
+  @Test
+  public void verifyRecordsAreDroppedAfterWriteFailure() throws Exception {
+    Writer failing = new Writer() {
+      @Override
+      public void write(char[] buffer, int offset, int length) throws IOException {
+        throw new IOException("No space left on device");
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    DecisionTrace trace = new DecisionTrace(new File("failing-trace.tsv"), 1.0, 16, failing);
+    trace.redirect(1, 2, new int[] { 1, 2 }, false);
+    for (int i = 0; i < 100 && trace.getDropped() == 0; i++) {
+      Thread.sleep(50);
+    }
+    assertEquals(1, trace.getDropped());
+    for (int id = 3; id < 6; id++) {
+      trace.redirect(id, id + 1, new int[] { id, id + 1 }, false);
+    }
+    assertEquals(0, trace.getRecorded());
+    assertEquals(4, trace.getDropped());
+    try {
+      trace.close();
+      fail("Write failure was not reported");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void verifySummary() throws Exception {
+    File traceFile = File.createTempFile("decisions", "tsv");
+    try {
+      try (Writer writer = new OutputStreamWriter(new FileOutputStream(traceFile), Charset.forName("UTF-8"))) {
+        writer.write("# kind\tsource\ttarget\tids\tscores|cycle\n");
+        writer.write("R\t1\t3\t1,2\t0\n");
+        writer.write("R\t4\t4\t4,5\t1\n");
+        writer.write("D\t6\t7\t7,8\t0.5000,0.2500\n");
+        writer.write("D\t9\t10\t10,11\t0.2000,0.2000\n");
+        writer.write("D\t12\t12\t13\t0.0000\n");
+        writer.write("D\t14\t1");
+      }
+      TraceSummary summary = TraceSummary.read(traceFile);
+      assertEquals(2, summary.getRedirects());
+      assertEquals(1, summary.getCycles());
+      assertEquals(3, summary.getDisambiguations());
+      assertEquals(1, summary.getUnresolved());
+      assertEquals(1, summary.getTies());
+      assertEquals(0.7 / 3, summary.getMeanTopScore(), 1e-9);
+      assertEquals(0.25 / 3, summary.getMeanMargin(), 1e-9);
+      assertEquals(2, summary.getCandidates().getMax());
+      assertEquals(1, summary.getMalformed());
+    } finally {
+      traceFile.delete();
+    }
+  }
+}